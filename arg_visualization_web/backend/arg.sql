@@ -136,7 +136,7 @@ CREATE TABLE `all_predictions` (
   `class_prob` double DEFAULT NULL COMMENT '类别概率',
   PRIMARY KEY (`id`),
   KEY `idx_task_row` (`task_id`,`row_index`),
-  KEY `idx_task_is_arg` (`task_id`,`is_arg`)
+  KEY `idx_task_is_arg` (`task_id`,`is_arg`,`row_index`)
 ) ENGINE=InnoDB AUTO_INCREMENT=42261 DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci COMMENT='全部预测结果';
 
 -- arg_visualization.class_summary definition
@@ -150,6 +150,30 @@ CREATE TABLE `class_summary` (
   KEY `idx_task_id` (`task_id`)
 ) ENGINE=InnoDB AUTO_INCREMENT=82 DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci COMMENT='类别统计';
 
+-- arg_visualization.task_statistics definition
+
+CREATE TABLE `task_statistics` (
+  `task_id` bigint NOT NULL COMMENT '分析任务ID',
+  `total_count` bigint NOT NULL DEFAULT '0' COMMENT '序列总数',
+  `arg_count` bigint NOT NULL DEFAULT '0' COMMENT '抗性基因数',
+  `class_counts` mediumtext COMMENT '各类别数量 JSON',
+  `binary_prob_hist` varchar(1024) DEFAULT NULL COMMENT 'binary_prob 直方图 JSON（[0,1] 等宽分箱计数）',
+  `class_prob_hist` varchar(1024) DEFAULT NULL COMMENT 'class_prob 直方图 JSON（[0,1] 等宽分箱计数）',
+  `updated_at` datetime DEFAULT NULL COMMENT '统计时间',
+  PRIMARY KEY (`task_id`)
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci COMMENT='任务结果统计';
+
+-- arg_visualization.analysis_result_cache definition
+
+CREATE TABLE `analysis_result_cache` (
+  `result_key` char(64) NOT NULL COMMENT '结果 key：SHA-256(输入 MD5 + 模型版本 + 规范化参数)',
+  `task_id` bigint NOT NULL COMMENT '产出该结果的已完成任务ID',
+  `created_at` datetime NOT NULL DEFAULT CURRENT_TIMESTAMP COMMENT '登记时间',
+  PRIMARY KEY (`result_key`),
+  KEY `idx_task_id` (`task_id`),
+  CONSTRAINT `fk_result_cache_task` FOREIGN KEY (`task_id`) REFERENCES `analysis_tasks` (`task_id`) ON DELETE CASCADE
+) ENGINE=InnoDB DEFAULT CHARSET=utf8mb4 COLLATE=utf8mb4_0900_ai_ci COMMENT='分析结果复用索引';
+
 --insert data into users table
 INSERT INTO `users` VALUES
 (1,'admin','admin@provirus.com','$2a$10$n6yncgdbw3/E4uc1c6iMsu/ce2.Uw1gnaalC7GHKqhv/PDNMpyuuW','系统管理员',NULL,'ADMIN','ACTIVE','2026-01-08 10:24:10','2026-01-08 10:24:10','2026-02-01 14:41:35'),
@@ -3,7 +3,9 @@ package com.sy.config;
 import com.sy.interceptor.AdminAuthInterceptor;
 import com.sy.interceptor.JwtInterceptor;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.web.servlet.config.annotation.AsyncSupportConfigurer;
 import org.springframework.web.servlet.config.annotation.CorsRegistry;
 import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
 import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
@@ -17,6 +19,10 @@ public class WebMvcConfig implements WebMvcConfigurer {
     @Autowired
     private AdminAuthInterceptor adminAuthInterceptor;
 
+    /** 异步响应（StreamingResponseBody 流式下载）超时时间，默认 1 小时，大文件下载需要较长时间 */
+    @Value("${download.async-timeout-ms:3600000}")
+    private long asyncTimeoutMs;
+
     @Override
     public void addInterceptors(InterceptorRegistry registry) {
         registry.addInterceptor(jwtInterceptor)
@@ -47,6 +53,11 @@ public class WebMvcConfig implements WebMvcConfigurer {
                 );
     }
 
+    @Override
+    public void configureAsyncSupport(AsyncSupportConfigurer configurer) {
+        configurer.setDefaultTimeout(asyncTimeoutMs);
+    }
+
     @Override
     public void addCorsMappings(CorsRegistry registry) {
         registry.addMapping("/**")
@@ -2,6 +2,9 @@ package com.sy.controller;
 
 import com.sy.pojo.User;
 import com.sy.service.AdminService;
+import com.sy.service.ContainerResourceLedger;
+import com.sy.service.IngestMetrics;
+import com.sy.service.TaskQueueManager;
 import com.sy.mapper.UserMapper;
 import com.sy.util.JwtUtil;
 import com.sy.vo.Result;
@@ -25,6 +28,9 @@ public class AdminController {
     private final AdminService adminService;
     private final UserMapper userMapper;
     private final JwtUtil jwtUtil;
+    private final IngestMetrics ingestMetrics;
+    private final TaskQueueManager taskQueueManager;
+    private final ContainerResourceLedger resourceLedger;
 
     /**
      * 验证管理员权限
@@ -190,6 +196,48 @@ public class AdminController {
         }
     }
 
+    /**
+     * 获取结果落库流水线各阶段吞吐计数
+     */
+    @GetMapping("/ingest/metrics")
+    public Result<Map<String, Object>> getIngestMetrics(HttpServletRequest request) {
+        try {
+            checkAdmin(request);
+            return Result.success(ingestMetrics.snapshot());
+        } catch (Exception e) {
+            log.error("获取落库吞吐计数失败", e);
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 获取任务调度队列状态（运行中任务、等待任务及排队位置）
+     */
+    @GetMapping("/queue/status")
+    public Result<Map<String, Object>> getQueueStatus(HttpServletRequest request) {
+        try {
+            checkAdmin(request);
+            return Result.success(taskQueueManager.getQueueStatus());
+        } catch (Exception e) {
+            log.error("获取任务队列状态失败", e);
+            return Result.error(e.getMessage());
+        }
+    }
+
+    /**
+     * 获取容器资源台账（CPU/内存/GPU 容量、占用与等待数）
+     */
+    @GetMapping("/resources")
+    public Result<Map<String, Object>> getContainerResources(HttpServletRequest request) {
+        try {
+            checkAdmin(request);
+            return Result.success(resourceLedger.snapshot());
+        } catch (Exception e) {
+            log.error("获取容器资源占用失败", e);
+            return Result.error(e.getMessage());
+        }
+    }
+
     /**
      * 搜索用户（根据用户名或用户ID）
      */
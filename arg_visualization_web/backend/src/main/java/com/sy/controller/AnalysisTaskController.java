@@ -1,11 +1,17 @@
 package com.sy.controller;
 
 import com.sy.service.AnalysisTaskService;
+import com.sy.service.TaskEventBus;
 import com.sy.util.JwtUtil;
 import com.sy.vo.Result;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
 
 import java.util.List;
 import java.util.Map;
@@ -22,6 +28,7 @@ public class AnalysisTaskController {
 
     private final AnalysisTaskService analysisTaskService;
     private final JwtUtil jwtUtil;
+    private final TaskEventBus taskEventBus;
 
     /**
      * 创建分析任务
@@ -101,6 +108,69 @@ public class AnalysisTaskController {
         }
     }
 
+    /**
+     * 分页读取任务的容器日志
+     * offset 为字节偏移（负数表示从末尾往前，如 -65536 查看最近 64KB），下一页从返回的 nextOffset 继续；
+     * 任务运行中可按 nextOffset 轮询追加内容
+     */
+    @GetMapping("/{taskId}/logs")
+    public Result<Map<String, Object>> getTaskLog(
+            @PathVariable Long taskId,
+            @RequestParam(value = "offset", defaultValue = "0") long offset,
+            @RequestParam(value = "limit", defaultValue = "65536") int limit,
+            @RequestHeader("Authorization") String token) {
+        try {
+            Long userId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+            return Result.success(analysisTaskService.getTaskLog(taskId, userId, offset, limit));
+        } catch (Exception e) {
+            log.error("获取任务日志失败", e);
+            return Result.errorWithCode("task.not.found");
+        }
+    }
+
+    /**
+     * 订阅任务状态事件（SSE），替代轮询 /status
+     * 推送状态、进度与阶段变化，任务结束后连接关闭；断线重连带 Last-Event-ID 时补发断线期间的事件
+     */
+    @GetMapping(value = "/{taskId}/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeTaskEvents(
+            @PathVariable Long taskId,
+            @RequestHeader("Authorization") String token,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+            HttpServletResponse response) {
+        // 禁止 nginx 缓冲事件流
+        response.setHeader("X-Accel-Buffering", "no");
+        Map<String, Object> snapshot;
+        long snapshotEventId = taskEventBus.currentEventId();
+        try {
+            Long userId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+            // 校验权限，同时作为补发不完整时的当前状态快照
+            snapshot = analysisTaskService.getTaskStatus(taskId, userId);
+        } catch (Exception e) {
+            log.error("订阅任务事件失败: taskId={}", taskId, e);
+            return errorEmitter("task.not.found");
+        }
+        return taskEventBus.subscribeTask(taskId, parseEventId(lastEventId), snapshot, snapshotEventId);
+    }
+
+    /**
+     * 订阅当前用户所有任务的状态事件（SSE），任务列表页使用
+     */
+    @GetMapping(value = "/events", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter subscribeUserEvents(
+            @RequestHeader("Authorization") String token,
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventId,
+            HttpServletResponse response) {
+        response.setHeader("X-Accel-Buffering", "no");
+        try {
+            Long userId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+            return taskEventBus.subscribeUser(userId, parseEventId(lastEventId));
+        } catch (Exception e) {
+            log.error("订阅任务事件失败", e);
+            return errorEmitter("error.server");
+        }
+    }
+
     /**
      * 取消任务
      */
@@ -151,4 +221,26 @@ public class AnalysisTaskController {
             return Result.errorWithCode("task.not.found");
         }
     }
+
+    private Long parseEventId(String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) return null;
+        try {
+            return Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * 发送一条 error 事件后立即关闭的连接
+     */
+    private SseEmitter errorEmitter(String messageCode) {
+        SseEmitter emitter = new SseEmitter();
+        try {
+            emitter.send(SseEmitter.event().name("error").data(Result.errorWithCode(messageCode)));
+        } catch (IOException ignored) {
+        }
+        emitter.complete();
+        return emitter;
+    }
 }
@@ -2,22 +2,28 @@ package com.sy.controller;
 
 import com.sy.mapper.AnalysisTaskMapper;
 import com.sy.pojo.AnalysisTask;
+import com.sy.service.ResultArchiveCache;
 import com.sy.util.JwtUtil;
+import com.sy.util.ZipArchiveWriter;
 import com.sy.vo.Result;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.io.FileSystemResource;
 import org.springframework.core.io.Resource;
 import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
 import java.io.*;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.file.*;
 import java.util.*;
-import java.util.zip.ZipEntry;
-import java.util.zip.ZipOutputStream;
 
 /**
  * 文件下载控制器
@@ -31,6 +37,15 @@ public class DownloadController {
 
     private final AnalysisTaskMapper analysisTaskMapper;
     private final JwtUtil jwtUtil;
+    private final ResultArchiveCache archiveCache;
+
+    /** ZIP 打包的 DEFLATE 压缩级别（0-9），越低越快 */
+    @Value("${download.zip.compression-level:6}")
+    private int zipCompressionLevel;
+
+    /** 已压缩格式，以 STORED 方式存入不再压缩 */
+    @Value("${download.zip.stored-extensions:gz,zip,bz2,xz,zst,7z}")
+    private String zipStoredExtensions;
 
     /**
      * 获取任务的可下载文件列表
@@ -155,12 +170,15 @@ public class DownloadController {
     }
 
     /**
-     * 下载 Prodigal 结果（ZIP 打包）
+     * 下载 Prodigal 结果（ZIP 打包，首次边打包边输出并写入缓存，之后直接返回缓存包，支持断点续传）
      */
     @GetMapping("/prodigal/{taskId}")
-    public ResponseEntity<Resource> downloadProdigalResults(
+    public ResponseEntity<StreamingResponseBody> downloadProdigalResults(
             @PathVariable Long taskId,
-            @RequestHeader("Authorization") String token) {
+            @RequestHeader("Authorization") String token,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange) {
         try {
             Long userId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
             AnalysisTask task = validateTask(taskId, userId);
@@ -174,53 +192,10 @@ public class DownloadController {
                 return ResponseEntity.notFound().build();
             }
 
-            // 创建临时 ZIP 文件
-            Path zipFile = Files.createTempFile("prodigal_results_" + taskId + "_", ".zip");
-            
-            try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipFile.toFile()))) {
-                try (DirectoryStream<Path> stream = Files.newDirectoryStream(prodigalDir, "*.faa")) {
-                    for (Path file : stream) {
-                        // 排除 merged.faa
-                        if (!file.getFileName().toString().equals("merged.faa")) {
-                            ZipEntry entry = new ZipEntry(file.getFileName().toString());
-                            zos.putNextEntry(entry);
-                            Files.copy(file, zos);
-                            zos.closeEntry();
-                        }
-                    }
-                }
-                
-                // 添加 GFF 文件（如果存在）
-                try (DirectoryStream<Path> stream = Files.newDirectoryStream(prodigalDir, "*.gff")) {
-                    for (Path file : stream) {
-                        ZipEntry entry = new ZipEntry(file.getFileName().toString());
-                        zos.putNextEntry(entry);
-                        Files.copy(file, zos);
-                        zos.closeEntry();
-                    }
-                }
-            }
-
-            String filename = "task_" + taskId + "_prodigal_results.zip";
-            Resource resource = new FileSystemResource(zipFile.toFile()) {
-                @Override
-                public InputStream getInputStream() throws IOException {
-                    return new FileInputStream(getFile()) {
-                        @Override
-                        public void close() throws IOException {
-                            super.close();
-                            // 下载完成后删除临时文件
-                            Files.deleteIfExists(zipFile);
-                        }
-                    };
-                }
-            };
-
-            return ResponseEntity.ok()
-                    .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
-                    .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                    .contentLength(Files.size(zipFile))
-                    .body(resource);
+            // 排除 merged.faa
+            List<ZipArchiveWriter.Entry> entries = collectProdigalEntries(prodigalDir, "", false);
+            return createArchiveResponse("prodigal", taskId, entries, "task_" + taskId + "_prodigal_results.zip",
+                    range, ifNoneMatch, ifRange);
 
         } catch (Exception e) {
             log.error("下载 Prodigal 结果失败", e);
@@ -229,12 +204,15 @@ public class DownloadController {
     }
 
     /**
-     * 下载全部结果（ZIP 打包）
+     * 下载全部结果（ZIP 打包，首次边打包边输出并写入缓存，之后直接返回缓存包，支持断点续传）
      */
     @GetMapping("/all/{taskId}")
-    public ResponseEntity<Resource> downloadAllResults(
+    public ResponseEntity<StreamingResponseBody> downloadAllResults(
             @PathVariable Long taskId,
-            @RequestHeader("Authorization") String token) {
+            @RequestHeader("Authorization") String token,
+            @RequestHeader(value = HttpHeaders.RANGE, required = false) String range,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch,
+            @RequestHeader(value = HttpHeaders.IF_RANGE, required = false) String ifRange) {
         try {
             Long userId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
             AnalysisTask task = validateTask(taskId, userId);
@@ -244,69 +222,187 @@ public class DownloadController {
                 return ResponseEntity.notFound().build();
             }
 
-            // 创建临时 ZIP 文件
-            Path zipFile = Files.createTempFile("all_results_" + taskId + "_", ".zip");
-
-            try (ZipOutputStream zos = new ZipOutputStream(new FileOutputStream(zipFile.toFile()))) {
-                // 添加 ARG 结果
-                Path argFile = findArgResultFile(outputDir);
-                if (argFile != null && Files.exists(argFile)) {
-                    ZipEntry entry = new ZipEntry("arg_predictions.tsv");
-                    zos.putNextEntry(entry);
-                    Files.copy(argFile, zos);
-                    zos.closeEntry();
+            List<ZipArchiveWriter.Entry> entries = new ArrayList<>();
+            // 添加 ARG 结果
+            Path argFile = findArgResultFile(outputDir);
+            if (argFile != null && Files.exists(argFile)) {
+                entries.add(new ZipArchiveWriter.Entry("arg_predictions.tsv", argFile));
+            }
+            // MAG 任务：添加 Prodigal 结果
+            if ("MAG".equals(task.getTaskType())) {
+                Path prodigalDir = Paths.get(outputDir, "prodigal");
+                if (Files.exists(prodigalDir)) {
+                    entries.addAll(collectProdigalEntries(prodigalDir, "prodigal/", true));
                 }
+            }
+            return createArchiveResponse("all", taskId, entries, "task_" + taskId + "_all_results.zip",
+                    range, ifNoneMatch, ifRange);
 
-                // MAG 任务：添加 Prodigal 结果
-                if ("MAG".equals(task.getTaskType())) {
-                    Path prodigalDir = Paths.get(outputDir, "prodigal");
-                    if (Files.exists(prodigalDir)) {
-                        // 添加所有 .faa 文件
-                        try (DirectoryStream<Path> stream = Files.newDirectoryStream(prodigalDir, "*.faa")) {
-                            for (Path file : stream) {
-                                ZipEntry entry = new ZipEntry("prodigal/" + file.getFileName().toString());
-                                zos.putNextEntry(entry);
-                                Files.copy(file, zos);
-                                zos.closeEntry();
-                            }
-                        }
-                        // 添加 .gff 文件
-                        try (DirectoryStream<Path> stream = Files.newDirectoryStream(prodigalDir, "*.gff")) {
-                            for (Path file : stream) {
-                                ZipEntry entry = new ZipEntry("prodigal/" + file.getFileName().toString());
-                                zos.putNextEntry(entry);
-                                Files.copy(file, zos);
-                                zos.closeEntry();
-                            }
-                        }
+        } catch (Exception e) {
+            log.error("下载全部结果失败", e);
+            return ResponseEntity.badRequest().build();
+        }
+    }
+
+    /**
+     * 收集 Prodigal 目录下的 .faa 与 .gff 文件（按文件名排序，保证打包顺序稳定）
+     * @param prefix 包内路径前缀
+     * @param includeMerged 是否包含 merged.faa
+     */
+    private List<ZipArchiveWriter.Entry> collectProdigalEntries(Path prodigalDir, String prefix, boolean includeMerged) throws IOException {
+        List<ZipArchiveWriter.Entry> entries = new ArrayList<>();
+        for (String glob : new String[]{"*.faa", "*.gff"}) {
+            List<Path> files = new ArrayList<>();
+            try (DirectoryStream<Path> stream = Files.newDirectoryStream(prodigalDir, glob)) {
+                for (Path file : stream) {
+                    if (includeMerged || !file.getFileName().toString().equals("merged.faa")) {
+                        files.add(file);
                     }
                 }
             }
+            files.sort(Comparator.comparing(f -> f.getFileName().toString()));
+            for (Path file : files) {
+                entries.add(new ZipArchiveWriter.Entry(prefix + file.getFileName().toString(), file));
+            }
+        }
+        return entries;
+    }
 
-            String filename = "task_" + taskId + "_all_results.zip";
-            Resource resource = new FileSystemResource(zipFile.toFile()) {
-                @Override
-                public InputStream getInputStream() throws IOException {
-                    return new FileInputStream(getFile()) {
-                        @Override
-                        public void close() throws IOException {
-                            super.close();
-                            Files.deleteIfExists(zipFile);
-                        }
-                    };
-                }
-            };
+    /**
+     * 创建压缩包下载响应（带缓存）
+     * ETag 为缓存 key，If-None-Match 命中返回 304；
+     * 已缓存时按 Range 返回部分内容（206），未缓存且无 Range 时边打包边输出并写入缓存，
+     * 未缓存但带 Range（续传）时先生成缓存包再按范围返回。缓存不可用时退回纯流式输出。
+     */
+    private ResponseEntity<StreamingResponseBody> createArchiveResponse(String kind, Long taskId,
+            List<ZipArchiveWriter.Entry> entries, String filename,
+            String range, String ifNoneMatch, String ifRange) throws IOException {
+        if (!archiveCache.isEnabled()) {
+            return createZipResponse(entries, filename);
+        }
+        ZipArchiveWriter writer = new ZipArchiveWriter(zipCompressionLevel, parseExtensions(zipStoredExtensions));
+        String key = archiveCache.key(kind, taskId, entries, writer.describe());
+        String etag = "\"" + key + "\"";
+        if (ifNoneMatch != null && (ifNoneMatch.contains(etag) || ifNoneMatch.trim().equals("*"))) {
+            return ResponseEntity.status(HttpStatus.NOT_MODIFIED).eTag(etag).build();
+        }
 
+        Path cached = archiveCache.get(key);
+        if (cached == null && range == null) {
+            StreamingResponseBody body = out -> archiveCache.writeThrough(key, out, o -> writer.write(entries, o));
             return ResponseEntity.ok()
                     .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                    .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                    .eTag(etag)
                     .contentType(MediaType.APPLICATION_OCTET_STREAM)
-                    .contentLength(Files.size(zipFile))
-                    .body(resource);
+                    .body(body);
+        }
+        if (cached == null) {
+            try {
+                cached = archiveCache.build(key, o -> writer.write(entries, o));
+            } catch (IOException e) {
+                log.warn("生成缓存压缩包失败，退回流式下载: key={}", key, e);
+                return createZipResponse(entries, filename);
+            }
+        }
+        // If-Range 与当前 ETag 不一致说明文件已变化，忽略 Range 返回完整内容
+        if (ifRange != null && !ifRange.trim().equals(etag)) {
+            range = null;
+        }
+        return createCachedFileResponse(cached, filename, etag, range);
+    }
 
-        } catch (Exception e) {
-            log.error("下载全部结果失败", e);
-            return ResponseEntity.badRequest().build();
+    /**
+     * 返回缓存的压缩包，支持单个 Range（bytes=a-b / bytes=a- / bytes=-n）；多段范围按完整内容返回
+     */
+    private ResponseEntity<StreamingResponseBody> createCachedFileResponse(Path file, String filename,
+            String etag, String range) throws IOException {
+        long length = Files.size(file);
+        long start = 0;
+        long end = length - 1;
+        boolean partial = false;
+        if (range != null && range.startsWith("bytes=") && !range.contains(",")) {
+            String spec = range.substring("bytes=".length()).trim();
+            int dash = spec.indexOf('-');
+            try {
+                if (dash == 0) {
+                    long suffix = Long.parseLong(spec.substring(1).trim());
+                    start = Math.max(0, length - suffix);
+                } else if (dash > 0) {
+                    start = Long.parseLong(spec.substring(0, dash).trim());
+                    String last = spec.substring(dash + 1).trim();
+                    if (!last.isEmpty()) end = Math.min(end, Long.parseLong(last));
+                }
+                partial = dash >= 0;
+            } catch (NumberFormatException e) {
+                partial = false;
+            }
+            if (partial && (start >= length || start > end)) {
+                return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes */" + length)
+                        .build();
+            }
+        }
+        if (!partial) {
+            start = 0;
+            end = length - 1;
+        }
+
+        long from = start;
+        long count = end - start + 1;
+        StreamingResponseBody body = out -> transferRange(file, from, count, out);
+        ResponseEntity.BodyBuilder builder = partial
+                ? ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                        .header(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length)
+                : ResponseEntity.ok();
+        return builder
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .header(HttpHeaders.ACCEPT_RANGES, "bytes")
+                .eTag(etag)
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .contentLength(count)
+                .body(body);
+    }
+
+    /**
+     * 用 FileChannel.transferTo 输出文件区间
+     */
+    private static void transferRange(Path file, long position, long count, OutputStream out) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            WritableByteChannel target = Channels.newChannel(out);
+            long remaining = count;
+            while (remaining > 0) {
+                long n = channel.transferTo(position, remaining, target);
+                if (n <= 0) break;
+                position += n;
+                remaining -= n;
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * 创建 ZIP 流式下载响应：ZipOutputStream 直接写入响应流，首字节立即返回，不占用临时磁盘
+     * 总大小事先未知，使用分块传输
+     */
+    private ResponseEntity<StreamingResponseBody> createZipResponse(List<ZipArchiveWriter.Entry> entries, String filename) {
+        ZipArchiveWriter writer = new ZipArchiveWriter(zipCompressionLevel, parseExtensions(zipStoredExtensions));
+        StreamingResponseBody body = out -> writer.write(entries, out);
+        return ResponseEntity.ok()
+                .header(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + filename + "\"")
+                .contentType(MediaType.APPLICATION_OCTET_STREAM)
+                .body(body);
+    }
+
+    private static Set<String> parseExtensions(String csv) {
+        Set<String> set = new HashSet<>();
+        if (csv == null) return set;
+        for (String ext : csv.split(",")) {
+            String e = ext.trim().toLowerCase(Locale.ROOT);
+            if (e.startsWith(".")) e = e.substring(1);
+            if (!e.isEmpty()) set.add(e);
         }
+        return set;
     }
 
     /**
@@ -106,7 +106,8 @@ public class MagController {
                     }
                 }
                 Path filePath = magDir.resolve(filename);
-                Files.write(filePath, file.getBytes());
+                // 直接转存（Tomcat 已落盘的临时文件可直接改名），不把整个文件读进内存
+                file.transferTo(filePath);
                 savedFiles.add(filename);
                 totalSize += file.getSize();
                 log.info("保存文件: {}", filePath);
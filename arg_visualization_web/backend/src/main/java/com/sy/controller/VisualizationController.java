@@ -1,12 +1,19 @@
 package com.sy.controller;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sy.service.VisualizationService;
+import com.sy.util.I18nUtil;
 import com.sy.util.JwtUtil;
 import com.sy.vo.Result;
+import jakarta.servlet.http.HttpServletResponse;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.MediaType;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Map;
 
 /**
@@ -21,6 +28,7 @@ public class VisualizationController {
 
     private final VisualizationService visualizationService;
     private final JwtUtil jwtUtil;
+    private final ObjectMapper objectMapper;
 
     /**
      * 获取 ARG 可视化数据（兼容：有落库则摘要+第一页，否则读文件）
@@ -57,6 +65,8 @@ public class VisualizationController {
 
     /**
      * 分页列表（支持筛选 isArg、搜索 keyword）
+     * 传 cursor 参数（首页传空串）时使用游标分页，返回 pagination.nextCursor / prevCursor；
+     * 不传时保持原有 page 页码分页
      */
     @GetMapping("/genome/{taskId}/results")
     public Result<Map<String, Object>> getResultsPage(
@@ -65,10 +75,13 @@ public class VisualizationController {
             @RequestParam(defaultValue = "100") int pageSize,
             @RequestParam(required = false) Boolean isArg,
             @RequestParam(required = false) String keyword,
+            @RequestParam(required = false) String cursor,
             @RequestHeader("Authorization") String token) {
         try {
             Long userId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
-            Map<String, Object> data = visualizationService.getResultsPage(taskId, userId, page, pageSize, isArg, keyword);
+            Map<String, Object> data = cursor != null
+                    ? visualizationService.getResultsPageByCursor(taskId, userId, cursor, pageSize, isArg, keyword)
+                    : visualizationService.getResultsPage(taskId, userId, page, pageSize, isArg, keyword);
             return Result.success(data);
         } catch (Exception e) {
             log.error("获取分页结果失败", e);
@@ -141,4 +154,70 @@ public class VisualizationController {
             return Result.error("获取 ARG 序列失败: " + e.getMessage());
         }
     }
+
+    /**
+     * 流式导出可视化数据（含全部预测结果），边查边写，内存占用与结果规模无关
+     * 响应结构与 /export/{taskId} 相同（code/message/data）
+     */
+    @GetMapping("/export/{taskId}/stream")
+    public void streamExportData(
+            @PathVariable Long taskId,
+            @RequestHeader("Authorization") String token,
+            HttpServletResponse response) throws IOException {
+        VisualizationService.JsonWriter body;
+        try {
+            Long userId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+            body = visualizationService.streamExportData(taskId, userId);
+        } catch (Exception e) {
+            log.error("导出可视化数据失败", e);
+            writeJson(response, Result.error("导出数据失败: " + e.getMessage()));
+            return;
+        }
+        writeStreaming(response, body);
+    }
+
+    /**
+     * 流式获取所有 ARG 序列，响应结构与 /genome/{taskId}/arg-sequences 相同
+     */
+    @GetMapping("/genome/{taskId}/arg-sequences/stream")
+    public void streamAllArgSequences(
+            @PathVariable Long taskId,
+            @RequestHeader("Authorization") String token,
+            HttpServletResponse response) throws IOException {
+        VisualizationService.JsonWriter body;
+        try {
+            Long userId = jwtUtil.getUserIdFromToken(token.replace("Bearer ", ""));
+            body = visualizationService.streamAllArgSequences(taskId, userId);
+        } catch (Exception e) {
+            log.error("获取所有 ARG 序列失败", e);
+            writeJson(response, Result.error("获取 ARG 序列失败: " + e.getMessage()));
+            return;
+        }
+        writeStreaming(response, body);
+    }
+
+    /**
+     * 按 Result 结构写出，data 部分由 body 直接写入响应流
+     * 开始写出后状态码已提交，中途失败只能中断连接
+     */
+    private void writeStreaming(HttpServletResponse response, VisualizationService.JsonWriter body) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        try (JsonGenerator gen = objectMapper.getFactory().createGenerator(response.getOutputStream())) {
+            gen.writeStartObject();
+            gen.writeNumberField("code", 0);
+            gen.writeStringField("message", I18nUtil.getMessage("success"));
+            gen.writeFieldName("data");
+            body.write(gen);
+            gen.writeEndObject();
+        } catch (IOException e) {
+            log.warn("流式响应写出中断: {}", e.getMessage());
+        }
+    }
+
+    private void writeJson(HttpServletResponse response, Result<?> result) throws IOException {
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        response.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        objectMapper.writeValue(response.getOutputStream(), result);
+    }
 }
@@ -0,0 +1,11 @@
+package com.sy.exception;
+
+/**
+ * 任务输出不可用时抛出（容器以非零退出码结束、结果文件缺失），任务应标记为 FAILED 而不是以空结果完成
+ */
+public class TaskOutputException extends RuntimeException {
+
+    public TaskOutputException(String message) {
+        super(message);
+    }
+}
@@ -4,6 +4,7 @@ import com.baomidou.mybatisplus.core.mapper.BaseMapper;
 import com.sy.pojo.AllPrediction;
 import org.apache.ibatis.annotations.Mapper;
 import org.apache.ibatis.annotations.Param;
+import org.apache.ibatis.session.ResultHandler;
 
 import java.util.List;
 
@@ -17,4 +18,17 @@ public interface AllPredictionMapper extends BaseMapper<AllPrediction> {
      * 批量插入（一条 SQL 多行），用于百万级落库
      */
     void insertBatch(@Param("list") List<AllPrediction> list);
+
+    /**
+     * 按 row_index 顺序流式读取某任务的预测结果，逐行回调 handler，不在内存中攒结果列表
+     * @param argOnly 是否只读取 is_arg = 1 的行
+     */
+    void streamByTask(@Param("taskId") Long taskId, @Param("argOnly") boolean argOnly,
+                      ResultHandler<AllPrediction> handler);
+
+    /**
+     * 把源任务的预测结果整体复制到目标任务（INSERT ... SELECT，不经过应用层）
+     * @return 复制的行数
+     */
+    int copyTaskRows(@Param("sourceTaskId") Long sourceTaskId, @Param("targetTaskId") Long targetTaskId);
 }
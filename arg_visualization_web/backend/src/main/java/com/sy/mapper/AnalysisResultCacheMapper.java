@@ -0,0 +1,21 @@
+package com.sy.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.sy.pojo.AnalysisResultCache;
+import org.apache.ibatis.annotations.Insert;
+import org.apache.ibatis.annotations.Mapper;
+import org.apache.ibatis.annotations.Param;
+
+/**
+ * 分析结果复用索引 Mapper
+ */
+@Mapper
+public interface AnalysisResultCacheMapper extends BaseMapper<AnalysisResultCache> {
+
+    /**
+     * 登记结果 key，已存在时指向较新的任务
+     */
+    @Insert("INSERT INTO analysis_result_cache (result_key, task_id, created_at) VALUES (#{resultKey}, #{taskId}, NOW()) "
+            + "ON DUPLICATE KEY UPDATE task_id = VALUES(task_id), created_at = VALUES(created_at)")
+    void upsert(@Param("resultKey") String resultKey, @Param("taskId") Long taskId);
+}
@@ -17,4 +17,10 @@ public interface ClassSummaryMapper extends BaseMapper<ClassSummary> {
      * 批量插入（一条 SQL 多行）
      */
     void insertBatch(@Param("list") List<ClassSummary> list);
+
+    /**
+     * 把源任务的类别统计复制到目标任务
+     * @return 复制的行数
+     */
+    int copyTaskRows(@Param("sourceTaskId") Long sourceTaskId, @Param("targetTaskId") Long targetTaskId);
 }
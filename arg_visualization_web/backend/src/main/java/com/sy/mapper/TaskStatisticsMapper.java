@@ -0,0 +1,12 @@
+package com.sy.mapper;
+
+import com.baomidou.mybatisplus.core.mapper.BaseMapper;
+import com.sy.pojo.TaskStatistics;
+import org.apache.ibatis.annotations.Mapper;
+
+/**
+ * 任务结果统计 Mapper
+ */
+@Mapper
+public interface TaskStatisticsMapper extends BaseMapper<TaskStatistics> {
+}
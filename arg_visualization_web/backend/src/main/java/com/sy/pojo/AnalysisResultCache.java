@@ -0,0 +1,25 @@
+package com.sy.pojo;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 分析结果复用索引：结果 key -> 产出该结果的已完成任务
+ */
+@Data
+@TableName("analysis_result_cache")
+public class AnalysisResultCache {
+
+    @TableId(value = "result_key", type = IdType.INPUT)
+    private String resultKey;
+
+    @TableField("task_id")
+    private Long taskId;
+    @TableField("created_at")
+    private LocalDateTime createdAt;
+}
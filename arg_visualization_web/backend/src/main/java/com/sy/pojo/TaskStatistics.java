@@ -0,0 +1,36 @@
+package com.sy.pojo;
+
+import com.baomidou.mybatisplus.annotation.IdType;
+import com.baomidou.mybatisplus.annotation.TableField;
+import com.baomidou.mybatisplus.annotation.TableId;
+import com.baomidou.mybatisplus.annotation.TableName;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * 任务结果统计（落库时一次遍历算出，统计类接口直接按 task_id 读取）
+ */
+@Data
+@TableName("task_statistics")
+public class TaskStatistics {
+
+    @TableId(value = "task_id", type = IdType.INPUT)
+    private Long taskId;
+
+    @TableField("total_count")
+    private Long totalCount;
+    @TableField("arg_count")
+    private Long argCount;
+    /** 各类别数量 JSON：{"类别": 数量} */
+    @TableField("class_counts")
+    private String classCounts;
+    /** binary_prob 直方图 JSON：等宽分箱计数数组 */
+    @TableField("binary_prob_hist")
+    private String binaryProbHist;
+    /** class_prob 直方图 JSON：等宽分箱计数数组 */
+    @TableField("class_prob_hist")
+    private String classProbHist;
+    @TableField("updated_at")
+    private LocalDateTime updatedAt;
+}
@@ -0,0 +1,296 @@
+package com.sy.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.sy.mapper.AllPredictionMapper;
+import com.sy.mapper.AnalysisResultCacheMapper;
+import com.sy.mapper.AnalysisTaskMapper;
+import com.sy.mapper.ClassSummaryMapper;
+import com.sy.mapper.TaskStatisticsMapper;
+import com.sy.pojo.AnalysisResultCache;
+import com.sy.pojo.AnalysisTask;
+import com.sy.pojo.TaskStatistics;
+import com.sy.util.ContainerLog;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * 分析结果复用
+ * 结果只取决于输入内容、模型版本和分析参数，按 SHA-256(输入 MD5 + 模型版本 + 规范化参数) 作为结果 key：
+ * 已有相同 key 的完成任务时，新任务在后台硬链接其输出文件并复制落库数据（不区分用户）；
+ * 相同 key 的任务正在执行时，新任务挂在该任务（leader）上等待，leader 结束后复制其结果，
+ * leader 失败或取消时由第一个等待者接替执行。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class AnalysisResultReuse {
+
+    /** 只影响调度、不影响结果的参数，不参与 key */
+    private static final Set<String> IGNORED_PARAMS = Set.of("priority");
+
+    private static final ObjectMapper KEY_MAPPER = new ObjectMapper()
+            .configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS, true);
+
+    private final AnalysisTaskMapper analysisTaskMapper;
+    private final AllPredictionMapper allPredictionMapper;
+    private final ClassSummaryMapper classSummaryMapper;
+    private final TaskStatisticsMapper taskStatisticsMapper;
+    private final AnalysisResultCacheMapper analysisResultCacheMapper;
+    private final TaskEventBus taskEventBus;
+
+    @Value("${analysis.reuse.enabled:true}")
+    private boolean enabled;
+
+    /** 模型版本，默认取 ARG 镜像名；更换模型但镜像名不变时需手动修改 */
+    @Value("${analysis.reuse.model-version:${docker.arg.image-name:arg-bilstm:gpu}}")
+    private String modelVersion;
+
+    /**
+     * 等待 leader 结果的任务（leader 失败时用于接替执行）
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Waiter {
+        private final String resultKey;
+        private final Long taskId;
+        private final Long userId;
+        private final String inputFilePath;
+        private final long inputSize;
+        private final Map<String, Object> params;
+    }
+
+    private final Map<String, Long> leaderByKey = new HashMap<>();
+    private final Map<Long, String> keyByLeader = new HashMap<>();
+    private final Map<String, List<Waiter>> waiters = new HashMap<>();
+
+    /**
+     * 计算结果 key
+     * @return 未开启复用或输入没有 MD5 时返回 null
+     */
+    public String key(String inputMd5, Map<String, Object> params) {
+        if (!enabled || inputMd5 == null || inputMd5.isEmpty()) return null;
+        Map<String, Object> normalized = new TreeMap<>();
+        if (params != null) {
+            params.forEach((k, v) -> {
+                if (!IGNORED_PARAMS.contains(k)) normalized.put(k, v);
+            });
+        }
+        try {
+            String text = inputMd5.toLowerCase(Locale.ROOT) + '\n' + modelVersion + '\n'
+                    + KEY_MAPPER.writeValueAsString(normalized);
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(text.getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (JsonProcessingException e) {
+            log.warn("分析参数无法规范化，不复用结果: {}", e.getMessage());
+            return null;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 查找可复用的已完成任务；记录指向的任务已删除、未完成或结果未落库时清除该记录
+     * @return 没有可复用结果返回 null
+     */
+    public AnalysisTask findReusable(String resultKey) {
+        AnalysisResultCache entry = analysisResultCacheMapper.selectById(resultKey);
+        if (entry == null) return null;
+        AnalysisTask source = analysisTaskMapper.selectById(entry.getTaskId());
+        if (isReusable(source)) {
+            return source;
+        }
+        log.info("复用记录已失效: key={}, taskId={}", resultKey, entry.getTaskId());
+        analysisResultCacheMapper.deleteById(resultKey);
+        return null;
+    }
+
+    /**
+     * 任务结果是否完整可复用：已完成、输出目录存在且已落库（task_statistics 在落库成功时写入）
+     */
+    public boolean isReusable(AnalysisTask task) {
+        return task != null && "COMPLETED".equals(task.getStatus()) && task.getOutputDir() != null
+                && Files.isDirectory(Paths.get(task.getOutputDir()))
+                && taskStatisticsMapper.selectById(task.getTaskId()) != null;
+    }
+
+    /**
+     * 相同 key 已有任务在执行时挂到该任务上，否则登记为 leader
+     * @return 已在执行的 leader 任务 ID；本任务成为 leader 时返回 null
+     */
+    public synchronized Long attach(String resultKey, Waiter waiter) {
+        Long leader = leaderByKey.get(resultKey);
+        if (leader != null) {
+            waiters.computeIfAbsent(resultKey, k -> new ArrayList<>()).add(waiter);
+            log.info("任务挂到执行中的相同任务上: taskId={}, leader={}", waiter.getTaskId(), leader);
+            return leader;
+        }
+        leaderByKey.put(resultKey, waiter.getTaskId());
+        keyByLeader.put(waiter.getTaskId(), resultKey);
+        return null;
+    }
+
+    /**
+     * 取消等待中的任务
+     * @return 是否在等待中并已移除
+     */
+    public synchronized boolean detach(Long taskId) {
+        for (List<Waiter> list : waiters.values()) {
+            if (list.removeIf(w -> w.getTaskId().equals(taskId))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 等待中的任务所等待的 leader
+     * @return 不在等待中返回 null
+     */
+    public synchronized Long waitingFor(Long taskId) {
+        for (Map.Entry<String, List<Waiter>> e : waiters.entrySet()) {
+            if (e.getValue().stream().anyMatch(w -> w.getTaskId().equals(taskId))) {
+                return leaderByKey.get(e.getKey());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 是否为登记中的 leader
+     */
+    public synchronized boolean isLeader(Long taskId) {
+        return keyByLeader.containsKey(taskId);
+    }
+
+    /**
+     * leader 结束（完成、失败或取消）：成功时登记为可复用结果，返回挂在其上的等待任务
+     * @param succeeded 是否成功完成并已落库
+     * @return 等待任务；不是 leader 或没有等待者时为空
+     */
+    public synchronized List<Waiter> release(Long leaderTaskId, boolean succeeded) {
+        String resultKey = keyByLeader.remove(leaderTaskId);
+        if (resultKey == null) return Collections.emptyList();
+        leaderByKey.remove(resultKey);
+        if (succeeded) {
+            try {
+                analysisResultCacheMapper.upsert(resultKey, leaderTaskId);
+            } catch (Exception e) {
+                log.warn("登记可复用结果失败: taskId={}", leaderTaskId, e);
+            }
+        }
+        List<Waiter> list = waiters.remove(resultKey);
+        return list != null ? list : Collections.emptyList();
+    }
+
+    /**
+     * 把源任务的结果复用到目标任务：硬链接输出文件（跨文件系统时复制），复制 all_predictions、
+     * class_summary、task_statistics，并把目标任务标记为 COMPLETED
+     */
+    @Transactional(rollbackFor = Exception.class)
+    public void copyResults(AnalysisTask source, Long targetTaskId) throws IOException {
+        AnalysisTask target = analysisTaskMapper.selectById(targetTaskId);
+        if (target == null || "CANCELLED".equals(target.getStatus())) return;
+        Path from = Paths.get(source.getOutputDir());
+        Path to = Paths.get(target.getOutputDir());
+        linkOutputs(from, to);
+
+        int rows = allPredictionMapper.copyTaskRows(source.getTaskId(), targetTaskId);
+        classSummaryMapper.copyTaskRows(source.getTaskId(), targetTaskId);
+        TaskStatistics stats = taskStatisticsMapper.selectById(source.getTaskId());
+        if (stats != null) {
+            stats.setTaskId(targetTaskId);
+            stats.setUpdatedAt(LocalDateTime.now());
+            taskStatisticsMapper.insert(stats);
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        target.setTotalCount(source.getTotalCount());
+        target.setProphageCount(source.getProphageCount());
+        target.setStatus("COMPLETED");
+        target.setProgress(100);
+        if (target.getStartedAt() == null) target.setStartedAt(now);
+        target.setCompletedAt(now);
+        analysisTaskMapper.updateById(target);
+        taskEventBus.publish(target, null, "复用已有分析结果");
+        log.info("复用已有分析结果: taskId={}, sourceTaskId={}, rows={}", targetTaskId, source.getTaskId(), rows);
+    }
+
+    /**
+     * 删除目标任务输出目录中已链接或复制的结果（复用失败后、重新执行之前调用）
+     * 只删除目录项，源任务的文件不受影响
+     */
+    public void discardOutputs(Long targetTaskId) throws IOException {
+        AnalysisTask target = analysisTaskMapper.selectById(targetTaskId);
+        if (target == null || target.getOutputDir() == null) return;
+        Path dir = Paths.get(target.getOutputDir());
+        if (!Files.isDirectory(dir)) return;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            for (Path path : (Iterable<Path>) paths.sorted(Comparator.reverseOrder())::iterator) {
+                Files.deleteIfExists(path);
+            }
+        }
+        log.info("已清除复用失败留下的结果文件: taskId={}, dir={}", targetTaskId, dir);
+    }
+
+    /**
+     * 删除目录中与其他文件共享 inode 的文件（复用时建立的硬链接）
+     * 容器和结果拆分会截断重写输出文件，写入仍是硬链接的文件会改坏源任务的结果，写入输出目录前调用；
+     * 文件系统不提供链接数时按共享处理（执行前的输出目录里没有本任务自己的结果）
+     */
+    public static void unlinkSharedOutputs(Path dir) throws IOException {
+        if (!Files.isDirectory(dir)) return;
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                if (linkCount(file) != 1) {
+                    Files.delete(file);
+                    log.warn("输出目录中存在共享的结果文件，已删除: {}", file);
+                }
+            }
+        }
+    }
+
+    private static int linkCount(Path file) throws IOException {
+        try {
+            return (Integer) Files.getAttribute(file, "unix:nlink");
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * 按相对路径把源目录中的文件硬链接到目标目录；完成标记与容器日志只属于源任务的容器运行，不复制
+     */
+    private void linkOutputs(Path from, Path to) throws IOException {
+        Files.createDirectories(to);
+        try (Stream<Path> files = Files.walk(from)) {
+            for (Path file : (Iterable<Path>) files.filter(Files::isRegularFile)::iterator) {
+                String name = file.getFileName().toString();
+                if (name.startsWith(OutputReadinessWatcher.MARKER_FILE) || name.equals(ContainerLog.FILE_NAME)) continue;
+                Path dest = to.resolve(from.relativize(file).toString());
+                Files.createDirectories(dest.getParent());
+                Files.deleteIfExists(dest);
+                try {
+                    Files.createLink(dest, file);
+                } catch (IOException | UnsupportedOperationException e) {
+                    Files.copy(file, dest, StandardCopyOption.COPY_ATTRIBUTES);
+                }
+            }
+        }
+    }
+}
@@ -42,6 +42,16 @@ public interface AnalysisTaskService {
      * @return 任务状态
      */
     Map<String, Object> getTaskStatus(Long taskId, Long userId);
+
+    /**
+     * 分页读取任务的容器日志（按字节偏移，页面在整行处截断）
+     * @param taskId 任务ID
+     * @param userId 用户ID
+     * @param offset 起始字节偏移，负数表示从末尾往前
+     * @param limit 本页最多字节数
+     * @return content、offset、nextOffset、size、eof 及任务状态
+     */
+    Map<String, Object> getTaskLog(Long taskId, Long userId, long offset, int limit);
     
     /**
      * 取消任务
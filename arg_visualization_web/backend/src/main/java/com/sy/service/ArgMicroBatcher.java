@@ -0,0 +1,228 @@
+package com.sy.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * 小任务合批
+ * 输入较小的 ARG 任务不直接进入 TaskQueueManager，而是先在这里攒批：
+ * 第一个任务到达后等待 window-ms，或攒够 max-tasks 个 / max-bytes 字节时立即成批，
+ * 整批作为一个作业提交到 TaskQueueManager，由 BatchRunner 合并输入、跑一次推理、再按任务拆分结果。
+ * 同一用户且分析参数相同（忽略只影响调度的 priority）的任务才合为一批，批作业按成员数计入该用户的排队上限与公平分配。
+ * 批作业在队列中使用负数 ID，成员任务的排队位置通过 queueKey 映射到所属批作业。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ArgMicroBatcher {
+
+    private final TaskQueueManager taskQueueManager;
+
+    @Value("${analysis.batch.enabled:false}")
+    private boolean enabled;
+
+    /** 输入不超过该大小（字节）的任务参与合批 */
+    @Value("${analysis.batch.max-input-bytes:5242880}")
+    private long maxInputBytes;
+
+    /** 攒批等待时间（毫秒） */
+    @Value("${analysis.batch.window-ms:3000}")
+    private long windowMs;
+
+    @Value("${analysis.batch.max-tasks:16}")
+    private int maxTasks;
+
+    /** 单批输入总大小上限（字节） */
+    @Value("${analysis.batch.max-bytes:20971520}")
+    private long maxBytes;
+
+    /** 只影响调度、不影响推理的参数，不参与分批 */
+    private static final Set<String> IGNORED_PARAMS = Set.of("priority");
+
+    /**
+     * 批内成员
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Member {
+        private final Long taskId;
+        private final Long userId;
+        private final int priority;
+        private final long inputSize;
+        private final String inputFilePath;
+        private final Map<String, Object> params;
+    }
+
+    /**
+     * 批作业执行方
+     */
+    public interface BatchRunner {
+        /**
+         * 在队列线程中执行整批
+         * @param batchId 批作业 ID（负数，不与任务 ID 冲突），用于取消令牌、资源台账与进度转发
+         */
+        void run(Long batchId, List<Member> batch);
+
+        /** 批作业提交被拒绝（队列已满） */
+        void reject(List<Member> batch, RuntimeException e);
+    }
+
+    /**
+     * 攒批中的一批（同一用户、同一组参数）
+     */
+    private static class OpenBatch {
+        final List<Object> key;
+        final List<Member> members = new ArrayList<>();
+        long bytes;
+        BatchRunner runner;
+        ScheduledFuture<?> flushTimer;
+
+        OpenBatch(List<Object> key) {
+            this.key = key;
+        }
+    }
+
+    /** 分批 key（userId + 规范化参数）-> 攒批中的批 */
+    private final Map<List<Object>, OpenBatch> open = new LinkedHashMap<>();
+    private long batchSequence;
+    /** 成员 taskId -> 所属批作业在队列中的 ID */
+    private final Map<Long, Long> batchOf = new ConcurrentHashMap<>();
+    private final ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "arg-micro-batcher");
+        t.setDaemon(true);
+        return t;
+    });
+
+    /**
+     * 任务是否参与合批
+     */
+    public boolean accepts(long inputSize) {
+        return enabled && inputSize > 0 && inputSize <= maxInputBytes;
+    }
+
+    /**
+     * 加入当前批，达到数量或大小上限时立即成批，否则等待窗口结束
+     */
+    public synchronized void offer(Member member, BatchRunner runner) {
+        OpenBatch batch = open.computeIfAbsent(batchKey(member), OpenBatch::new);
+        batch.members.add(member);
+        batch.bytes += member.getInputSize();
+        batch.runner = runner;
+        log.info("任务加入合批: taskId={}, userId={}, size={}, 当前批 {} 个 / {} 字节", member.getTaskId(),
+                member.getUserId(), member.getInputSize(), batch.members.size(), batch.bytes);
+        if (batch.members.size() >= maxTasks || batch.bytes >= maxBytes) {
+            flush(batch);
+        } else if (batch.flushTimer == null) {
+            batch.flushTimer = timer.schedule(() -> flush(batch), windowMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 取消尚未成批的任务
+     * @return 是否在等待合批中并已移除
+     */
+    public synchronized boolean cancel(Long taskId) {
+        for (OpenBatch batch : open.values()) {
+            Iterator<Member> it = batch.members.iterator();
+            while (it.hasNext()) {
+                Member m = it.next();
+                if (m.getTaskId().equals(taskId)) {
+                    it.remove();
+                    batch.bytes -= m.getInputSize();
+                    if (batch.members.isEmpty()) {
+                        if (batch.flushTimer != null) batch.flushTimer.cancel(false);
+                        open.remove(batch.key);
+                    }
+                    log.info("取消合批中的任务: taskId={}", taskId);
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 任务在 TaskQueueManager 中对应的 ID：已成批的成员返回批作业 ID，否则返回自身
+     */
+    public Long queueKey(Long taskId) {
+        return batchOf.getOrDefault(taskId, taskId);
+    }
+
+    /**
+     * 是否仍在等待合批（尚未进入队列）
+     */
+    public synchronized boolean isWaiting(Long taskId) {
+        return open.values().stream().anyMatch(b -> b.members.stream().anyMatch(m -> m.getTaskId().equals(taskId)));
+    }
+
+    /**
+     * 该用户正在等待合批（尚未计入队列）的任务数，创建任务的准入检查需一并计入
+     */
+    public synchronized int waitingCount(Long userId) {
+        int count = 0;
+        for (OpenBatch batch : open.values()) {
+            for (Member m : batch.members) {
+                if (Objects.equals(m.getUserId(), userId)) count++;
+            }
+        }
+        return count;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        timer.shutdownNow();
+    }
+
+    private synchronized void flush(OpenBatch ob) {
+        // 已被提前成批（计时器与数量上限同时触发）或全部取消
+        if (!open.remove(ob.key, ob)) return;
+        if (ob.flushTimer != null) {
+            ob.flushTimer.cancel(false);
+        }
+        List<Member> batch = ob.members;
+        BatchRunner runner = ob.runner;
+        long totalBytes = ob.bytes;
+        Long userId = batch.get(0).getUserId();
+
+        Long batchId = -(++batchSequence);
+        int priority = TaskQueueManager.DEFAULT_PRIORITY;
+        for (Member m : batch) {
+            priority = Math.max(priority, m.getPriority());
+            batchOf.put(m.getTaskId(), batchId);
+        }
+        log.info("提交合批作业: batchId={}, userId={}, 任务数={}, 总大小={}", batchId, userId, batch.size(), totalBytes);
+        try {
+            taskQueueManager.submitTask(batchId, userId, priority, totalBytes, batch.size(), () -> {
+                try {
+                    runner.run(batchId, batch);
+                } finally {
+                    batch.forEach(m -> batchOf.remove(m.getTaskId()));
+                }
+            });
+        } catch (RuntimeException e) {
+            batch.forEach(m -> batchOf.remove(m.getTaskId()));
+            runner.reject(batch, e);
+        }
+    }
+
+    /**
+     * 分批 key：用户 + 去掉调度参数后按键排序的分析参数
+     */
+    private static List<Object> batchKey(Member member) {
+        Map<String, Object> normalized = new TreeMap<>();
+        if (member.getParams() != null) {
+            member.getParams().forEach((k, v) -> {
+                if (!IGNORED_PARAMS.contains(k)) normalized.put(k, v);
+            });
+        }
+        return Arrays.asList(member.getUserId(), normalized);
+    }
+}
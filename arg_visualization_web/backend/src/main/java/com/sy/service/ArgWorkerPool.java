@@ -0,0 +1,550 @@
+package com.sy.service;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sy.exception.TaskCancelledException;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 常驻 ARG 推理 worker 池
+ * 启动 N 个长期运行的 arg-bilstm 容器（cli.py worker 模式），模型只加载一次；
+ * 每个 worker 有独立的作业目录，后端写入作业 JSON，worker 处理后写回 .result，通过 heartbeat 文件做健康检查。
+ * 输入/输出目录按宿主机相同路径挂载进容器，作业里直接使用宿主机路径；docker 命令与单次模式一样加上 docker.command-prefix，
+ * 路径按相同规则转换（Windows 路径转为 WSL 的 /mnt/{盘符}/...）。
+ * worker 心跳超时或启动超时会被删除重建；没有健康 worker、或输入不在挂载目录下时 run 返回 null，
+ * 由调用方退回 docker run --rm 单次模式。
+ * 每个 worker 在资源台账中常驻预留一份 ARG 容器资源；健康检查线程不阻塞等待资源，容量不足时下一轮再试。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class ArgWorkerPool {
+
+    private static final String HEARTBEAT_FILE = "heartbeat";
+    private static final long RESULT_POLL_MS = 200;
+
+    private final ContainerResourceLedger resourceLedger;
+    private final TaskProgressTracker progressTracker;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Value("${docker.enabled:false}")
+    private boolean dockerEnabled;
+
+    @Value("${docker.command-prefix:}")
+    private String commandPrefix;
+
+    @Value("${docker.arg.worker.enabled:false}")
+    private boolean workerEnabled;
+
+    @Value("${docker.arg.worker.count:2}")
+    private int workerCount;
+
+    @Value("${docker.arg.worker.jobs-dir:${analysis.output-dir:./outputs}/.arg_workers}")
+    private String jobsDir;
+
+    /** 心跳超过该时间未刷新视为不健康（秒） */
+    @Value("${docker.arg.worker.heartbeat-timeout-seconds:30}")
+    private int heartbeatTimeoutSeconds;
+
+    /** 启动（含模型加载）超时（秒） */
+    @Value("${docker.arg.worker.startup-timeout-seconds:180}")
+    private int startupTimeoutSeconds;
+
+    @Value("${docker.arg.worker.health-check-interval-seconds:10}")
+    private int healthCheckIntervalSeconds;
+
+    /** 连续启动失败达到该次数后暂停重建，等待 retry-backoff-seconds */
+    @Value("${docker.arg.worker.max-start-failures:3}")
+    private int maxStartFailures;
+
+    @Value("${docker.arg.worker.retry-backoff-seconds:300}")
+    private int retryBackoffSeconds;
+
+    @Value("${docker.arg.image-name:arg-bilstm:gpu}")
+    private String argImageName;
+
+    @Value("${docker.arg.model-path:/app/models}")
+    private String argModelPath;
+
+    @Value("${docker.arg.cpus:2}")
+    private double argCpus;
+
+    @Value("${docker.arg.memory-mb:4096}")
+    private long argMemoryMb;
+
+    @Value("${docker.arg.use-gpu:true}")
+    private boolean useGpu;
+
+    @Value("${analysis.output-dir:./outputs}")
+    private String outputBaseDir;
+
+    @Value("${file.upload.genome-dir:./uploads/genome}")
+    private String genomeDir;
+
+    @Value("${file.upload.mag-dir:./uploads/mag}")
+    private String magDir;
+
+    private enum State { STARTING, IDLE, BUSY, DEAD }
+
+    /**
+     * 一个常驻容器
+     */
+    private static class Worker {
+        final int index;
+        final String name;
+        final Path dir;
+        State state = State.DEAD;
+        long startedAt;
+        /** 每次重建加 1，等待结果的线程据此发现 worker 已被重建 */
+        long generation;
+        int startFailures;
+        long retryAt;
+        Long currentTaskId;
+        ContainerResourceLedger.Reservation reservation;
+        /** 正在等待台账容量（只在开始等待时记一次日志） */
+        boolean awaitingResources;
+
+        Worker(int index, Path dir) {
+            this.index = index;
+            this.name = "arg-worker-" + index;
+            this.dir = dir;
+        }
+    }
+
+    private final List<Worker> workers = new ArrayList<>();
+    private final List<String> mountRoots = new ArrayList<>();
+    /** 已请求取消、正在等待 worker 重建的任务 */
+    private final Set<Long> cancelledTasks = new HashSet<>();
+    private ScheduledExecutorService healthChecker;
+
+    @PostConstruct
+    public void start() {
+        if (!dockerEnabled || !workerEnabled || workerCount <= 0) {
+            return;
+        }
+        for (String dir : new String[]{outputBaseDir, genomeDir, magDir}) {
+            String root = absolute(dir);
+            if (!mountRoots.contains(root)) mountRoots.add(root);
+        }
+        for (int i = 0; i < workerCount; i++) {
+            workers.add(new Worker(i, Paths.get(absolute(jobsDir), "worker_" + i)));
+        }
+        // 容器启动与健康检查都在后台线程执行，不阻塞应用启动
+        healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "arg-worker-health");
+            t.setDaemon(true);
+            return t;
+        });
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, 0, healthCheckIntervalSeconds, TimeUnit.SECONDS);
+        log.info("ARG 常驻 worker 池已启用: count={}, jobsDir={}", workerCount, jobsDir);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+        }
+        synchronized (this) {
+            for (Worker w : workers) {
+                removeContainer(w);
+                releaseReservation(w);
+                w.state = State.DEAD;
+            }
+            notifyAll();
+        }
+    }
+
+    public boolean isEnabled() {
+        return healthChecker != null;
+    }
+
+    /**
+     * 在常驻 worker 上执行一次推理
+     * @return 退出码；没有健康 worker、输入/输出不在挂载目录下、或 worker 中途崩溃时返回 null（调用方退回单次模式）
+     * @throws InterruptedException 等待期间被中断（任务取消），此时会重建占用的 worker 以终止推理
+     */
+    public Integer run(Long taskId, String inputFilePath, String outputDir, long timeoutSeconds)
+            throws InterruptedException, IOException {
+        if (!isEnabled()) return null;
+        String input = absolute(inputFilePath);
+        String output = absolute(outputDir);
+        if (!isMounted(input) || !isMounted(output)) {
+            log.info("输入或输出不在 worker 挂载目录下，使用单次模式: input={}, output={}", input, output);
+            return null;
+        }
+
+        Worker w = acquire(taskId);
+        if (w == null) {
+            log.info("没有可用的 ARG worker，使用单次模式: taskId={}", taskId);
+            return null;
+        }
+        long generation;
+        synchronized (this) {
+            generation = w.generation;
+        }
+        String jobId = "job_" + (taskId != null ? taskId : "x") + "_" + System.nanoTime();
+        boolean released = false;
+        try {
+            Map<String, Object> job = new LinkedHashMap<>();
+            job.put("input", dockerPath(input));
+            job.put("output", dockerPath(output));
+            job.put("threshold", 0.5);
+            Path tmp = w.dir.resolve(jobId + ".json.tmp");
+            Files.write(tmp, objectMapper.writeValueAsBytes(job));
+            Files.move(tmp, w.dir.resolve(jobId + ".json"), StandardCopyOption.ATOMIC_MOVE);
+            log.info("作业已派发到 {}: taskId={}, jobId={}", w.name, taskId, jobId);
+
+            Path resultFile = w.dir.resolve(jobId + ".result");
+            // worker 的 stdout 不经过后端进程，进度行由 worker 写入进度文件
+            Path progressFile = w.dir.resolve(jobId + ".progress");
+            long deadline = System.currentTimeMillis() + timeoutSeconds * 1000;
+            while (!Files.exists(resultFile)) {
+                synchronized (this) {
+                    if (w.generation != generation) {
+                        released = true;
+                        if (taskId != null && cancelledTasks.remove(taskId)) {
+                            throw new TaskCancelledException(taskId);
+                        }
+                        log.warn("{} 处理作业期间被重建，使用单次模式重跑: taskId={}", w.name, taskId);
+                        return null;
+                    }
+                }
+                if (System.currentTimeMillis() > deadline) {
+                    restartAsync(w, "作业超时");
+                    released = true;
+                    throw new RuntimeException("任务超时（超过 " + timeoutSeconds + " 秒）");
+                }
+                readProgress(taskId, progressFile);
+                Thread.sleep(RESULT_POLL_MS);
+            }
+
+            JsonNode result = objectMapper.readTree(Files.readAllBytes(resultFile));
+            Files.deleteIfExists(resultFile);
+            int exitCode = result.path("exitCode").asInt(1);
+            if (exitCode != 0) {
+                log.error("{} 作业失败: taskId={}, error={}", w.name, taskId, result.path("error").asText());
+            } else {
+                log.info("{} 作业完成: taskId={}, 耗时 {}s", w.name, taskId, result.path("elapsed").asDouble());
+            }
+            return exitCode;
+        } catch (InterruptedException e) {
+            // 任务被取消：重建 worker 以终止正在进行的推理
+            restartAsync(w, "任务取消");
+            released = true;
+            throw e;
+        } finally {
+            if (!released) {
+                synchronized (this) {
+                    if (w.generation == generation && w.state == State.BUSY) {
+                        w.state = State.IDLE;
+                        w.currentTaskId = null;
+                        notifyAll();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 读取 worker 写入的最新进度行（先写临时文件再改名，读到的总是完整一行）
+     */
+    private void readProgress(Long taskId, Path progressFile) {
+        if (taskId == null) return;
+        try {
+            String line = Files.readString(progressFile, StandardCharsets.UTF_8).trim();
+            progressTracker.accept(taskId, line);
+        } catch (IOException e) {
+            // 尚未开始预测或作业已结束
+        }
+    }
+
+    /**
+     * 取消任务：若任务正在某个 worker 上执行则重建该 worker
+     */
+    public void cancel(Long taskId) {
+        Worker target = null;
+        synchronized (this) {
+            for (Worker w : workers) {
+                if (w.state == State.BUSY && taskId.equals(w.currentTaskId)) {
+                    target = w;
+                    cancelledTasks.add(taskId);
+                }
+            }
+        }
+        if (target != null) {
+            restartAsync(target, "任务取消");
+        }
+    }
+
+    /**
+     * worker 状态
+     */
+    public synchronized List<Map<String, Object>> snapshot() {
+        List<Map<String, Object>> list = new ArrayList<>();
+        for (Worker w : workers) {
+            Map<String, Object> m = new LinkedHashMap<>();
+            m.put("name", w.name);
+            m.put("state", w.state.name());
+            m.put("currentTaskId", w.currentTaskId);
+            m.put("startFailures", w.startFailures);
+            list.add(m);
+        }
+        return list;
+    }
+
+    /**
+     * 取一个空闲 worker；所有健康 worker 都忙时等待，没有健康 worker 时返回 null
+     */
+    private synchronized Worker acquire(Long taskId) throws InterruptedException {
+        while (true) {
+            boolean anyHealthy = false;
+            for (Worker w : workers) {
+                if (w.state == State.IDLE) {
+                    w.state = State.BUSY;
+                    w.currentTaskId = taskId;
+                    return w;
+                }
+                if (w.state == State.BUSY) anyHealthy = true;
+            }
+            if (!anyHealthy) return null;
+            wait();
+        }
+    }
+
+    private void checkHealth() {
+        long now = System.currentTimeMillis();
+        for (Worker w : workers) {
+            State state;
+            long startedAt;
+            synchronized (this) {
+                state = w.state;
+                startedAt = w.startedAt;
+            }
+            try {
+                switch (state) {
+                    case DEAD -> {
+                        if (now >= w.retryAt) restart(w, null);
+                    }
+                    case STARTING -> {
+                        if (heartbeatFresh(w, startedAt)) {
+                            synchronized (this) {
+                                if (w.state == State.STARTING) {
+                                    w.state = State.IDLE;
+                                    w.startFailures = 0;
+                                    notifyAll();
+                                }
+                            }
+                            log.info("{} 已就绪", w.name);
+                        } else if (now - startedAt > startupTimeoutSeconds * 1000L) {
+                            onStartFailure(w);
+                        }
+                    }
+                    case IDLE, BUSY -> {
+                        if (!heartbeatFresh(w, startedAt)) {
+                            restart(w, "心跳超时");
+                        }
+                    }
+                }
+            } catch (Exception e) {
+                log.error("{} 健康检查失败", w.name, e);
+            }
+        }
+    }
+
+    private void onStartFailure(Worker w) throws InterruptedException {
+        int failures;
+        synchronized (this) {
+            failures = ++w.startFailures;
+        }
+        if (failures >= maxStartFailures) {
+            log.error("{} 连续 {} 次启动失败，{} 秒后重试（镜像是否支持 worker 命令？）", w.name, failures, retryBackoffSeconds);
+            removeContainer(w);
+            releaseReservation(w);
+            synchronized (this) {
+                w.state = State.DEAD;
+                w.generation++;
+                w.startFailures = 0;
+                w.retryAt = System.currentTimeMillis() + retryBackoffSeconds * 1000L;
+                notifyAll();
+            }
+        } else {
+            restart(w, "启动超时");
+        }
+    }
+
+    private void restartAsync(Worker w, String reason) {
+        synchronized (this) {
+            w.generation++;
+            w.currentTaskId = null;
+            w.state = State.STARTING;
+            w.startedAt = System.currentTimeMillis();
+            notifyAll();
+        }
+        if (healthChecker != null) {
+            healthChecker.execute(() -> {
+                try {
+                    restart(w, reason);
+                } catch (Exception e) {
+                    log.error("{} 重建失败", w.name, e);
+                }
+            });
+        }
+    }
+
+    /**
+     * 删除并重新创建容器，状态置为 STARTING，由健康检查等心跳出现后转为 IDLE
+     */
+    private void restart(Worker w, String reason) throws InterruptedException {
+        if (reason != null) {
+            log.warn("重建 {}: {}", w.name, reason);
+        }
+        synchronized (this) {
+            w.generation++;
+            w.currentTaskId = null;
+            w.state = State.STARTING;
+            w.startedAt = System.currentTimeMillis();
+            notifyAll();
+        }
+        removeContainer(w);
+        try {
+            Files.createDirectories(w.dir);
+            try (Stream<Path> files = Files.list(w.dir)) {
+                for (Path p : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(p);
+                }
+            }
+            for (String root : mountRoots) {
+                Files.createDirectories(Paths.get(root));
+            }
+        } catch (IOException e) {
+            log.error("准备 {} 作业目录失败", w.dir, e);
+        }
+        if (w.reservation == null) {
+            // 不能在健康检查线程上阻塞等待：容量不足时保持 DEAD，下一轮健康检查再试，期间任务走单次模式
+            int gpus = useGpu && resourceLedger.getGpuSlots() > 0 ? 1 : 0;
+            w.reservation = resourceLedger.tryReserve(w.name, argCpus, argMemoryMb, gpus);
+            synchronized (this) {
+                if (w.reservation == null) {
+                    if (!w.awaitingResources) {
+                        log.info("{} 暂无可用容器资源，稍后重试启动", w.name);
+                        w.awaitingResources = true;
+                    }
+                    w.state = State.DEAD;
+                    w.retryAt = 0;
+                    notifyAll();
+                    return;
+                }
+                w.awaitingResources = false;
+            }
+        }
+
+        StringBuilder cmd = new StringBuilder("docker run -d --name ").append(w.name).append(' ');
+        cmd.append(w.reservation.dockerFlags());
+        cmd.append("-v ").append(dockerPath(w.dir.toString())).append(":/jobs ");
+        for (String root : mountRoots) {
+            String path = dockerPath(root);
+            cmd.append("-v ").append(path).append(':').append(path).append(' ');
+        }
+        cmd.append(argImageName).append(" worker /jobs ").append(argModelPath);
+        int exitCode = exec(cmd.toString(), true);
+        if (exitCode != 0) {
+            log.error("启动 {} 失败，退出码: {}", w.name, exitCode);
+        }
+        synchronized (this) {
+            w.startedAt = System.currentTimeMillis();
+        }
+    }
+
+    private boolean heartbeatFresh(Worker w, long startedAt) {
+        Path heartbeat = w.dir.resolve(HEARTBEAT_FILE);
+        try {
+            long mtime = Files.getLastModifiedTime(heartbeat).toMillis();
+            // 旧容器残留的心跳不算
+            return mtime >= startedAt - 1000
+                    && System.currentTimeMillis() - mtime <= heartbeatTimeoutSeconds * 1000L;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    private void removeContainer(Worker w) {
+        try {
+            // 容器不存在时失败是正常情况，不记日志
+            exec("docker rm -f " + w.name, false);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void releaseReservation(Worker w) {
+        if (w.reservation != null) {
+            w.reservation.close();
+            w.reservation = null;
+        }
+    }
+
+    private boolean isMounted(String path) {
+        Path p = Paths.get(path);
+        for (String root : mountRoots) {
+            if (p.startsWith(Paths.get(root))) return true;
+        }
+        return false;
+    }
+
+    private static String absolute(String path) {
+        return Paths.get(path).toAbsolutePath().normalize().toString();
+    }
+
+    /**
+     * 容器挂载与作业中使用的路径，与 DockerServiceImpl.normalizePath 规则相同：Windows 路径转为 WSL 的 /mnt/{盘符}/...
+     */
+    private static String dockerPath(String absolutePath) {
+        String path = absolutePath.replace("\\", "/");
+        if (!path.startsWith("/") && path.length() > 2 && path.charAt(1) == ':') {
+            return "/mnt/" + Character.toLowerCase(path.charAt(0)) + path.substring(2);
+        }
+        return path;
+    }
+
+    /**
+     * 执行 docker 命令：加上 docker.command-prefix，前缀含 wsl 时经 cmd.exe 执行（与单次模式一致）
+     */
+    private int exec(String command, boolean logFailure) throws InterruptedException {
+        String prefix = commandPrefix == null ? "" : commandPrefix.trim();
+        if (!prefix.isEmpty()) {
+            command = prefix + " " + command;
+        }
+        try {
+            ProcessBuilder pb = prefix.toLowerCase().contains("wsl")
+                    ? new ProcessBuilder("cmd.exe", "/c", command)
+                    : new ProcessBuilder("bash", "-c", command);
+            Process process = pb.redirectErrorStream(true).start();
+            String output = new String(process.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            if (!process.waitFor(120, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
+                return -1;
+            }
+            if (logFailure && process.exitValue() != 0 && !output.isBlank()) {
+                log.warn("命令失败: {}\n{}", command, output.trim());
+            }
+            return process.exitValue();
+        } catch (IOException e) {
+            log.error("执行命令失败: {}", command, e);
+            return -1;
+        }
+    }
+}
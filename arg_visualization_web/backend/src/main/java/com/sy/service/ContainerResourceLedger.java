@@ -0,0 +1,232 @@
+package com.sy.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import java.lang.management.ManagementFactory;
+import java.util.*;
+
+/**
+ * 容器资源台账
+ * ARG 推理与 Prodigal 容器共用一份 CPU 核数 / 内存 / GPU 槽位容量，每次 docker run 前先预留资源，
+ * 并把预留量作为 --cpus / --memory（/ --gpus）传给容器，容器退出后归还。
+ * 容量不足时按申请顺序排队（先到先得，避免大量小容器让大容器一直拿不到资源）。
+ */
+@Slf4j
+@Component
+public class ContainerResourceLedger {
+
+    /** 可分配的 CPU 核数，0 表示使用本机核数 */
+    @Value("${docker.resources.total-cpus:0}")
+    private double configuredCpus;
+
+    /** 可分配的内存（MB），0 表示使用本机物理内存的 80% */
+    @Value("${docker.resources.total-memory-mb:0}")
+    private long configuredMemoryMb;
+
+    /** GPU 槽位数（每个槽位对应一块设备，编号 0..n-1） */
+    @Value("${docker.resources.gpu-slots:0}")
+    private int gpuSlots;
+
+    private double totalCpus;
+    private long totalMemoryMb;
+
+    private double usedCpus;
+    private long usedMemoryMb;
+    private boolean[] gpuInUse;
+    private final Map<Long, Reservation> active = new LinkedHashMap<>();
+    /** 等待中的申请，按申请顺序 */
+    private final Deque<Long> waiting = new ArrayDeque<>();
+    private long ticketSequence;
+
+    @PostConstruct
+    public void init() {
+        totalCpus = configuredCpus > 0 ? configuredCpus : Runtime.getRuntime().availableProcessors();
+        totalMemoryMb = configuredMemoryMb > 0 ? configuredMemoryMb : detectMemoryMb() * 8 / 10;
+        gpuInUse = new boolean[Math.max(0, gpuSlots)];
+        log.info("容器资源台账初始化: cpus={}, memoryMb={}, gpuSlots={}", totalCpus, totalMemoryMb, gpuInUse.length);
+    }
+
+    /**
+     * 一次资源预留，close 时归还
+     */
+    public class Reservation implements AutoCloseable {
+        private final long ticket;
+        private final String owner;
+        private final double cpus;
+        private final long memoryMb;
+        private final int[] gpuDevices;
+        private boolean released;
+
+        private Reservation(long ticket, String owner, double cpus, long memoryMb, int[] gpuDevices) {
+            this.ticket = ticket;
+            this.owner = owner;
+            this.cpus = cpus;
+            this.memoryMb = memoryMb;
+            this.gpuDevices = gpuDevices;
+        }
+
+        public double getCpus() {
+            return cpus;
+        }
+
+        public long getMemoryMb() {
+            return memoryMb;
+        }
+
+        public int[] getGpuDevices() {
+            return gpuDevices.clone();
+        }
+
+        /**
+         * docker run 资源参数，末尾带空格
+         */
+        public String dockerFlags() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("--cpus=").append(formatCpus(cpus)).append(' ');
+            sb.append("--memory=").append(memoryMb).append("m ");
+            if (gpuDevices.length > 0) {
+                StringJoiner ids = new StringJoiner(",");
+                for (int d : gpuDevices) ids.add(String.valueOf(d));
+                sb.append("--gpus '\"device=").append(ids).append("\"' ");
+            }
+            return sb.toString();
+        }
+
+        @Override
+        public void close() {
+            release(this);
+        }
+    }
+
+    /**
+     * 预留资源，容量不足时阻塞等待
+     * 单次申请超过总容量时按总容量截断，保证总能被满足
+     * @param owner 用于日志，如 "arg:task_12"
+     * @throws InterruptedException 等待期间线程被中断（如任务被取消）
+     */
+    public Reservation reserve(String owner, double cpus, long memoryMb, int gpus) throws InterruptedException {
+        double wantCpus = Math.min(Math.max(cpus, 0.1), totalCpus);
+        long wantMemory = Math.min(Math.max(memoryMb, 64), totalMemoryMb);
+        int wantGpus = Math.min(Math.max(gpus, 0), gpuInUse.length);
+
+        synchronized (this) {
+            long ticket = ++ticketSequence;
+            waiting.addLast(ticket);
+            try {
+                boolean logged = false;
+                while (waiting.peekFirst() != ticket || !fits(wantCpus, wantMemory, wantGpus)) {
+                    if (!logged) {
+                        log.info("资源不足，等待中: owner={}, cpus={}, memoryMb={}, gpus={}, 已用 cpus={}/{}, memoryMb={}/{}",
+                                owner, wantCpus, wantMemory, wantGpus, usedCpus, totalCpus, usedMemoryMb, totalMemoryMb);
+                        logged = true;
+                    }
+                    wait();
+                }
+            } finally {
+                waiting.remove(ticket);
+                // 队首变化，唤醒后续申请
+                notifyAll();
+            }
+            return allocate(ticket, owner, wantCpus, wantMemory, wantGpus);
+        }
+    }
+
+    /**
+     * 不等待的预留：没有排队中的申请且容量足够时立即预留，否则返回 null
+     * 供不能阻塞的调用方（如健康检查线程）使用，调用方稍后重试
+     */
+    public synchronized Reservation tryReserve(String owner, double cpus, long memoryMb, int gpus) {
+        double wantCpus = Math.min(Math.max(cpus, 0.1), totalCpus);
+        long wantMemory = Math.min(Math.max(memoryMb, 64), totalMemoryMb);
+        int wantGpus = Math.min(Math.max(gpus, 0), gpuInUse.length);
+        if (!waiting.isEmpty() || !fits(wantCpus, wantMemory, wantGpus)) {
+            return null;
+        }
+        return allocate(++ticketSequence, owner, wantCpus, wantMemory, wantGpus);
+    }
+
+    /**
+     * 当前容量与占用
+     */
+    public synchronized Map<String, Object> snapshot() {
+        Map<String, Object> m = new LinkedHashMap<>();
+        m.put("totalCpus", totalCpus);
+        m.put("usedCpus", usedCpus);
+        m.put("totalMemoryMb", totalMemoryMb);
+        m.put("usedMemoryMb", usedMemoryMb);
+        int gpusUsed = 0;
+        for (boolean b : gpuInUse) if (b) gpusUsed++;
+        m.put("gpuSlots", gpuInUse.length);
+        m.put("usedGpuSlots", gpusUsed);
+        m.put("waiting", waiting.size());
+        List<Map<String, Object>> reservations = new ArrayList<>();
+        for (Reservation r : active.values()) {
+            Map<String, Object> item = new LinkedHashMap<>();
+            item.put("owner", r.owner);
+            item.put("cpus", r.cpus);
+            item.put("memoryMb", r.memoryMb);
+            item.put("gpuDevices", r.gpuDevices);
+            reservations.add(item);
+        }
+        m.put("reservations", reservations);
+        return m;
+    }
+
+    public int getGpuSlots() {
+        return gpuInUse.length;
+    }
+
+    private Reservation allocate(long ticket, String owner, double cpus, long memoryMb, int gpus) {
+        usedCpus += cpus;
+        usedMemoryMb += memoryMb;
+        int[] devices = new int[gpus];
+        for (int i = 0, n = 0; n < gpus; i++) {
+            if (!gpuInUse[i]) {
+                gpuInUse[i] = true;
+                devices[n++] = i;
+            }
+        }
+        Reservation r = new Reservation(ticket, owner, cpus, memoryMb, devices);
+        active.put(ticket, r);
+        log.debug("预留资源: owner={}, {}", owner, r.dockerFlags().trim());
+        return r;
+    }
+
+    private synchronized void release(Reservation r) {
+        if (r.released) return;
+        r.released = true;
+        usedCpus = Math.max(0, usedCpus - r.cpus);
+        usedMemoryMb = Math.max(0, usedMemoryMb - r.memoryMb);
+        for (int d : r.gpuDevices) gpuInUse[d] = false;
+        active.remove(r.ticket);
+        notifyAll();
+    }
+
+    private boolean fits(double cpus, long memoryMb, int gpus) {
+        // 浮点累加误差留一点余量
+        if (usedCpus + cpus > totalCpus + 1e-6) return false;
+        if (usedMemoryMb + memoryMb > totalMemoryMb) return false;
+        int free = 0;
+        for (boolean b : gpuInUse) if (!b) free++;
+        return free >= gpus;
+    }
+
+    private static String formatCpus(double cpus) {
+        return cpus == Math.rint(cpus) ? String.valueOf((long) cpus) : String.format(Locale.ROOT, "%.2f", cpus);
+    }
+
+    private static long detectMemoryMb() {
+        try {
+            java.lang.management.OperatingSystemMXBean os = ManagementFactory.getOperatingSystemMXBean();
+            if (os instanceof com.sun.management.OperatingSystemMXBean sunOs) {
+                return sunOs.getTotalMemorySize() / (1024 * 1024);
+            }
+        } catch (Throwable e) {
+            log.debug("读取物理内存失败", e);
+        }
+        return 8192;
+    }
+}
@@ -0,0 +1,81 @@
+package com.sy.service;
+
+import org.springframework.stereotype.Component;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 落库流水线吞吐计数器
+ * 分阶段累计：parse（读取并解析 TSV）与 insert（写库），用于判断瓶颈在解析端还是数据库端。
+ * 进程级累计值，重启清零；通过管理员接口 /api/admin/ingest/metrics 查看。
+ */
+@Component
+public class IngestMetrics {
+
+    private final Stage parse = new Stage();
+    private final Stage insert = new Stage();
+    private final AtomicInteger activePipelines = new AtomicInteger();
+    private final AtomicLong completedPipelines = new AtomicLong();
+
+    public Stage parse() {
+        return parse;
+    }
+
+    public Stage insert() {
+        return insert;
+    }
+
+    public void pipelineStarted() {
+        activePipelines.incrementAndGet();
+    }
+
+    public void pipelineFinished() {
+        activePipelines.decrementAndGet();
+        completedPipelines.incrementAndGet();
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> m = new HashMap<>();
+        m.put("activePipelines", activePipelines.get());
+        m.put("completedPipelines", completedPipelines.get());
+        m.put("parse", parse.snapshot());
+        m.put("insert", insert.snapshot());
+        return m;
+    }
+
+    /**
+     * 单个阶段的计数
+     * busyNanos：实际干活的时间；blockedNanos：等待队列（parse 端等空位 / insert 端等数据）的时间
+     */
+    public static class Stage {
+        private final AtomicLong rows = new AtomicLong();
+        private final AtomicLong batches = new AtomicLong();
+        private final AtomicLong busyNanos = new AtomicLong();
+        private final AtomicLong blockedNanos = new AtomicLong();
+
+        public void recordBatch(int rowCount, long busy) {
+            rows.addAndGet(rowCount);
+            batches.incrementAndGet();
+            busyNanos.addAndGet(busy);
+        }
+
+        public void recordBlocked(long nanos) {
+            blockedNanos.addAndGet(nanos);
+        }
+
+        Map<String, Object> snapshot() {
+            long r = rows.get();
+            long busy = busyNanos.get();
+            Map<String, Object> m = new HashMap<>();
+            m.put("rows", r);
+            m.put("batches", batches.get());
+            m.put("busyMs", busy / 1_000_000);
+            m.put("blockedMs", blockedNanos.get() / 1_000_000);
+            m.put("rowsPerSecond", busy > 0 ? Math.round(r * 1_000_000_000.0 / busy) : 0);
+            return m;
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.sy.service;
+
+import com.sy.util.PredictionTsvCursor;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 落库统计结果
+ * 由落库策略在流式读取 all_predictions.tsv 的同时逐行累加，落库结束后回写 analysis_tasks 与 task_statistics：
+ * 总数、抗性基因数、各类别数量，以及 binary_prob / class_prob 的等宽直方图（[0,1] 分 HISTOGRAM_BINS 箱）
+ */
+public class IngestSummary {
+
+    /** 直方图分箱数，第 i 箱覆盖 [i/BINS, (i+1)/BINS)，1.0 计入最后一箱 */
+    public static final int HISTOGRAM_BINS = 20;
+
+    private long totalCount;
+    private long argCount;
+    private final Map<String, Long> classCounts = new HashMap<>();
+    private final long[] binaryProbHistogram = new long[HISTOGRAM_BINS];
+    private final long[] classProbHistogram = new long[HISTOGRAM_BINS];
+
+    /**
+     * 记录游标当前行；只有抗性基因行才取出 arg_class
+     */
+    public void record(PredictionTsvCursor row) {
+        boolean isArg = row.isArg();
+        recordRow(isArg, isArg ? row.argClass() : null, row.binaryProbValue(), row.classProbValue());
+    }
+
+    /**
+     * 记录一行预测结果
+     * @param argClass 抗性基因类别，非抗性基因或为空时不计入类别统计
+     * @param binaryProb 二分类概率，NaN 表示缺失
+     * @param classProb 类别概率，NaN 表示缺失
+     */
+    public void recordRow(boolean isArg, String argClass, double binaryProb, double classProb) {
+        totalCount++;
+        if (isArg) {
+            argCount++;
+            if (argClass != null && !argClass.isEmpty()) {
+                classCounts.merge(argClass, 1L, Long::sum);
+            }
+        }
+        addToHistogram(binaryProbHistogram, binaryProb);
+        addToHistogram(classProbHistogram, classProb);
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getArgCount() {
+        return argCount;
+    }
+
+    public Map<String, Long> getClassCounts() {
+        return classCounts;
+    }
+
+    public long[] getBinaryProbHistogram() {
+        return binaryProbHistogram;
+    }
+
+    public long[] getClassProbHistogram() {
+        return classProbHistogram;
+    }
+
+    private static void addToHistogram(long[] histogram, double value) {
+        if (Double.isNaN(value)) return;
+        int bin = (int) (value * HISTOGRAM_BINS);
+        histogram[Math.max(0, Math.min(HISTOGRAM_BINS - 1, bin))]++;
+    }
+}
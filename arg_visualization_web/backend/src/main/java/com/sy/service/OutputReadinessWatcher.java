@@ -0,0 +1,195 @@
+package com.sy.service;
+
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * 任务输出就绪通知
+ * Docker 容器退出后由 DockerServiceImpl 在输出目录写入完成标记（含退出码），
+ * 落库等待方通过 WatchService 监听标记文件的创建，标记出现即开始处理，不再轮询文件大小。
+ * 所有等待共用一个后台监听线程，等待方拿到的是 CompletableFuture，不需要占着线程轮询。
+ */
+@Slf4j
+@Component
+public class OutputReadinessWatcher {
+
+    /** 完成标记文件名，内容为 exitCode=N */
+    public static final String MARKER_FILE = ".arg_done";
+    private static final String MARKER_TMP = MARKER_FILE + ".tmp";
+
+    /** 目录 -> 等待该目录完成标记的 future */
+    private final Map<Path, List<CompletableFuture<Integer>>> waiters = new HashMap<>();
+    private final Map<Path, WatchKey> keys = new HashMap<>();
+    private WatchService watchService;
+
+    /**
+     * 容器启动前清除旧标记，避免重跑任务时读到上一次的结果
+     */
+    public void clearMarker(Path outputDir) {
+        try {
+            Files.deleteIfExists(outputDir.resolve(MARKER_FILE));
+        } catch (IOException e) {
+            log.warn("清除完成标记失败: {}", outputDir, e);
+        }
+    }
+
+    /**
+     * 容器退出后写入完成标记：先写临时文件再原子改名，等待方看到标记时内容一定完整
+     */
+    public void markFinished(Path outputDir, int exitCode) {
+        try {
+            Path tmp = outputDir.resolve(MARKER_TMP);
+            Files.writeString(tmp, "exitCode=" + exitCode + "\nfinishedAt=" + LocalDateTime.now() + "\n",
+                    StandardCharsets.UTF_8);
+            Files.move(tmp, outputDir.resolve(MARKER_FILE),
+                    StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            log.warn("写入完成标记失败: {}", outputDir, e);
+        }
+    }
+
+    /**
+     * 等待任务输出目录（或其 arg 子目录，MAG 任务）出现完成标记
+     * 标记已存在时立即完成；否则注册到 WatchService，标记创建时完成，future 的值为容器退出码。
+     * 调用方自行决定超时（CompletableFuture.get(timeout)），超时后取消 future 以释放监听。
+     */
+    public CompletableFuture<Integer> awaitFinished(Path baseDir) {
+        List<Path> dirs = Arrays.asList(baseDir, baseDir.resolve("arg"));
+        Integer exitCode = readMarker(dirs);
+        if (exitCode != null) {
+            return CompletableFuture.completedFuture(exitCode);
+        }
+
+        CompletableFuture<Integer> future = new CompletableFuture<>();
+        for (Path dir : dirs) {
+            if (Files.isDirectory(dir)) {
+                register(dir, future);
+            }
+        }
+        future.whenComplete((v, e) -> unregister(dirs, future));
+
+        // 注册前标记可能已经写入，注册后再检查一次
+        exitCode = readMarker(dirs);
+        if (exitCode != null) {
+            future.complete(exitCode);
+        }
+        return future;
+    }
+
+    @PreDestroy
+    public synchronized void shutdown() {
+        if (watchService != null) {
+            try {
+                watchService.close();
+            } catch (IOException ignored) {
+            }
+            watchService = null;
+        }
+        waiters.values().forEach(list -> list.forEach(f -> f.cancel(false)));
+        waiters.clear();
+        keys.clear();
+    }
+
+    private synchronized void register(Path dir, CompletableFuture<Integer> future) {
+        try {
+            ensureStarted();
+            if (!keys.containsKey(dir)) {
+                keys.put(dir, dir.register(watchService,
+                        StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY));
+            }
+            waiters.computeIfAbsent(dir, d -> new ArrayList<>()).add(future);
+        } catch (IOException e) {
+            log.warn("注册目录监听失败: {}", dir, e);
+        }
+    }
+
+    private synchronized void unregister(List<Path> dirs, CompletableFuture<Integer> future) {
+        for (Path dir : dirs) {
+            List<CompletableFuture<Integer>> list = waiters.get(dir);
+            if (list == null) continue;
+            list.remove(future);
+            if (list.isEmpty()) {
+                waiters.remove(dir);
+                WatchKey key = keys.remove(dir);
+                if (key != null) key.cancel();
+            }
+        }
+    }
+
+    private void ensureStarted() throws IOException {
+        if (watchService != null) return;
+        watchService = FileSystems.getDefault().newWatchService();
+        WatchService ws = watchService;
+        Thread t = new Thread(() -> watchLoop(ws), "output-readiness-watcher");
+        t.setDaemon(true);
+        t.start();
+        log.info("任务输出监听线程已启动");
+    }
+
+    private void watchLoop(WatchService ws) {
+        while (true) {
+            WatchKey key;
+            try {
+                key = ws.take();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            }
+            Path dir = (Path) key.watchable();
+            boolean check = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                // OVERFLOW 时事件可能丢失，直接检查一次标记
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                        || MARKER_FILE.equals(String.valueOf(event.context()))) {
+                    check = true;
+                }
+            }
+            if (check) {
+                Integer exitCode = readMarker(Collections.singletonList(dir));
+                if (exitCode != null) {
+                    completeWaiters(dir, exitCode);
+                }
+            }
+            key.reset();
+        }
+    }
+
+    private void completeWaiters(Path dir, int exitCode) {
+        List<CompletableFuture<Integer>> list;
+        synchronized (this) {
+            List<CompletableFuture<Integer>> current = waiters.get(dir);
+            list = current != null ? new ArrayList<>(current) : Collections.emptyList();
+        }
+        // 在锁外完成，whenComplete 回调会重新获取锁做清理
+        list.forEach(f -> f.complete(exitCode));
+    }
+
+    /**
+     * 读取第一个存在的完成标记中的退出码；标记不存在返回 null，内容无法解析视为 0
+     */
+    private static Integer readMarker(List<Path> dirs) {
+        for (Path dir : dirs) {
+            Path marker = dir.resolve(MARKER_FILE);
+            if (!Files.exists(marker)) continue;
+            try {
+                for (String line : Files.readAllLines(marker, StandardCharsets.UTF_8)) {
+                    if (line.startsWith("exitCode=")) {
+                        return Integer.parseInt(line.substring("exitCode=".length()).trim());
+                    }
+                }
+                return 0;
+            } catch (IOException | NumberFormatException e) {
+                log.warn("读取完成标记失败: {}", marker, e);
+                return 0;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,29 @@
+package com.sy.service;
+
+import java.nio.file.Path;
+import java.util.function.BooleanSupplier;
+
+/**
+ * all_predictions 落库策略
+ * 通过配置 analysis.ingest.mode 选择具体实现：
+ * batch - 按批构造 AllPrediction 并走 multi-row INSERT（兜底方案）
+ * pipelined - 读取线程解析组批，多个写入线程经有界队列并发 INSERT
+ * load-data - LOAD DATA LOCAL INFILE，从 TSV 流式写入，不构造逐行对象
+ */
+public interface PredictionIngestStrategy {
+
+    /**
+     * 策略名，对应配置 analysis.ingest.mode
+     */
+    String mode();
+
+    /**
+     * 将 all_predictions.tsv 写入 all_predictions 表
+     * 调用方负责事先清理该任务的旧数据；检测到取消时抛出 TaskCancelledException，由调用方清理已写入数据
+     * @param taskId 任务ID
+     * @param allPredictionsFile all_predictions.tsv 路径
+     * @param cancelled 取消检查（每批调用一次）
+     * @return 落库统计
+     */
+    IngestSummary ingest(Long taskId, Path allPredictionsFile, BooleanSupplier cancelled) throws Exception;
+}
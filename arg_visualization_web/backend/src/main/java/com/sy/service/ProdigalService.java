@@ -10,6 +10,19 @@ import java.util.concurrent.CompletableFuture;
  * 将 MAG 原始核酸序列转换为蛋白质序列
  */
 public interface ProdigalService {
+
+    /**
+     * 单个文件处理完成的回调（可能在多个线程中并发调用）
+     */
+    @FunctionalInterface
+    interface FileProgressListener {
+        /**
+         * @param faaFile 该文件的 .faa 输出
+         * @param completed 已完成的文件数
+         * @param total 文件总数
+         */
+        void onFileDone(Path faaFile, int completed, int total);
+    }
     
     /**
      * 处理单个 FASTA 文件
@@ -34,6 +47,22 @@ public interface ProdigalService {
      * @return 输出的蛋白质序列文件路径列表
      */
     List<Path> processFilesParallel(List<Path> inputFiles, Path outputDir);
+
+    /**
+     * 并行处理多个 FASTA 文件，取消令牌触发时终止正在运行的容器、放弃尚未开始的文件
+     * @param token 所属任务的取消令牌
+     * @throws com.sy.exception.TaskCancelledException 任务已取消
+     */
+    List<Path> processFilesParallel(List<Path> inputFiles, Path outputDir, TaskCancellationRegistry.Token token);
+
+    /**
+     * 并行处理多个 FASTA 文件，每个文件完成时回调 listener
+     * 开启 docker.prodigal.batch.enabled 时整个目录只挂载一次，在少数几个容器内并行处理全部文件
+     * @param listener 文件完成回调，可为 null
+     * @return 与 inputFiles 顺序一致的 .faa 文件路径列表
+     */
+    List<Path> processFilesParallel(List<Path> inputFiles, Path outputDir, TaskCancellationRegistry.Token token,
+                                    FileProgressListener listener);
     
     /**
      * 合并多个 .faa 文件为一个
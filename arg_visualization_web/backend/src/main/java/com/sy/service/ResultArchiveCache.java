@@ -0,0 +1,219 @@
+package com.sy.service;
+
+import com.sy.util.ZipArchiveWriter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+/**
+ * 结果压缩包磁盘缓存
+ * 任务 COMPLETED 后输出不再变化，按 打包类型 + 任务 + 文件列表（包内路径、源文件、大小、修改时间）+ 压缩参数 的
+ * SHA-256 作为 key 缓存已生成的 ZIP；文件有任何变化 key 随之改变，旧包自然被淘汰。
+ * 缓存总大小超过上限时按最近访问时间（文件 mtime，命中时刷新）淘汰最旧的包。
+ */
+@Slf4j
+@Component
+public class ResultArchiveCache {
+
+    private static final String SUFFIX = ".zip";
+
+    @Value("${download.cache.enabled:true}")
+    private boolean enabled;
+
+    @Value("${download.cache.dir:${java.io.tmpdir}/arg_archive_cache}")
+    private String cacheDir;
+
+    /** 缓存总大小上限（字节），默认 10GB */
+    @Value("${download.cache.max-bytes:10737418240}")
+    private long maxBytes;
+
+    /** 同一 key 只允许一个线程生成 */
+    private final Map<String, Object> buildLocks = new ConcurrentHashMap<>();
+
+    /**
+     * 写出压缩包内容
+     */
+    @FunctionalInterface
+    public interface ArchiveContent {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 计算缓存 key（同时用作 ETag）
+     * @param variant 影响包内容的其他参数，如压缩级别
+     */
+    public String key(String kind, Long taskId, List<ZipArchiveWriter.Entry> entries, String variant) throws IOException {
+        StringBuilder sb = new StringBuilder();
+        sb.append(kind).append('\n').append(taskId).append('\n').append(variant).append('\n');
+        for (ZipArchiveWriter.Entry e : entries) {
+            sb.append(e.getName()).append('\t')
+              .append(e.getFile().toAbsolutePath()).append('\t')
+              .append(Files.size(e.getFile())).append('\t')
+              .append(Files.getLastModifiedTime(e.getFile()).toMillis()).append('\n');
+        }
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(sb.toString().getBytes(StandardCharsets.UTF_8));
+            return HexFormat.of().formatHex(digest);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 查找已缓存的压缩包，命中时刷新访问时间
+     * @return 未缓存返回 null
+     */
+    public Path get(String key) {
+        Path file = resolve(key);
+        if (!Files.exists(file)) return null;
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            log.debug("刷新缓存访问时间失败: {}", file, e);
+        }
+        return file;
+    }
+
+    /**
+     * 生成并缓存压缩包（已存在则直接返回），同一 key 并发调用只生成一次
+     */
+    public Path build(String key, ArchiveContent content) throws IOException {
+        synchronized (buildLocks.computeIfAbsent(key, k -> new Object())) {
+            try {
+                Path cached = get(key);
+                if (cached != null) return cached;
+                Path tmp = newTempFile(key);
+                try (OutputStream out = Files.newOutputStream(tmp)) {
+                    content.writeTo(out);
+                } catch (IOException | RuntimeException e) {
+                    Files.deleteIfExists(tmp);
+                    throw e;
+                }
+                return commit(key, tmp);
+            } finally {
+                buildLocks.remove(key);
+            }
+        }
+    }
+
+    /**
+     * 边写出到 out 边写入缓存：首次下载不用等整个包生成；写出中途失败（如客户端断开）时丢弃半成品
+     */
+    public void writeThrough(String key, OutputStream out, ArchiveContent content) throws IOException {
+        Path tmp = newTempFile(key);
+        try (OutputStream file = Files.newOutputStream(tmp)) {
+            content.writeTo(new TeeOutputStream(out, file));
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tmp);
+            throw e;
+        }
+        commit(key, tmp);
+    }
+
+    private Path commit(String key, Path tmp) throws IOException {
+        Path target = resolve(key);
+        Files.move(tmp, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        log.info("压缩包已缓存: key={}, size={}", key, Files.size(target));
+        evict(target);
+        return target;
+    }
+
+    private Path newTempFile(String key) throws IOException {
+        Path dir = Paths.get(cacheDir);
+        Files.createDirectories(dir);
+        return Files.createTempFile(dir, key + "_", ".tmp");
+    }
+
+    private Path resolve(String key) {
+        return Paths.get(cacheDir, key + SUFFIX);
+    }
+
+    /**
+     * 超过容量时删除最久未访问的包（不删除刚生成的 keep）
+     */
+    private synchronized void evict(Path keep) {
+        List<Path> files = new ArrayList<>();
+        try (Stream<Path> stream = Files.list(Paths.get(cacheDir))) {
+            stream.filter(p -> p.getFileName().toString().endsWith(SUFFIX)).forEach(files::add);
+        } catch (IOException e) {
+            log.warn("列出压缩包缓存失败: {}", cacheDir, e);
+            return;
+        }
+        Map<Path, long[]> info = new HashMap<>();
+        long total = 0;
+        for (Path p : files) {
+            try {
+                long size = Files.size(p);
+                info.put(p, new long[]{size, Files.getLastModifiedTime(p).toMillis()});
+                total += size;
+            } catch (IOException ignored) {
+                // 已被并发删除
+            }
+        }
+        if (total <= maxBytes) return;
+        List<Path> byAge = new ArrayList<>(info.keySet());
+        byAge.sort(Comparator.comparingLong(p -> info.get(p)[1]));
+        for (Path p : byAge) {
+            if (total <= maxBytes) break;
+            if (p.equals(keep)) continue;
+            try {
+                Files.deleteIfExists(p);
+                total -= info.get(p)[0];
+                log.info("淘汰压缩包缓存: {}", p.getFileName());
+            } catch (IOException e) {
+                log.warn("删除压缩包缓存失败: {}", p, e);
+            }
+        }
+    }
+
+    /**
+     * 同时写入两个输出流
+     */
+    private static class TeeOutputStream extends FilterOutputStream {
+        private final OutputStream branch;
+
+        TeeOutputStream(OutputStream out, OutputStream branch) {
+            super(out);
+            this.branch = branch;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            branch.write(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            branch.write(b, off, len);
+        }
+
+        @Override
+        public void flush() throws IOException {
+            out.flush();
+            branch.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+}
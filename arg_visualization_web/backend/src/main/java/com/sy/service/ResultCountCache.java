@@ -0,0 +1,55 @@
+package com.sy.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.LongSupplier;
+
+/**
+ * 结果列表总数缓存
+ * all_predictions 落库后不再变化，按 任务 + 筛选条件 缓存 COUNT 结果，翻页时不再每次全量计数。
+ * 任务重新落库（deleteTaskRows）时按任务失效；超过容量按 LRU 淘汰。
+ */
+@Component
+public class ResultCountCache {
+
+    @Value("${analysis.results.count-cache-size:1000}")
+    private int maxEntries;
+
+    /** key: taskId|isArg|keyword */
+    private final Map<String, Long> cache = new LinkedHashMap<>(64, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > maxEntries;
+        }
+    };
+
+    /**
+     * 取缓存的总数，未命中时调用 loader 计数并缓存
+     */
+    public long get(Long taskId, Boolean isArg, String keyword, LongSupplier loader) {
+        String key = taskId + "|" + isArg + "|" + (keyword != null ? keyword : "");
+        synchronized (cache) {
+            Long cached = cache.get(key);
+            if (cached != null) return cached;
+        }
+        // 计数在锁外执行，并发未命中时可能重复计数，结果相同
+        long count = loader.getAsLong();
+        synchronized (cache) {
+            cache.put(key, count);
+        }
+        return count;
+    }
+
+    /**
+     * 失效某任务的全部缓存
+     */
+    public void evictTask(Long taskId) {
+        synchronized (cache) {
+            String prefix = taskId + "|";
+            cache.keySet().removeIf(k -> k.startsWith(prefix));
+        }
+    }
+}
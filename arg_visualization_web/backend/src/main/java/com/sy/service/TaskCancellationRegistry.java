@@ -0,0 +1,149 @@
+package com.sy.service;
+
+import com.sy.exception.TaskCancelledException;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 任务取消令牌
+ * 任务开始执行时登记令牌，落库循环、容器等待、Prodigal 并行处理等环节只读令牌的 volatile 标志判断是否已取消，
+ * 不再每批查询数据库；用户取消时立即翻转标志，并执行各环节登记的取消动作（终止容器进程、取消未完成的子任务）。
+ */
+@Slf4j
+@Component
+public class TaskCancellationRegistry {
+
+    private final Map<Long, Token> tokens = new ConcurrentHashMap<>();
+
+    /**
+     * 取消动作的登记，关闭时注销
+     */
+    public interface Registration extends AutoCloseable {
+        @Override
+        void close();
+    }
+
+    /**
+     * 单个任务的取消令牌
+     */
+    public static class Token {
+
+        /** 不可取消的令牌：没有任务 ID 的调用（如旧接口） */
+        public static final Token NONE = new Token(null);
+
+        private final Long taskId;
+        private volatile boolean cancelled;
+        private final List<Runnable> actions = new ArrayList<>();
+
+        private Token(Long taskId) {
+            this.taskId = taskId;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * 已取消时抛出 TaskCancelledException
+         */
+        public void throwIfCancelled() {
+            if (cancelled) {
+                throw new TaskCancelledException(taskId);
+            }
+        }
+
+        /**
+         * 登记取消时执行的动作；已取消时立即执行
+         */
+        public Registration onCancel(Runnable action) {
+            if (this == NONE) return () -> { };
+            synchronized (this) {
+                if (!cancelled) {
+                    actions.add(action);
+                    return () -> {
+                        synchronized (Token.this) {
+                            actions.remove(action);
+                        }
+                    };
+                }
+            }
+            action.run();
+            return () -> { };
+        }
+
+        private void cancel() {
+            List<Runnable> toRun;
+            synchronized (this) {
+                if (cancelled) return;
+                cancelled = true;
+                toRun = new ArrayList<>(actions);
+                actions.clear();
+            }
+            for (Runnable action : toRun) {
+                try {
+                    action.run();
+                } catch (RuntimeException e) {
+                    log.warn("执行取消动作失败: taskId={}", taskId, e);
+                }
+            }
+        }
+    }
+
+    /**
+     * 任务开始执行时登记令牌；执行前已被取消时返回已取消的令牌
+     */
+    public Token register(Long taskId) {
+        if (taskId == null) return Token.NONE;
+        return tokens.computeIfAbsent(taskId, Token::new);
+    }
+
+    /**
+     * 获取任务令牌，未登记时返回不可取消的令牌
+     */
+    public Token get(Long taskId) {
+        if (taskId == null) return Token.NONE;
+        return tokens.getOrDefault(taskId, Token.NONE);
+    }
+
+    public boolean isCancelled(Long taskId) {
+        return get(taskId).isCancelled();
+    }
+
+    /**
+     * 取消任务：立即翻转令牌并执行已登记的取消动作
+     * 任务尚未登记时也创建令牌，随后开始执行的任务会立刻看到已取消；
+     * 只用于尚未开始执行的任务，调用方需保证任务随后会执行或被 release，否则令牌不会被移除
+     */
+    public void cancel(Long taskId) {
+        if (taskId == null) return;
+        tokens.computeIfAbsent(taskId, Token::new).cancel();
+        log.info("任务取消令牌已触发: taskId={}", taskId);
+    }
+
+    /**
+     * 只取消已登记（正在执行）的任务，未登记或已释放时不创建令牌
+     * @return 是否找到并翻转了令牌
+     */
+    public boolean cancelIfRegistered(Long taskId) {
+        if (taskId == null) return false;
+        Token token = tokens.get(taskId);
+        if (token == null) return false;
+        token.cancel();
+        log.info("任务取消令牌已触发: taskId={}", taskId);
+        return true;
+    }
+
+    /**
+     * 任务执行结束（或确定不会再执行）时移除令牌
+     */
+    public void release(Long taskId) {
+        if (taskId != null) {
+            tokens.remove(taskId);
+        }
+    }
+}
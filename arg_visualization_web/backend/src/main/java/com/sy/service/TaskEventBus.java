@@ -0,0 +1,313 @@
+package com.sy.service;
+
+import com.sy.pojo.AnalysisTask;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 任务进度事件总线（进程内）
+ * 任务执行、MAG 阶段进度、结果落库等处发布状态/进度/阶段变化，SSE 订阅方实时收到推送，不再轮询状态接口。
+ * 事件 ID 全局递增，最近 history-size 条事件保留在内存中，客户端断线重连时按 Last-Event-ID 补发；
+ * 断开太久（所需事件已被淘汰）时补发一次当前状态快照。
+ * 每个订阅方有一个有界发送队列，发布方只入队不等待；发送线程逐个订阅方按顺序发送，
+ * 某个客户端收不下（TCP 缓冲区满导致 send 阻塞）只占住它自己的发送线程，队列溢出时断开该连接，
+ * 客户端带 Last-Event-ID 重连后补发，不影响其他订阅方的事件与心跳。
+ */
+@Slf4j
+@Component
+public class TaskEventBus {
+
+    public static final String EVENT_NAME = "status";
+
+    /** 内存中保留的最近事件数 */
+    @Value("${analysis.events.history-size:1000}")
+    private int historySize;
+
+    /** 心跳间隔（秒），避免代理因空闲断开连接 */
+    @Value("${analysis.events.heartbeat-seconds:20}")
+    private long heartbeatSeconds;
+
+    /** 单个 SSE 连接的最长时间（毫秒），到期后客户端带 Last-Event-ID 重连 */
+    @Value("${analysis.events.timeout-ms:1800000}")
+    private long timeoutMs;
+
+    /** 单个订阅方待发送事件的上限，超出说明客户端长时间收不下，断开让其重连补发 */
+    @Value("${analysis.events.send-queue-size:256}")
+    private int sendQueueSize;
+
+    /**
+     * 任务事件
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class TaskEvent {
+        private final long id;
+        private final Long taskId;
+        private final Long userId;
+        private final String status;
+        private final Integer progress;
+        /** 细分阶段：QUEUED / RUNNING / PREPROCESSING / ANALYZING / INGESTING，可为 null */
+        private final String stage;
+        private final String message;
+        /** 容器上报的进度详情（已处理/总数/速率/预计剩余秒数），可为 null */
+        private final Map<String, Object> progressDetail;
+        private final long timestamp;
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("taskId", taskId);
+            map.put("status", status);
+            map.put("progress", progress);
+            map.put("stage", stage);
+            map.put("message", message);
+            if (progressDetail != null) {
+                map.put("progressDetail", progressDetail);
+            }
+            map.put("timestamp", timestamp);
+            return map;
+        }
+
+        boolean isTerminal() {
+            return isTerminalStatus(status);
+        }
+    }
+
+    /**
+     * 订阅方：按任务或按用户过滤
+     */
+    private static class Subscriber {
+        final SseEmitter emitter;
+        final Long taskId;
+        final Long userId;
+        /** 待发送的事件（以自身为锁） */
+        final Deque<Outgoing> outbox = new ArrayDeque<>();
+        /** 是否有发送线程正在处理 outbox */
+        boolean draining;
+        boolean closed;
+
+        Subscriber(SseEmitter emitter, Long taskId, Long userId) {
+            this.emitter = emitter;
+            this.taskId = taskId;
+            this.userId = userId;
+        }
+
+        boolean accepts(TaskEvent e) {
+            return taskId != null ? taskId.equals(e.getTaskId()) : userId.equals(e.getUserId());
+        }
+    }
+
+    /**
+     * 一条待发送的事件；last 为 true 时发送后关闭连接（单任务订阅收到结束状态）
+     */
+    @AllArgsConstructor
+    private static class Outgoing {
+        final SseEmitter.SseEventBuilder event;
+        final boolean last;
+    }
+
+    private final Deque<TaskEvent> history = new ArrayDeque<>();
+    private long lastId;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    /** 每个订阅方同一时间最多占用一个发送线程，阻塞的连接不影响其他订阅方 */
+    private final AtomicInteger senderSeq = new AtomicInteger();
+    private final ExecutorService sender = Executors.newCachedThreadPool(r -> {
+        Thread t = new Thread(r, "task-event-sender-" + senderSeq.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+    private final ScheduledExecutorService heartbeat = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "task-event-heartbeat");
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PostConstruct
+    public void start() {
+        heartbeat.scheduleWithFixedDelay(this::sendHeartbeat, heartbeatSeconds, heartbeatSeconds, TimeUnit.SECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        heartbeat.shutdownNow();
+        sender.shutdownNow();
+        subscribers.forEach(s -> s.emitter.complete());
+        subscribers.clear();
+    }
+
+    /**
+     * 按任务当前状态发布事件（调用方应在更新数据库之后调用）
+     */
+    public void publish(AnalysisTask task, String stage, String message) {
+        if (task == null) return;
+        publish(task.getTaskId(), task.getUserId(), task.getStatus(), task.getProgress(), stage, message);
+    }
+
+    public void publish(Long taskId, Long userId, String status, Integer progress, String stage, String message) {
+        publish(taskId, userId, status, progress, stage, message, null);
+    }
+
+    public void publish(Long taskId, Long userId, String status, Integer progress, String stage, String message,
+                        Map<String, Object> progressDetail) {
+        synchronized (history) {
+            TaskEvent event = new TaskEvent(++lastId, taskId, userId, status, progress, stage, message,
+                    progressDetail, System.currentTimeMillis());
+            history.addLast(event);
+            while (history.size() > historySize) {
+                history.removeFirst();
+            }
+            // 在锁内入队，保证每个订阅方的发送顺序与事件 ID 顺序一致
+            for (Subscriber s : subscribers) {
+                if (s.accepts(event)) enqueue(s, event);
+            }
+        }
+    }
+
+    /**
+     * 当前最新的事件 ID；订阅单个任务前在查询快照之前取得，作为快照对应的事件位置
+     */
+    public long currentEventId() {
+        synchronized (history) {
+            return lastId;
+        }
+    }
+
+    /**
+     * 订阅单个任务的事件；任务结束后连接自动关闭
+     * @param lastEventId 客户端重连时的 Last-Event-ID，首次连接为 null
+     * @param snapshot 当前状态（补发无法覆盖断线期间的事件时发送）
+     * @param snapshotEventId 查询快照之前的 {@link #currentEventId()}，快照之后发布的事件随快照一起补发
+     */
+    public SseEmitter subscribeTask(Long taskId, Long lastEventId, Map<String, Object> snapshot, long snapshotEventId) {
+        return subscribe(new Subscriber(new SseEmitter(timeoutMs), taskId, null), lastEventId, snapshot, snapshotEventId);
+    }
+
+    /**
+     * 订阅某用户所有任务的事件（任务列表页使用）
+     */
+    public SseEmitter subscribeUser(Long userId, Long lastEventId) {
+        return subscribe(new Subscriber(new SseEmitter(timeoutMs), null, userId), lastEventId, null, 0);
+    }
+
+    private SseEmitter subscribe(Subscriber s, Long lastEventId, Map<String, Object> snapshot, long snapshotEventId) {
+        SseEmitter emitter = s.emitter;
+        emitter.onCompletion(() -> drop(s));
+        emitter.onTimeout(() -> {
+            drop(s);
+            emitter.complete();
+        });
+        emitter.onError(e -> drop(s));
+
+        synchronized (history) {
+            long oldest = history.isEmpty() ? lastId + 1 : history.peekFirst().getId();
+            // 断线期间的事件已被淘汰（或服务重启后 ID 重新开始），只能发快照
+            boolean gap = lastEventId == null || lastEventId + 1 < oldest || lastEventId > lastId;
+            // 有快照时从快照对应的位置补发：快照在锁外查询，查询期间发布的事件也要补上（可能与快照重复，不会遗漏）
+            long from = gap ? snapshotEventId : lastEventId;
+            if (gap && snapshot != null) {
+                boolean finished = s.taskId != null && isTerminalStatus(snapshot.get("status"));
+                offer(s, SseEmitter.event().id(String.valueOf(from)).name(EVENT_NAME).data(snapshot), finished);
+                // 任务已结束：发完快照即关闭，不再登记
+                if (finished) return emitter;
+            }
+            if (!gap || snapshot != null) {
+                for (TaskEvent e : history) {
+                    if (e.getId() > from && s.accepts(e)) enqueue(s, e);
+                }
+            }
+            // 登记与补发入队在同一把锁内，之后发布的事件排在补发之后，既不漏也不重复
+            subscribers.add(s);
+        }
+        return emitter;
+    }
+
+    private void enqueue(Subscriber s, TaskEvent e) {
+        offer(s, SseEmitter.event().id(String.valueOf(e.getId())).name(EVENT_NAME).data(e.toMap()),
+                s.taskId != null && e.isTerminal());
+    }
+
+    /**
+     * 放入订阅方的发送队列，必要时启动发送；只入队不发送，不会被慢客户端阻塞
+     */
+    private void offer(Subscriber s, SseEmitter.SseEventBuilder event, boolean last) {
+        synchronized (s.outbox) {
+            if (s.closed) return;
+            if (s.outbox.size() >= sendQueueSize) {
+                log.warn("SSE 客户端长时间未接收，断开连接: taskId={}, userId={}, 积压 {} 条", s.taskId, s.userId,
+                        s.outbox.size());
+                drop(s);
+                // complete 需等待阻塞中的 send 结束，放到发送线程执行
+                sender.execute(s.emitter::complete);
+                return;
+            }
+            s.outbox.addLast(new Outgoing(event, last));
+            if (s.draining) return;
+            s.draining = true;
+        }
+        sender.execute(() -> drain(s));
+    }
+
+    /**
+     * 按顺序发送订阅方队列中的事件，直到队列为空
+     */
+    private void drain(Subscriber s) {
+        while (true) {
+            Outgoing next;
+            synchronized (s.outbox) {
+                next = s.closed ? null : s.outbox.pollFirst();
+                if (next == null) {
+                    s.draining = false;
+                    return;
+                }
+            }
+            try {
+                s.emitter.send(next.event);
+                if (next.last) {
+                    drop(s);
+                    s.emitter.complete();
+                }
+            } catch (IOException | IllegalStateException e) {
+                log.debug("SSE 推送失败，移除订阅: taskId={}, userId={}", s.taskId, s.userId);
+                drop(s);
+            }
+        }
+    }
+
+    /**
+     * 移除订阅方并丢弃未发送的事件
+     */
+    private void drop(Subscriber s) {
+        synchronized (s.outbox) {
+            s.closed = true;
+            s.outbox.clear();
+        }
+        subscribers.remove(s);
+    }
+
+    /**
+     * 心跳只发给没有积压的订阅方，积压中的连接本身就在收发数据
+     */
+    private void sendHeartbeat() {
+        for (Subscriber s : subscribers) {
+            boolean idle;
+            synchronized (s.outbox) {
+                idle = s.outbox.isEmpty() && !s.draining;
+            }
+            if (idle) offer(s, SseEmitter.event().comment("ping"), false);
+        }
+    }
+
+    private static boolean isTerminalStatus(Object status) {
+        return "COMPLETED".equals(status) || "FAILED".equals(status) || "CANCELLED".equals(status);
+    }
+}
@@ -0,0 +1,197 @@
+package com.sy.service;
+
+import com.sy.mapper.AnalysisTaskMapper;
+import com.sy.pojo.AnalysisTask;
+import com.sy.util.ProgressLine;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 推理容器进度跟踪
+ * 解析容器 stdout（或常驻 worker 的进度文件）中的 [PROGRESS] 行，把已处理/总数映射到任务进度区间 [from, to]，
+ * 并计算处理速率与预计剩余时间。每个任务最多每 write-interval-ms 写一次数据库并推送一次事件，
+ * 最后一行（已处理 = 总数）立即写入。合批作业的进度行转给批内每个任务。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class TaskProgressTracker {
+
+    private final AnalysisTaskMapper analysisTaskMapper;
+    private final TaskEventBus taskEventBus;
+
+    /** 同一任务两次写库/推送的最小间隔（毫秒） */
+    @Value("${analysis.progress.write-interval-ms:1000}")
+    private long writeIntervalMs;
+
+    private final Map<Long, Tracked> tracked = new ConcurrentHashMap<>();
+    /** 合批作业 ID -> 成员任务 ID，作业的进度行转给每个成员 */
+    private final Map<Long, List<Long>> forwards = new ConcurrentHashMap<>();
+
+    /**
+     * 单个任务的跟踪状态，读写均持有该对象的锁
+     */
+    private static class Tracked {
+        final Long taskId;
+        final Long userId;
+        final String status;
+        final String stage;
+        final int from;
+        final int to;
+        /** 第一条进度行，速率按此后的平均值计算 */
+        ProgressLine first;
+        long firstAt;
+        ProgressLine last;
+        long lastAt;
+        int writtenProgress;
+        long writtenAt;
+
+        Tracked(AnalysisTask task, String stage, int from, int to) {
+            this.taskId = task.getTaskId();
+            this.userId = task.getUserId();
+            this.status = task.getStatus();
+            this.stage = stage;
+            this.from = from;
+            this.to = to;
+            this.writtenProgress = from;
+        }
+
+        int progress() {
+            return from + (int) Math.floor((to - from) * last.fraction());
+        }
+
+        /** 条/秒；进度行不足两条或时间过短时为 null */
+        Double rate() {
+            if (first == null || last == first || lastAt <= firstAt) return null;
+            return (last.getDone() - first.getDone()) * 1000.0 / (lastAt - firstAt);
+        }
+
+        Long etaSeconds() {
+            Double rate = rate();
+            if (rate == null || rate <= 0) return null;
+            return (long) Math.ceil((last.getTotal() - last.getDone()) / rate);
+        }
+
+        Map<String, Object> detail() {
+            Map<String, Object> detail = new LinkedHashMap<>();
+            detail.put("stage", last.getStage());
+            detail.put("processed", last.getDone());
+            detail.put("total", last.getTotal());
+            Double rate = rate();
+            detail.put("rate", rate != null ? Math.round(rate * 10) / 10.0 : null);
+            detail.put("etaSeconds", etaSeconds());
+            return detail;
+        }
+    }
+
+    /**
+     * 开始跟踪：此后该任务的进度行映射到 [from, to]
+     * @param task 当前任务（取 userId、状态用于事件推送）
+     * @param stage 推送事件的阶段，如 ANALYZING
+     */
+    public void begin(AnalysisTask task, String stage, int from, int to) {
+        if (task == null || task.getTaskId() == null) return;
+        tracked.put(task.getTaskId(), new Tracked(task, stage, from, to));
+    }
+
+    /**
+     * 把作业（如合批作业）的进度转给各成员任务，成员需已 {@link #begin}；{@link #end} 作业 ID 时解除
+     */
+    public void forward(Long jobId, Collection<Long> taskIds) {
+        if (jobId == null) return;
+        forwards.put(jobId, List.copyOf(taskIds));
+    }
+
+    /**
+     * 处理一行容器输出
+     * @return 是否为进度行（调用方可不再记录日志）
+     */
+    public boolean accept(Long taskId, String line) {
+        ProgressLine progress = ProgressLine.parse(line);
+        if (progress == null) return false;
+        accept(taskId, progress);
+        return true;
+    }
+
+    /**
+     * 处理一条已解析的进度（如多个分片容器汇总后的进度）
+     */
+    public void accept(Long taskId, ProgressLine progress) {
+        List<Long> members = taskId != null ? forwards.get(taskId) : null;
+        if (members != null) {
+            members.forEach(id -> accept(id, progress));
+            return;
+        }
+        Tracked t = taskId != null ? tracked.get(taskId) : null;
+        if (t == null) return;
+
+        long now = System.currentTimeMillis();
+        int value;
+        Map<String, Object> detail;
+        synchronized (t) {
+            if (t.first == null || progress.getTotal() != t.first.getTotal()) {
+                t.first = progress;
+                t.firstAt = now;
+            }
+            // 首次到达终点时立即写入；worker 进度文件会被重复读到，之后同一行仍按间隔合并
+            boolean finished = progress.getDone() == progress.getTotal()
+                    && (t.last == null || t.last.getDone() != t.last.getTotal());
+            t.last = progress;
+            t.lastAt = now;
+            if (!finished && now - t.writtenAt < writeIntervalMs) return;
+            t.writtenAt = now;
+            value = t.progress();
+            detail = t.detail();
+            if (value == t.writtenProgress) {
+                value = -1;
+            } else {
+                t.writtenProgress = value;
+            }
+        }
+
+        if (value >= 0) {
+            try {
+                // 只更新 progress 列，不覆盖其他字段（如并发的取消状态）
+                AnalysisTask update = new AnalysisTask();
+                update.setTaskId(taskId);
+                update.setProgress(value);
+                analysisTaskMapper.updateById(update);
+            } catch (Exception e) {
+                log.warn("更新任务进度失败: taskId={}", taskId, e);
+            }
+        }
+        taskEventBus.publish(taskId, t.userId, t.status, value >= 0 ? Integer.valueOf(value) : null,
+                t.stage, null, detail);
+        log.debug("任务进度: taskId={}, {}", taskId, detail);
+    }
+
+    /**
+     * 当前进度详情：阶段、已处理、总数、速率（条/秒）、预计剩余秒数
+     * @return 未在跟踪或尚未收到进度行时返回 null
+     */
+    public Map<String, Object> snapshot(Long taskId) {
+        Tracked t = taskId != null ? tracked.get(taskId) : null;
+        if (t == null) return null;
+        synchronized (t) {
+            return t.last != null ? t.detail() : null;
+        }
+    }
+
+    /**
+     * 结束跟踪
+     */
+    public void end(Long taskId) {
+        if (taskId != null) {
+            tracked.remove(taskId);
+            forwards.remove(taskId);
+        }
+    }
+}
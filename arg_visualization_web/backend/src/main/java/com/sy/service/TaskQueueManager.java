@@ -4,80 +4,166 @@ import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.*;
 import java.util.concurrent.*;
 
 /**
  * 任务队列管理器
- * 确保分析任务按顺序执行，避免并发冲突
+ * 最多同时执行 maxConcurrent 个任务，其余任务在等待队列中按以下顺序调度：
+ * 1. 优先级高的先执行；
+ * 2. 同优先级时按用户公平分配：正在运行任务少的用户优先，再按最近一次被调度的先后轮转；
+ * 3. 同一用户内按输入大小短作业优先，等待超过 aging 时间的任务不再按大小排序，避免大任务饿死；
+ * 4. 最后按提交顺序。
+ * 等待队列满或单用户等待任务过多时拒绝提交（不再由提交线程直接执行任务）。
  */
 @Slf4j
 @Component
 public class TaskQueueManager {
 
+    /** 默认优先级 */
+    public static final int DEFAULT_PRIORITY = 0;
+
     @Value("${queue.max-concurrent:1}")
     private int maxConcurrent;
 
     @Value("${analysis.queue-size:100}")
     private int queueSize;
 
+    /** 单个用户最多可排队的任务数 */
+    @Value("${queue.max-pending-per-user:20}")
+    private int maxPendingPerUser;
+
+    /** 优先级取值范围 [-maxPriority, maxPriority]，超出时截断 */
+    @Value("${queue.max-priority:10}")
+    private int maxPriority;
+
+    /** 等待超过该时间（秒）的任务按大小为 0 参与排序 */
+    @Value("${queue.aging-seconds:1800}")
+    private long agingSeconds;
+
     private ExecutorService executorService;
-    private final ConcurrentHashMap<Long, Future<?>> runningTasks = new ConcurrentHashMap<>();
+
+    /** 等待中的任务，调度时线性扫描（数量受 queueSize 限制） */
+    private final List<QueuedTask> pending = new ArrayList<>();
+    private final Map<Long, QueuedTask> running = new HashMap<>();
+    /** userId -> 最近一次被调度的序号，用于同条件下轮转 */
+    private final Map<Long, Long> lastServed = new HashMap<>();
+    private long sequence;
+    private long dispatchSequence;
+    private long completedTaskCount;
+
+    /**
+     * 排队中的任务
+     */
+    private static class QueuedTask {
+        final Long taskId;
+        final Long userId;
+        final int priority;
+        final long estimatedSize;
+        /** 包含的任务数（合批作业为成员数），按此计入排队上限与公平分配 */
+        final int taskCount;
+        final long seq;
+        final long submittedAt;
+        final Runnable task;
+        /** 执行线程，运行期间非空，用于取消时中断 */
+        Thread worker;
+        boolean cancelled;
+
+        QueuedTask(Long taskId, Long userId, int priority, long estimatedSize, int taskCount, long seq, Runnable task) {
+            this.taskId = taskId;
+            this.userId = userId;
+            this.priority = priority;
+            this.estimatedSize = estimatedSize;
+            this.taskCount = taskCount;
+            this.seq = seq;
+            this.submittedAt = System.currentTimeMillis();
+            this.task = task;
+        }
+    }
 
     /**
      * 初始化线程池
+     * 只有调度器会向线程池提交任务，且同时最多 maxConcurrent 个，线程池队列不会堆积
      */
-    public void init() {
+    public synchronized void init() {
         if (executorService == null) {
-            // 创建有限线程池，控制并发数
             executorService = new ThreadPoolExecutor(
-                    maxConcurrent,                    // 核心线程数
-                    maxConcurrent,                    // 最大线程数
-                    60L,                               // 空闲线程存活时间
+                    maxConcurrent,
+                    maxConcurrent,
+                    60L,
                     TimeUnit.SECONDS,
-                    new LinkedBlockingQueue<>(queueSize),  // 任务队列
-                    new ThreadPoolExecutor.CallerRunsPolicy()  // 拒绝策略：由调用线程执行
+                    new LinkedBlockingQueue<>()
             );
-            log.info("任务队列管理器初始化完成，最大并发数: {}, 队列大小: {}", maxConcurrent, queueSize);
+            log.info("任务队列管理器初始化完成，最大并发数: {}, 队列大小: {}, 单用户排队上限: {}",
+                    maxConcurrent, queueSize, maxPendingPerUser);
         }
     }
 
     /**
-     * 提交任务到队列
+     * 提交任务到队列（默认优先级，未知用户与大小）
      * @param taskId 任务ID
      * @param task 要执行的任务
      */
     public void submitTask(Long taskId, Runnable task) {
+        submitTask(taskId, null, DEFAULT_PRIORITY, 0L, task);
+    }
+
+    /**
+     * 提交任务到队列
+     * @param taskId 任务ID
+     * @param userId 提交用户，用于公平分配
+     * @param priority 优先级，越大越先执行
+     * @param estimatedSize 预估输入大小（字节），同一用户内小任务先执行
+     * @param task 要执行的任务
+     * @throws RuntimeException 队列已满或该用户排队任务过多
+     */
+    public void submitTask(Long taskId, Long userId, int priority, long estimatedSize, Runnable task) {
+        submitTask(taskId, userId, priority, estimatedSize, 1, task);
+    }
+
+    /**
+     * 提交包含多个任务的作业（合批），按 taskCount 个任务计入排队上限与公平分配
+     */
+    public synchronized void submitTask(Long taskId, Long userId, int priority, long estimatedSize, int taskCount,
+                                        Runnable task) {
         init(); // 确保线程池已初始化
-        
-        log.info("提交任务到队列: taskId={}", taskId);
-        
-        // 检查任务是否已在运行
-        if (runningTasks.containsKey(taskId)) {
+
+        // 检查任务是否已在队列或运行中
+        if (running.containsKey(taskId) || findPending(taskId) != null) {
             log.warn("任务已在队列中: taskId={}", taskId);
             return;
         }
-        
-        // 包装任务，添加日志和清理逻辑
-        Runnable wrappedTask = () -> {
-            try {
-                log.info("开始执行任务: taskId={}", taskId);
-                task.run();
-                log.info("任务执行完成: taskId={}", taskId);
-            } catch (Exception e) {
-                log.error("任务执行失败: taskId={}", taskId, e);
-            } finally {
-                // 任务完成后从运行列表中移除
-                runningTasks.remove(taskId);
+        taskCount = Math.max(1, taskCount);
+        checkAdmission(userId, taskCount);
+
+        priority = Math.max(-maxPriority, Math.min(maxPriority, priority));
+        pending.add(new QueuedTask(taskId, userId, priority, Math.max(0, estimatedSize), taskCount, ++sequence, task));
+        log.info("任务已加入队列: taskId={}, userId={}, priority={}, size={}, 等待数: {}",
+                taskId, userId, priority, estimatedSize, pending.size());
+        dispatch();
+    }
+
+    /**
+     * 准入检查：等待队列已满或该用户排队任务过多时抛出异常
+     * 创建任务前调用，避免先写入数据库再被拒绝
+     */
+    public void checkAdmission(Long userId) {
+        checkAdmission(userId, 1);
+    }
+
+    /**
+     * 准入检查：还能否再加入 taskCount 个任务
+     */
+    public synchronized void checkAdmission(Long userId, int taskCount) {
+        if (pending.stream().mapToLong(t -> t.taskCount).sum() + taskCount > queueSize) {
+            throw new RuntimeException("任务队列已满，请稍后再试");
+        }
+        if (userId != null && maxPendingPerUser > 0) {
+            long userPending = pending.stream().filter(t -> userId.equals(t.userId)).mapToLong(t -> t.taskCount).sum();
+            if (userPending + taskCount > maxPendingPerUser) {
+                throw new RuntimeException("排队中的任务过多（上限 " + maxPendingPerUser + "），请等待已提交任务执行后再试");
             }
-        };
-        
-        // 提交任务
-        Future<?> future = executorService.submit(wrappedTask);
-        runningTasks.put(taskId, future);
-        
-        log.info("任务已加入队列: taskId={}, 当前队列大小: {}", taskId, runningTasks.size());
+        }
     }
 
     /**
@@ -85,59 +171,179 @@ public class TaskQueueManager {
      * @param taskId 任务ID
      * @return 是否成功取消
      */
-    public boolean cancelTask(Long taskId) {
-        Future<?> future = runningTasks.get(taskId);
-        if (future != null && !future.isDone()) {
+    public synchronized boolean cancelTask(Long taskId) {
+        QueuedTask queued = findPending(taskId);
+        if (queued != null) {
+            pending.remove(queued);
+            log.info("取消排队中的任务: taskId={}", taskId);
+            return true;
+        }
+        QueuedTask active = running.get(taskId);
+        if (active != null && !active.cancelled) {
             log.info("取消任务: taskId={}", taskId);
-            boolean cancelled = future.cancel(true);
-            runningTasks.remove(taskId);
-            return cancelled;
+            // 尚未开始执行的任务在 execute 中直接跳过；运行记录在任务线程退出时移除并调度下一个任务
+            active.cancelled = true;
+            if (active.worker != null) {
+                active.worker.interrupt();
+            }
+            return true;
         }
         return false;
     }
 
     /**
-     * 获取队列状态
+     * 获取队列状态，pendingTasks 按预计执行顺序列出等待中的任务及其位置（从 1 开始）
      */
-    public Map<String, Object> getQueueStatus() {
+    public synchronized Map<String, Object> getQueueStatus() {
         init();
-        
-        ThreadPoolExecutor tpe = (ThreadPoolExecutor) executorService;
+
         Map<String, Object> status = new HashMap<>();
-        
-        status.put("activeCount", tpe.getActiveCount());           // 正在执行的任务数
-        status.put("queueSize", tpe.getQueue().size());            // 队列中等待的任务数
-        status.put("completedTaskCount", tpe.getCompletedTaskCount());  // 已完成的任务数
-        status.put("taskCount", tpe.getTaskCount());               // 总任务数
-        status.put("runningTasks", runningTasks.size());           // 运行中的任务数
-        
+        status.put("maxConcurrent", maxConcurrent);
+        status.put("activeCount", running.size());          // 正在执行的任务数
+        status.put("queueSize", pending.size());            // 队列中等待的任务数
+        status.put("completedTaskCount", completedTaskCount);  // 已完成的任务数
+        status.put("taskCount", completedTaskCount + running.size() + pending.size());  // 总任务数
+        status.put("runningTasks", new ArrayList<>(running.keySet()));
+
+        List<Map<String, Object>> pendingTasks = new ArrayList<>();
+        int position = 1;
+        for (QueuedTask t : projectedOrder()) {
+            Map<String, Object> item = new HashMap<>();
+            item.put("taskId", t.taskId);
+            item.put("userId", t.userId);
+            item.put("priority", t.priority);
+            item.put("estimatedSize", t.estimatedSize);
+            item.put("position", position++);
+            pendingTasks.add(item);
+        }
+        status.put("pendingTasks", pendingTasks);
         return status;
     }
 
     /**
-     * 检查任务是否在运行
+     * 获取任务的排队位置
+     * @return 从 1 开始的位置；正在运行返回 0；不在队列中返回 null
+     */
+    public synchronized Integer getQueuePosition(Long taskId) {
+        if (running.containsKey(taskId)) return 0;
+        int position = 1;
+        for (QueuedTask t : projectedOrder()) {
+            if (t.taskId.equals(taskId)) return position;
+            position++;
+        }
+        return null;
+    }
+
+    /**
+     * 检查任务是否在运行（含排队中）
      */
-    public boolean isTaskRunning(Long taskId) {
-        Future<?> future = runningTasks.get(taskId);
-        return future != null && !future.isDone();
+    public synchronized boolean isTaskRunning(Long taskId) {
+        return running.containsKey(taskId) || findPending(taskId) != null;
     }
 
     /**
      * 关闭线程池
      */
     public void shutdown() {
-        if (executorService != null && !executorService.isShutdown()) {
+        ExecutorService executor;
+        synchronized (this) {
+            executor = executorService;
+            pending.clear();
+        }
+        if (executor != null && !executor.isShutdown()) {
             log.info("关闭任务队列管理器");
-            executorService.shutdown();
+            executor.shutdown();
             try {
-                if (!executorService.awaitTermination(60, TimeUnit.SECONDS)) {
-                    executorService.shutdownNow();
+                if (!executor.awaitTermination(60, TimeUnit.SECONDS)) {
+                    executor.shutdownNow();
                 }
             } catch (InterruptedException e) {
-                executorService.shutdownNow();
+                executor.shutdownNow();
                 Thread.currentThread().interrupt();
             }
         }
     }
-}
 
+    /**
+     * 有空闲执行槽时按调度顺序启动等待中的任务，调用方需持有锁
+     */
+    private void dispatch() {
+        while (running.size() < maxConcurrent && !pending.isEmpty()) {
+            QueuedTask next = selectNext(pending, countRunningByUser(), lastServed);
+            pending.remove(next);
+            running.put(next.taskId, next);
+            if (next.userId != null) {
+                lastServed.put(next.userId, ++dispatchSequence);
+            }
+            executorService.execute(() -> execute(next));
+        }
+    }
+
+    private void execute(QueuedTask queued) {
+        try {
+            synchronized (this) {
+                if (queued.cancelled) return;
+                queued.worker = Thread.currentThread();
+            }
+            log.info("开始执行任务: taskId={}", queued.taskId);
+            queued.task.run();
+            log.info("任务执行完成: taskId={}", queued.taskId);
+        } catch (Exception e) {
+            log.error("任务执行失败: taskId={}", queued.taskId, e);
+        } finally {
+            synchronized (this) {
+                queued.worker = null;
+                running.remove(queued.taskId);
+                completedTaskCount++;
+                dispatch();
+            }
+        }
+    }
+
+    /**
+     * 模拟调度得到等待任务的预计执行顺序（假设运行中的任务都未结束）
+     */
+    private List<QueuedTask> projectedOrder() {
+        List<QueuedTask> remaining = new ArrayList<>(pending);
+        Map<Long, Integer> runningByUser = countRunningByUser();
+        Map<Long, Long> served = new HashMap<>(lastServed);
+        long seq = dispatchSequence;
+        List<QueuedTask> order = new ArrayList<>(remaining.size());
+        while (!remaining.isEmpty()) {
+            QueuedTask next = selectNext(remaining, runningByUser, served);
+            remaining.remove(next);
+            order.add(next);
+            if (next.userId != null) {
+                runningByUser.merge(next.userId, next.taskCount, Integer::sum);
+                served.put(next.userId, ++seq);
+            }
+        }
+        return order;
+    }
+
+    private QueuedTask selectNext(List<QueuedTask> candidates, Map<Long, Integer> runningByUser, Map<Long, Long> served) {
+        long now = System.currentTimeMillis();
+        Comparator<QueuedTask> order = Comparator
+                .comparingInt((QueuedTask t) -> -t.priority)
+                .thenComparingInt(t -> t.userId == null ? 0 : runningByUser.getOrDefault(t.userId, 0))
+                .thenComparingLong(t -> t.userId == null ? 0 : served.getOrDefault(t.userId, 0L))
+                .thenComparingLong(t -> now - t.submittedAt >= agingSeconds * 1000 ? 0 : t.estimatedSize)
+                .thenComparingLong(t -> t.seq);
+        return Collections.min(candidates, order);
+    }
+
+    private Map<Long, Integer> countRunningByUser() {
+        Map<Long, Integer> counts = new HashMap<>();
+        for (QueuedTask t : running.values()) {
+            if (t.userId != null) counts.merge(t.userId, t.taskCount, Integer::sum);
+        }
+        return counts;
+    }
+
+    private QueuedTask findPending(Long taskId) {
+        for (QueuedTask t : pending) {
+            if (t.taskId.equals(taskId)) return t;
+        }
+        return null;
+    }
+}
@@ -1,5 +1,8 @@
 package com.sy.service;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import java.io.IOException;
 import java.util.Map;
 
 /**
@@ -23,6 +26,12 @@ public interface VisualizationService {
      */
     Map<String, Object> getResultsPage(Long taskId, Long userId, int page, int pageSize, Boolean isArg, String keyword);
 
+    /**
+     * 游标分页列表（keyset，按 row_index 定位，深页不退化），查 all_predictions
+     * @param cursor 上一次返回的 nextCursor / prevCursor，为空表示第一页
+     */
+    Map<String, Object> getResultsPageByCursor(Long taskId, Long userId, String cursor, int pageSize, Boolean isArg, String keyword);
+
     /**
      * 种类统计（第二张图），查 class_summary
      */
@@ -58,5 +67,23 @@ public interface VisualizationService {
      * @return 所有预测为 ARG 的序列列表
      */
     Map<String, Object> getAllArgSequences(Long taskId, Long userId);
+
+    /**
+     * 流式获取所有 ARG 序列：校验在调用时完成，返回的 JsonWriter 逐行写出 data 部分，内存占用与结果规模无关
+     */
+    JsonWriter streamAllArgSequences(Long taskId, Long userId);
+
+    /**
+     * 流式导出可视化数据（含全部预测结果）：校验在调用时完成，返回的 JsonWriter 逐行写出 data 部分
+     */
+    JsonWriter streamExportData(Long taskId, Long userId);
+
+    /**
+     * 向 JsonGenerator 写出一个 JSON 值
+     */
+    @FunctionalInterface
+    interface JsonWriter {
+        void write(JsonGenerator gen) throws IOException;
+    }
 }
 
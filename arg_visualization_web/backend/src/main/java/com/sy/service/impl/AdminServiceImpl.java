@@ -65,7 +65,9 @@ public class AdminServiceImpl implements AdminService {
         for (GenomeFile file : files) {
             try {
                 if (file.getFilePath() != null) {
-                    java.nio.file.Files.deleteIfExists(java.nio.file.Paths.get(file.getFilePath()));
+                    java.nio.file.Path filePath = java.nio.file.Paths.get(file.getFilePath());
+                    java.nio.file.Files.deleteIfExists(filePath);
+                    java.nio.file.Files.deleteIfExists(com.sy.util.FastaIndex.indexPath(filePath));
                 }
                 genomeFileMapper.deleteById(file.getFileId());
             } catch (Exception e) {
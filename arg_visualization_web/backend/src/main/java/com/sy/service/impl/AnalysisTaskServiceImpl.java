@@ -6,28 +6,46 @@ import com.sy.mapper.AnalysisResultMapper;
 import com.sy.mapper.AnalysisTaskMapper;
 import com.sy.mapper.ClassSummaryMapper;
 import com.sy.mapper.GenomeFileMapper;
+import com.sy.mapper.UserMapper;
 import com.sy.pojo.AllPrediction;
 import com.sy.pojo.AnalysisResult;
 import com.sy.pojo.AnalysisTask;
 import com.sy.pojo.ClassSummary;
 import com.sy.pojo.GenomeFile;
+import com.sy.pojo.User;
+import com.sy.service.AnalysisResultReuse;
 import com.sy.service.AnalysisTaskService;
+import com.sy.service.ArgMicroBatcher;
+import com.sy.service.OutputReadinessWatcher;
 import com.sy.service.MagAnalysisService;
+import com.sy.service.TaskCancellationRegistry;
+import com.sy.service.TaskProgressTracker;
+import com.sy.service.TaskEventBus;
 import com.sy.service.TaskQueueManager;
 import com.sy.service.VisualizationService;
 import com.sy.exception.TaskCancelledException;
+import com.sy.exception.TaskOutputException;
+import com.sy.util.ArgBatchFiles;
+import com.sy.util.ContainerLog;
+import com.sy.util.FastaIndex;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.io.File;
+import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * 分析任务服务实现
@@ -41,12 +59,19 @@ public class AnalysisTaskServiceImpl implements AnalysisTaskService {
     private final AnalysisTaskMapper analysisTaskMapper;
     private final AnalysisResultMapper analysisResultMapper;
     private final GenomeFileMapper genomeFileMapper;
+    private final UserMapper userMapper;
     private final AllPredictionMapper allPredictionMapper;
     private final ClassSummaryMapper classSummaryMapper;
     private final DockerServiceImpl dockerService;
     private final TaskQueueManager taskQueueManager;
+    private final ArgMicroBatcher argMicroBatcher;
+    private final AnalysisResultReuse analysisResultReuse;
+    private final OutputReadinessWatcher outputReadinessWatcher;
     private final MagAnalysisService magAnalysisService;
     private final VisualizationService visualizationService;
+    private final TaskEventBus taskEventBus;
+    private final TaskCancellationRegistry cancellationRegistry;
+    private final TaskProgressTracker progressTracker;
     
     @Value("${analysis.output-dir:./outputs}")
     private String outputBaseDir;
@@ -54,6 +79,20 @@ public class AnalysisTaskServiceImpl implements AnalysisTaskService {
     @Value("${file.upload.mag-dir:./uploads/mag}")
     private String magUploadDir;
 
+    /** 复用已有结果时的复制（硬链接输出文件、复制落库数据）在后台执行，不占用请求线程 */
+    private static final int REUSE_COPY_THREADS = 2;
+    private final AtomicInteger reuseThreadSeq = new AtomicInteger();
+    private final ExecutorService reuseExecutor = Executors.newFixedThreadPool(REUSE_COPY_THREADS, r -> {
+        Thread t = new Thread(r, "result-reuse-" + reuseThreadSeq.incrementAndGet());
+        t.setDaemon(true);
+        return t;
+    });
+
+    @PreDestroy
+    public void shutdown() {
+        reuseExecutor.shutdownNow();
+    }
+
     @Override
     public Map<String, Object> createTask(Long fileId, Long userId, Map<String, Object> params) {
         // 验证文件是否存在
@@ -64,6 +103,8 @@ public class AnalysisTaskServiceImpl implements AnalysisTaskService {
         if (!genomeFile.getUserId().equals(userId)) {
             throw new RuntimeException("无权访问该文件");
         }
+        // 排队已满时直接拒绝，不写入任务记录（等待合批的任务尚未进入队列，一并计入）
+        taskQueueManager.checkAdmission(userId, 1 + argMicroBatcher.waitingCount(userId));
         
         // 创建任务（任务名用英文格式，避免中文文件名写入 DB）
         AnalysisTask task = new AnalysisTask();
@@ -86,17 +127,139 @@ public class AnalysisTaskServiceImpl implements AnalysisTaskService {
         task.setTaskName("ARG - task_" + task.getTaskId());
         String outputDir = outputBaseDir + File.separator + "task_" + task.getTaskId();
         task.setOutputDir(outputDir);
+        task.setLogFile(outputDir + File.separator + ContainerLog.FILE_NAME);
         analysisTaskMapper.updateById(task);
+        taskEventBus.publish(task, "QUEUED", null);
         
         log.info("创建分析任务: taskId={}, fileId={}, userId={}", task.getTaskId(), fileId, userId);
         
-        // 异步执行任务
-        taskQueueManager.submitTask(task.getTaskId(), 
-                () -> executeAnalysis(task.getTaskId(), genomeFile, params));
+        long inputSize = genomeFile.getFileSize() != null ? genomeFile.getFileSize() : 0L;
+        String resultKey = analysisResultReuse.key(genomeFile.getMd5Hash(), params);
+        AnalysisResultReuse.Waiter request = new AnalysisResultReuse.Waiter(resultKey, task.getTaskId(), userId,
+                genomeFile.getFilePath(), inputSize, params);
+        if (resultKey != null && reuseOrAttach(request)) {
+            AnalysisTask current = analysisTaskMapper.selectById(task.getTaskId());
+            return convertTaskToMap(current != null ? current : task, genomeFile.getOriginalFilename());
+        }
+
+        startAnalysis(request);
         
         return convertTaskToMap(task, genomeFile.getOriginalFilename());
     }
 
+    /**
+     * 相同输入、模型与参数已有完整结果时在后台复用（任务先以 PENDING 返回）；相同任务正在执行时挂到该任务上等待
+     * @return 是否无需再单独执行
+     */
+    private boolean reuseOrAttach(AnalysisResultReuse.Waiter request) {
+        try {
+            AnalysisTask source = analysisResultReuse.findReusable(request.getResultKey());
+            if (source != null) {
+                reuseExecutor.execute(() -> reuseInBackground(source, request));
+                return true;
+            }
+        } catch (Exception e) {
+            log.warn("复用已有结果失败，重新执行: taskId={}", request.getTaskId(), e);
+        }
+        return analysisResultReuse.attach(request.getResultKey(), request) != null;
+    }
+
+    /**
+     * 后台复制已有结果；复制失败时按普通任务执行（相同任务正在执行时挂到其上）
+     */
+    private void reuseInBackground(AnalysisTask source, AnalysisResultReuse.Waiter request) {
+        Long taskId = request.getTaskId();
+        // 复制期间被取消时令牌在此登记，复制结束后释放
+        cancellationRegistry.register(taskId);
+        boolean copied;
+        try {
+            copied = copyResults(source, taskId);
+        } finally {
+            cancellationRegistry.release(taskId);
+        }
+        if (copied) return;
+        AnalysisTask task = analysisTaskMapper.selectById(taskId);
+        if (task == null || !"PENDING".equals(task.getStatus())) {
+            // 释放之后才取消的任务不会再执行，其令牌无人释放
+            cancellationRegistry.release(taskId);
+            return;
+        }
+        try {
+            if (analysisResultReuse.attach(request.getResultKey(), request) == null) {
+                startAnalysis(request);
+            }
+        } catch (RuntimeException e) {
+            log.warn("复用失败后提交执行失败: taskId={}", taskId, e);
+            failTask(taskId, e.getMessage());
+        }
+    }
+
+    /**
+     * 复制已有结果到目标任务；失败时数据库回滚，但已建立的硬链接仍留在目标目录，
+     * 重新执行时容器截断重写这些文件会改坏源任务的结果，因此先删除再返回。删除失败时任务标记为失败，不再执行
+     * @return 是否复制成功
+     */
+    private boolean copyResults(AnalysisTask source, Long targetTaskId) {
+        try {
+            analysisResultReuse.copyResults(source, targetTaskId);
+            return true;
+        } catch (Exception e) {
+            log.warn("复用已有结果失败，重新执行: taskId={}", targetTaskId, e);
+        }
+        try {
+            analysisResultReuse.discardOutputs(targetTaskId);
+        } catch (IOException e) {
+            log.error("清除复用失败留下的结果文件失败: taskId={}", targetTaskId, e);
+            failTask(targetTaskId, "复用已有结果失败且无法清理输出目录: " + e.getMessage());
+        }
+        return false;
+    }
+
+    /**
+     * 异步执行任务：小输入先进入合批，其余直接排队
+     */
+    private void startAnalysis(AnalysisResultReuse.Waiter request) {
+        Long taskId = request.getTaskId();
+        int priority = parsePriority(request.getUserId(), request.getParams());
+        if (argMicroBatcher.accepts(request.getInputSize())) {
+            argMicroBatcher.offer(new ArgMicroBatcher.Member(taskId, request.getUserId(), priority,
+                    request.getInputSize(), request.getInputFilePath(), request.getParams()), batchRunner);
+            return;
+        }
+        try {
+            submitToQueue(analysisTaskMapper.selectById(taskId), priority, request.getInputSize(),
+                    () -> executeAnalysis(taskId, request.getInputFilePath(), request.getParams()));
+        } catch (RuntimeException e) {
+            releaseWaiters(taskId);
+            throw e;
+        }
+    }
+
+    /**
+     * 任务结束（完成、失败或取消）后处理挂在其上的相同任务：
+     * 结果完整时逐个复制结果，否则由第一个等待者接替执行，其余继续等待
+     */
+    private void releaseWaiters(Long taskId) {
+        if (!analysisResultReuse.isLeader(taskId)) return;
+        AnalysisTask task = analysisTaskMapper.selectById(taskId);
+        boolean succeeded = analysisResultReuse.isReusable(task);
+        for (AnalysisResultReuse.Waiter w : analysisResultReuse.release(taskId, succeeded)) {
+            if (succeeded && copyResults(task, w.getTaskId())) {
+                continue;
+            }
+            AnalysisTask waiting = analysisTaskMapper.selectById(w.getTaskId());
+            if (waiting == null || !"PENDING".equals(waiting.getStatus())) continue;
+            if (analysisResultReuse.attach(w.getResultKey(), w) == null) {
+                log.info("相同任务未产出可复用结果，接替执行: taskId={}, previous={}", w.getTaskId(), taskId);
+                try {
+                    startAnalysis(w);
+                } catch (RuntimeException e) {
+                    log.warn("接替执行提交失败: taskId={}", w.getTaskId(), e);
+                }
+            }
+        }
+    }
+
     @Override
     public List<Map<String, Object>> getUserTasks(Long userId, String status) {
         List<AnalysisTask> tasks;
@@ -165,9 +328,43 @@ public class AnalysisTaskServiceImpl implements AnalysisTaskService {
         status.put("startedAt", task.getStartedAt() != null ? task.getStartedAt().toString() : null);
         status.put("completedAt", task.getCompletedAt() != null ? task.getCompletedAt().toString() : null);
         status.put("errorMessage", task.getErrorMessage());
+        // 推理进行中时附带已处理/总数、速率与预计剩余时间
+        status.put("progressDetail", progressTracker.snapshot(taskId));
+        if ("PENDING".equals(task.getStatus())) {
+            // 排队位置（从 1 开始），不在本实例队列中为 null
+            // 合批中的任务按所属批作业的位置计算；仍在攒批窗口内时为 null
+            // 等待相同任务结果的按该任务的位置计算
+            Long leader = analysisResultReuse.waitingFor(taskId);
+            Long queued = leader != null ? leader : taskId;
+            status.put("queuePosition", taskQueueManager.getQueuePosition(argMicroBatcher.queueKey(queued)));
+        }
         return status;
     }
 
+    /** 日志分页单页最大字节数 */
+    private static final int MAX_LOG_PAGE_BYTES = 1024 * 1024;
+
+    @Override
+    public Map<String, Object> getTaskLog(Long taskId, Long userId, long offset, int limit) {
+        AnalysisTask task = analysisTaskMapper.selectById(taskId);
+        if (task == null) {
+            throw new RuntimeException("任务不存在");
+        }
+        if (!task.getUserId().equals(userId)) {
+            throw new RuntimeException("无权访问该任务");
+        }
+        // 日志文件尚未生成（排队中）或任务经合批推理/结果复用完成时返回空页
+        Path logFile = task.getLogFile() != null ? Paths.get(task.getLogFile()) : null;
+        try {
+            Map<String, Object> page = ContainerLog.readPage(logFile, offset,
+                    Math.max(1, Math.min(limit, MAX_LOG_PAGE_BYTES)));
+            page.put("status", task.getStatus());
+            return page;
+        } catch (IOException e) {
+            throw new RuntimeException("读取任务日志失败: " + e.getMessage(), e);
+        }
+    }
+
     @Override
     public void cancelTask(Long taskId, Long userId) {
         AnalysisTask task = analysisTaskMapper.selectById(taskId);
@@ -182,15 +379,36 @@ public class AnalysisTaskServiceImpl implements AnalysisTaskService {
         if ("COMPLETED".equals(status) || "FAILED".equals(status)) {
             throw new RuntimeException("任务已完成，无法取消");
         }
+        if ("CANCELLED".equals(status)) {
+            throw new RuntimeException("任务已取消");
+        }
         
-        // 终止 Docker 进程（若仍在跑）
-        dockerService.cancelAnalysis(taskId);
+        // 立即触发取消令牌：落库循环、容器等待、Prodigal 并行处理随即退出，Docker 进程被终止
+        // 排队中的任务预先创建已取消的令牌（开始执行时立即退出，或移出队列后释放）；
+        // 运行中的任务令牌在开始执行时已登记，已释放说明任务刚好结束，不再创建，避免令牌无人释放
+        if ("PENDING".equals(status)) {
+            cancellationRegistry.cancel(taskId);
+        } else {
+            cancellationRegistry.cancelIfRegistered(taskId);
+        }
         // 中断执行线程（含落库阶段），否则落库完成后会覆盖为 COMPLETED
-        taskQueueManager.cancelTask(taskId);
+        // 合批中的任务只移出批次；已在运行的批作业不中断，由批内逐任务检查取消令牌跳过
+        // 等待相同任务结果的只移出等待列表
+        boolean dequeued = analysisResultReuse.detach(taskId) || argMicroBatcher.cancel(taskId);
+        if (!dequeued && argMicroBatcher.queueKey(taskId).equals(taskId)) {
+            dequeued = taskQueueManager.cancelTask(taskId) && !taskQueueManager.isTaskRunning(taskId);
+        }
+        if (dequeued) {
+            // 不会再执行，令牌无人释放
+            cancellationRegistry.release(taskId);
+        }
 
         task.setStatus("CANCELLED");
         task.setCompletedAt(LocalDateTime.now());
         analysisTaskMapper.updateById(task);
+        taskEventBus.publish(task, null, null);
+        // 被取消的任务若有等待者，交给等待者接替执行
+        releaseWaiters(taskId);
 
         log.info("任务已取消: taskId={}", taskId);
     }
@@ -332,7 +550,7 @@ public class AnalysisTaskServiceImpl implements AnalysisTaskService {
     /**
      * 执行分析任务
      */
-    private void executeAnalysis(Long taskId, GenomeFile fileInfo, Map<String, Object> params) {
+    private void executeAnalysis(Long taskId, String inputFilePath, Map<String, Object> params) {
         AnalysisTask task = analysisTaskMapper.selectById(taskId);
         if (task == null) {
             log.error("任务不存在: taskId={}", taskId);
@@ -340,66 +558,243 @@ public class AnalysisTaskServiceImpl implements AnalysisTaskService {
         }
         
         try {
+            // 排队期间已被取消的任务不再执行
+            cancellationRegistry.register(taskId).throwIfCancelled();
             // 更新任务状态
             task.setStatus("RUNNING");
             task.setStartedAt(LocalDateTime.now());
             task.setProgress(10);
             analysisTaskMapper.updateById(task);
+            taskEventBus.publish(task, "RUNNING", null);
             
             log.info("开始执行分析任务: taskId={}", taskId);
             
-            String inputFilePath = fileInfo.getFilePath();
             String outputDir = task.getOutputDir();
             
             task.setProgress(20);
             analysisTaskMapper.updateById(task);
+            taskEventBus.publish(task, "ANALYZING", null);
+            // 容器上报的预测进度映射到 20-90%
+            progressTracker.begin(task, "ANALYZING", 20, 90);
+            AnalysisResultReuse.unlinkSharedOutputs(Paths.get(outputDir));
             
             // 执行抗性基因检测
             Map<String, Object> result = dockerService.runArgDetection(taskId, inputFilePath, outputDir, params);
-            
-            // 先落库再标记完成，避免用户点击「查看结果」时拿到不完整数据
-            task.setProgress(90);
-            analysisTaskMapper.updateById(task);
-            log.info("ARG 模型执行完成，开始持久化结果: taskId={}", taskId);
-            
-            try {
-                visualizationService.persistTaskResultsToDb(taskId);
-            } catch (TaskCancelledException e) {
-                log.info("任务已取消，停止落库: taskId={}", taskId);
-                return;
-            } catch (Exception ex) {
-                log.warn("落库失败，使用结果中的数量: taskId={}", taskId, ex);
-                List<Map<String, Object>> argResults = (List<Map<String, Object>>) result.get("argResults");
-                if (argResults != null) {
-                    long argCount = argResults.stream().filter(r -> Boolean.TRUE.equals(r.get("isArg"))).count();
-                    task.setProphageCount((int) argCount);
-                    analysisTaskMapper.updateById(task);
-                }
+            progressTracker.end(taskId);
+            finishAnalysis(taskId, result);
+            indexInputFasta(inputFilePath);
+
+        } catch (TaskCancelledException e) {
+            log.info("任务已取消: taskId={}", taskId);
+        } catch (Exception e) {
+            log.error("分析任务失败: taskId={}", taskId, e);
+            failTask(taskId, e.getMessage());
+        } finally {
+            progressTracker.end(taskId);
+            cancellationRegistry.release(taskId);
+            releaseWaiters(taskId);
+        }
+    }
+
+    /**
+     * 为输入 FASTA 建立序列索引，BLAST 按 ID 提取序列时无需扫描整个文件；失败不影响任务结果，提取时会再尝试
+     */
+    private void indexInputFasta(String inputFilePath) {
+        try {
+            Path input = Paths.get(inputFilePath);
+            if (Files.isRegularFile(input) && !FastaIndex.isValid(input)) {
+                FastaIndex.build(input);
             }
+        } catch (IOException | RuntimeException e) {
+            log.warn("建立 FASTA 索引失败: {}", inputFilePath, e);
+        }
+    }
 
-            // 若已被用户取消，不再覆盖为 COMPLETED
-            task = analysisTaskMapper.selectById(taskId);
-            if (task != null && "CANCELLED".equals(task.getStatus())) {
-                log.info("任务已取消，不更新为完成: taskId={}", taskId);
-                return;
+    /**
+     * 推理完成后落库并标记任务完成
+     * @param result 推理返回的结果，落库失败时用其中的 argResults 计数
+     */
+    private void finishAnalysis(Long taskId, Map<String, Object> result) {
+        AnalysisTask task = analysisTaskMapper.selectById(taskId);
+        if (task == null) {
+            log.error("任务不存在: taskId={}", taskId);
+            return;
+        }
+        // 先落库再标记完成，避免用户点击「查看结果」时拿到不完整数据
+        task.setProgress(90);
+        analysisTaskMapper.updateById(task);
+        taskEventBus.publish(task, "INGESTING", null);
+        log.info("ARG 模型执行完成，开始持久化结果: taskId={}", taskId);
+        
+        try {
+            visualizationService.persistTaskResultsToDb(taskId);
+        } catch (TaskCancelledException e) {
+            log.info("任务已取消，停止落库: taskId={}", taskId);
+            return;
+        } catch (TaskOutputException e) {
+            // 没有可用输出，不能以空结果完成，交给调用方标记失败
+            throw e;
+        } catch (Exception ex) {
+            log.warn("落库失败，使用结果中的数量: taskId={}", taskId, ex);
+            List<Map<String, Object>> argResults = (List<Map<String, Object>>) result.get("argResults");
+            if (argResults != null) {
+                long argCount = argResults.stream().filter(r -> Boolean.TRUE.equals(r.get("isArg"))).count();
+                task.setProphageCount((int) argCount);
+                analysisTaskMapper.updateById(task);
             }
-            // 持久化完成后再标记任务为 COMPLETED，前端此时才能看到完整数据
-            task.setStatus("COMPLETED");
-            task.setProgress(100);
+        }
+
+        // 若已被用户取消，不再覆盖为 COMPLETED
+        task = analysisTaskMapper.selectById(taskId);
+        if (task != null && "CANCELLED".equals(task.getStatus())) {
+            log.info("任务已取消，不更新为完成: taskId={}", taskId);
+            return;
+        }
+        // 持久化完成后再标记任务为 COMPLETED，前端此时才能看到完整数据
+        task.setStatus("COMPLETED");
+        task.setProgress(100);
+        task.setCompletedAt(LocalDateTime.now());
+        analysisTaskMapper.updateById(task);
+        taskEventBus.publish(task, null, null);
+        log.info("分析任务完成（已落库）: taskId={}", taskId);
+    }
+
+    /**
+     * 标记任务失败（已取消的任务保持 CANCELLED）
+     */
+    private void failTask(Long taskId, String message) {
+        AnalysisTask task = analysisTaskMapper.selectById(taskId);
+        if (task != null && !"CANCELLED".equals(task.getStatus())) {
+            task.setStatus("FAILED");
+            task.setErrorMessage(message);
             task.setCompletedAt(LocalDateTime.now());
             analysisTaskMapper.updateById(task);
-            log.info("分析任务完成（已落库）: taskId={}", taskId);
+            taskEventBus.publish(task, null, message);
+        }
+    }
+
+    /**
+     * 合批执行方：整批在一个队列槽位中运行
+     */
+    private final ArgMicroBatcher.BatchRunner batchRunner = new ArgMicroBatcher.BatchRunner() {
+        @Override
+        public void run(Long batchId, List<ArgMicroBatcher.Member> batch) {
+            executeBatch(batchId, batch);
+        }
+
+        @Override
+        public void reject(List<ArgMicroBatcher.Member> batch, RuntimeException e) {
+            log.warn("合批作业提交失败: {}", e.getMessage());
+            batch.forEach(m -> {
+                failTask(m.getTaskId(), e.getMessage());
+                releaseWaiters(m.getTaskId());
+            });
+        }
+    };
+
+    /**
+     * 执行合批任务：合并各任务输入跑一次推理，按序列标签把结果拆回各任务输出目录，再逐个落库
+     * 只有一个任务的批按普通任务执行。推理使用批作业自己的取消令牌，批内最后一个未取消的任务被取消时触发；
+     * 容器上报的进度转给批内每个任务
+     */
+    private void executeBatch(Long batchId, List<ArgMicroBatcher.Member> batch) {
+        if (batch.size() == 1) {
+            ArgMicroBatcher.Member m = batch.get(0);
+            executeAnalysis(m.getTaskId(), m.getInputFilePath(), m.getParams());
+            return;
+        }
+
+        Map<Long, Path> inputs = new LinkedHashMap<>();
+        Map<Long, Path> outputs = new LinkedHashMap<>();
+        for (ArgMicroBatcher.Member m : batch) {
+            AnalysisTask task = analysisTaskMapper.selectById(m.getTaskId());
+            // 跳过入批后被取消的任务
+            if (cancellationRegistry.register(m.getTaskId()).isCancelled()
+                    || task == null || "CANCELLED".equals(task.getStatus())) {
+                cancellationRegistry.release(m.getTaskId());
+                continue;
+            }
+            task.setStatus("RUNNING");
+            task.setStartedAt(LocalDateTime.now());
+            task.setProgress(20);
+            analysisTaskMapper.updateById(task);
+            taskEventBus.publish(task, "ANALYZING", null);
+            progressTracker.begin(task, "ANALYZING", 20, 90);
+            inputs.put(m.getTaskId(), Paths.get(m.getInputFilePath()));
+            outputs.put(m.getTaskId(), Paths.get(task.getOutputDir()));
+        }
+        if (inputs.isEmpty()) return;
+
+        // 批作业令牌：批内任务全部取消时取消，终止推理容器或 worker 作业
+        cancellationRegistry.register(batchId);
+        progressTracker.forward(batchId, outputs.keySet());
+        List<TaskCancellationRegistry.Registration> memberHooks = new ArrayList<>();
+        for (Long id : outputs.keySet()) {
+            memberHooks.add(cancellationRegistry.get(id).onCancel(() -> {
+                if (outputs.keySet().stream().allMatch(cancellationRegistry::isCancelled)) {
+                    cancellationRegistry.cancelIfRegistered(batchId);
+                }
+            }));
+        }
+
+        Path batchDir = Paths.get(outputBaseDir, "batch_" + inputs.keySet().iterator().next() + "_" + System.currentTimeMillis());
+        log.info("开始执行合批推理: tasks={}, dir={}", inputs.keySet(), batchDir);
+        try {
+            Path combined = batchDir.resolve("input.faa");
+            ArgBatchFiles.writeCombinedFasta(inputs, combined);
+            Path batchOutput = batchDir.resolve("output");
+            for (Path dir : outputs.values()) {
+                AnalysisResultReuse.unlinkSharedOutputs(dir);
+            }
+            // 同批成员的分析参数相同（合批按用户与参数分组），取任一成员的即可
+            dockerService.runArgDetection(batchId, combined.toString(), batchOutput.toString(), batch.get(0).getParams(), false);
 
+            int dropped = ArgBatchFiles.demultiplex(batchOutput, outputs);
+            if (dropped > 0) {
+                log.warn("合批结果中有 {} 行无法识别任务标签，已丢弃", dropped);
+            }
+            // 各任务输出目录写入完成标记，落库端无需等待
+            for (Path dir : outputs.values()) {
+                outputReadinessWatcher.markFinished(dir, 0);
+            }
         } catch (TaskCancelledException e) {
-            log.info("任务已取消: taskId={}", taskId);
+            log.info("合批任务已全部取消: batchId={}, tasks={}", batchId, inputs.keySet());
+            outputs.keySet().forEach(id -> {
+                cancellationRegistry.release(id);
+                releaseWaiters(id);
+            });
+            return;
         } catch (Exception e) {
-            log.error("分析任务失败: taskId={}", taskId, e);
-            task = analysisTaskMapper.selectById(taskId);
-            if (task != null && !"CANCELLED".equals(task.getStatus())) {
-                task.setStatus("FAILED");
-                task.setErrorMessage(e.getMessage());
-                task.setCompletedAt(LocalDateTime.now());
-                analysisTaskMapper.updateById(task);
+            log.error("合批推理失败: tasks={}", inputs.keySet(), e);
+            outputs.keySet().forEach(id -> {
+                failTask(id, e.getMessage());
+                cancellationRegistry.release(id);
+                releaseWaiters(id);
+            });
+            return;
+        } finally {
+            memberHooks.forEach(TaskCancellationRegistry.Registration::close);
+            cancellationRegistry.release(batchId);
+            progressTracker.end(batchId);
+            outputs.keySet().forEach(progressTracker::end);
+            try {
+                if (Files.exists(batchDir)) {
+                    Files.walk(batchDir).sorted(Comparator.reverseOrder()).map(Path::toFile).forEach(File::delete);
+                }
+            } catch (Exception e) {
+                log.warn("删除合批临时目录失败: {}", batchDir, e);
+            }
+        }
+
+        for (Long taskId : outputs.keySet()) {
+            try {
+                finishAnalysis(taskId, Collections.emptyMap());
+            } catch (Exception e) {
+                log.error("分析任务失败: taskId={}", taskId, e);
+                failTask(taskId, e.getMessage());
+            } finally {
+                cancellationRegistry.release(taskId);
+                releaseWaiters(taskId);
             }
         }
     }
@@ -502,6 +897,50 @@ public class AnalysisTaskServiceImpl implements AnalysisTaskService {
         }
     }
 
+    /**
+     * 提交任务到调度队列；被拒绝（并发创建导致队列已满）时把任务标记为失败再抛出
+     */
+    private void submitToQueue(AnalysisTask task, int priority, long inputSize, Runnable runnable) {
+        try {
+            taskQueueManager.submitTask(task.getTaskId(), task.getUserId(), priority, inputSize, runnable);
+        } catch (RuntimeException e) {
+            task.setStatus("FAILED");
+            task.setErrorMessage(e.getMessage());
+            task.setCompletedAt(LocalDateTime.now());
+            analysisTaskMapper.updateById(task);
+            taskEventBus.publish(task, null, e.getMessage());
+            throw e;
+        }
+    }
+
+    /**
+     * 读取参数中的 priority（越大越先执行），缺省或非法时为默认优先级
+     * 优先级排在用户公平分配之前，普通用户只能调低自己任务的优先级，高于默认值的优先级仅管理员可用
+     */
+    private int parsePriority(Long userId, Map<String, Object> params) {
+        Object value = params != null ? params.get("priority") : null;
+        int priority = TaskQueueManager.DEFAULT_PRIORITY;
+        if (value instanceof Number) {
+            priority = ((Number) value).intValue();
+        } else if (value != null) {
+            try {
+                priority = Integer.parseInt(value.toString().trim());
+            } catch (NumberFormatException ignored) {
+            }
+        }
+        if (priority > TaskQueueManager.DEFAULT_PRIORITY && !isAdmin(userId)) {
+            log.info("非管理员不能提高任务优先级，按默认优先级排队: userId={}, priority={}", userId, priority);
+            return TaskQueueManager.DEFAULT_PRIORITY;
+        }
+        return priority;
+    }
+
+    private boolean isAdmin(Long userId) {
+        if (userId == null) return false;
+        User user = userMapper.selectById(userId);
+        return user != null && "ADMIN".equals(user.getRole());
+    }
+
     /**
      * 创建 MAG 分析任务
      * @param magDirPath MAG 文件夹路径
@@ -511,17 +950,28 @@ public class AnalysisTaskServiceImpl implements AnalysisTaskService {
      * @return 任务信息
      */
     public Map<String, Object> createMagTask(String magDirPath, Long userId, String magName, Map<String, Object> params) {
-        // 统计 MAG 文件数量
+        // 排队已满时直接拒绝，不写入任务记录（等待合批的任务尚未进入队列，一并计入）
+        taskQueueManager.checkAdmission(userId, 1 + argMicroBatcher.waitingCount(userId));
+
+        // 统计 MAG 文件数量与总大小（总大小用于调度排序）
         int fileCount = 0;
+        long totalSize = 0;
         try {
             Path magDir = Paths.get(magDirPath);
             if (Files.exists(magDir) && Files.isDirectory(magDir)) {
-                fileCount = (int) Files.list(magDir)
-                    .filter(p -> {
-                        String name = p.getFileName().toString().toLowerCase();
-                        return name.endsWith(".fa") || name.endsWith(".fasta") || name.endsWith(".fna");
-                    })
-                    .count();
+                List<Path> fastaFiles;
+                try (Stream<Path> stream = Files.list(magDir)) {
+                    fastaFiles = stream
+                        .filter(p -> {
+                            String name = p.getFileName().toString().toLowerCase();
+                            return name.endsWith(".fa") || name.endsWith(".fasta") || name.endsWith(".fna");
+                        })
+                        .collect(Collectors.toList());
+                }
+                fileCount = fastaFiles.size();
+                for (Path p : fastaFiles) {
+                    totalSize += Files.size(p);
+                }
             }
         } catch (Exception e) {
             log.warn("统计 MAG 文件数量失败", e);
@@ -556,12 +1006,15 @@ public class AnalysisTaskServiceImpl implements AnalysisTaskService {
         task.setTaskName("ARG - mag_" + task.getTaskId());
         String outputDir = outputBaseDir + File.separator + "task_" + task.getTaskId();
         task.setOutputDir(outputDir);
+        // MAG 的 ARG 容器输出在 arg 子目录（Prodigal 每个文件的输出在 prodigal/{文件名}.log）
+        task.setLogFile(outputDir + File.separator + "arg" + File.separator + ContainerLog.FILE_NAME);
         analysisTaskMapper.updateById(task);
+        taskEventBus.publish(task, "QUEUED", null);
         
         log.info("创建 MAG 分析任务: taskId={}, magDir={}, userId={}", task.getTaskId(), magDirPath, userId);
         
         // 异步执行 MAG 分析任务
-        taskQueueManager.submitTask(task.getTaskId(), 
+        submitToQueue(task, parsePriority(userId, params), totalSize,
                 () -> executeMagAnalysis(task.getTaskId(), magDirPath, params));
         
         return convertTaskToMap(task, magName);
@@ -578,11 +1031,14 @@ public class AnalysisTaskServiceImpl implements AnalysisTaskService {
         }
         
         try {
+            // 排队期间已被取消的任务不再执行
+            cancellationRegistry.register(taskId).throwIfCancelled();
             // 更新任务状态
             task.setStatus("RUNNING");
             task.setStartedAt(LocalDateTime.now());
             task.setProgress(0);
             analysisTaskMapper.updateById(task);
+            taskEventBus.publish(task, "RUNNING", null);
             
             log.info("开始执行 MAG 分析任务: taskId={}", taskId);
             
@@ -595,6 +1051,7 @@ public class AnalysisTaskServiceImpl implements AnalysisTaskService {
             // 先落库再标记完成，避免用户点击「查看结果」时拿到不完整数据
             task.setProgress(90);
             analysisTaskMapper.updateById(task);
+            taskEventBus.publish(task, "INGESTING", null);
             log.info("MAG 分析执行完成，开始持久化结果: taskId={}", taskId);
             
             try {
@@ -602,6 +1059,8 @@ public class AnalysisTaskServiceImpl implements AnalysisTaskService {
             } catch (TaskCancelledException e) {
                 log.info("MAG 任务已取消，停止落库: taskId={}", taskId);
                 return;
+            } catch (TaskOutputException e) {
+                throw e;
             } catch (Exception ex) {
                 log.warn("落库失败，使用结果中的数量: taskId={}", taskId, ex);
                 Object argCountObj = result.get("argCount");
@@ -620,6 +1079,7 @@ public class AnalysisTaskServiceImpl implements AnalysisTaskService {
             task.setProgress(100);
             task.setCompletedAt(LocalDateTime.now());
             analysisTaskMapper.updateById(task);
+            taskEventBus.publish(task, null, null);
             log.info("MAG 分析任务完成（已落库）: taskId={}", taskId);
 
         } catch (TaskCancelledException e) {
@@ -632,7 +1092,10 @@ public class AnalysisTaskServiceImpl implements AnalysisTaskService {
                 task.setErrorMessage(e.getMessage());
                 task.setCompletedAt(LocalDateTime.now());
                 analysisTaskMapper.updateById(task);
+                taskEventBus.publish(task, null, e.getMessage());
             }
+        } finally {
+            cancellationRegistry.release(taskId);
         }
     }
 }
@@ -0,0 +1,67 @@
+package com.sy.service.impl;
+
+import com.sy.exception.TaskCancelledException;
+import com.sy.mapper.AllPredictionMapper;
+import com.sy.pojo.AllPrediction;
+import com.sy.service.IngestSummary;
+import com.sy.service.PredictionIngestStrategy;
+import com.sy.util.PredictionTsvCursor;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 批量 INSERT 落库策略（兜底方案）
+ * 按批构造 AllPrediction，通过 AllPredictionMapper.insertBatch 一条 SQL 写入多行
+ */
+@Component
+@RequiredArgsConstructor
+public class BatchInsertIngestStrategy implements PredictionIngestStrategy {
+
+    /**
+     * 落库批量大小：一条 SQL 插入多行。
+     * 注意：单条 INSERT 的体积不能超过 MySQL 的 max_allowed_packet（当前约 64MB），
+     * 每条记录包含完整 sequence_id 等字段，实际大小可能较大，因此这里采用保守值 5000，
+     * 对于百万级结果集，大约需要 200 次 INSERT，既安全又足够快。
+     */
+    static final int BATCH_SIZE = 5_000;
+
+    private final AllPredictionMapper allPredictionMapper;
+
+    @Override
+    public String mode() {
+        return "batch";
+    }
+
+    @Override
+    public IngestSummary ingest(Long taskId, Path allPredictionsFile, BooleanSupplier cancelled) throws Exception {
+        IngestSummary summary = new IngestSummary();
+        List<AllPrediction> batch = new ArrayList<>(BATCH_SIZE);
+        try (PredictionTsvCursor cursor = PredictionTsvCursor.open(allPredictionsFile)) {
+            while (cursor.next()) {
+                // 每批插入前检查是否已取消，避免取消后仍落库并最终覆盖为 COMPLETED
+                if (batch.size() >= BATCH_SIZE) {
+                    flush(taskId, batch, cancelled);
+                }
+                batch.add(cursor.toPrediction(taskId));
+                summary.record(cursor);
+            }
+        }
+        if (!batch.isEmpty()) {
+            flush(taskId, batch, cancelled);
+        }
+        return summary;
+    }
+
+    private void flush(Long taskId, List<AllPrediction> batch, BooleanSupplier cancelled) {
+        if (cancelled.getAsBoolean()) {
+            throw new TaskCancelledException(taskId);
+        }
+        allPredictionMapper.insertBatch(batch);
+        batch.clear();
+    }
+}
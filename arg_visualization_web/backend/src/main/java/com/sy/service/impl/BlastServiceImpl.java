@@ -5,6 +5,7 @@ import com.sy.mapper.GenomeFileMapper;
 import com.sy.pojo.AnalysisTask;
 import com.sy.pojo.GenomeFile;
 import com.sy.service.BlastService;
+import com.sy.util.FastaIndex;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -112,12 +113,12 @@ public class BlastServiceImpl implements BlastService {
                 if (seq != null) return seq;
             }
             
-            // 再尝试各个单独的 .faa 文件
+            // 再尝试各个单独的 .faa 文件（逐行扫描，不为每个 bin 建索引）
             if (Files.exists(prodigalDir)) {
                 try (DirectoryStream<Path> stream = Files.newDirectoryStream(prodigalDir, "*.faa")) {
                     for (Path faaFile : stream) {
                         if (!faaFile.getFileName().toString().equals("merged.faa")) {
-                            String seq = extractSequenceFromFasta(faaFile, sequenceId);
+                            String seq = scanFastaForSequence(faaFile, sequenceId);
                             if (seq != null) return seq;
                         }
                     }
@@ -164,8 +165,41 @@ public class BlastServiceImpl implements BlastService {
 
     /**
      * 从 FASTA 文件中提取指定 ID 的序列
+     * 通过 {文件名}.idx 索引定位记录后按偏移读取（merged.faa 的索引在合并时写出，其他文件首次查找时建立），
+     * 索引无法建立时（如目录不可写）退回逐行扫描。
+     * 与逐行扫描一样同时接受 ID 与完整序列头：索引按 ID 建立，按完整序列头查找且索引命中的记录序列头不符时
+     * （ID 重复，索引只记录第一条）退回逐行扫描。
      */
     private String extractSequenceFromFasta(Path fastaFile, String targetId) {
+        try {
+            if (!FastaIndex.isValid(fastaFile)) {
+                log.info("建立 FASTA 索引: {}", fastaFile);
+                FastaIndex.build(fastaFile);
+            }
+            String id = targetId.trim().split("\\s+")[0];
+            String record = FastaIndex.readRecord(fastaFile, id);
+            if (record != null) {
+                String[] lines = record.split("\n");
+                String header = lines[0].substring(1).trim();
+                if (id.equals(targetId) || header.equals(targetId)) {
+                    StringBuilder sequence = new StringBuilder();
+                    for (int i = 1; i < lines.length; i++) {
+                        sequence.append(lines[i].trim());
+                    }
+                    return sequence.length() > 0 ? sequence.toString() : null;
+                }
+            }
+            return id.equals(targetId) ? null : scanFastaForSequence(fastaFile, targetId);
+        } catch (IOException e) {
+            log.warn("FASTA 索引不可用，逐行扫描: {}", fastaFile, e);
+            return scanFastaForSequence(fastaFile, targetId);
+        }
+    }
+
+    /**
+     * 逐行扫描 FASTA 文件提取指定 ID 的序列
+     */
+    private String scanFastaForSequence(Path fastaFile, String targetId) {
         try (BufferedReader reader = Files.newBufferedReader(fastaFile)) {
             String line;
             StringBuilder sequence = new StringBuilder();
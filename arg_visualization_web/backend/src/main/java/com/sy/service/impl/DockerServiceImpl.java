@@ -1,6 +1,17 @@
 package com.sy.service.impl;
 
+import com.sy.exception.TaskCancelledException;
+import com.sy.service.ArgWorkerPool;
+import com.sy.service.ContainerResourceLedger;
 import com.sy.service.DockerService;
+import com.sy.service.OutputReadinessWatcher;
+import com.sy.service.TaskCancellationRegistry;
+import com.sy.service.TaskProgressTracker;
+import com.sy.util.ArgBatchFiles;
+import com.sy.util.ArgChunkResults;
+import com.sy.util.ContainerLog;
+import com.sy.util.FastaSharder;
+import com.sy.util.ProgressLine;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,9 +20,19 @@ import org.springframework.stereotype.Service;
 
 import java.io.*;
 import java.lang.reflect.Field;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
 
 /**
  * Docker 服务实现 - ARG 抗性基因检测
@@ -22,8 +43,16 @@ import java.util.concurrent.TimeUnit;
 public class DockerServiceImpl implements DockerService {
 
     private static final Logger log = LoggerFactory.getLogger(DockerServiceImpl.class);
+
+    /** 分片推理的分片输入与各分片输出目录（输出目录下），合并成功后删除 */
+    private static final String SHARD_DIR = "shards";
     
     private final VisualizationServiceImpl visualizationService;
+    private final OutputReadinessWatcher outputReadinessWatcher;
+    private final ContainerResourceLedger resourceLedger;
+    private final ArgWorkerPool argWorkerPool;
+    private final TaskCancellationRegistry cancellationRegistry;
+    private final TaskProgressTracker progressTracker;
 
     @Value("${docker.enabled:false}")
     private boolean dockerEnabled;
@@ -47,11 +76,29 @@ public class DockerServiceImpl implements DockerService {
     @Value("${docker.arg.use-gpu:true}")
     private boolean useGpu;
 
+    // 每个 ARG 容器预留的资源
+    @Value("${docker.arg.cpus:2}")
+    private double argCpus;
+
+    @Value("${docker.arg.memory-mb:4096}")
+    private long argMemoryMb;
+
+    /** 分片推理：大输入按残基数切成 count 片，在 count 个容器中并行推理后按原顺序合并 */
+    @Value("${docker.arg.shard.enabled:false}")
+    private boolean shardEnabled;
+
+    @Value("${docker.arg.shard.count:4}")
+    private int shardCount;
+
+    @Value("${docker.arg.shard.min-input-bytes:52428800}")
+    private long shardMinInputBytes;
+
     @Value("${analysis.timeout:3600}")
     private int timeoutSeconds;
 
-    // 保存正在运行的任务进程（taskId -> Process）
-    private final Map<Long, Process> runningProcesses = new ConcurrentHashMap<>();
+    /** 容器 stdout/stderr 各在内存中保留的最近行数，完整输出写入输出目录的 container.log */
+    @Value("${docker.log-tail-lines:200}")
+    private int logTailLines;
 
     /**
      * 运行抗性基因检测（ARG）
@@ -63,6 +110,7 @@ public class DockerServiceImpl implements DockerService {
 
     /**
      * 运行抗性基因检测（带任务ID，用于取消功能）
+     * @param taskId 任务 ID；合批作业传批作业 ID（负数），取消令牌、worker 作业与进度均按该 ID 处理
      * @param parseOutput 是否解析 TSV 并返回完整结果；MAG 场景传 false，由后续 persistTaskResultsToDb 落库，避免大结果集进内存
      */
     public Map<String, Object> runArgDetection(Long taskId, String inputFilePath, String outputDir, Map<String, Object> params, boolean parseOutput) {
@@ -70,6 +118,19 @@ public class DockerServiceImpl implements DockerService {
 
         if (!dockerEnabled) {
             log.warn("Docker 未启用，返回模拟数据");
+            // 没有真实输出：写入只有表头的预测表与完成标记，落库端按空结果处理，无需等待超时
+            Path mockDir = Paths.get(outputDir);
+            if (Files.isDirectory(mockDir)) {
+                try {
+                    Path predictions = mockDir.resolve("all_predictions.tsv");
+                    if (!Files.exists(predictions)) {
+                        Files.writeString(predictions, ArgBatchFiles.PREDICTION_HEADER + "\n", StandardCharsets.UTF_8);
+                    }
+                } catch (IOException e) {
+                    log.warn("写入模拟预测表失败: {}", outputDir, e);
+                }
+                outputReadinessWatcher.markFinished(mockDir, 0);
+            }
             return generateMockResult();
         }
 
@@ -80,10 +141,40 @@ public class DockerServiceImpl implements DockerService {
                 log.info("创建输出目录: {}", outputDir);
             }
 
-            String command = buildArgCommand(inputFilePath, outputDir, params);
-            log.info("执行命令: {}", command);
-
-            ProcessResult result = executeCommand(command, taskId);
+            outputReadinessWatcher.clearMarker(outputDirFile.toPath());
+            TaskCancellationRegistry.Token token = cancellationRegistry.get(taskId);
+            token.throwIfCancelled();
+            ProcessResult result = null;
+            // 达到分片阈值的大输入先分片并行推理（单个常驻 worker 串行处理反而更慢），未达到时返回 null
+            if (shardEnabled) {
+                result = runSharded(taskId, inputFilePath, outputDir, params, token);
+            }
+            // 常驻 worker 模式：模型已加载，直接派发作业；不可用时退回单次 docker run
+            if (result == null) {
+                Integer workerExitCode;
+                try (TaskCancellationRegistry.Registration ignored = token.onCancel(() -> argWorkerPool.cancel(taskId))) {
+                    workerExitCode = argWorkerPool.run(taskId, inputFilePath, outputDir, timeoutSeconds);
+                }
+                if (workerExitCode != null) {
+                    result = new ProcessResult(workerExitCode, "", workerExitCode == 0 ? "" : "worker 作业失败，详见后端日志");
+                }
+            }
+            if (result == null) {
+                // 先在资源台账预留 CPU/内存（/GPU），资源不足时排队，容器退出后归还
+                int gpus = useGpu && resourceLedger.getGpuSlots() > 0 ? 1 : 0;
+                try (ContainerResourceLedger.Reservation reservation =
+                             resourceLedger.reserve("arg:" + jobLabel(taskId), argCpus, argMemoryMb, gpus)) {
+                    token.throwIfCancelled();
+                    String command = buildArgCommand(inputFilePath, outputDir, params, reservation);
+                    log.info("执行命令: {}", command);
+                    result = executeCommand(taskId, command, token, Paths.get(outputDir, ContainerLog.FILE_NAME),
+                            line -> progressTracker.accept(taskId, line));
+                }
+            }
+            // 被取消而终止的容器不算执行失败
+            token.throwIfCancelled();
+            // docker run 返回即容器已退出、输出文件已关闭，写入带退出码的完成标记通知落库端
+            outputReadinessWatcher.markFinished(outputDirFile.toPath(), result.exitCode);
 
             if (result.exitCode != 0) {
                 log.error("ARG 执行失败，退出码: {}", result.exitCode);
@@ -103,12 +194,126 @@ public class DockerServiceImpl implements DockerService {
             minimal.put("argResults", Collections.emptyList());
             minimal.put("argCount", null);
             return minimal;
+        } catch (TaskCancelledException e) {
+            throw e;
         } catch (Exception e) {
             log.error("ARG Docker 分析失败", e);
             throw new RuntimeException("分析失败: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * 分片推理：输入不小于 min-input-bytes 时按记录边界切成 count 个残基数均衡的连续分片（outputDir/shards），
+     * 每个分片一个容器并行推理，各自在资源台账预留资源（不足时排队）；全部成功后按分片顺序把输出追加回 outputDir，
+     * 行序与单容器运行一致，class_summary.tsv 按合并后的 ARG 行重新统计。各分片上报的进度汇总后交给 progressTracker。
+     * @return 输入未达到阈值或无法切分时返回 null，由调用方交给常驻 worker 或单容器运行
+     */
+    private ProcessResult runSharded(Long taskId, String inputFilePath, String outputDir, Map<String, Object> params,
+                                     TaskCancellationRegistry.Token token) throws Exception {
+        Path input = Paths.get(inputFilePath);
+        if (shardCount <= 1 || Files.size(input) < shardMinInputBytes) return null;
+        Path shardDir = Paths.get(outputDir, SHARD_DIR);
+        List<Path> shards = FastaSharder.split(input, shardCount, shardDir, "shard");
+        if (shards.size() <= 1) return null;
+        log.info("分片推理: taskId={}, 输入 {} MB，{} 个分片", taskId, Files.size(input) / 1024 / 1024, shards.size());
+
+        List<Path> shardOutputs = new ArrayList<>();
+        long[] done = new long[shards.size()];
+        long[] total = new long[shards.size()];
+        // 线程数与分片数相同，按提交顺序创建，线程序号即分片序号
+        AtomicInteger threadSeq = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(shards.size(), r -> {
+            Thread t = new Thread(r, "arg-shard-" + jobLabel(taskId) + "-" + threadSeq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        try {
+            List<Future<ProcessResult>> futures = new ArrayList<>();
+            for (int i = 0; i < shards.size(); i++) {
+                int index = i;
+                Path shardInput = shards.get(i);
+                Path shardOutput = shardDir.resolve(String.format("shard_%03d", i + 1));
+                shardOutputs.add(shardOutput);
+                Predicate<String> progressFilter = line -> {
+                    ProgressLine progress = ProgressLine.parse(line);
+                    if (progress == null) return false;
+                    ProgressLine sum;
+                    synchronized (done) {
+                        done[index] = progress.getDone();
+                        total[index] = progress.getTotal();
+                        sum = new ProgressLine(progress.getStage(), Arrays.stream(done).sum(), Arrays.stream(total).sum());
+                    }
+                    progressTracker.accept(taskId, sum);
+                    return true;
+                };
+                futures.add(pool.submit(() -> {
+                    Files.createDirectories(shardOutput);
+                    int gpus = useGpu && resourceLedger.getGpuSlots() > 0 ? 1 : 0;
+                    try (ContainerResourceLedger.Reservation reservation = resourceLedger.reserve(
+                            "arg:" + jobLabel(taskId) + "#" + (index + 1), argCpus, argMemoryMb, gpus)) {
+                        token.throwIfCancelled();
+                        String command = buildArgCommand(shardInput.toString(), shardOutput.toString(), params, reservation);
+                        log.info("执行命令: {}", command);
+                        return executeCommand(taskId, command, token, shardOutput.resolve(ContainerLog.FILE_NAME),
+                                progressFilter);
+                    }
+                }));
+            }
+
+            // 等待全部分片结束（中途返回会让仍在运行的容器失去等待方），取第一个失败作为结果
+            ProcessResult failed = null;
+            Exception error = null;
+            for (Future<ProcessResult> future : futures) {
+                try {
+                    ProcessResult r = future.get();
+                    if (r.exitCode != 0 && failed == null) failed = r;
+                } catch (ExecutionException e) {
+                    if (error == null) {
+                        error = e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+                    }
+                }
+            }
+            token.throwIfCancelled();
+            if (error != null) throw error;
+            if (failed != null) return failed;
+
+            ArgChunkResults results = new ArgChunkResults(Paths.get(outputDir));
+            for (Path shardOutput : shardOutputs) {
+                results.append(shardOutput);
+            }
+            results.finish();
+            log.info("分片推理完成: taskId={}, 预测 {} 条", taskId, results.getPredictions());
+            deleteTree(shardDir);
+            return new ProcessResult(0, "", "");
+        } finally {
+            pool.shutdownNow();
+            for (Path shard : shards) {
+                Files.deleteIfExists(shard);
+            }
+        }
+    }
+
+    /**
+     * 资源台账与线程名中的作业标识：合批作业 ID 为负数，显示为 batch_N
+     */
+    private static String jobLabel(Long taskId) {
+        return taskId != null && taskId < 0 ? "batch_" + (-taskId) : "task_" + taskId;
+    }
+
+    private void deleteTree(Path dir) {
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException e) {
+                    log.warn("删除分片文件失败: {}", p, e);
+                }
+            });
+        } catch (IOException e) {
+            log.warn("删除分片目录失败: {}", dir, e);
+        }
+    }
+
     /** 兼容旧调用：默认解析输出并返回完整结果 */
     public Map<String, Object> runArgDetection(Long taskId, String inputFilePath, String outputDir, Map<String, Object> params) {
         return runArgDetection(taskId, inputFilePath, outputDir, params, true);
@@ -116,9 +321,10 @@ public class DockerServiceImpl implements DockerService {
 
     /**
      * 构建 ARG 命令
-     * docker run --rm --gpus all -v {inputDir}:/input:ro -v {outputDir}:/output arg-bilstm:gpu end-to-end /input/{file} /output /app/models
+     * docker run --rm --cpus=N --memory=Mm [--gpus device=K] -v {inputDir}:/input:ro -v {outputDir}:/output arg-bilstm:gpu end-to-end /input/{file} /output /app/models
      */
-    private String buildArgCommand(String inputFilePath, String outputDir, Map<String, Object> params) {
+    private String buildArgCommand(String inputFilePath, String outputDir, Map<String, Object> params,
+                                   ContainerResourceLedger.Reservation reservation) {
         File inputFile = new File(inputFilePath);
         String inputDir = inputFile.getParent();
         String inputFileName = inputFile.getName();
@@ -136,10 +342,8 @@ public class DockerServiceImpl implements DockerService {
         // docker run --rm
         cmd.append("docker run --rm ");
 
-        // GPU 支持
-        // if (useGpu) {
-        //     cmd.append("--gpus all ");
-        // }
+        // 资源限制（与台账预留量一致）；GPU 仅在配置了 docker.resources.gpu-slots 时按槽位分配
+        cmd.append(reservation.dockerFlags());
 
         // 挂载输入目录（只读）
         cmd.append("-v ").append(normalizedInputDir).append(":").append(argInputMount).append(":ro ");
@@ -187,9 +391,13 @@ public class DockerServiceImpl implements DockerService {
     }
 
     /**
-     * 执行命令
+     * 执行命令，取消令牌触发时终止进程
+     * stdout 中的 [PROGRESS] 行交给 progressFilter（合并写库），其余输出完整写入 logFile，
+     * 返回的 stdout/stderr 只含最近 log-tail-lines 行
+     * @param progressFilter 处理 stdout 中的进度行，返回 true 的行不再写入日志
      */
-    private ProcessResult executeCommand(String command, Long taskId) throws Exception {
+    private ProcessResult executeCommand(Long taskId, String command, TaskCancellationRegistry.Token token,
+                                         Path logFile, Predicate<String> progressFilter) throws Exception {
         ProcessBuilder pb = new ProcessBuilder();
 
         // 根据命令前缀判断执行方式
@@ -203,62 +411,36 @@ public class DockerServiceImpl implements DockerService {
         pb.redirectErrorStream(false);
         Process process = pb.start();
 
-        // 保存进程引用
-        if (taskId != null) {
-            runningProcesses.put(taskId, process);
-            log.info("保存任务进程引用: taskId={}", taskId);
-        }
-
-        // 读取输出
-        StringBuilder stdout = new StringBuilder();
-        StringBuilder stderr = new StringBuilder();
-
-        Thread stdoutThread = new Thread(() -> {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    stdout.append(line).append("\n");
-                    log.debug("[stdout] {}", line);
-                }
-            } catch (IOException e) {
-                log.error("读取 stdout 失败", e);
+        // 读取输出：完整输出写入日志文件，内存中只保留尾部；应用日志只在 debug 级别逐行记录
+        try (ContainerLog containerLog = new ContainerLog(logFile, logTailLines)) {
+            Thread stdoutThread = containerLog.pump(process.getInputStream(), false, line -> {
+                if (progressFilter.test(line)) return true;
+                log.debug("[stdout] {}", line);
+                return false;
+            });
+            Thread stderrThread = containerLog.pump(process.getErrorStream(), true, line -> {
+                log.debug("[stderr] {}", line);
+                return false;
+            });
+
+            // 等待进程结束；取消时由令牌回调终止进程，waitFor 随即返回
+            boolean finished;
+            try (TaskCancellationRegistry.Registration ignored = token.onCancel(() -> destroyProcess(process))) {
+                finished = process.waitFor(timeoutSeconds, TimeUnit.SECONDS);
             }
-        });
 
-        Thread stderrThread = new Thread(() -> {
-            try (BufferedReader reader = new BufferedReader(new InputStreamReader(process.getErrorStream()))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    stderr.append(line).append("\n");
-                    log.warn("[stderr] {}", line);
-                }
-            } catch (IOException e) {
-                log.error("读取 stderr 失败", e);
+            if (!finished) {
+                process.destroyForcibly();
+                throw new RuntimeException("任务超时（超过 " + timeoutSeconds + " 秒）");
             }
-        });
 
-        stdoutThread.start();
-        stderrThread.start();
+            stdoutThread.join(5000);
+            stderrThread.join(5000);
 
-        // 等待进程结束
-        boolean finished = process.waitFor(timeoutSeconds, TimeUnit.SECONDS);
+            int exitCode = process.exitValue();
 
-        if (!finished) {
-            process.destroyForcibly();
-            throw new RuntimeException("任务超时（超过 " + timeoutSeconds + " 秒）");
-        }
-
-        stdoutThread.join(5000);
-        stderrThread.join(5000);
-
-        int exitCode = process.exitValue();
-
-        // 移除进程引用
-        if (taskId != null) {
-            runningProcesses.remove(taskId);
+            return new ProcessResult(exitCode, containerLog.stdoutTail(), containerLog.stderrTail());
         }
-
-        return new ProcessResult(exitCode, stdout.toString(), stderr.toString());
     }
 
     /**
@@ -313,28 +495,24 @@ public class DockerServiceImpl implements DockerService {
 
     @Override
     public void cancelAnalysis(Long taskId) {
-        Process process = runningProcesses.get(taskId);
-        if (process != null) {
-            try {
-                log.info("正在终止任务进程: taskId={}", taskId);
-
-                if (process.isAlive()) {
-                    process.destroy();
-                    boolean terminated = process.waitFor(5, TimeUnit.SECONDS);
-                    if (!terminated) {
-                        process.destroyForcibly();
-                    }
-                }
-
-                runningProcesses.remove(taskId);
-                log.info("任务进程已终止: taskId={}", taskId);
+        // 触发取消令牌：常驻 worker 上的作业重建该 worker，单次容器进程直接终止
+        cancellationRegistry.cancelIfRegistered(taskId);
+    }
 
-            } catch (Exception e) {
-                log.error("终止任务进程失败: taskId={}", taskId, e);
-                runningProcesses.remove(taskId);
+    /**
+     * 终止容器进程：先正常结束，5 秒内未退出则强制结束
+     */
+    private void destroyProcess(Process process) {
+        if (!process.isAlive()) return;
+        log.info("正在终止容器进程: pid={}", process.pid());
+        process.destroy();
+        try {
+            if (!process.waitFor(5, TimeUnit.SECONDS)) {
+                process.destroyForcibly();
             }
-        } else {
-            log.warn("未找到任务进程: taskId={}", taskId);
+        } catch (InterruptedException e) {
+            process.destroyForcibly();
+            Thread.currentThread().interrupt();
         }
     }
 
@@ -6,6 +6,7 @@ import com.sy.pojo.AnalysisTask;
 import com.sy.pojo.GenomeFile;
 import com.sy.service.AnalysisTaskService;
 import com.sy.service.GenomeFileService;
+import com.sy.util.FastaIndex;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -15,10 +16,15 @@ import org.springframework.web.multipart.MultipartFile;
 
 import java.io.File;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestInputStream;
 import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
@@ -58,31 +64,42 @@ public class GenomeFileServiceImpl implements GenomeFileService {
             // 验证文件
             validateFile(file);
             
-            // 计算文件MD5
-            String md5Hash = calculateMD5(file.getBytes());
+            // 创建上传目录
+            Path uploadPath = Paths.get(uploadDir);
+            Files.createDirectories(uploadPath);
+
+            // 边写临时文件边计算 MD5，只读一遍上传流，不把整个文件读进内存
+            Path tmpFile = Files.createTempFile(uploadPath, "upload_", ".tmp");
+            String md5Hash;
+            try {
+                md5Hash = copyWithMD5(file, tmpFile);
+            } catch (IOException | RuntimeException e) {
+                Files.deleteIfExists(tmpFile);
+                throw e;
+            }
             
             // 检查是否已存在相同文件（去重）
             GenomeFile existingFile = genomeFileMapper.findByMd5Hash(md5Hash, userId);
             if (existingFile != null) {
+                Files.deleteIfExists(tmpFile);
                 log.info("文件已存在，返回已有文件信息: {}", existingFile.getFileId());
                 return convertToMap(existingFile);
             }
             
-            // 创建上传目录
-            File uploadPath = new File(uploadDir);
-            if (!uploadPath.exists()) {
-                uploadPath.mkdirs();
-            }
-            
             // 生成唯一文件名
             String originalFilename = file.getOriginalFilename();
             String extension = getFileExtension(originalFilename);
             String timestamp = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyyMMddHHmmss"));
             String newFilename = "genome_" + userId + "_" + timestamp + "." + extension;
             
-            // 保存文件
+            // 保存文件：临时文件改名为正式文件名
             Path filePath = Paths.get(uploadDir, newFilename);
-            Files.write(filePath, file.getBytes());
+            try {
+                Files.move(tmpFile, filePath, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                Files.deleteIfExists(tmpFile);
+                throw e;
+            }
             
             // 创建数据库记录
             GenomeFile genomeFile = new GenomeFile();
@@ -163,10 +180,12 @@ public class GenomeFileServiceImpl implements GenomeFileService {
             analysisTaskService.deleteTasksAndRelatedDataBatch(tasks);
         }
 
-        // 2. 删除物理基因文件
+        // 2. 删除物理基因文件及其序列索引
         if (file.getFilePath() != null) {
             try {
-                Files.deleteIfExists(Paths.get(file.getFilePath()));
+                Path filePath = Paths.get(file.getFilePath());
+                Files.deleteIfExists(filePath);
+                Files.deleteIfExists(FastaIndex.indexPath(filePath));
                 log.info("删除物理文件: {}", file.getFilePath());
             } catch (IOException e) {
                 log.error("删除物理文件失败: {}", file.getFilePath(), e);
@@ -269,21 +288,20 @@ public class GenomeFileServiceImpl implements GenomeFileService {
     }
     
     /**
-     * 计算文件MD5
+     * 把上传内容写入 target，同时用 DigestInputStream 计算 MD5
      */
-    private String calculateMD5(byte[] fileBytes) {
+    private String copyWithMD5(MultipartFile file, Path target) throws IOException {
+        MessageDigest md;
         try {
-            MessageDigest md = MessageDigest.getInstance("MD5");
-            byte[] digest = md.digest(fileBytes);
-            StringBuilder sb = new StringBuilder();
-            for (byte b : digest) {
-                sb.append(String.format("%02x", b));
-            }
-            return sb.toString();
-        } catch (Exception e) {
-            log.error("计算MD5失败", e);
-            return null;
+            md = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        try (InputStream in = new DigestInputStream(file.getInputStream(), md);
+             OutputStream out = Files.newOutputStream(target)) {
+            in.transferTo(out);
         }
+        return HexFormat.of().formatHex(md.digest());
     }
     
     /**
@@ -0,0 +1,218 @@
+package com.sy.service.impl;
+
+import com.mysql.cj.jdbc.JdbcStatement;
+import com.sy.exception.TaskCancelledException;
+import com.sy.service.IngestSummary;
+import com.sy.service.PredictionIngestStrategy;
+import com.sy.util.PredictionTsvCursor;
+import com.sy.util.TsvReader;
+import lombok.RequiredArgsConstructor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import javax.sql.DataSource;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.sql.Connection;
+import java.sql.Statement;
+import java.util.function.BooleanSupplier;
+
+/**
+ * LOAD DATA LOCAL INFILE 落库策略
+ * 边读 all_predictions.tsv 边把规范化后的行编码为 LOAD DATA 格式，通过 JDBC 输入流直接发给 MySQL，
+ * 不构造 AllPrediction 对象，也不拼接大 SQL。
+ * 前提：JDBC URL 带 allowLoadLocalInfile=true，且 MySQL 服务端开启 local_infile=ON。
+ */
+@Component
+@RequiredArgsConstructor
+public class LoadDataIngestStrategy implements PredictionIngestStrategy {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadDataIngestStrategy.class);
+
+    /** 文件名仅作占位，实际数据来自 setLocalInfileInputStream 提供的流 */
+    private static final String LOAD_SQL =
+            "LOAD DATA LOCAL INFILE 'all_predictions.tsv' INTO TABLE all_predictions " +
+            "CHARACTER SET utf8mb4 " +
+            "FIELDS TERMINATED BY '\\t' ESCAPED BY '\\\\' " +
+            "LINES TERMINATED BY '\\n' " +
+            "(task_id, row_index, sequence_id, is_arg, binary_prob, arg_class, class_prob)";
+
+    private final DataSource dataSource;
+
+    @Override
+    public String mode() {
+        return "load-data";
+    }
+
+    @Override
+    public IngestSummary ingest(Long taskId, Path allPredictionsFile, BooleanSupplier cancelled) throws Exception {
+        IngestSummary summary = new IngestSummary();
+        try (PredictionTsvCursor cursor = PredictionTsvCursor.open(allPredictionsFile);
+             PredictionRowInputStream in = new PredictionRowInputStream(taskId, cursor, summary, cancelled);
+             Connection conn = dataSource.getConnection();
+             Statement stmt = conn.createStatement()) {
+            stmt.unwrap(JdbcStatement.class).setLocalInfileInputStream(in);
+            long loaded = stmt.executeLargeUpdate(LOAD_SQL);
+            if (in.cancelled) {
+                throw new TaskCancelledException(taskId);
+            }
+            log.debug("LOAD DATA 完成: taskId={}, rows={}", taskId, loaded);
+        }
+        return summary;
+    }
+
+    /**
+     * 把 PredictionTsvCursor 的行按 LOAD DATA 格式编码成字节流：
+     * 字段以 \t 分隔、行以 \n 结尾，NULL 写作 \N，字段内的反斜杠、制表符、换行按 ESCAPED BY '\\' 转义。
+     * 直接从 TsvReader 的字节视图拷贝字段，数值字段校验可解析后原样转发，整个过程不创建逐字段 String。
+     * 每 BATCH_SIZE 行检查一次取消；取消时提前返回 EOF，由外层判断后抛出 TaskCancelledException。
+     */
+    private static class PredictionRowInputStream extends InputStream {
+
+        private static final byte[] NULL = {'\\', 'N'};
+
+        private final byte[] taskIdBytes;
+        private final PredictionTsvCursor cursor;
+        private final IngestSummary summary;
+        private final BooleanSupplier cancelledCheck;
+        private byte[] buf = new byte[256];
+        private int len;
+        private int pos;
+        private boolean eof;
+        volatile boolean cancelled;
+
+        PredictionRowInputStream(Long taskId, PredictionTsvCursor cursor, IngestSummary summary, BooleanSupplier cancelledCheck) {
+            this.taskIdBytes = String.valueOf(taskId).getBytes(StandardCharsets.US_ASCII);
+            this.cursor = cursor;
+            this.summary = summary;
+            this.cancelledCheck = cancelledCheck;
+        }
+
+        @Override
+        public int read() throws IOException {
+            if (!fill()) return -1;
+            return buf[pos++] & 0xff;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int n) throws IOException {
+            if (n == 0) return 0;
+            int copied = 0;
+            while (copied < n && fill()) {
+                int chunk = Math.min(n - copied, len - pos);
+                System.arraycopy(buf, pos, b, off + copied, chunk);
+                pos += chunk;
+                copied += chunk;
+            }
+            return copied == 0 ? -1 : copied;
+        }
+
+        /** 当前行已读完时编码下一行，返回是否还有数据 */
+        private boolean fill() throws IOException {
+            while (pos >= len) {
+                if (eof) return false;
+                if (!cursor.next()) {
+                    eof = true;
+                    return false;
+                }
+                if (cursor.rowIndex() % BatchInsertIngestStrategy.BATCH_SIZE == 0 && cancelledCheck.getAsBoolean()) {
+                    cancelled = true;
+                    eof = true;
+                    return false;
+                }
+                summary.record(cursor);
+                encodeCurrentRow();
+            }
+            return true;
+        }
+
+        private void encodeCurrentRow() {
+            TsvReader r = cursor.reader();
+            len = 0;
+            pos = 0;
+            append(taskIdBytes, 0, taskIdBytes.length);
+            appendByte('\t');
+            appendInt(cursor.rowIndex());
+            appendByte('\t');
+            int id = cursor.idColumn();
+            if (!r.isMissing(id)) {
+                appendEscaped(r.buffer(), r.fieldStart(id), r.fieldEnd(id));
+            }
+            appendByte('\t');
+            appendByte(cursor.isArg() ? '1' : '0');
+            appendByte('\t');
+            appendNumber(r, cursor.binaryProbColumn(), cursor.binaryProbValue());
+            appendByte('\t');
+            int cls = cursor.argClassColumn();
+            if (!r.isMissing(cls)) {
+                appendEscaped(r.buffer(), r.trimStart(cls), r.trimEnd(cls));
+            }
+            appendByte('\t');
+            appendNumber(r, cursor.classProbColumn(), cursor.classProbValue());
+            appendByte('\n');
+        }
+
+        /** 数值已由游标校验：可解析且有限时转发原始文本，否则写 NULL */
+        private void appendNumber(TsvReader r, int col, double value) {
+            if (Double.isNaN(value) || Double.isInfinite(value)) {
+                append(NULL, 0, NULL.length);
+            } else {
+                append(r.buffer(), r.trimStart(col), r.trimEnd(col));
+            }
+        }
+
+        private void appendEscaped(byte[] src, int start, int end) {
+            for (int i = start; i < end; i++) {
+                byte c = src[i];
+                switch (c) {
+                    case '\\': appendByte('\\'); appendByte('\\'); break;
+                    case '\t': appendByte('\\'); appendByte('t'); break;
+                    case '\n': appendByte('\\'); appendByte('n'); break;
+                    case '\r': appendByte('\\'); appendByte('r'); break;
+                    case 0: appendByte('\\'); appendByte('0'); break;
+                    default: appendByte(c);
+                }
+            }
+        }
+
+        private void appendInt(int v) {
+            if (v == 0) {
+                appendByte('0');
+                return;
+            }
+            int start = len;
+            while (v > 0) {
+                appendByte('0' + v % 10);
+                v /= 10;
+            }
+            for (int i = start, j = len - 1; i < j; i++, j--) {
+                byte t = buf[i];
+                buf[i] = buf[j];
+                buf[j] = t;
+            }
+        }
+
+        private void append(byte[] src, int start, int end) {
+            int n = end - start;
+            ensureCapacity(n);
+            System.arraycopy(src, start, buf, len, n);
+            len += n;
+        }
+
+        private void appendByte(int b) {
+            ensureCapacity(1);
+            buf[len++] = (byte) b;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (len + extra > buf.length) {
+                byte[] nb = new byte[Math.max(buf.length * 2, len + extra)];
+                System.arraycopy(buf, 0, nb, 0, len);
+                buf = nb;
+            }
+        }
+    }
+}
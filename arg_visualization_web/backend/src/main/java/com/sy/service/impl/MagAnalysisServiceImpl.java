@@ -1,10 +1,16 @@
 package com.sy.service.impl;
 
+import com.sy.exception.TaskCancelledException;
 import com.sy.mapper.AnalysisTaskMapper;
 import com.sy.pojo.AnalysisTask;
 import com.sy.service.DockerService;
 import com.sy.service.MagAnalysisService;
+import com.sy.service.OutputReadinessWatcher;
 import com.sy.service.ProdigalService;
+import com.sy.service.TaskCancellationRegistry;
+import com.sy.service.TaskEventBus;
+import com.sy.service.TaskProgressTracker;
+import com.sy.util.ArgChunkResults;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
@@ -14,6 +20,12 @@ import java.io.IOException;
 import java.nio.file.*;
 import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
@@ -23,6 +35,8 @@ import java.util.stream.Stream;
  * ARG 输出写入 outputDir/arg（all_predictions.tsv、class_summary.tsv），
  * 任务完成后由 AnalysisTaskServiceImpl 调用 VisualizationService.persistTaskResultsToDb 落库，
  * 与可视化优化方案一致，避免在 MAG 路径下将完整 TSV 读入内存。
+ * 开启 analysis.mag.streaming.enabled 时两个阶段重叠：Prodigal 每完成 chunk-files 个文件就合并为一个分块送入 ARG 分析，
+ * 分块输出追加到 outputDir/arg（见 ArgChunkResults）。
  */
 @Slf4j
 @Service
@@ -32,10 +46,22 @@ public class MagAnalysisServiceImpl implements MagAnalysisService {
     private final ProdigalService prodigalService;
     private final DockerServiceImpl dockerService;
     private final AnalysisTaskMapper analysisTaskMapper;
+    private final TaskEventBus taskEventBus;
+    private final TaskCancellationRegistry cancellationRegistry;
+    private final TaskProgressTracker progressTracker;
+    private final OutputReadinessWatcher outputReadinessWatcher;
 
     @Value("${analysis.output-dir:./genome_outputs}")
     private String outputBaseDir;
 
+    /** 流式模式：Prodigal 与 ARG 分析重叠执行 */
+    @Value("${analysis.mag.streaming.enabled:false}")
+    private boolean streamingEnabled;
+
+    /** 每个 ARG 分块包含的 MAG 文件数；文件总数不超过该值时按原流程一次分析 */
+    @Value("${analysis.mag.streaming.chunk-files:20}")
+    private int streamingChunkFiles;
+
     // 核酸 FASTA 文件扩展名（MAG 仅支持核酸）
     private static final List<String> FASTA_EXTENSIONS = Arrays.asList(
             ".fa", ".fasta", ".fna"
@@ -59,6 +85,10 @@ public class MagAnalysisServiceImpl implements MagAnalysisService {
             Files.createDirectories(prodigalOutputDir);
             Files.createDirectories(argOutputDir);
 
+            if (streamingEnabled && fastaFiles.size() > streamingChunkFiles) {
+                return analyzeStreaming(taskId, fastaFiles, prodigalOutputDir, argOutputDir, params);
+            }
+
             // ============================================
             // 阶段 1：Prodigal 预处理 (并行)
             // ============================================
@@ -66,7 +96,17 @@ public class MagAnalysisServiceImpl implements MagAnalysisService {
             updateTaskStatus(taskId, "PREPROCESSING");
 
             log.info("阶段 1/2: Prodigal 预处理");
-            List<Path> faaFiles = prodigalService.processFilesParallel(fastaFiles, prodigalOutputDir);
+            // 每完成一个文件回调一次，百分比变化时才更新进度，数千个文件也只写约 100 次库
+            AtomicInteger lastPercent = new AtomicInteger();
+            List<Path> faaFiles = prodigalService.processFilesParallel(fastaFiles, prodigalOutputDir,
+                    cancellationRegistry.get(taskId), (faa, completed, total) -> {
+                        int percent = completed * 100 / total;
+                        int previous = lastPercent.get();
+                        if (percent < 100 && percent > previous && lastPercent.compareAndSet(previous, percent)) {
+                            updateProgress(taskId, 1, percent,
+                                    "Prodigal 预处理 " + completed + "/" + total + " 个文件");
+                        }
+                    });
 
             if (faaFiles.isEmpty()) {
                 throw new RuntimeException("Prodigal 预处理未产生任何输出文件");
@@ -89,14 +129,21 @@ public class MagAnalysisServiceImpl implements MagAnalysisService {
             updateTaskStatus(taskId, "ANALYZING");
 
             log.info("阶段 2/2: ARG 分析");
+            // 容器上报的预测进度映射到阶段 2 的 50-99%
+            progressTracker.begin(analysisTaskMapper.selectById(taskId), "ANALYZING", 50, 99);
             // 不解析 TSV，避免大结果集进内存；落库由任务完成后 persistTaskResultsToDb 统一处理
-            Map<String, Object> argResult = dockerService.runArgDetection(
-                    taskId,
-                    mergedFaa.toAbsolutePath().toString(),
-                    argOutputDir.toAbsolutePath().toString(),
-                    params,
-                    false
-            );
+            Map<String, Object> argResult;
+            try {
+                argResult = dockerService.runArgDetection(
+                        taskId,
+                        mergedFaa.toAbsolutePath().toString(),
+                        argOutputDir.toAbsolutePath().toString(),
+                        params,
+                        false
+                );
+            } finally {
+                progressTracker.end(taskId);
+            }
 
             updateProgress(taskId, 2, 100, "ARG 分析完成");
             log.info("ARG 分析完成");
@@ -112,12 +159,168 @@ public class MagAnalysisServiceImpl implements MagAnalysisService {
 
             return result;
 
+        } catch (TaskCancelledException e) {
+            throw e;
         } catch (Exception e) {
             log.error("MAG 分析失败: taskId={}", taskId, e);
             throw new RuntimeException("MAG 分析失败: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * 流式分析：Prodigal 完成的文件每满 chunk-files 个合并为一个分块（outputDir/arg_chunks/chunk_N.faa），
+     * 由单个线程按提交顺序逐块运行 ARG 分析，与仍在进行的 Prodigal 预处理重叠；每块完成后追加到 outputDir/arg。
+     * 全部 Prodigal 完成后仍写出 merged.faa（BLAST 提取序列用）。结果行按分块完成顺序排列，与一次分析的行序不同。
+     */
+    private Map<String, Object> analyzeStreaming(Long taskId, List<Path> fastaFiles, Path prodigalOutputDir,
+                                                 Path argOutputDir, Map<String, Object> params) throws IOException {
+        TaskCancellationRegistry.Token token = cancellationRegistry.get(taskId);
+        int total = fastaFiles.size();
+        log.info("流式 MAG 分析: taskId={}, {} 个文件，每 {} 个文件一个 ARG 分块", taskId, total, streamingChunkFiles);
+        updateProgress(taskId, 1, 0, "开始 Prodigal 预处理（ARG 分析分块同步进行）...");
+        updateTaskStatus(taskId, "PREPROCESSING");
+
+        Path chunkBaseDir = argOutputDir.resolveSibling("arg_chunks");
+        Files.createDirectories(chunkBaseDir);
+        outputReadinessWatcher.clearMarker(argOutputDir);
+        ArgChunkResults results = new ArgChunkResults(argOutputDir);
+
+        AtomicInteger prodigalDone = new AtomicInteger();
+        AtomicInteger argDone = new AtomicInteger();
+        AtomicInteger lastPercent = new AtomicInteger();
+        AtomicBoolean chunkFailed = new AtomicBoolean();
+        // pending、delivered、chunkFutures 都在 pending 锁内访问
+        List<Path> pending = new ArrayList<>();
+        Set<Path> delivered = new HashSet<>();
+        AtomicBoolean prodigalFinished = new AtomicBoolean();
+        List<Future<?>> chunkFutures = new ArrayList<>();
+        // 单线程按提交顺序执行分块，同一任务同时只占用一个 ARG 容器
+        ExecutorService argExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "mag-arg-" + taskId);
+            t.setDaemon(true);
+            return t;
+        });
+        Runnable reportProgress = () -> reportStreamingProgress(taskId, prodigalDone.get(), argDone.get(), total, lastPercent);
+        try {
+            List<Path> faaFiles = prodigalService.processFilesParallel(fastaFiles, prodigalOutputDir, token,
+                    (faa, completed, n) -> {
+                        prodigalDone.set(Math.max(prodigalDone.get(), completed));
+                        synchronized (pending) {
+                            // 收尾后才到达的回调由收尾时的补齐处理
+                            if (prodigalFinished.get() || !delivered.add(faa)) return;
+                            pending.add(faa);
+                            if (pending.size() >= streamingChunkFiles) {
+                                submitChunk(taskId, new ArrayList<>(pending), chunkBaseDir, chunkFutures.size() + 1,
+                                        params, results, argExecutor, chunkFutures, chunkFailed, argDone, reportProgress);
+                                pending.clear();
+                            }
+                        }
+                        reportProgress.run();
+                    });
+            if (faaFiles.isEmpty()) {
+                throw new RuntimeException("Prodigal 预处理未产生任何输出文件");
+            }
+            prodigalDone.set(total);
+            List<Future<?>> submitted;
+            synchronized (pending) {
+                prodigalFinished.set(true);
+                // 补齐没有经回调送入分块的文件（如批量模式下输出读取线程超时后才回调），保证每个 .faa 都参与分析
+                for (Path faa : faaFiles) {
+                    if (delivered.add(faa)) pending.add(faa);
+                }
+                if (!pending.isEmpty()) {
+                    submitChunk(taskId, new ArrayList<>(pending), chunkBaseDir, chunkFutures.size() + 1,
+                            params, results, argExecutor, chunkFutures, chunkFailed, argDone, reportProgress);
+                    pending.clear();
+                }
+                submitted = new ArrayList<>(chunkFutures);
+            }
+            log.info("Prodigal 预处理完成，共 {} 个 .faa 文件，{} 个 ARG 分块", faaFiles.size(), submitted.size());
+            updateTaskStatus(taskId, "ANALYZING");
+
+            // 剩余分块推理期间合并完整的 merged.faa
+            Path mergedFaa = prodigalOutputDir.resolve("merged.faa");
+            prodigalService.mergeFiles(faaFiles, mergedFaa);
+
+            for (Future<?> future : submitted) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    token.throwIfCancelled();
+                    throw new RuntimeException("等待 ARG 分块分析被中断", e);
+                } catch (ExecutionException e) {
+                    token.throwIfCancelled();
+                    Throwable cause = e.getCause() != null ? e.getCause() : e;
+                    throw new RuntimeException("ARG 分块分析失败: " + cause.getMessage(), cause);
+                }
+            }
+            token.throwIfCancelled();
+
+            results.finish();
+            // 汇总完成后才写完成标记，落库端不会读到只追加了一部分的结果
+            outputReadinessWatcher.markFinished(argOutputDir, 0);
+            updateProgress(taskId, 2, 100, "ARG 分析完成，共 " + results.getChunks() + " 个分块");
+            log.info("流式 MAG 分析完成: taskId={}, 分块 {}, 预测 {} 条", taskId, results.getChunks(), results.getPredictions());
+
+            Map<String, Object> result = new HashMap<>();
+            result.put("fastaFileCount", total);
+            result.put("faaFileCount", faaFiles.size());
+            result.put("prodigalOutputDir", prodigalOutputDir.toString());
+            result.put("argOutputDir", argOutputDir.toString());
+            result.put("mergedFile", mergedFaa.toString());
+            result.put("argChunkCount", results.getChunks());
+            result.put("argResults", Collections.emptyList());
+            result.put("argCount", null);
+            return result;
+        } finally {
+            argExecutor.shutdownNow();
+        }
+    }
+
+    /**
+     * 提交一个分块：合并分块内的 .faa 后运行 ARG 分析并追加结果；前面的分块失败或任务取消后不再执行
+     */
+    private void submitChunk(Long taskId, List<Path> faaFiles, Path chunkBaseDir, int index, Map<String, Object> params,
+                             ArgChunkResults results, ExecutorService argExecutor, List<Future<?>> chunkFutures,
+                             AtomicBoolean chunkFailed, AtomicInteger argDone, Runnable reportProgress) {
+        chunkFutures.add(argExecutor.submit(() -> {
+            if (chunkFailed.get()) return null;
+            cancellationRegistry.get(taskId).throwIfCancelled();
+            String name = String.format("chunk_%04d", index);
+            Path chunkFaa = chunkBaseDir.resolve(name + ".faa");
+            Path chunkDir = chunkBaseDir.resolve(name);
+            try {
+                prodigalService.mergeFiles(faaFiles, chunkFaa);
+                // 分块内的文件都没有预测出基因时跳过，空输入会使推理失败
+                if (Files.size(chunkFaa) > 0) {
+                    log.info("ARG 分块分析: taskId={}, {}，{} 个文件", taskId, name, faaFiles.size());
+                    dockerService.runArgDetection(taskId, chunkFaa.toAbsolutePath().toString(),
+                            chunkDir.toAbsolutePath().toString(), params, false);
+                    results.append(chunkDir);
+                }
+            } catch (Exception e) {
+                chunkFailed.set(true);
+                throw e;
+            }
+            argDone.addAndGet(faaFiles.size());
+            reportProgress.run();
+            return null;
+        }));
+    }
+
+    /**
+     * 流式模式的总体进度：Prodigal 与 ARG 各占一半，按已完成的文件数计算，百分比变化时才写库
+     */
+    private void reportStreamingProgress(Long taskId, int prodigalDone, int argDone, int total, AtomicInteger lastPercent) {
+        int percent = (int) ((prodigalDone + argDone) * 100L / (2L * total));
+        int previous = lastPercent.get();
+        if (percent < 100 && percent > previous && lastPercent.compareAndSet(previous, percent)) {
+            publishProgress(taskId, percent, prodigalDone < total ? "PREPROCESSING" : "ANALYZING",
+                    "Prodigal 预处理 " + prodigalDone + "/" + total + " 个文件，ARG 分析 " + argDone + "/" + total + " 个文件");
+        }
+    }
+
     @Override
     public List<Path> scanFastaFiles(Path magDir) {
         log.info("扫描 FASTA 文件: {}", magDir);
@@ -155,21 +358,26 @@ public class MagAnalysisServiceImpl implements MagAnalysisService {
     public void updateProgress(Long taskId, int stage, int progress, String message) {
         log.info("任务进度: taskId={}, 阶段={}/2, 进度={}%, 消息={}", taskId, stage, progress, message);
 
+        // 计算总体进度：阶段1占50%，阶段2占50%
+        int totalProgress;
+        if (stage == 1) {
+            totalProgress = progress / 2;  // 0-50%
+        } else {
+            totalProgress = 50 + progress / 2;  // 50-100%
+        }
+        publishProgress(taskId, totalProgress, stage == 1 ? "PREPROCESSING" : "ANALYZING", message);
+    }
+
+    /**
+     * 写入总体进度并推送事件
+     */
+    private void publishProgress(Long taskId, int totalProgress, String status, String message) {
         try {
             AnalysisTask task = analysisTaskMapper.selectById(taskId);
             if (task != null) {
-                // 计算总体进度：阶段1占50%，阶段2占50%
-                int totalProgress;
-                if (stage == 1) {
-                    totalProgress = progress / 2;  // 0-50%
-                } else {
-                    totalProgress = 50 + progress / 2;  // 50-100%
-                }
-
                 task.setProgress(totalProgress);
-                // 使用 errorMessage 字段存储进度消息（可选）
-                // task.setErrorMessage("阶段 " + stage + "/2: " + message);
                 analysisTaskMapper.updateById(task);
+                taskEventBus.publish(task, status, message);
             }
         } catch (Exception e) {
             log.warn("更新任务进度失败: taskId={}", taskId, e);
@@ -190,6 +398,7 @@ public class MagAnalysisServiceImpl implements MagAnalysisService {
                     }
                 }
                 analysisTaskMapper.updateById(task);
+                taskEventBus.publish(task, status, null);
             }
         } catch (Exception e) {
             log.warn("更新任务状态失败: taskId={}", taskId, e);
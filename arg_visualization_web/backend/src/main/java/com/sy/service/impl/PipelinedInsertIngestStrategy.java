@@ -0,0 +1,178 @@
+package com.sy.service.impl;
+
+import com.sy.exception.TaskCancelledException;
+import com.sy.mapper.AllPredictionMapper;
+import com.sy.pojo.AllPrediction;
+import com.sy.service.IngestMetrics;
+import com.sy.service.IngestSummary;
+import com.sy.service.PredictionIngestStrategy;
+import com.sy.util.PredictionTsvCursor;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+/**
+ * 流水线批量 INSERT 落库策略
+ * 调用线程作为读取端解析 all_predictions.tsv 并组批，N 个写入线程各自从连接池取连接执行 insertBatch，
+ * 中间用有界队列连接：写库慢时读取端阻塞（背压），解析与数据库往返相互重叠。
+ * row_index 由读取端按文件顺序分配，写入先后不影响结果顺序（查询均按 row_index 排序）。
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class PipelinedInsertIngestStrategy implements PredictionIngestStrategy {
+
+    /** 队列结束标记，每个写入线程收到一个后退出 */
+    private static final List<AllPrediction> END = Collections.emptyList();
+
+    private final AllPredictionMapper allPredictionMapper;
+    private final IngestMetrics ingestMetrics;
+
+    /** 写入线程数，每个线程占用一个数据库连接，应小于连接池大小 */
+    @Value("${analysis.ingest.writer-threads:4}")
+    private int writerThreads;
+
+    /** 队列最多缓存的批次数，超过后读取端阻塞 */
+    @Value("${analysis.ingest.queue-capacity:8}")
+    private int queueCapacity;
+
+    @Override
+    public String mode() {
+        return "pipelined";
+    }
+
+    @Override
+    public IngestSummary ingest(Long taskId, Path allPredictionsFile, BooleanSupplier cancelled) throws Exception {
+        int writers = Math.max(1, writerThreads);
+        BlockingQueue<List<AllPrediction>> queue = new ArrayBlockingQueue<>(Math.max(1, queueCapacity));
+        AtomicReference<Throwable> failure = new AtomicReference<>();
+        AtomicBoolean abort = new AtomicBoolean(false);
+        AtomicInteger threadSeq = new AtomicInteger();
+        ExecutorService pool = Executors.newFixedThreadPool(writers, r -> {
+            Thread t = new Thread(r, "ingest-writer-" + taskId + "-" + threadSeq.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+
+        ingestMetrics.pipelineStarted();
+        IngestSummary summary = new IngestSummary();
+        try {
+            List<Future<?>> futures = new ArrayList<>(writers);
+            for (int i = 0; i < writers; i++) {
+                futures.add(pool.submit(() -> writeLoop(queue, abort, failure)));
+            }
+
+            try (PredictionTsvCursor cursor = PredictionTsvCursor.open(allPredictionsFile)) {
+                List<AllPrediction> batch = new ArrayList<>(BatchInsertIngestStrategy.BATCH_SIZE);
+                long parseStart = System.nanoTime();
+                boolean more = true;
+                while (more) {
+                    more = cursor.next();
+                    if (more) {
+                        batch.add(cursor.toPrediction(taskId));
+                        summary.record(cursor);
+                    }
+                    if (batch.size() >= BatchInsertIngestStrategy.BATCH_SIZE || (!more && !batch.isEmpty())) {
+                        ingestMetrics.parse().recordBatch(batch.size(), System.nanoTime() - parseStart);
+                        // 每批入队前检查是否已取消，避免取消后仍落库并最终覆盖为 COMPLETED
+                        if (cancelled.getAsBoolean()) {
+                            throw new TaskCancelledException(taskId);
+                        }
+                        enqueue(queue, batch, failure);
+                        batch = new ArrayList<>(BatchInsertIngestStrategy.BATCH_SIZE);
+                        parseStart = System.nanoTime();
+                    }
+                }
+            }
+
+            for (int i = 0; i < writers; i++) {
+                enqueue(queue, END, failure);
+            }
+            for (Future<?> f : futures) {
+                f.get();
+            }
+            rethrowFailure(failure);
+            return summary;
+        } catch (Exception e) {
+            abort.set(true);
+            queue.clear();
+            // 等写入线程全部退出再抛出：正在执行的 insertBatch 不响应中断，调用方随后会删除本任务的行并回退重写，
+            // 若此时仍有写入在途，晚到的行会留在表中造成重复
+            awaitWriters(pool);
+            throw e;
+        } finally {
+            pool.shutdownNow();
+            ingestMetrics.pipelineFinished();
+        }
+    }
+
+    /**
+     * 停止接收新任务并等待写入线程结束；等待期间被中断也继续等待，结束后恢复中断标记
+     */
+    private void awaitWriters(ExecutorService pool) {
+        pool.shutdown();
+        boolean interrupted = false;
+        while (true) {
+            try {
+                if (pool.awaitTermination(1, TimeUnit.SECONDS)) break;
+            } catch (InterruptedException ie) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 放入队列；队列满时阻塞等待，期间若写入线程已失败则立即抛出，避免读取端永久阻塞
+     */
+    private void enqueue(BlockingQueue<List<AllPrediction>> queue, List<AllPrediction> batch,
+                         AtomicReference<Throwable> failure) throws Exception {
+        long start = System.nanoTime();
+        while (!queue.offer(batch, 200, TimeUnit.MILLISECONDS)) {
+            rethrowFailure(failure);
+        }
+        ingestMetrics.parse().recordBlocked(System.nanoTime() - start);
+    }
+
+    private void writeLoop(BlockingQueue<List<AllPrediction>> queue, AtomicBoolean abort,
+                           AtomicReference<Throwable> failure) {
+        try {
+            while (!abort.get()) {
+                long waitStart = System.nanoTime();
+                List<AllPrediction> batch = queue.poll(200, TimeUnit.MILLISECONDS);
+                if (batch == null) continue;
+                ingestMetrics.insert().recordBlocked(System.nanoTime() - waitStart);
+                if (batch == END) return;
+                long insertStart = System.nanoTime();
+                allPredictionMapper.insertBatch(batch);
+                ingestMetrics.insert().recordBatch(batch.size(), System.nanoTime() - insertStart);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Throwable t) {
+            log.error("落库写入线程失败: {}", Thread.currentThread().getName(), t);
+            failure.compareAndSet(null, t);
+            abort.set(true);
+        }
+    }
+
+    private static void rethrowFailure(AtomicReference<Throwable> failure) throws Exception {
+        Throwable t = failure.get();
+        if (t == null) return;
+        if (t instanceof Exception) throw (Exception) t;
+        throw new RuntimeException(t);
+    }
+}
@@ -1,6 +1,15 @@
 package com.sy.service.impl;
 
+import com.sy.exception.TaskCancelledException;
+import com.sy.service.ContainerResourceLedger;
 import com.sy.service.ProdigalService;
+import com.sy.service.TaskCancellationRegistry;
+import com.sy.util.ContainerLog;
+import com.sy.util.FastaIndex;
+import com.sy.util.FastaMerger;
+import com.sy.util.FastaSharder;
+import com.sy.util.ProdigalOutputMerger;
+import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
@@ -9,6 +18,10 @@ import java.io.*;
 import java.nio.file.*;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Predicate;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
 
 /**
  * Prodigal 服务实现
@@ -16,8 +29,11 @@ import java.util.concurrent.*;
  */
 @Slf4j
 @Service
+@RequiredArgsConstructor
 public class ProdigalServiceImpl implements ProdigalService {
 
+    private final ContainerResourceLedger resourceLedger;
+
     @Value("${docker.prodigal.image-name:prodigal:latest}")
     private String prodigalImageName;
 
@@ -30,6 +46,52 @@ public class ProdigalServiceImpl implements ProdigalService {
     @Value("${docker.prodigal.use-meta-mode:true}")
     private boolean useMetaMode;
 
+    // 每个 Prodigal 容器预留的资源（Prodigal 为单线程）
+    @Value("${docker.prodigal.cpus:1}")
+    private double prodigalCpus;
+
+    @Value("${docker.prodigal.memory-mb:1024}")
+    private long prodigalMemoryMb;
+
+    /** 失败时错误信息中保留的 stderr 行数，完整输出写入 {输出目录}/{文件名}.log */
+    @Value("${docker.log-tail-lines:200}")
+    private int logTailLines;
+
+    /** 批量模式：整个目录只挂载一次，在 containers 个容器内各自并行处理一部分文件，省去逐文件启动容器 */
+    @Value("${docker.prodigal.batch.enabled:false}")
+    private boolean batchEnabled;
+
+    @Value("${docker.prodigal.batch.containers:1}")
+    private int batchContainers;
+
+    /** 每个容器内同时运行的 Prodigal 进程数，按此数量预留 CPU/内存 */
+    @Value("${docker.prodigal.batch.threads-per-container:4}")
+    private int batchThreads;
+
+    /** 镜像内的 Prodigal 可执行文件（批量模式以 sh 为入口，需镜像内有 sh 与 xargs） */
+    @Value("${docker.prodigal.batch.binary:prodigal}")
+    private String prodigalBinary;
+
+    /**
+     * 大文件分片：不小于 min-input-bytes 的输入按 contig 边界切成 count 片并行运行 Prodigal，再合并输出并重编基因 ID。
+     * 只在 meta 模式生效（meta 模式逐条序列独立预测，分片结果与整体运行一致；单基因组模式需用全部序列训练）
+     */
+    @Value("${docker.prodigal.shard.enabled:false}")
+    private boolean shardEnabled;
+
+    @Value("${docker.prodigal.shard.count:4}")
+    private int shardCount;
+
+    @Value("${docker.prodigal.shard.min-input-bytes:104857600}")
+    private long shardMinInputBytes;
+
+    /** 批量模式下容器内脚本每处理完一个文件输出一行：[DONE] 文件名 / [FAILED] 文件名 退出码 */
+    private static final String DONE_PREFIX = "[DONE] ";
+    private static final String FAILED_PREFIX = "[FAILED] ";
+
+    /** 批量模式的列表文件按空白分隔，文件名含空白或 shell 特殊字符时退回逐文件模式 */
+    private static final Pattern BATCH_SAFE_NAME = Pattern.compile("[A-Za-z0-9._+=,@%-]+");
+
     private ExecutorService executorService;
 
     /**
@@ -44,20 +106,130 @@ public class ProdigalServiceImpl implements ProdigalService {
 
     @Override
     public Path processFile(Path inputFile, Path outputDir) {
+        return processFile(inputFile, outputDir, TaskCancellationRegistry.Token.NONE);
+    }
+
+    private Path processFile(Path inputFile, Path outputDir, TaskCancellationRegistry.Token token) {
+        if (shardEnabled && useMetaMode && shardCount > 1 && sizeOf(inputFile) >= shardMinInputBytes) {
+            return processFileSharded(inputFile, outputDir, token);
+        }
+        return runProdigal(inputFile, outputDir, token);
+    }
+
+    /**
+     * 分片处理单个大文件：按 contig 边界切成残基数均衡的连续分片（outputDir/.shards_{文件名}），
+     * 各分片并行运行 Prodigal（每个分片单独在资源台账预留），全部成功后按分片顺序合并 .faa/.gff 并重编序列序号，
+     * 各分片日志追加到 {文件名}.log，最后删除分片目录
+     */
+    private Path processFileSharded(Path inputFile, Path outputDir, TaskCancellationRegistry.Token token) {
+        token.throwIfCancelled();
+        String baseName = baseName(inputFile);
+        Path shardDir = outputDir.resolve(".shards_" + baseName);
+        Path outputFaa = outputDir.resolve(baseName + ".faa");
+        Path outputGff = outputDir.resolve(baseName + ".gff");
+        ExecutorService shardPool = null;
+        try {
+            List<Path> shards = FastaSharder.split(inputFile, shardCount, shardDir, baseName);
+            if (shards.size() <= 1) {
+                return runProdigal(inputFile, outputDir, token);
+            }
+            log.info("Prodigal 分片处理: {}，{} MB，{} 个分片", inputFile, sizeOf(inputFile) / 1024 / 1024, shards.size());
+
+            // 线程数与分片数相同，按提交顺序创建，线程序号即分片序号
+            AtomicInteger threadSeq = new AtomicInteger();
+            shardPool = Executors.newFixedThreadPool(shards.size(), r -> {
+                Thread t = new Thread(r, "prodigal-shard-" + baseName + "-" + threadSeq.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+            List<Future<Path>> futures = new ArrayList<>();
+            for (Path shard : shards) {
+                futures.add(shardPool.submit(() -> runProdigal(shard, shardDir, token)));
+            }
+            // 等待全部分片结束，取第一个失败
+            RuntimeException error = null;
+            for (Future<Path> future : futures) {
+                try {
+                    future.get();
+                } catch (ExecutionException e) {
+                    if (error == null) {
+                        error = e.getCause() instanceof RuntimeException
+                                ? (RuntimeException) e.getCause() : new RuntimeException(e.getCause());
+                    }
+                }
+            }
+            token.throwIfCancelled();
+            if (error != null) throw error;
+
+            List<Long> sequenceCounts = new ArrayList<>();
+            List<Path> faaFiles = new ArrayList<>();
+            List<Path> gffFiles = new ArrayList<>();
+            for (Path shard : shards) {
+                sequenceCounts.add(FastaSharder.countRecords(shard));
+                faaFiles.add(shardDir.resolve(baseName(shard) + ".faa"));
+                gffFiles.add(shardDir.resolve(baseName(shard) + ".gff"));
+            }
+            ProdigalOutputMerger.merge(sequenceCounts, faaFiles, gffFiles, outputFaa, outputGff);
+            try (OutputStream logOut = Files.newOutputStream(outputDir.resolve(baseName + ".log"))) {
+                for (Path shard : shards) {
+                    Path shardLog = shardDir.resolve(baseName(shard) + ".log");
+                    if (Files.isRegularFile(shardLog)) Files.copy(shardLog, logOut);
+                }
+            }
+            log.info("Prodigal 分片处理完成: {}", outputFaa);
+            return outputFaa;
+        } catch (TaskCancelledException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            token.throwIfCancelled();
+            throw new RuntimeException("Prodigal 分片处理被中断: " + inputFile, e);
+        } catch (IOException e) {
+            log.error("Prodigal 分片处理失败: {}", inputFile, e);
+            throw new RuntimeException("Prodigal 分片处理失败: " + e.getMessage(), e);
+        } finally {
+            if (shardPool != null) shardPool.shutdownNow();
+            deleteTree(shardDir);
+        }
+    }
+
+    private void deleteTree(Path dir) {
+        if (!Files.exists(dir)) return;
+        try (Stream<Path> paths = Files.walk(dir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> {
+                try {
+                    Files.deleteIfExists(p);
+                } catch (IOException e) {
+                    log.warn("删除分片文件失败: {}", p, e);
+                }
+            });
+        } catch (IOException e) {
+            log.warn("删除分片目录失败: {}", dir, e);
+        }
+    }
+
+    /**
+     * 运行一个 Prodigal 容器处理单个文件
+     */
+    private Path runProdigal(Path inputFile, Path outputDir, TaskCancellationRegistry.Token token) {
+        token.throwIfCancelled();
         String fileName = inputFile.getFileName().toString();
-        String baseName = fileName.replaceAll("\\.(fa|fasta|fna)$", "");
+        String baseName = baseName(inputFile);
         
         Path outputFaa = outputDir.resolve(baseName + ".faa");
         Path outputGff = outputDir.resolve(baseName + ".gff");
 
         log.info("开始 Prodigal 处理: {} -> {}", inputFile, outputFaa);
 
-        try {
+        // 与 ARG 容器共用资源台账，parallel-threads 只是上限，实际并发受可用 CPU/内存限制
+        try (ContainerResourceLedger.Reservation reservation =
+                     resourceLedger.reserve("prodigal:" + fileName, prodigalCpus, prodigalMemoryMb, 0)) {
+            token.throwIfCancelled();
             // 确保输出目录存在
             Files.createDirectories(outputDir);
 
             // 构建 Docker 命令
-            String command = buildProdigalCommand(inputFile, outputFaa, outputGff);
+            String command = buildProdigalCommand(inputFile, outputFaa, outputGff, reservation);
             log.debug("执行命令: {}", command);
 
             // 执行命令
@@ -65,32 +237,33 @@ public class ProdigalServiceImpl implements ProdigalService {
             pb.redirectErrorStream(false);
             Process process = pb.start();
 
-            // 读取输出
-            StringBuilder stdout = new StringBuilder();
-            StringBuilder stderr = new StringBuilder();
+            // 读取输出：完整输出写入日志文件，内存中只保留尾部
+            try (ContainerLog containerLog = new ContainerLog(outputDir.resolve(baseName + ".log"), logTailLines)) {
+                Thread stdoutThread = containerLog.pump(process.getInputStream(), false, null);
+                Thread stderrThread = containerLog.pump(process.getErrorStream(), true, null);
 
-            Thread stdoutThread = new Thread(() -> readStream(process.getInputStream(), stdout));
-            Thread stderrThread = new Thread(() -> readStream(process.getErrorStream(), stderr));
-
-            stdoutThread.start();
-            stderrThread.start();
-
-            // 等待完成
-            boolean finished = process.waitFor(timeoutSeconds, TimeUnit.SECONDS);
+                // 等待完成；任务取消时由令牌回调终止容器进程
+                boolean finished;
+                try (TaskCancellationRegistry.Registration ignored = token.onCancel(process::destroyForcibly)) {
+                    finished = process.waitFor(timeoutSeconds, TimeUnit.SECONDS);
+                }
+                token.throwIfCancelled();
 
-            if (!finished) {
-                process.destroyForcibly();
-                throw new RuntimeException("Prodigal 处理超时（超过 " + timeoutSeconds + " 秒）");
-            }
+                if (!finished) {
+                    process.destroyForcibly();
+                    throw new RuntimeException("Prodigal 处理超时（超过 " + timeoutSeconds + " 秒）");
+                }
 
-            stdoutThread.join(5000);
-            stderrThread.join(5000);
+                stdoutThread.join(5000);
+                stderrThread.join(5000);
 
-            int exitCode = process.exitValue();
-            if (exitCode != 0) {
-                log.error("Prodigal 执行失败，退出码: {}", exitCode);
-                log.error("stderr: {}", stderr);
-                throw new RuntimeException("Prodigal 执行失败: " + stderr);
+                int exitCode = process.exitValue();
+                if (exitCode != 0) {
+                    String stderr = containerLog.stderrTail();
+                    log.error("Prodigal 执行失败，退出码: {}", exitCode);
+                    log.error("stderr: {}", stderr);
+                    throw new RuntimeException("Prodigal 执行失败: " + stderr);
+                }
             }
 
             // 检查输出文件是否存在
@@ -101,6 +274,12 @@ public class ProdigalServiceImpl implements ProdigalService {
             log.info("Prodigal 处理完成: {}", outputFaa);
             return outputFaa;
 
+        } catch (TaskCancelledException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            token.throwIfCancelled();
+            throw new RuntimeException("Prodigal 处理被中断: " + inputFile, e);
         } catch (Exception e) {
             log.error("Prodigal 处理失败: {}", inputFile, e);
             throw new RuntimeException("Prodigal 处理失败: " + e.getMessage(), e);
@@ -114,24 +293,51 @@ public class ProdigalServiceImpl implements ProdigalService {
 
     @Override
     public List<Path> processFilesParallel(List<Path> inputFiles, Path outputDir) {
+        return processFilesParallel(inputFiles, outputDir, TaskCancellationRegistry.Token.NONE);
+    }
+
+    @Override
+    public List<Path> processFilesParallel(List<Path> inputFiles, Path outputDir, TaskCancellationRegistry.Token token) {
+        return processFilesParallel(inputFiles, outputDir, token, null);
+    }
+
+    @Override
+    public List<Path> processFilesParallel(List<Path> inputFiles, Path outputDir, TaskCancellationRegistry.Token token,
+                                           FileProgressListener listener) {
+        if (batchEnabled && canBatch(inputFiles)) {
+            return processFilesBatched(inputFiles, outputDir, token, listener);
+        }
         log.info("开始并行处理 {} 个文件，并行度: {}", inputFiles.size(), parallelThreads);
 
         List<CompletableFuture<Path>> futures = new ArrayList<>();
+        AtomicInteger completed = new AtomicInteger();
         
         for (Path inputFile : inputFiles) {
-            futures.add(processFileAsync(inputFile, outputDir));
+            // 回调在任务体内执行，get() 返回时该文件的回调已经完成
+            CompletableFuture<Path> future = CompletableFuture.supplyAsync(() -> {
+                Path faa = processFile(inputFile, outputDir, token);
+                if (listener != null) {
+                    listener.onFileDone(faa, completed.incrementAndGet(), inputFiles.size());
+                }
+                return faa;
+            }, getExecutorService());
+            futures.add(future);
         }
 
-        // 等待所有任务完成
+        // 等待所有任务完成；取消时放弃尚未开始的文件，正在运行的容器由 processFile 中的令牌回调终止
         List<Path> results = new ArrayList<>();
-        for (int i = 0; i < futures.size(); i++) {
-            try {
-                Path result = futures.get(i).get(timeoutSeconds * 2, TimeUnit.SECONDS);
-                results.add(result);
-                log.info("文件处理完成 ({}/{}): {}", i + 1, inputFiles.size(), result.getFileName());
-            } catch (Exception e) {
-                log.error("文件处理失败: {}", inputFiles.get(i), e);
-                throw new RuntimeException("文件处理失败: " + inputFiles.get(i), e);
+        try (TaskCancellationRegistry.Registration ignored =
+                     token.onCancel(() -> futures.forEach(f -> f.cancel(false)))) {
+            for (int i = 0; i < futures.size(); i++) {
+                try {
+                    Path result = futures.get(i).get(timeoutSeconds * 2, TimeUnit.SECONDS);
+                    results.add(result);
+                    log.info("文件处理完成 ({}/{}): {}", i + 1, inputFiles.size(), result.getFileName());
+                } catch (Exception e) {
+                    token.throwIfCancelled();
+                    log.error("文件处理失败: {}", inputFiles.get(i), e);
+                    throw new RuntimeException("文件处理失败: " + inputFiles.get(i), e);
+                }
             }
         }
 
@@ -139,43 +345,250 @@ public class ProdigalServiceImpl implements ProdigalService {
         return results;
     }
 
-    @Override
-    public Path mergeFiles(List<Path> faaFiles, Path outputFile) {
-        log.info("开始合并 {} 个文件到: {}", faaFiles.size(), outputFile);
+    /**
+     * 批量模式：文件按大小分给 containers 个容器（每次分给当前总量最小的容器），
+     * 每个容器挂载一次输入目录，容器内用 xargs -P 并行运行 Prodigal，每完成一个文件回调一次
+     */
+    private List<Path> processFilesBatched(List<Path> inputFiles, Path outputDir, TaskCancellationRegistry.Token token,
+                                           FileProgressListener listener) {
+        int containers = Math.max(1, Math.min(batchContainers, inputFiles.size()));
+        log.info("开始批量处理 {} 个文件: 容器数 {}，每容器并行 {}", inputFiles.size(), containers, batchThreads);
+
+        List<List<Path>> groups = new ArrayList<>();
+        long[] load = new long[containers];
+        for (int i = 0; i < containers; i++) groups.add(new ArrayList<>());
+        List<Path> bySize = new ArrayList<>(inputFiles);
+        bySize.sort(Comparator.comparingLong(ProdigalServiceImpl::sizeOf).reversed());
+        for (Path file : bySize) {
+            int target = 0;
+            for (int i = 1; i < containers; i++) {
+                if (load[i] < load[target]) target = i;
+            }
+            groups.get(target).add(file);
+            load[target] += Math.max(1, sizeOf(file));
+        }
 
+        Set<String> done = ConcurrentHashMap.newKeySet();
+        Map<String, String> failed = new ConcurrentHashMap<>();
+        AtomicInteger completed = new AtomicInteger();
         try {
-            // 确保输出目录存在
-            Files.createDirectories(outputFile.getParent());
+            Files.createDirectories(outputDir);
+        } catch (IOException e) {
+            throw new RuntimeException("创建输出目录失败: " + outputDir, e);
+        }
 
-            try (BufferedWriter writer = Files.newBufferedWriter(outputFile)) {
-                for (Path faaFile : faaFiles) {
-                    if (!Files.exists(faaFile)) {
-                        log.warn("文件不存在，跳过: {}", faaFile);
-                        continue;
+        List<CompletableFuture<Void>> futures = new ArrayList<>();
+        for (int i = 0; i < containers; i++) {
+            int index = i;
+            futures.add(CompletableFuture.runAsync(() -> runBatchContainer(index, groups.get(index), outputDir, token, line -> {
+                if (line.startsWith(DONE_PREFIX)) {
+                    String name = line.substring(DONE_PREFIX.length()).trim();
+                    done.add(name);
+                    if (listener != null) {
+                        listener.onFileDone(outputDir.resolve(name + ".faa"), completed.incrementAndGet(), inputFiles.size());
                     }
+                    return true;
+                }
+                if (line.startsWith(FAILED_PREFIX)) {
+                    String[] parts = line.substring(FAILED_PREFIX.length()).trim().split("\\s+");
+                    failed.put(parts[0], parts.length > 1 ? parts[1] : "?");
+                    return true;
+                }
+                return false;
+            }), getExecutorService()));
+        }
 
-                    // 获取源文件名作为前缀
-                    String sourceFileName = faaFile.getFileName().toString().replace(".faa", "");
-
-                    try (BufferedReader reader = Files.newBufferedReader(faaFile)) {
-                        String line;
-                        while ((line = reader.readLine()) != null) {
-                            // 如果是序列头，添加源文件名前缀以便追溯
-                            if (line.startsWith(">")) {
-                                // 格式: >sourceFile__originalId
-                                String originalId = line.substring(1);
-                                writer.write(">" + sourceFileName + "__" + originalId);
-                            } else {
-                                writer.write(line);
-                            }
-                            writer.newLine();
-                        }
-                    }
+        try (TaskCancellationRegistry.Registration ignored =
+                     token.onCancel(() -> futures.forEach(f -> f.cancel(false)))) {
+            for (CompletableFuture<Void> future : futures) {
+                try {
+                    future.get();
+                } catch (Exception e) {
+                    token.throwIfCancelled();
+                    Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+                    log.error("Prodigal 批量处理失败", cause);
+                    throw new RuntimeException("Prodigal 批量处理失败: " + cause.getMessage(), cause);
                 }
             }
+        }
+        token.throwIfCancelled();
+
+        // 按输入顺序返回，与逐文件模式一致
+        List<Path> results = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        for (Path inputFile : inputFiles) {
+            String baseName = baseName(inputFile);
+            Path faa = outputDir.resolve(baseName + ".faa");
+            if (done.contains(baseName) && Files.exists(faa)) {
+                results.add(faa);
+            } else {
+                String code = failed.get(baseName);
+                missing.add(inputFile.getFileName() + (code != null ? "(退出码 " + code + ")" : ""));
+            }
+        }
+        if (!missing.isEmpty()) {
+            log.error("Prodigal 批量处理有 {} 个文件失败: {}", missing.size(), missing);
+            throw new RuntimeException("Prodigal 处理失败 " + missing.size() + " 个文件: "
+                    + String.join(", ", missing.subList(0, Math.min(10, missing.size())))
+                    + (missing.size() > 10 ? " ..." : ""));
+        }
+        log.info("批量处理完成，共 {} 个", results.size());
+        return results;
+    }
+
+    /**
+     * 运行一个批量容器：列表文件写入输出目录，容器内逐行读取并以 threads 个进程并行处理
+     * @param lineFilter 处理 stdout 中的 [DONE]/[FAILED] 行
+     */
+    private void runBatchContainer(int index, List<Path> files, Path outputDir, TaskCancellationRegistry.Token token,
+                                   Predicate<String> lineFilter) {
+        token.throwIfCancelled();
+        Path inputDir = files.get(0).getParent();
+        String name = "prodigal-batch-" + UUID.randomUUID().toString().substring(0, 8) + "-" + index;
+        Path listFile = outputDir.resolve(".prodigal_batch_" + index + ".list");
+        int threads = Math.max(1, Math.min(batchThreads, files.size()));
+        try (ContainerResourceLedger.Reservation reservation = resourceLedger.reserve(
+                "prodigal:" + name, prodigalCpus * threads, prodigalMemoryMb * threads, 0)) {
+            token.throwIfCancelled();
+            List<String> lines = new ArrayList<>();
+            for (Path file : files) {
+                lines.add(file.getFileName() + " " + baseName(file));
+            }
+            Files.write(listFile, lines);
+
+            List<String> command = buildBatchCommand(name, inputDir, outputDir, listFile.getFileName().toString(),
+                    threads, reservation);
+            log.debug("执行命令: {}", command);
+            Process process = new ProcessBuilder(command).start();
 
-            long fileSize = Files.size(outputFile);
-            log.info("文件合并完成: {}, 大小: {} KB", outputFile, fileSize / 1024);
+            try (ContainerLog containerLog = new ContainerLog(outputDir.resolve("prodigal_batch_" + index + ".log"), logTailLines)) {
+                Thread stdoutThread = containerLog.pump(process.getInputStream(), false, lineFilter);
+                Thread stderrThread = containerLog.pump(process.getErrorStream(), true, null);
+
+                // 容器按文件数给足时间；取消或超时时删除容器（仅终止 docker 客户端进程不会停止容器）
+                long timeout = (long) timeoutSeconds * ((files.size() + threads - 1) / threads);
+                boolean finished;
+                try (TaskCancellationRegistry.Registration ignored = token.onCancel(() -> removeContainer(name, process))) {
+                    finished = process.waitFor(timeout, TimeUnit.SECONDS);
+                }
+                token.throwIfCancelled();
+                if (!finished) {
+                    removeContainer(name, process);
+                    throw new RuntimeException("Prodigal 批量处理超时（超过 " + timeout + " 秒）");
+                }
+
+                stdoutThread.join(5000);
+                stderrThread.join(5000);
+
+                // 单个文件失败由 [FAILED] 行上报；非零退出码表示容器本身出错
+                int exitCode = process.exitValue();
+                if (exitCode != 0) {
+                    String stderr = containerLog.stderrTail();
+                    log.error("Prodigal 批量容器失败，退出码: {}, stderr: {}", exitCode, stderr);
+                    throw new RuntimeException("Prodigal 批量容器失败: " + stderr);
+                }
+            }
+        } catch (TaskCancelledException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            token.throwIfCancelled();
+            throw new RuntimeException("Prodigal 批量处理被中断", e);
+        } catch (IOException e) {
+            throw new RuntimeException("Prodigal 批量处理失败: " + e.getMessage(), e);
+        } finally {
+            try {
+                Files.deleteIfExists(listFile);
+            } catch (IOException e) {
+                log.debug("删除列表文件失败: {}", listFile);
+            }
+        }
+    }
+
+    /**
+     * 构建批量模式的 docker run 参数（不经过 shell，容器内脚本作为单个参数传入）
+     * docker run --rm --name N --cpus=C --memory=M -v in:/input:ro -v out:/output --entrypoint sh image -c 'xargs -P T ...'
+     */
+    private List<String> buildBatchCommand(String name, Path inputDir, Path outputDir, String listFileName, int threads,
+                                           ContainerResourceLedger.Reservation reservation) {
+        List<String> cmd = new ArrayList<>(List.of("docker", "run", "--rm", "--name", name));
+        cmd.addAll(Arrays.asList(reservation.dockerFlags().trim().split("\\s+")));
+        cmd.addAll(List.of("-v", inputDir.toAbsolutePath() + ":/input:ro"));
+        cmd.addAll(List.of("-v", outputDir.toAbsolutePath() + ":/output"));
+        cmd.addAll(List.of("--entrypoint", "sh", prodigalImageName, "-c"));
+
+        // 列表每行 "输入文件名 输出名"，xargs -L 1 把两列作为 $0 $1 传给内层脚本
+        String prodigal = prodigalBinary + " -i \"/input/$0\" -a \"/output/$1.faa\" -o \"/output/$1.gff\" -f gff"
+                + (useMetaMode ? " -p meta" : "") + " 2> \"/output/$1.log\"";
+        String perFile = "if " + prodigal + "; then echo \"" + DONE_PREFIX + "$1\"; "
+                + "else echo \"" + FAILED_PREFIX + "$1 $?\"; fi";
+        cmd.add("xargs -P " + threads + " -L 1 sh -c '" + perFile + "' < /output/" + listFileName);
+        return cmd;
+    }
+
+    /**
+     * 删除批量容器并终止 docker 客户端进程
+     */
+    private void removeContainer(String name, Process process) {
+        log.info("删除 Prodigal 批量容器: {}", name);
+        try {
+            Process rm = new ProcessBuilder("docker", "rm", "-f", name).redirectErrorStream(true).start();
+            rm.getInputStream().transferTo(OutputStream.nullOutputStream());
+            rm.waitFor(30, TimeUnit.SECONDS);
+        } catch (IOException e) {
+            log.warn("删除容器失败: {}", name, e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        process.destroyForcibly();
+    }
+
+    /**
+     * 批量模式要求所有文件在同一目录（只挂载一次）且文件名不含空白或 shell 特殊字符
+     */
+    private boolean canBatch(List<Path> inputFiles) {
+        if (inputFiles.isEmpty()) return false;
+        Path dir = inputFiles.get(0).getParent();
+        for (Path file : inputFiles) {
+            if (!Objects.equals(file.getParent(), dir)
+                    || !BATCH_SAFE_NAME.matcher(file.getFileName().toString()).matches()) {
+                log.info("文件不在同一目录或文件名含特殊字符，使用逐文件模式: {}", file);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static String baseName(Path inputFile) {
+        return inputFile.getFileName().toString().replaceAll("\\.(fa|fasta|fna)$", "");
+    }
+
+    private static long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0L;
+        }
+    }
+
+    @Override
+    public Path mergeFiles(List<Path> faaFiles, Path outputFile) {
+        log.info("开始合并 {} 个文件到: {}", faaFiles.size(), outputFile);
+
+        try {
+            for (Path faaFile : faaFiles) {
+                if (!Files.exists(faaFile)) {
+                    log.warn("文件不存在，跳过: {}", faaFile);
+                }
+            }
+
+            // 按字节拷贝序列内容，只给序列头加源文件名前缀以便追溯（格式: >sourceFile__originalId），
+            // 同时写出序列偏移索引 merged.faa.idx，按 ID 提取序列时无需再扫描整个文件
+            FastaMerger.Result merged = FastaMerger.merge(faaFiles,
+                    faaFile -> faaFile.getFileName().toString().replace(".faa", "") + "__",
+                    outputFile, FastaIndex.indexPath(outputFile));
+
+            log.info("文件合并完成: {}, 序列数: {}, 大小: {} KB", outputFile, merged.getSequences(), merged.getBytes() / 1024);
 
             return outputFile;
 
@@ -188,7 +601,8 @@ public class ProdigalServiceImpl implements ProdigalService {
     /**
      * 构建 Prodigal Docker 命令
      */
-    private String buildProdigalCommand(Path inputFile, Path outputFaa, Path outputGff) {
+    private String buildProdigalCommand(Path inputFile, Path outputFaa, Path outputGff,
+                                        ContainerResourceLedger.Reservation reservation) {
         Path inputDir = inputFile.getParent();
         Path outputDir = outputFaa.getParent();
         String inputFileName = inputFile.getFileName().toString();
@@ -200,6 +614,9 @@ public class ProdigalServiceImpl implements ProdigalService {
         // docker run --rm
         cmd.append("docker run --rm ");
 
+        // 资源限制（与台账预留量一致）
+        cmd.append(reservation.dockerFlags());
+
         // 挂载输入目录（只读）
         cmd.append("-v ").append(inputDir.toAbsolutePath()).append(":/input:ro ");
 
@@ -222,18 +639,4 @@ public class ProdigalServiceImpl implements ProdigalService {
 
         return cmd.toString();
     }
-
-    /**
-     * 读取流
-     */
-    private void readStream(InputStream is, StringBuilder sb) {
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(is))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line).append("\n");
-            }
-        } catch (IOException e) {
-            log.error("读取流失败", e);
-        }
-    }
 }
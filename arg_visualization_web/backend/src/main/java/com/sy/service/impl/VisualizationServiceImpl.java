@@ -1,15 +1,26 @@
 package com.sy.service.impl;
 
 import com.baomidou.mybatisplus.core.conditions.query.LambdaQueryWrapper;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.sy.mapper.AllPredictionMapper;
 import com.sy.mapper.AnalysisTaskMapper;
 import com.sy.mapper.ClassSummaryMapper;
+import com.sy.mapper.TaskStatisticsMapper;
 import com.sy.pojo.AllPrediction;
 import com.sy.pojo.AnalysisTask;
 import com.sy.pojo.ClassSummary;
+import com.sy.pojo.TaskStatistics;
+import com.sy.service.IngestSummary;
+import com.sy.service.OutputReadinessWatcher;
+import com.sy.service.PredictionIngestStrategy;
+import com.sy.service.ResultCountCache;
+import com.sy.service.TaskCancellationRegistry;
+import com.sy.service.TaskEventBus;
 import com.sy.service.VisualizationService;
 import com.sy.exception.TaskCancelledException;
+import com.sy.exception.TaskOutputException;
+import com.sy.util.TsvReader;
 import lombok.RequiredArgsConstructor;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -18,10 +29,18 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
+import java.time.LocalDateTime;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
 
 /**
@@ -33,25 +52,40 @@ import java.util.stream.Collectors;
 public class VisualizationServiceImpl implements VisualizationService {
 
     private static final Logger log = LoggerFactory.getLogger(VisualizationServiceImpl.class);
-    /**
-     * 落库批量大小：一条 SQL 插入多行。
-     * 注意：单条 INSERT 的体积不能超过 MySQL 的 max_allowed_packet（当前约 64MB），
-     * 每条记录包含完整 sequence_id 等字段，实际大小可能较大，因此这里采用保守值 5000，
-     * 对于百万级结果集，大约需要 200 次 INSERT，既安全又足够快。
-     */
-    private static final int BATCH_SIZE = 5_000;
 
     private final AnalysisTaskMapper analysisTaskMapper;
     private final AllPredictionMapper allPredictionMapper;
     private final ClassSummaryMapper classSummaryMapper;
+    private final TaskStatisticsMapper taskStatisticsMapper;
+    private final List<PredictionIngestStrategy> ingestStrategies;
+    private final OutputReadinessWatcher outputReadinessWatcher;
+    private final ResultCountCache resultCountCache;
+    private final TaskEventBus taskEventBus;
+    private final TaskCancellationRegistry cancellationRegistry;
     private final ObjectMapper objectMapper = new ObjectMapper();
 
     @Value("${analysis.output-dir:./genome_outputs}")
     private String outputDir;
 
-    /** 等待输出文件就绪的最大毫秒数（Docker 可能尚未刷盘，大文件需要更长时间） */
-    private static final int WAIT_FOR_FILE_MS = 300_000;  // 5分钟
-    private static final int WAIT_POLL_MS = 500;  // 轮询间隔500ms
+    /** all_predictions 落库方式：batch（multi-row INSERT）、pipelined（解析/写库流水线）或 load-data（LOAD DATA LOCAL INFILE 流式写入） */
+    @Value("${analysis.ingest.mode:batch}")
+    private String ingestMode;
+
+    /**
+     * 等待容器完成标记的最大毫秒数，超时后按现有输出文件落库
+     * 正常流程中容器退出后才落库，标记已存在；等待只覆盖没有标记的旧输出，不超过 MAX_OUTPUT_WAIT_MS，避免占住队列线程
+     */
+    @Value("${analysis.ingest.output-wait-ms:5000}")
+    private long outputWaitMs;
+
+    private static final long MAX_OUTPUT_WAIT_MS = 30_000;
+
+    /** 分页游标方向 */
+    private static final String CURSOR_AFTER = "after";
+    private static final String CURSOR_BEFORE = "before";
+
+    /** 落库进度事件的最小间隔（毫秒） */
+    private static final long INGEST_EVENT_INTERVAL_MS = 1000;
 
     @Override
     public void persistTaskResultsToDb(Long taskId) {
@@ -61,16 +95,15 @@ public class VisualizationServiceImpl implements VisualizationService {
             return;
         }
         Path basePath = Paths.get(task.getOutputDir());
-        Path allPath = waitForFile(basePath, "all_predictions.tsv");
+        awaitOutputReady(taskId, basePath);
+        Path allPath = resolveFile(basePath, "all_predictions.tsv");
         if (allPath == null) {
             log.warn("未找到 all_predictions.tsv: taskId={}, basePath={}", taskId, basePath);
-            return;
+            throw new TaskOutputException("未找到结果文件 all_predictions.tsv");
         }
-        // 同样等待 class_summary.tsv 文件出现（Docker 可能还在写）
-        Path classPath = waitForFile(basePath, "class_summary.tsv");
+        Path classPath = resolveFile(basePath, "class_summary.tsv");
         try {
-            allPredictionMapper.delete(new LambdaQueryWrapper<AllPrediction>().eq(AllPrediction::getTaskId, taskId));
-            classSummaryMapper.delete(new LambdaQueryWrapper<ClassSummary>().eq(ClassSummary::getTaskId, taskId));
+            deleteTaskRows(taskId);
 
             // 落库前若已被取消则直接退出，不写数据
             if (isTaskCancelled(taskId)) {
@@ -78,104 +111,53 @@ public class VisualizationServiceImpl implements VisualizationService {
                 throw new TaskCancelledException(taskId);
             }
 
-            int totalCount = 0;
-            int argCount = 0;
-            List<AllPrediction> batch = new ArrayList<>(BATCH_SIZE);
-            try (BufferedReader reader = Files.newBufferedReader(allPath)) {
-                String line;
-                String[] headers = null;
-                Map<String, Integer> headerIndex = new HashMap<>();
-                int rowIndex = 1;
-                while ((line = reader.readLine()) != null) {
-                    if (line.trim().isEmpty() || line.startsWith("#")) continue;
-                    String[] values = line.split("\t", -1);
-                    if (headers == null) {
-                        headers = values;
-                        for (int i = 0; i < headers.length; i++)
-                            headerIndex.put(headers[i].toLowerCase().trim(), i);
-                        continue;
-                    }
-                    // 每批插入前检查是否已取消，避免取消后仍落库并最终覆盖为 COMPLETED
-                    if (batch.size() >= BATCH_SIZE) {
-                        if (isTaskCancelled(taskId)) {
-                            allPredictionMapper.delete(new LambdaQueryWrapper<AllPrediction>().eq(AllPrediction::getTaskId, taskId));
-                            classSummaryMapper.delete(new LambdaQueryWrapper<ClassSummary>().eq(ClassSummary::getTaskId, taskId));
-                            log.info("任务已取消，停止落库并清理已写入数据: taskId={}", taskId);
-                            throw new TaskCancelledException(taskId);
-                        }
-                        allPredictionMapper.insertBatch(batch);
-                        batch.clear();
-                    }
-                    String idVal = getVal(values, headerIndex, "id", "");
-                    boolean isArg = "true".equalsIgnoreCase(getVal(values, headerIndex, "is_arg", "false"));
-                    Double binaryProb = parseDouble(getVal(values, headerIndex, "binary_prob", null));
-                    String argClass = getVal(values, headerIndex, "arg_class", null);
-                    if (argClass != null) argClass = argClass.trim();
-                    if (argClass == null) argClass = "";
-                    Double classProb = parseDouble(getVal(values, headerIndex, "class_prob", null));
-
-                    AllPrediction p = new AllPrediction();
-                    p.setTaskId(taskId);
-                    p.setRowIndex(rowIndex++);
-                    p.setSequenceId(idVal != null ? idVal : "");
-                    p.setIsArg(isArg);
-                    p.setBinaryProb(binaryProb);
-                    p.setArgClass(argClass);
-                    p.setClassProb(classProb);
-                    batch.add(p);
-                    totalCount++;
-                    if (isArg) argCount++;
-                }
-                if (!batch.isEmpty()) {
-                    if (isTaskCancelled(taskId)) {
-                        allPredictionMapper.delete(new LambdaQueryWrapper<AllPrediction>().eq(AllPrediction::getTaskId, taskId));
-                        classSummaryMapper.delete(new LambdaQueryWrapper<ClassSummary>().eq(ClassSummary::getTaskId, taskId));
-                        log.info("任务已取消，停止落库并清理已写入数据: taskId={}", taskId);
-                        throw new TaskCancelledException(taskId);
-                    }
-                    allPredictionMapper.insertBatch(batch);
-                }
+            IngestSummary summary;
+            try {
+                summary = ingestPredictions(task, allPath);
+            } catch (TaskCancelledException e) {
+                deleteTaskRows(taskId);
+                log.info("任务已取消，停止落库并清理已写入数据: taskId={}", taskId);
+                throw e;
             }
+            int totalCount = (int) summary.getTotalCount();
+            int argCount = (int) summary.getArgCount();
 
             if (classPath != null && Files.exists(classPath)) {
                 List<ClassSummary> classSummaryList = new ArrayList<>();
-                try (BufferedReader reader = Files.newBufferedReader(classPath)) {
-                    String line;
-                    String[] headers = null;
-                    Map<String, Integer> headerIndex = new HashMap<>();
-                    while ((line = reader.readLine()) != null) {
-                        if (line.trim().isEmpty() || line.startsWith("#")) continue;
-                        String[] values = line.split("\t", -1);
-                        if (headers == null) {
-                            headers = values;
-                            for (int i = 0; i < headers.length; i++)
-                                headerIndex.put(headers[i].toLowerCase().trim(), i);
-                            continue;
+                try (TsvReader reader = TsvReader.open(classPath)) {
+                    if (reader.readHeader()) {
+                        int classIdx = reader.column("arg_class");
+                        int countIdx = reader.column("count");
+                        while (reader.next()) {
+                            String argClass = reader.getTrimmedString(classIdx);
+                            ClassSummary cs = new ClassSummary();
+                            cs.setTaskId(taskId);
+                            cs.setArgClass(argClass != null ? argClass : "");
+                            cs.setCount(reader.getInt(countIdx, 0));
+                            classSummaryList.add(cs);
                         }
-                        String argClass = getVal(values, headerIndex, "arg_class", null);
-                        if (argClass != null) argClass = argClass.trim();
-                        if (argClass == null) argClass = "";
-                        int count = 0;
-                        try {
-                            String countStr = getVal(values, headerIndex, "count", "0");
-                            if (countStr != null && !countStr.trim().isEmpty()) {
-                                count = Integer.parseInt(countStr.trim());
-                            }
-                        } catch (NumberFormatException ignored) {}
-                        ClassSummary cs = new ClassSummary();
-                        cs.setTaskId(taskId);
-                        cs.setArgClass(argClass);
-                        cs.setCount(count);
-                        classSummaryList.add(cs);
                     }
                 }
                 if (!classSummaryList.isEmpty()) {
                     classSummaryMapper.insertBatch(classSummaryList);
                 }
                 log.debug("任务 {} class_summary 已写入", taskId);
+            } else if (!summary.getClassCounts().isEmpty()) {
+                // 没有 class_summary.tsv 时用落库过程中统计的类别数量写入，避免查询时再聚合 all_predictions
+                log.warn("未找到 class_summary.tsv，使用落库统计写入: taskId={}", taskId);
+                List<ClassSummary> classSummaryList = new ArrayList<>();
+                for (Map.Entry<String, Long> e : summary.getClassCounts().entrySet()) {
+                    ClassSummary cs = new ClassSummary();
+                    cs.setTaskId(taskId);
+                    cs.setArgClass(e.getKey());
+                    cs.setCount(e.getValue().intValue());
+                    classSummaryList.add(cs);
+                }
+                classSummaryMapper.insertBatch(classSummaryList);
             } else {
                 log.warn("未找到 class_summary.tsv: taskId={}", taskId);
             }
+            saveTaskStatistics(taskId, summary);
 
             // 重新加载任务再更新，只改 total_count / prophage_count，避免覆盖其他字段
             AnalysisTask toUpdate = analysisTaskMapper.selectById(taskId);
@@ -185,72 +167,156 @@ public class VisualizationServiceImpl implements VisualizationService {
                 analysisTaskMapper.updateById(toUpdate);
             }
             log.info("任务 {} 结果已落库: total={}, arg={}, class_summary={}", taskId, totalCount, argCount, classPath != null && Files.exists(classPath));
+        } catch (TaskCancelledException e) {
+            throw e;
         } catch (Exception e) {
             log.error("落库失败: taskId={}", taskId, e);
             throw new RuntimeException("落库失败: " + e.getMessage(), e);
+        } finally {
+            // 落库期间（含回退重写）的分页/计数请求可能缓存了不完整的总数，写完统计后再清一次
+            resultCountCache.evictTask(taskId);
         }
     }
 
-    /** 
-     * 等待文件出现并写完（Docker 可能尚未刷盘），最多等待 WAIT_FOR_FILE_MS 毫秒
-     * 文件出现后，继续等待直到文件大小稳定（不再增长）
+    /**
+     * 按配置的落库策略写入 all_predictions；非 batch 策略失败时（如服务端未开启 local_infile）
+     * 清理该任务已写入的行并回退到批量 INSERT
      */
-    private Path waitForFile(Path basePath, String fileName) {
-        long deadline = System.currentTimeMillis() + WAIT_FOR_FILE_MS;
-        Path foundPath = null;
-        
-        // 阶段1：等待文件出现
-        while (System.currentTimeMillis() < deadline) {
-            Path p = resolveFile(basePath, fileName);
-            if (p != null) {
-                foundPath = p;
-                break;
+    private IngestSummary ingestPredictions(AnalysisTask task, Path allPath) throws Exception {
+        Long taskId = task.getTaskId();
+        PredictionIngestStrategy strategy = resolveIngestStrategy(ingestMode);
+        long start = System.currentTimeMillis();
+        try {
+            IngestSummary summary = strategy.ingest(taskId, allPath, ingestCheck(task));
+            log.info("all_predictions 落库完成: taskId={}, mode={}, rows={}, 耗时={}ms",
+                    taskId, strategy.mode(), summary.getTotalCount(), System.currentTimeMillis() - start);
+            return summary;
+        } catch (TaskCancelledException e) {
+            throw e;
+        } catch (Exception e) {
+            if ("batch".equals(strategy.mode())) {
+                throw e;
             }
-            try {
-                Thread.sleep(WAIT_POLL_MS);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
+            log.warn("落库策略 {} 失败，回退到批量 INSERT: taskId={}, 原因={}", strategy.mode(), taskId, e.getMessage());
+            allPredictionMapper.delete(new LambdaQueryWrapper<AllPrediction>().eq(AllPrediction::getTaskId, taskId));
+            return resolveIngestStrategy("batch").ingest(taskId, allPath, ingestCheck(task));
+        }
+    }
+
+    /**
+     * 落库每批调用一次：检查是否已取消，并按批次数估算已写入行数，至多每秒发布一次落库进度事件
+     */
+    private BooleanSupplier ingestCheck(AnalysisTask task) {
+        TaskCancellationRegistry.Token token = cancellationRegistry.get(task.getTaskId());
+        AtomicLong batches = new AtomicLong();
+        AtomicLong lastPublished = new AtomicLong(System.currentTimeMillis());
+        return () -> {
+            long n = batches.incrementAndGet();
+            long now = System.currentTimeMillis();
+            long last = lastPublished.get();
+            if (now - last >= INGEST_EVENT_INTERVAL_MS && lastPublished.compareAndSet(last, now)) {
+                taskEventBus.publish(task.getTaskId(), task.getUserId(), task.getStatus(), task.getProgress(),
+                        "INGESTING", "已写入约 " + n * BatchInsertIngestStrategy.BATCH_SIZE + " 行");
             }
+            return token.isCancelled();
+        };
+    }
+
+    private PredictionIngestStrategy resolveIngestStrategy(String mode) {
+        for (PredictionIngestStrategy s : ingestStrategies) {
+            if (s.mode().equalsIgnoreCase(mode)) return s;
         }
-        
-        if (foundPath == null) {
-            return resolveFile(basePath, fileName);
+        log.warn("未知的落库策略: {}，使用 batch", mode);
+        for (PredictionIngestStrategy s : ingestStrategies) {
+            if ("batch".equals(s.mode())) return s;
         }
-        
-        // 阶段2：等待文件写完（文件大小稳定）
-        long lastSize = -1;
-        int stableCount = 0;
-        final int STABLE_THRESHOLD = 3; // 连续3次大小相同才认为写完
-        
-        while (System.currentTimeMillis() < deadline && stableCount < STABLE_THRESHOLD) {
-            try {
-                long currentSize = Files.size(foundPath);
-                if (currentSize == lastSize && currentSize > 0) {
-                    stableCount++;
-                } else {
-                    stableCount = 0;
-                    lastSize = currentSize;
-                }
-                if (stableCount < STABLE_THRESHOLD) {
-                    Thread.sleep(WAIT_POLL_MS);
-                }
-            } catch (IOException e) {
-                log.warn("检查文件大小失败: {}", foundPath, e);
-                break;
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-                break;
-            }
+        throw new IllegalStateException("未注册 batch 落库策略");
+    }
+
+    /** 删除任务已落库的 all_predictions、class_summary 与 task_statistics */
+    private void deleteTaskRows(Long taskId) {
+        allPredictionMapper.delete(new LambdaQueryWrapper<AllPrediction>().eq(AllPrediction::getTaskId, taskId));
+        classSummaryMapper.delete(new LambdaQueryWrapper<ClassSummary>().eq(ClassSummary::getTaskId, taskId));
+        taskStatisticsMapper.deleteById(taskId);
+        resultCountCache.evictTask(taskId);
+    }
+
+    /** 写入落库过程中一次遍历得到的统计（总数、类别数量、概率直方图） */
+    private void saveTaskStatistics(Long taskId, IngestSummary summary) throws IOException {
+        TaskStatistics stats = new TaskStatistics();
+        stats.setTaskId(taskId);
+        stats.setTotalCount(summary.getTotalCount());
+        stats.setArgCount(summary.getArgCount());
+        stats.setClassCounts(objectMapper.writeValueAsString(summary.getClassCounts()));
+        stats.setBinaryProbHist(objectMapper.writeValueAsString(summary.getBinaryProbHistogram()));
+        stats.setClassProbHist(objectMapper.writeValueAsString(summary.getClassProbHistogram()));
+        stats.setUpdatedAt(LocalDateTime.now());
+        taskStatisticsMapper.insert(stats);
+    }
+
+    /** 解析 task_statistics.class_counts，解析失败返回 null（调用方回退到旧的聚合方式） */
+    private Map<String, Long> parseClassCounts(TaskStatistics stats) {
+        if (stats == null || stats.getClassCounts() == null) return null;
+        try {
+            return objectMapper.readValue(stats.getClassCounts(),
+                    objectMapper.getTypeFactory().constructMapType(LinkedHashMap.class, String.class, Long.class));
+        } catch (IOException e) {
+            log.warn("解析 class_counts 失败: taskId={}", stats.getTaskId(), e);
+            return null;
         }
-        
-        if (stableCount >= STABLE_THRESHOLD) {
-            log.debug("文件 {} 已稳定，大小: {} bytes", fileName, lastSize);
-        } else {
-            log.warn("文件 {} 可能未完全写完，当前大小: {} bytes", fileName, lastSize);
+    }
+
+    private long[] parseHistogram(String json) {
+        if (json == null) return null;
+        try {
+            return objectMapper.readValue(json, long[].class);
+        } catch (IOException e) {
+            log.warn("解析直方图失败: {}", json, e);
+            return null;
+        }
+    }
+
+    /** 直方图转前端格式：[{from, to, count}] */
+    private static List<Map<String, Object>> histogramToList(long[] histogram) {
+        List<Map<String, Object>> bins = new ArrayList<>(histogram.length);
+        for (int i = 0; i < histogram.length; i++) {
+            Map<String, Object> bin = new HashMap<>();
+            bin.put("from", (double) i / histogram.length);
+            bin.put("to", (double) (i + 1) / histogram.length);
+            bin.put("count", histogram[i]);
+            bins.add(bin);
+        }
+        return bins;
+    }
+
+    /**
+     * 等待容器完成标记（DockerServiceImpl 在容器退出后写入），标记出现即返回，最多等待 output-wait-ms 毫秒（不超过 MAX_OUTPUT_WAIT_MS）
+     * 正常流程中落库在容器退出之后才被调用，标记已存在，不会产生等待。
+     * 超时（如旧任务没有标记）时按现有文件继续落库。
+     * @throws TaskOutputException 容器以非零退出码结束，不落库，任务应标记为失败
+     * @throws TaskCancelledException 等待期间线程被中断（任务取消），不落库
+     */
+    private void awaitOutputReady(Long taskId, Path basePath) {
+        CompletableFuture<Integer> ready = outputReadinessWatcher.awaitFinished(basePath);
+        int exitCode;
+        try {
+            exitCode = ready.get(Math.min(outputWaitMs, MAX_OUTPUT_WAIT_MS), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            log.warn("等待完成标记超时，按现有输出文件落库: taskId={}, basePath={}", taskId, basePath);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new TaskCancelledException(taskId);
+        } catch (ExecutionException e) {
+            log.warn("等待完成标记失败: taskId={}", taskId, e);
+            return;
+        } finally {
+            ready.cancel(false);
+        }
+        if (exitCode != 0) {
+            log.warn("容器以非零退出码结束，跳过落库: taskId={}, exitCode={}", taskId, exitCode);
+            throw new TaskOutputException("推理容器以非零退出码结束: " + exitCode);
         }
-        
-        return foundPath;
     }
 
     private Path resolveFile(Path basePath, String fileName) {
@@ -260,16 +326,9 @@ public class VisualizationServiceImpl implements VisualizationService {
         return Files.exists(p) ? p : null;
     }
 
-    private static String getVal(String[] values, Map<String, Integer> headerIndex, String key, String def) {
-        Integer i = headerIndex.get(key.toLowerCase());
-        if (i != null && i < values.length && values[i] != null) return values[i];
-        return def;
-    }
-
-    /** 判断任务是否已被用户取消（落库过程中可被取消） */
+    /** 判断任务是否已被用户取消（落库过程中可被取消），只读内存中的取消令牌，不查库 */
     private boolean isTaskCancelled(Long taskId) {
-        AnalysisTask t = analysisTaskMapper.selectById(taskId);
-        return t != null && "CANCELLED".equals(t.getStatus());
+        return cancellationRegistry.isCancelled(taskId);
     }
 
     @Override
@@ -277,9 +336,14 @@ public class VisualizationServiceImpl implements VisualizationService {
         AnalysisTask task = validateTask(taskId, userId);
         int total = task.getTotalCount() != null ? task.getTotalCount() : 0;
         int arg = task.getProphageCount() != null ? task.getProphageCount() : 0;
-        // 若 analysis_tasks 未落库（total_count 为空）或 抗性基因数为0但应该有数据，从 all_predictions 表统计并回填
+        // 若 analysis_tasks 未落库（total_count 为空）或 抗性基因数为0但应该有数据，优先取 task_statistics，
+        // 旧任务没有统计记录时从 all_predictions 表统计并回填
         boolean needRecalculate = total <= 0 || (arg <= 0 && total > 0);
-        if (needRecalculate) {
+        TaskStatistics stats = needRecalculate ? taskStatisticsMapper.selectById(taskId) : null;
+        if (stats != null) {
+            total = stats.getTotalCount().intValue();
+            arg = stats.getArgCount().intValue();
+        } else if (needRecalculate) {
             Long totalFromDb = allPredictionMapper.selectCount(new LambdaQueryWrapper<AllPrediction>().eq(AllPrediction::getTaskId, taskId));
             if (totalFromDb != null && totalFromDb > 0) {
                 total = totalFromDb.intValue();
@@ -311,17 +375,9 @@ public class VisualizationServiceImpl implements VisualizationService {
     @Override
     public Map<String, Object> getResultsPage(Long taskId, Long userId, int page, int pageSize, Boolean isArg, String keyword) {
         validateTask(taskId, userId);
-        LambdaQueryWrapper<AllPrediction> q = new LambdaQueryWrapper<AllPrediction>()
-                .eq(AllPrediction::getTaskId, taskId)
+        LambdaQueryWrapper<AllPrediction> q = buildResultsQuery(taskId, isArg, keyword)
                 .orderByAsc(AllPrediction::getRowIndex);
-        if (isArg != null) {
-            q.eq(AllPrediction::getIsArg, isArg);
-        }
-        if (StringUtils.hasText(keyword)) {
-            String k = "%" + keyword.trim() + "%";
-            q.and(w -> w.like(AllPrediction::getSequenceId, k).or().like(AllPrediction::getArgClass, k));
-        }
-        long total = allPredictionMapper.selectCount(q);
+        long total = countResults(taskId, isArg, keyword);
         int offset = (page - 1) * pageSize;
         List<AllPrediction> list = allPredictionMapper.selectList(q.last("LIMIT " + pageSize + " OFFSET " + offset));
         List<Map<String, Object>> argResults = list.stream().map(this::allPredictionToMap).collect(Collectors.toList());
@@ -335,6 +391,103 @@ public class VisualizationServiceImpl implements VisualizationService {
         return result;
     }
 
+    @Override
+    public Map<String, Object> getResultsPageByCursor(Long taskId, Long userId, String cursor, int pageSize, Boolean isArg, String keyword) {
+        validateTask(taskId, userId);
+        // 游标为空表示第一页；否则为 after:rowIndex（向后翻）或 before:rowIndex（向前翻）
+        boolean backward = false;
+        int anchor = 0;
+        if (StringUtils.hasText(cursor)) {
+            String[] parts = decodeCursor(cursor);
+            backward = CURSOR_BEFORE.equals(parts[0]);
+            anchor = Integer.parseInt(parts[1]);
+        }
+
+        // 走 (task_id, row_index) / (task_id, is_arg, row_index) 索引定位，多取一行用于判断是否还有下一页
+        LambdaQueryWrapper<AllPrediction> q = buildResultsQuery(taskId, isArg, keyword);
+        if (backward) {
+            q.lt(AllPrediction::getRowIndex, anchor).orderByDesc(AllPrediction::getRowIndex);
+        } else {
+            q.gt(AllPrediction::getRowIndex, anchor).orderByAsc(AllPrediction::getRowIndex);
+        }
+        List<AllPrediction> list = new ArrayList<>(allPredictionMapper.selectList(q.last("LIMIT " + (pageSize + 1))));
+        boolean more = list.size() > pageSize;
+        if (more) {
+            list = new ArrayList<>(list.subList(0, pageSize));
+        }
+        if (backward) {
+            Collections.reverse(list);
+        }
+
+        String nextCursor;
+        String prevCursor;
+        if (list.isEmpty()) {
+            nextCursor = null;
+            prevCursor = !backward && anchor > 0 ? encodeCursor(CURSOR_BEFORE, anchor + 1) : null;
+        } else {
+            int first = list.get(0).getRowIndex();
+            int last = list.get(list.size() - 1).getRowIndex();
+            if (backward) {
+                nextCursor = encodeCursor(CURSOR_AFTER, last);
+                prevCursor = more ? encodeCursor(CURSOR_BEFORE, first) : null;
+            } else {
+                nextCursor = more ? encodeCursor(CURSOR_AFTER, last) : null;
+                prevCursor = anchor > 0 ? encodeCursor(CURSOR_BEFORE, first) : null;
+            }
+        }
+
+        Map<String, Object> result = new HashMap<>();
+        result.put("argResults", list.stream().map(this::allPredictionToMap).collect(Collectors.toList()));
+        Map<String, Object> pagination = new HashMap<>();
+        pagination.put("total", countResults(taskId, isArg, keyword));
+        pagination.put("pageSize", pageSize);
+        pagination.put("nextCursor", nextCursor);
+        pagination.put("prevCursor", prevCursor);
+        result.put("pagination", pagination);
+        return result;
+    }
+
+    /** 结果列表筛选条件（不含排序与分页） */
+    private LambdaQueryWrapper<AllPrediction> buildResultsQuery(Long taskId, Boolean isArg, String keyword) {
+        LambdaQueryWrapper<AllPrediction> q = new LambdaQueryWrapper<AllPrediction>()
+                .eq(AllPrediction::getTaskId, taskId);
+        if (isArg != null) {
+            q.eq(AllPrediction::getIsArg, isArg);
+        }
+        if (StringUtils.hasText(keyword)) {
+            String k = "%" + keyword.trim() + "%";
+            q.and(w -> w.like(AllPrediction::getSequenceId, k).or().like(AllPrediction::getArgClass, k));
+        }
+        return q;
+    }
+
+    /** 按 任务 + 筛选条件 缓存的总数，落库后结果不变，不必每次翻页都 COUNT */
+    private long countResults(Long taskId, Boolean isArg, String keyword) {
+        String k = StringUtils.hasText(keyword) ? keyword.trim() : null;
+        return resultCountCache.get(taskId, isArg, k,
+                () -> allPredictionMapper.selectCount(buildResultsQuery(taskId, isArg, k)));
+    }
+
+    /** 游标对前端不透明：base64url("after:123") */
+    private static String encodeCursor(String direction, int rowIndex) {
+        String raw = direction + ":" + rowIndex;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String[] decodeCursor(String cursor) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(cursor.trim()), StandardCharsets.UTF_8);
+            String[] parts = raw.split(":", 2);
+            if (parts.length == 2 && (CURSOR_AFTER.equals(parts[0]) || CURSOR_BEFORE.equals(parts[0]))
+                    && Integer.parseInt(parts[1]) >= 0) {
+                return parts;
+            }
+        } catch (IllegalArgumentException ignored) {
+            // Base64 或数字格式错误，统一按无效游标处理
+        }
+        throw new IllegalArgumentException("无效的分页游标");
+    }
+
     private Map<String, Object> allPredictionToMap(AllPrediction p) {
         Map<String, Object> m = new HashMap<>();
         m.put("index", p.getRowIndex());
@@ -353,6 +506,7 @@ public class VisualizationServiceImpl implements VisualizationService {
         List<ClassSummary> list = classSummaryMapper.selectList(
                 new LambdaQueryWrapper<ClassSummary>().eq(ClassSummary::getTaskId, taskId).orderByDesc(ClassSummary::getCount));
         List<Map<String, Object>> items = new ArrayList<>();
+        Map<String, Long> statsClassCounts;
         if (list != null && !list.isEmpty()) {
             for (ClassSummary cs : list) {
                 Map<String, Object> item = new HashMap<>();
@@ -360,8 +514,18 @@ public class VisualizationServiceImpl implements VisualizationService {
                 item.put("value", cs.getCount());
                 items.add(item);
             }
+        } else if ((statsClassCounts = parseClassCounts(taskStatisticsMapper.selectById(taskId))) != null) {
+            // class_summary 表无数据时，使用落库时统计的类别数量
+            statsClassCounts.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .forEach(e -> {
+                        Map<String, Object> item = new HashMap<>();
+                        item.put("name", e.getKey());
+                        item.put("value", e.getValue());
+                        items.add(item);
+                    });
         } else {
-            // class_summary 表无数据时，从 all_predictions 表聚合类别分布
+            // 旧任务没有统计记录时，从 all_predictions 表聚合类别分布
             log.info("getClassSummary: class_summary 表无数据，从 all_predictions 聚合: taskId={}", taskId);
             List<AllPrediction> argPredictions = allPredictionMapper.selectList(
                     new LambdaQueryWrapper<AllPrediction>()
@@ -401,12 +565,7 @@ public class VisualizationServiceImpl implements VisualizationService {
     @Override
     public Map<String, Object> getGenomeVisualization(Long taskId, Long userId) {
         AnalysisTask task = validateTask(taskId, userId);
-        boolean useDb = task.getTotalCount() != null && task.getTotalCount() > 0;
-        if (!useDb) {
-            Long fromDb = allPredictionMapper.selectCount(new LambdaQueryWrapper<AllPrediction>().eq(AllPrediction::getTaskId, taskId));
-            useDb = fromDb != null && fromDb > 0;
-        }
-        if (useDb) {
+        if (hasDbResults(task)) {
             Map<String, Object> summary = getSummary(taskId, userId);
             Map<String, Object> firstPage = getResultsPage(taskId, userId, 1, 100, null, null);
             Map<String, Object> out = new HashMap<>(summary);
@@ -417,6 +576,14 @@ public class VisualizationServiceImpl implements VisualizationService {
         return getGenomeVisualizationFromFile(taskId, userId);
     }
 
+    /** 任务结果是否已落库（否则只能回退读文件） */
+    private boolean hasDbResults(AnalysisTask task) {
+        if (task.getTotalCount() != null && task.getTotalCount() > 0) return true;
+        if (taskStatisticsMapper.selectById(task.getTaskId()) != null) return true;
+        Long fromDb = allPredictionMapper.selectCount(new LambdaQueryWrapper<AllPrediction>().eq(AllPrediction::getTaskId, task.getTaskId()));
+        return fromDb != null && fromDb > 0;
+    }
+
     private Map<String, Object> getGenomeVisualizationFromFile(Long taskId, Long userId) {
         AnalysisTask task = validateTask(taskId, userId);
         String taskOutputDir = task.getOutputDir() != null ? task.getOutputDir() : Paths.get(outputDir, "task_" + taskId).toString();
@@ -526,43 +693,33 @@ public class VisualizationServiceImpl implements VisualizationService {
     private List<Map<String, Object>> parseArgResultsListFromFile(Path argFile) throws IOException {
         List<Map<String, Object>> results = new ArrayList<>();
         
-        try (BufferedReader reader = Files.newBufferedReader(argFile)) {
-            String line;
-            String[] headers = null;
-            Map<String, Integer> headerIndex = new HashMap<>();
+        try (TsvReader reader = TsvReader.open(argFile)) {
+            if (!reader.readHeader()) {
+                return results;
+            }
+            // 表头列位置只解析一次
+            int idIdx = reader.column("id");
+            int isArgIdx = reader.column("is_arg");
+            int binaryProbIdx = reader.column("binary_prob");
+            int argClassIdx = reader.column("arg_class");
+            int classProbIdx = reader.column("class_prob");
+            int topClassesIdx = reader.column("top_classes");
             int index = 1;
             
-            while ((line = reader.readLine()) != null) {
-                // 跳过空行和注释
-                if (line.trim().isEmpty() || line.startsWith("#")) {
-                    continue;
-                }
-                
-                String[] values = line.split("\t", -1); // -1 保留尾部空字符串
-                
-                // 第一行是表头，建立索引映射
-                if (headers == null) {
-                    headers = values;
-                    for (int i = 0; i < headers.length; i++) {
-                        headerIndex.put(headers[i].toLowerCase().trim(), i);
-                    }
-                    log.debug("TSV 表头: {}", Arrays.toString(headers));
-                    continue;
-                }
-                
+            while (reader.next()) {
                 // 解析数据行
                 Map<String, Object> result = new HashMap<>();
                 result.put("index", index++);
                      
                 // 根据表头动态解析
-                result.put("id", getValueByHeader(values, headerIndex, "id", ""));
-                result.put("isArg", "True".equalsIgnoreCase(getValueByHeader(values, headerIndex, "is_arg", "false")));
-                result.put("predProb", parseDouble(getValueByHeader(values, headerIndex, "binary_prob", null)));
-                result.put("argClass", getValueByHeader(values, headerIndex, "arg_class", ""));
-                result.put("classProb", parseDouble(getValueByHeader(values, headerIndex, "class_prob", null)));
+                result.put("id", getValueByHeader(reader, idIdx, ""));
+                result.put("isArg", reader.trimmedEqualsIgnoreCase(isArgIdx, "True"));
+                result.put("predProb", parseDouble(reader, binaryProbIdx));
+                result.put("argClass", getValueByHeader(reader, argClassIdx, ""));
+                result.put("classProb", parseDouble(reader, classProbIdx));
                 
                 // 解析 top_classes JSON 字段（新增）
-                String topClassesJson = getValueByHeader(values, headerIndex, "top_classes", null);
+                String topClassesJson = getValueByHeader(reader, topClassesIdx, null);
                 if (topClassesJson != null && !topClassesJson.isEmpty() && !"null".equalsIgnoreCase(topClassesJson)) {
                     try {
                         // 处理 pandas 导出的 CSV/TSV 格式：外层有引号，内部引号被转义为 ""
@@ -599,32 +756,18 @@ public class VisualizationServiceImpl implements VisualizationService {
     }
     
     /**
-     * 根据表头名称获取值
+     * 按列位置获取去除首尾空白后的值，列不存在或为空时返回默认值
      */
-    private String getValueByHeader(String[] values, Map<String, Integer> headerIndex, String headerName, String defaultValue) {
-        Integer idx = headerIndex.get(headerName.toLowerCase());
-        if (idx != null && idx < values.length) {
-            String value = values[idx];
-            if (value != null && !value.trim().isEmpty()) {
-                return value.trim(); 
-            }
-        }
-        return defaultValue;
+    private String getValueByHeader(TsvReader reader, int col, String defaultValue) {
+        return reader.isBlank(col) ? defaultValue : reader.getTrimmedString(col);
     }
     
     /**
-     * 安全解析 double
+     * 安全解析 double，无法解析时返回 null
      */
-    private Double parseDouble(String value) {
-        if (value == null || value.trim().isEmpty()) {
-            return null;
-        }
-        try {
-            return Double.parseDouble(value.trim());
-        } catch (NumberFormatException e) {
-            log.warn("无法解析数值: {}", value);
-            return null;
-        }
+    private Double parseDouble(TsvReader reader, int col) {
+        double v = reader.getDouble(col, Double.NaN);
+        return Double.isNaN(v) ? null : v;
     }
 
     @Override
@@ -636,6 +779,20 @@ public class VisualizationServiceImpl implements VisualizationService {
     public Map<String, Object> getStatistics(Long taskId, Long userId) {
         AnalysisTask task = validateTask(taskId, userId);
         Map<String, Object> statistics = new HashMap<>();
+        // 落库时已统计：直接按 task_id 读取一行
+        TaskStatistics stats = taskStatisticsMapper.selectById(taskId);
+        Map<String, Long> statsClassCounts = parseClassCounts(stats);
+        if (statsClassCounts != null) {
+            statistics.put("totalSequences", stats.getTotalCount());
+            statistics.put("argCount", stats.getArgCount());
+            statistics.put("nonArgCount", Math.max(0, stats.getTotalCount() - stats.getArgCount()));
+            statistics.put("classDistribution", statsClassCounts);
+            long[] binaryHist = parseHistogram(stats.getBinaryProbHist());
+            long[] classHist = parseHistogram(stats.getClassProbHist());
+            statistics.put("binaryProbHistogram", binaryHist != null ? histogramToList(binaryHist) : null);
+            statistics.put("classProbHistogram", classHist != null ? histogramToList(classHist) : null);
+            return statistics;
+        }
         int total = task.getTotalCount() != null ? task.getTotalCount() : 0;
         int argCount = task.getProphageCount() != null ? task.getProphageCount() : 0;
         // 若 analysis_tasks 未落库（total_count 为空）或 抗性基因数为0但应该有数据，从 all_predictions 表统计
@@ -720,13 +877,7 @@ public class VisualizationServiceImpl implements VisualizationService {
             Map<String, Object> exportData = new HashMap<>();
             
             // 任务信息
-            Map<String, Object> taskInfo = new HashMap<>();
-            taskInfo.put("taskId", task.getTaskId());
-            taskInfo.put("taskName", task.getTaskName());
-            taskInfo.put("status", task.getStatus());
-            taskInfo.put("createdAt", task.getCreatedAt() != null ? task.getCreatedAt().toString() : null);
-            taskInfo.put("completedAt", task.getCompletedAt() != null ? task.getCompletedAt().toString() : null);
-            exportData.put("taskInfo", taskInfo);
+            exportData.put("taskInfo", buildTaskInfo(task));
             
             // 可视化数据
             exportData.put("visualization", getGenomeVisualization(taskId, userId));
@@ -766,6 +917,105 @@ public class VisualizationServiceImpl implements VisualizationService {
         return result;
     }
 
+    @Override
+    public JsonWriter streamAllArgSequences(Long taskId, Long userId) {
+        validateTask(taskId, userId);
+        return gen -> {
+            gen.writeStartObject();
+            gen.writeArrayFieldStart("argSequences");
+            long count = streamPredictions(taskId, true, gen);
+            gen.writeEndArray();
+            gen.writeNumberField("totalCount", count);
+            gen.writeEndObject();
+            log.info("流式输出所有 ARG 序列: taskId={}, count={}", taskId, count);
+        };
+    }
+
+    @Override
+    public JsonWriter streamExportData(Long taskId, Long userId) {
+        AnalysisTask task = validateTask(taskId, userId);
+        // 摘要与统计都是按 task_id 的小查询，先取出；预测结果在写出时逐行流式读取
+        Map<String, Object> statistics = getStatistics(taskId, userId);
+        boolean useDb = hasDbResults(task);
+        Map<String, Object> summary = useDb ? getSummary(taskId, userId) : null;
+        // 旧任务未落库时只能读文件，沿用非流式结果
+        Map<String, Object> fileVisualization = useDb ? null : getGenomeVisualizationFromFile(taskId, userId);
+        return gen -> {
+            gen.writeStartObject();
+            gen.writeObjectField("taskInfo", buildTaskInfo(task));
+            gen.writeFieldName("visualization");
+            if (useDb) {
+                gen.writeStartObject();
+                for (Map.Entry<String, Object> e : summary.entrySet()) {
+                    gen.writeObjectField(e.getKey(), e.getValue());
+                }
+                gen.writeArrayFieldStart("argResults");
+                long count = streamPredictions(taskId, false, gen);
+                gen.writeEndArray();
+                gen.writeObjectFieldStart("pagination");
+                gen.writeNumberField("total", count);
+                gen.writeNumberField("page", 1);
+                gen.writeNumberField("pageSize", count);
+                gen.writeEndObject();
+                gen.writeEndObject();
+            } else {
+                gen.writeObject(fileVisualization);
+            }
+            gen.writeObjectField("statistics", statistics);
+            gen.writeEndObject();
+            log.info("成功流式导出任务 {} 的完整数据", taskId);
+        };
+    }
+
+    /**
+     * 按 row_index 顺序把预测结果逐行写成 JSON 对象（字段同 allPredictionToMap），返回写出行数
+     */
+    private long streamPredictions(Long taskId, boolean argOnly, JsonGenerator gen) throws IOException {
+        long[] count = {0};
+        try {
+            allPredictionMapper.streamByTask(taskId, argOnly, ctx -> {
+                AllPrediction p = ctx.getResultObject();
+                try {
+                    gen.writeStartObject();
+                    gen.writeNumberField("index", p.getRowIndex());
+                    gen.writeStringField("id", p.getSequenceId());
+                    gen.writeBooleanField("isArg", Boolean.TRUE.equals(p.getIsArg()));
+                    writeNullableNumber(gen, "predProb", p.getBinaryProb());
+                    gen.writeStringField("argClass", p.getArgClass());
+                    writeNullableNumber(gen, "classProb", p.getClassProb());
+                    gen.writeNullField("topClasses");
+                    gen.writeEndObject();
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+                count[0]++;
+            });
+        } catch (UncheckedIOException e) {
+            // 客户端断开等写出失败，停止读取
+            throw e.getCause();
+        }
+        return count[0];
+    }
+
+    private static void writeNullableNumber(JsonGenerator gen, String field, Double value) throws IOException {
+        if (value == null) {
+            gen.writeNullField(field);
+        } else {
+            gen.writeNumberField(field, value);
+        }
+    }
+
+    /** 导出用任务信息 */
+    private static Map<String, Object> buildTaskInfo(AnalysisTask task) {
+        Map<String, Object> taskInfo = new HashMap<>();
+        taskInfo.put("taskId", task.getTaskId());
+        taskInfo.put("taskName", task.getTaskName());
+        taskInfo.put("status", task.getStatus());
+        taskInfo.put("createdAt", task.getCreatedAt() != null ? task.getCreatedAt().toString() : null);
+        taskInfo.put("completedAt", task.getCompletedAt() != null ? task.getCompletedAt().toString() : null);
+        return taskInfo;
+    }
+
     /**
      * 验证任务
      */
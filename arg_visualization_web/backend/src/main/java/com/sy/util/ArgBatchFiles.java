@@ -0,0 +1,212 @@
+package com.sy.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * 合批推理的输入合并与结果拆分
+ * 合并时给每条序列头加上任务标签（t{taskId}__），推理后按标签把 all_predictions.tsv、arg_predictions.tsv、
+ * arg_sequences.fasta 拆回各任务输出目录并去掉标签，再按拆分出的 ARG 行生成每个任务的 class_summary.tsv，
+ * 拆分结果与单独运行 cli.py end-to-end 的输出格式一致。
+ */
+public final class ArgBatchFiles {
+
+    private static final String TAG_PREFIX = "t";
+    private static final String TAG_SEPARATOR = "__";
+    /** cli.py 输出的预测表表头（没有任何预测行时也写出） */
+    public static final String PREDICTION_HEADER = "id\tis_arg\tbinary_prob\targ_class\tclass_prob\ttop_classes";
+    /** 没有 ARG 序列时 arg_sequences.fasta 的内容 */
+    static final String NO_SEQUENCES = "# No ARG sequences found\n";
+
+    private ArgBatchFiles() {
+    }
+
+    public static String tag(Long taskId) {
+        return TAG_PREFIX + taskId + TAG_SEPARATOR;
+    }
+
+    /**
+     * 按顺序合并各任务的 FASTA，序列头加任务标签
+     */
+    public static void writeCombinedFasta(Map<Long, Path> inputs, Path out) throws IOException {
+        Files.createDirectories(out.getParent());
+        try (BufferedWriter writer = Files.newBufferedWriter(out, StandardCharsets.UTF_8)) {
+            for (Map.Entry<Long, Path> e : inputs.entrySet()) {
+                String tag = tag(e.getKey());
+                try (BufferedReader reader = Files.newBufferedReader(e.getValue(), StandardCharsets.UTF_8)) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.startsWith(">")) {
+                            writer.write(">");
+                            writer.write(tag);
+                            writer.write(line, 1, line.length() - 1);
+                        } else {
+                            writer.write(line);
+                        }
+                        writer.newLine();
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * 把合批输出目录中的结果拆分到各任务输出目录
+     * @param memberDirs taskId -> 该任务输出目录
+     * @return 无法识别任务标签而被丢弃的行数
+     */
+    public static int demultiplex(Path batchOutputDir, Map<Long, Path> memberDirs) throws IOException {
+        for (Path dir : memberDirs.values()) {
+            Files.createDirectories(dir);
+        }
+        int dropped = splitTsv(batchOutputDir.resolve("all_predictions.tsv"), "all_predictions.tsv", memberDirs, null);
+        Map<Long, Map<String, Integer>> classCounts = new HashMap<>();
+        dropped += splitTsv(batchOutputDir.resolve("arg_predictions.tsv"), "arg_predictions.tsv", memberDirs, classCounts);
+        splitFasta(batchOutputDir.resolve("arg_sequences.fasta"), memberDirs);
+        for (Map.Entry<Long, Path> e : memberDirs.entrySet()) {
+            writeClassSummary(e.getValue().resolve("class_summary.tsv"),
+                    classCounts.getOrDefault(e.getKey(), Collections.emptyMap()));
+        }
+        return dropped;
+    }
+
+    /**
+     * 序列 ID 中的任务标签
+     * @return 没有标签返回 null
+     */
+    static Long parseTag(String id) {
+        if (!id.startsWith(TAG_PREFIX)) return null;
+        int sep = id.indexOf(TAG_SEPARATOR, TAG_PREFIX.length());
+        if (sep <= TAG_PREFIX.length()) return null;
+        try {
+            return Long.parseLong(id.substring(TAG_PREFIX.length(), sep));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static int splitTsv(Path source, String name, Map<Long, Path> memberDirs,
+                                Map<Long, Map<String, Integer>> classCounts) throws IOException {
+        Map<Long, BufferedWriter> writers = new HashMap<>();
+        int dropped = 0;
+        try {
+            String header = null;
+            int idIdx = -1;
+            int classIdx = -1;
+            if (Files.exists(source)) {
+                try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+                    header = reader.readLine();
+                    if (header != null) {
+                        List<String> columns = Arrays.asList(header.split("\t", -1));
+                        idIdx = columns.indexOf("id");
+                        classIdx = columns.indexOf("arg_class");
+                    }
+                    String line;
+                    while (header != null && idIdx >= 0 && (line = reader.readLine()) != null) {
+                        if (line.isEmpty()) continue;
+                        String[] fields = line.split("\t", -1);
+                        Long taskId = idIdx < fields.length ? parseTag(fields[idIdx]) : null;
+                        if (taskId == null || !memberDirs.containsKey(taskId)) {
+                            dropped++;
+                            continue;
+                        }
+                        fields[idIdx] = fields[idIdx].substring(tag(taskId).length());
+                        BufferedWriter w = writers.get(taskId);
+                        if (w == null) {
+                            w = openWithHeader(memberDirs.get(taskId).resolve(name), header);
+                            writers.put(taskId, w);
+                        }
+                        w.write(String.join("\t", fields));
+                        w.newLine();
+                        if (classCounts != null && classIdx >= 0 && classIdx < fields.length) {
+                            classCounts.computeIfAbsent(taskId, k -> new HashMap<>())
+                                    .merge(fields[classIdx], 1, Integer::sum);
+                        }
+                    }
+                }
+            }
+            // 没有任何行的任务也生成只有表头的文件，与单独运行时一致
+            String emptyHeader = header != null ? header : PREDICTION_HEADER;
+            for (Map.Entry<Long, Path> e : memberDirs.entrySet()) {
+                if (!writers.containsKey(e.getKey())) {
+                    writers.put(e.getKey(), openWithHeader(e.getValue().resolve(name), emptyHeader));
+                }
+            }
+        } finally {
+            for (BufferedWriter w : writers.values()) {
+                w.close();
+            }
+        }
+        return dropped;
+    }
+
+    private static void splitFasta(Path source, Map<Long, Path> memberDirs) throws IOException {
+        Map<Long, BufferedWriter> writers = new HashMap<>();
+        try {
+            if (Files.exists(source)) {
+                try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+                    BufferedWriter current = null;
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        if (line.startsWith(">")) {
+                            Long taskId = parseTag(line.substring(1));
+                            if (taskId == null || !memberDirs.containsKey(taskId)) {
+                                current = null;
+                                continue;
+                            }
+                            current = writers.get(taskId);
+                            if (current == null) {
+                                current = Files.newBufferedWriter(memberDirs.get(taskId).resolve("arg_sequences.fasta"),
+                                        StandardCharsets.UTF_8);
+                                writers.put(taskId, current);
+                            }
+                            current.write(">");
+                            current.write(line, 1 + tag(taskId).length(), line.length() - 1 - tag(taskId).length());
+                            current.newLine();
+                        } else if (current != null) {
+                            current.write(line);
+                            current.newLine();
+                        }
+                    }
+                }
+            }
+        } finally {
+            for (BufferedWriter w : writers.values()) {
+                w.close();
+            }
+        }
+        for (Map.Entry<Long, Path> e : memberDirs.entrySet()) {
+            if (!writers.containsKey(e.getKey())) {
+                Files.writeString(e.getValue().resolve("arg_sequences.fasta"), NO_SEQUENCES, StandardCharsets.UTF_8);
+            }
+        }
+    }
+
+    /**
+     * 与 pandas value_counts().to_csv 相同：表头 arg_class\tcount，按数量降序
+     */
+    static void writeClassSummary(Path file, Map<String, Integer> counts) throws IOException {
+        List<Map.Entry<String, Integer>> entries = new ArrayList<>(counts.entrySet());
+        entries.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+        try (BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+            w.write("arg_class\tcount");
+            w.newLine();
+            for (Map.Entry<String, Integer> e : entries) {
+                w.write(e.getKey() + "\t" + e.getValue());
+                w.newLine();
+            }
+        }
+    }
+
+    private static BufferedWriter openWithHeader(Path file, String header) throws IOException {
+        BufferedWriter w = Files.newBufferedWriter(file, StandardCharsets.UTF_8);
+        w.write(header);
+        w.newLine();
+        return w;
+    }
+}
@@ -0,0 +1,139 @@
+package com.sy.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 分块推理的结果汇总
+ * 每个分块单独运行 cli.py end-to-end 后，把分块输出追加到任务结果目录：all_predictions.tsv、arg_predictions.tsv
+ * 只保留第一次的表头，arg_sequences.fasta 去掉 "# No ARG ..." 占位行，container.log 原样追加；
+ * 全部分块追加完后按累计的 ARG 行生成 class_summary.tsv，汇总结果与对合并文件单次运行的输出格式一致。
+ */
+public final class ArgChunkResults {
+
+    private static final String[] RESULT_FILES = {
+            "all_predictions.tsv", "arg_predictions.tsv", "arg_sequences.fasta", "class_summary.tsv",
+            ContainerLog.FILE_NAME
+    };
+
+    private final Path resultDir;
+    private final Map<String, Integer> classCounts = new HashMap<>();
+    private int chunks;
+    private long predictions;
+
+    /**
+     * 清除结果目录中已有的结果文件（任务重试时不会重复追加）
+     */
+    public ArgChunkResults(Path resultDir) throws IOException {
+        this.resultDir = resultDir;
+        Files.createDirectories(resultDir);
+        for (String name : RESULT_FILES) {
+            Files.deleteIfExists(resultDir.resolve(name));
+        }
+    }
+
+    /**
+     * 追加一个分块的输出目录
+     */
+    public synchronized void append(Path chunkDir) throws IOException {
+        predictions += appendTsv(chunkDir.resolve("all_predictions.tsv"), resultDir.resolve("all_predictions.tsv"), false);
+        appendTsv(chunkDir.resolve("arg_predictions.tsv"), resultDir.resolve("arg_predictions.tsv"), true);
+        appendFasta(chunkDir.resolve("arg_sequences.fasta"), resultDir.resolve("arg_sequences.fasta"));
+        Path chunkLog = chunkDir.resolve(ContainerLog.FILE_NAME);
+        if (Files.isRegularFile(chunkLog)) {
+            try (OutputStream out = Files.newOutputStream(resultDir.resolve(ContainerLog.FILE_NAME),
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                Files.copy(chunkLog, out);
+            }
+        }
+        chunks++;
+    }
+
+    /**
+     * 全部分块追加完成：写 class_summary.tsv，没有任何输出的文件补上表头/占位内容
+     */
+    public synchronized void finish() throws IOException {
+        for (String name : new String[]{"all_predictions.tsv", "arg_predictions.tsv"}) {
+            Path file = resultDir.resolve(name);
+            if (!Files.exists(file)) {
+                Files.writeString(file, ArgBatchFiles.PREDICTION_HEADER + "\n", StandardCharsets.UTF_8);
+            }
+        }
+        Path sequences = resultDir.resolve("arg_sequences.fasta");
+        if (!Files.exists(sequences) || Files.size(sequences) == 0) {
+            Files.writeString(sequences, ArgBatchFiles.NO_SEQUENCES, StandardCharsets.UTF_8);
+        }
+        ArgBatchFiles.writeClassSummary(resultDir.resolve("class_summary.tsv"), classCounts);
+    }
+
+    public synchronized int getChunks() {
+        return chunks;
+    }
+
+    public synchronized long getPredictions() {
+        return predictions;
+    }
+
+    /**
+     * @return 追加的数据行数
+     */
+    private long appendTsv(Path source, Path target, boolean countClasses) throws IOException {
+        if (!Files.isRegularFile(source)) return 0;
+        long rows = 0;
+        try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            String header = reader.readLine();
+            if (header == null) return 0;
+            boolean writeHeader = !Files.exists(target);
+            int classIdx = -1;
+            if (countClasses) {
+                List<String> columns = Arrays.asList(header.split("\t", -1));
+                classIdx = columns.indexOf("arg_class");
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                if (writeHeader) {
+                    writer.write(header);
+                    writer.newLine();
+                }
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.isEmpty()) continue;
+                    writer.write(line);
+                    writer.newLine();
+                    rows++;
+                    if (classIdx >= 0) {
+                        String[] fields = line.split("\t", -1);
+                        if (classIdx < fields.length) {
+                            classCounts.merge(fields[classIdx], 1, Integer::sum);
+                        }
+                    }
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static void appendFasta(Path source, Path target) throws IOException {
+        if (!Files.isRegularFile(source)) return;
+        try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8);
+             BufferedWriter writer = Files.newBufferedWriter(target, StandardCharsets.UTF_8,
+                     StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#")) continue;
+                writer.write(line);
+                writer.newLine();
+            }
+        }
+    }
+}
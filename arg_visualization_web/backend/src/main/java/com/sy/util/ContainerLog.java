@@ -0,0 +1,183 @@
+package com.sy.util;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Predicate;
+
+/**
+ * 容器输出捕获
+ * stdout/stderr 各保留最近 tailLines 行（环形缓冲，用于失败时的错误信息），完整输出逐行写入日志文件，
+ * 内存占用与容器运行时长无关。日志文件不可写时只保留内存中的尾部。
+ * 日志行格式：[stdout] ... / [stderr] ...
+ */
+@Slf4j
+public final class ContainerLog implements Closeable {
+
+    /** 任务输出目录中的容器日志文件名 */
+    public static final String FILE_NAME = "container.log";
+
+    /** 单行超过该长度时截断，避免无换行的输出撑大缓冲 */
+    private static final int MAX_LINE_CHARS = 4096;
+    /** 距上次 flush 超过该时间（毫秒）时 flush，运行中也能分页读到最新输出 */
+    private static final long FLUSH_INTERVAL_MS = 1000;
+
+    private final Path file;
+    private final int tailLines;
+    private final Deque<String> stdoutTail = new ArrayDeque<>();
+    private final Deque<String> stderrTail = new ArrayDeque<>();
+    private Writer writer;
+    private long flushedAt;
+
+    /**
+     * @param file 日志文件，为 null 时只保留内存尾部；已存在时追加
+     */
+    public ContainerLog(Path file, int tailLines) {
+        this.file = file;
+        this.tailLines = Math.max(1, tailLines);
+        if (file != null) {
+            try {
+                Files.createDirectories(file.toAbsolutePath().getParent());
+                writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8,
+                        StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+            } catch (IOException e) {
+                log.warn("无法写入容器日志，只保留最近 {} 行: {}", tailLines, file, e);
+            }
+        }
+    }
+
+    /**
+     * 启动读取线程：逐行读取流，filter 返回 true 的行视为已处理（如进度行），不再记录
+     */
+    public Thread pump(InputStream in, boolean stderr, Predicate<String> filter) {
+        Thread t = new Thread(() -> {
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (filter != null && filter.test(line)) continue;
+                    append(stderr, line);
+                }
+            } catch (IOException e) {
+                log.error("读取容器 {} 失败", stderr ? "stderr" : "stdout", e);
+            }
+        });
+        t.setDaemon(true);
+        t.start();
+        return t;
+    }
+
+    public synchronized void append(boolean stderr, String line) {
+        if (line.length() > MAX_LINE_CHARS) {
+            line = line.substring(0, MAX_LINE_CHARS) + "...";
+        }
+        Deque<String> tail = stderr ? stderrTail : stdoutTail;
+        tail.addLast(line);
+        if (tail.size() > tailLines) {
+            tail.removeFirst();
+        }
+        if (writer == null) return;
+        try {
+            writer.write(stderr ? "[stderr] " : "[stdout] ");
+            writer.write(line);
+            writer.write('\n');
+            long now = System.currentTimeMillis();
+            if (now - flushedAt >= FLUSH_INTERVAL_MS) {
+                writer.flush();
+                flushedAt = now;
+            }
+        } catch (IOException e) {
+            log.warn("写入容器日志失败，此后只保留最近 {} 行: {}", tailLines, file, e);
+            closeWriter();
+        }
+    }
+
+    public synchronized String stdoutTail() {
+        return join(stdoutTail);
+    }
+
+    public synchronized String stderrTail() {
+        return join(stderrTail);
+    }
+
+    public Path getFile() {
+        return file;
+    }
+
+    @Override
+    public synchronized void close() {
+        closeWriter();
+    }
+
+    private void closeWriter() {
+        if (writer == null) return;
+        try {
+            writer.close();
+        } catch (IOException e) {
+            log.warn("关闭容器日志失败: {}", file, e);
+        }
+        writer = null;
+    }
+
+    private static String join(Deque<String> lines) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) {
+            sb.append(line).append('\n');
+        }
+        return sb.toString();
+    }
+
+    /**
+     * 分页读取日志文件（按字节偏移）
+     * 页面在最后一个换行处截断，下一页从 nextOffset 继续；offset 为负数时从文件末尾往前 |offset| 字节处的下一行开始
+     * @param limit 本页最多读取的字节数
+     * @return content、offset（实际起点）、nextOffset、size（当前文件大小）、eof；文件不存在时 content 为空、size 为 0
+     */
+    public static Map<String, Object> readPage(Path file, long offset, int limit) throws IOException {
+        Map<String, Object> page = new LinkedHashMap<>();
+        if (file == null || !Files.isRegularFile(file)) {
+            page.put("content", "");
+            page.put("offset", 0L);
+            page.put("nextOffset", 0L);
+            page.put("size", 0L);
+            page.put("eof", true);
+            return page;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            boolean fromTail = offset < 0;
+            long start = fromTail ? Math.max(0, size + offset) : Math.min(offset, size);
+            ByteBuffer buf = ByteBuffer.allocate((int) Math.min(limit, size - start));
+            while (buf.hasRemaining() && channel.read(buf, start + buf.position()) > 0) {
+                // 读满本页
+            }
+            byte[] bytes = buf.array();
+            int from = 0;
+            int to = buf.position();
+            if (fromTail && start > 0) {
+                // 跳过被截断的第一行
+                while (from < to && bytes[from] != '\n') from++;
+                if (from < to) from++;
+            }
+            // 截到最后一个完整行（运行中的日志末尾可能是半行）；单行超过 limit 时整页返回
+            int cut = to;
+            while (cut > from && bytes[cut - 1] != '\n') cut--;
+            if (cut > from) to = cut;
+            page.put("content", new String(bytes, from, to - from, StandardCharsets.UTF_8));
+            page.put("offset", start + from);
+            page.put("nextOffset", start + to);
+            page.put("size", size);
+            page.put("eof", start + to >= size);
+            return page;
+        }
+    }
+}
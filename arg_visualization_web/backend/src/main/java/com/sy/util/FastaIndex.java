@@ -0,0 +1,237 @@
+package com.sy.util;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * FASTA 序列偏移索引
+ * 与 FASTA 文件同目录的 {文件名}.idx，磁盘上的开放寻址哈希表：
+ * 文件头 24 字节（魔数、版本、建索引时的 FASTA 大小、槽位数），之后每个槽位 24 字节：
+ * ID 哈希（0 表示空槽）、记录起始偏移（'>' 所在字节）、记录字节长度（含序列头与换行）。
+ * 按 ID 查找只读取少量槽位，再按偏移定位读取记录并核对序列头中的 ID，内存占用与文件大小无关。
+ * ID 为序列头第一个空白前的部分；重复 ID 返回文件中靠前的一条。FASTA 大小与索引记录不一致即视为过期。
+ */
+public final class FastaIndex {
+
+    public static final String SUFFIX = ".idx";
+
+    private static final int MAGIC = 0x46414958;
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 24;
+    private static final int SLOT_BYTES = 24;
+    private static final int SCAN_BUFFER_SIZE = 1 << 20;
+
+    private FastaIndex() {
+    }
+
+    public static Path indexPath(Path fasta) {
+        return fasta.resolveSibling(fasta.getFileName() + SUFFIX);
+    }
+
+    /**
+     * 索引存在、格式正确且与当前 FASTA 大小一致
+     */
+    public static boolean isValid(Path fasta) {
+        Path index = indexPath(fasta);
+        if (!Files.isRegularFile(index) || !Files.isRegularFile(fasta)) return false;
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.READ)) {
+            ByteBuffer header = readFully(channel, 0, HEADER_BYTES);
+            return header != null && header.getInt(0) == MAGIC && header.getInt(4) == VERSION
+                    && header.getLong(8) == Files.size(fasta);
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 扫描 FASTA 生成索引（覆盖已有索引）
+     */
+    public static void build(Path fasta) throws IOException {
+        try (FileChannel source = FileChannel.open(fasta, StandardOpenOption.READ);
+             Writer writer = new Writer(indexPath(fasta))) {
+            ByteBuffer buf = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+            ByteArrayOutputStream id = new ByteArrayOutputStream(64);
+            String lastId = null;
+            long lastStart = 0;
+            boolean lineStart = true;
+            boolean inId = false;
+            long pos = 0;
+            while (true) {
+                buf.clear();
+                int n = source.read(buf, pos);
+                if (n <= 0) break;
+                byte[] bytes = buf.array();
+                for (int i = 0; i < n; i++) {
+                    byte b = bytes[i];
+                    if (inId) {
+                        if (isSpace(b)) {
+                            lastId = id.toString(StandardCharsets.UTF_8);
+                            inId = false;
+                        } else {
+                            id.write(b);
+                        }
+                    } else if (lineStart && b == '>') {
+                        if (lastId != null) {
+                            writer.add(lastId, lastStart, pos + i - lastStart);
+                        }
+                        lastStart = pos + i;
+                        id.reset();
+                        inId = true;
+                    }
+                    lineStart = b == '\n';
+                }
+                pos += n;
+            }
+            if (inId) {
+                lastId = id.toString(StandardCharsets.UTF_8);
+            }
+            if (lastId != null) {
+                writer.add(lastId, lastStart, pos - lastStart);
+            }
+            writer.commit(pos);
+        }
+    }
+
+    /**
+     * 按 ID 读取一条记录（调用前用 isValid 确认索引可用）
+     * @return 记录原文（序列头与序列行），没有该 ID 时返回 null
+     */
+    public static String readRecord(Path fasta, String id) throws IOException {
+        long hash = hash(id);
+        try (FileChannel index = FileChannel.open(indexPath(fasta), StandardOpenOption.READ);
+             FileChannel source = FileChannel.open(fasta, StandardOpenOption.READ)) {
+            ByteBuffer header = readFully(index, 0, HEADER_BYTES);
+            if (header == null) return null;
+            long slots = header.getLong(16);
+            long slot = hash & (slots - 1);
+            for (long probed = 0; probed < slots; probed++) {
+                ByteBuffer entry = readFully(index, HEADER_BYTES + slot * SLOT_BYTES, SLOT_BYTES);
+                if (entry == null || entry.getLong(0) == 0) return null;
+                if (entry.getLong(0) == hash) {
+                    ByteBuffer record = readFully(source, entry.getLong(8), (int) entry.getLong(16));
+                    if (record != null && id.equals(recordId(record))) {
+                        return new String(record.array(), StandardCharsets.UTF_8);
+                    }
+                }
+                slot = (slot + 1) & (slots - 1);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * 64 位 FNV-1a；0 留作空槽标记
+     */
+    static long hash(String id) {
+        long h = 0xcbf29ce484222325L;
+        for (byte b : id.getBytes(StandardCharsets.UTF_8)) {
+            h ^= b & 0xff;
+            h *= 0x100000001b3L;
+        }
+        return h == 0 ? 1 : h;
+    }
+
+    /**
+     * 边写 FASTA 边记录索引：条目先顺序写入临时文件，commit 时按条目数确定槽位数（负载不超过一半）再建哈希表，
+     * 写完后改名为正式索引，索引文件存在即表示完整
+     */
+    public static final class Writer implements Closeable {
+        private final Path target;
+        private final Path spill;
+        private final DataOutputStream out;
+        private long count;
+        private boolean committed;
+
+        public Writer(Path indexFile) throws IOException {
+            this.target = indexFile;
+            this.spill = Files.createTempFile(indexFile.toAbsolutePath().getParent(), indexFile.getFileName() + ".", ".tmp");
+            this.out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(spill)));
+        }
+
+        public void add(String id, long offset, long length) throws IOException {
+            out.writeLong(hash(id));
+            out.writeLong(offset);
+            out.writeLong(length);
+            count++;
+        }
+
+        /**
+         * 写入完成：建哈希表，记录 FASTA 大小（合并结束才知道）并改名为正式索引
+         */
+        public void commit(long fastaSize) throws IOException {
+            out.close();
+            long slots = 2;
+            while (slots < count * 2) slots <<= 1;
+            Path table = Files.createTempFile(target.toAbsolutePath().getParent(), target.getFileName() + ".", ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(table, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                     DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(spill)))) {
+                    ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+                    header.putInt(MAGIC).putInt(VERSION).putLong(fastaSize).putLong(slots).flip();
+                    channel.write(header, 0);
+                    // 末尾写一个字节把文件扩展到完整大小，未写入的槽位读出为 0（空槽）
+                    channel.write(ByteBuffer.allocate(1), HEADER_BYTES + slots * SLOT_BYTES - 1);
+                    ByteBuffer entry = ByteBuffer.allocate(SLOT_BYTES);
+                    for (long i = 0; i < count; i++) {
+                        long hash = in.readLong();
+                        long offset = in.readLong();
+                        long length = in.readLong();
+                        long slot = hash & (slots - 1);
+                        while (readFully(channel, HEADER_BYTES + slot * SLOT_BYTES, 8).getLong(0) != 0) {
+                            slot = (slot + 1) & (slots - 1);
+                        }
+                        entry.clear();
+                        entry.putLong(hash).putLong(offset).putLong(length).flip();
+                        while (entry.hasRemaining()) {
+                            channel.write(entry, HEADER_BYTES + slot * SLOT_BYTES + entry.position());
+                        }
+                    }
+                }
+                Files.move(table, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } finally {
+                Files.deleteIfExists(table);
+                Files.deleteIfExists(spill);
+            }
+            committed = true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (!committed) {
+                out.close();
+                Files.deleteIfExists(spill);
+            }
+        }
+    }
+
+    private static String recordId(ByteBuffer record) {
+        byte[] bytes = record.array();
+        if (bytes.length == 0 || bytes[0] != '>') return null;
+        int end = 1;
+        while (end < bytes.length && !isSpace(bytes[end])) end++;
+        return new String(bytes, 1, end - 1, StandardCharsets.UTF_8);
+    }
+
+    private static boolean isSpace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    /**
+     * 从 position 处读满 length 字节
+     * @return 文件长度不足时返回 null
+     */
+    private static ByteBuffer readFully(FileChannel channel, long position, int length) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(length);
+        while (buf.hasRemaining()) {
+            int n = channel.read(buf, position + buf.position());
+            if (n < 0) return null;
+        }
+        return buf;
+    }
+}
@@ -0,0 +1,176 @@
+package com.sy.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Function;
+
+/**
+ * 按字节合并 FASTA 文件
+ * 每个输入先按字节扫描一遍定位序列头（不解码字符），序列内容由 FileChannel.transferTo 直接拷贝，
+ * 只在序列头的 '>' 后插入来源前缀，并为缺少结尾换行的文件补换行；可选同时写出序列偏移索引（见 FastaIndex）。
+ */
+public final class FastaMerger {
+
+    private static final int SCAN_BUFFER_SIZE = 1 << 20;
+    private static final byte[] NEWLINE = {'\n'};
+
+    private FastaMerger() {
+    }
+
+    /**
+     * 合并结果
+     */
+    public static final class Result {
+        private final long sequences;
+        private final long bytes;
+
+        Result(long sequences, long bytes) {
+            this.sequences = sequences;
+            this.bytes = bytes;
+        }
+
+        public long getSequences() {
+            return sequences;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+    }
+
+    /**
+     * @param inputs 按顺序合并的 FASTA 文件，不存在的文件跳过
+     * @param headerPrefix 每个文件的序列头前缀（插在 '>' 之后），为 null 或返回 null 时不改序列头
+     * @param indexFile 索引文件，为 null 时不写索引
+     */
+    public static Result merge(List<Path> inputs, Function<Path, String> headerPrefix, Path out, Path indexFile)
+            throws IOException {
+        Files.createDirectories(out.toAbsolutePath().getParent());
+        long sequences = 0;
+        try (FileChannel target = FileChannel.open(out, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+             FastaIndex.Writer index = indexFile != null ? new FastaIndex.Writer(indexFile) : null) {
+            String lastId = null;
+            long lastStart = 0;
+            for (Path input : inputs) {
+                if (!Files.isRegularFile(input)) continue;
+                String prefix = headerPrefix != null ? headerPrefix.apply(input) : null;
+                byte[] prefixBytes = prefix != null ? prefix.getBytes(StandardCharsets.UTF_8) : new byte[0];
+                try (FileChannel source = FileChannel.open(input, StandardOpenOption.READ)) {
+                    long size = source.size();
+                    if (size == 0) continue;
+                    Headers headers = scanHeaders(source);
+                    long cursor = 0;
+                    for (int i = 0; i < headers.count(); i++) {
+                        long header = headers.positions.get(i);
+                        transfer(source, cursor, header - cursor, target);
+                        // 上一条记录在下一个序列头之前结束
+                        if (index != null && lastId != null) {
+                            index.add(lastId, lastStart, target.position() - lastStart);
+                        }
+                        lastStart = target.position();
+                        lastId = prefix != null ? prefix + headers.ids.get(i) : headers.ids.get(i);
+                        write(target, new byte[]{'>'});
+                        write(target, prefixBytes);
+                        cursor = header + 1;
+                    }
+                    transfer(source, cursor, size - cursor, target);
+                    if (lastByte(source, size) != '\n') {
+                        write(target, NEWLINE);
+                    }
+                    sequences += headers.count();
+                }
+            }
+            if (index != null) {
+                if (lastId != null) {
+                    index.add(lastId, lastStart, target.position() - lastStart);
+                }
+                index.commit(target.position());
+            }
+            return new Result(sequences, target.position());
+        }
+    }
+
+    /**
+     * 序列头位置与 ID
+     */
+    private static final class Headers {
+        final List<Long> positions = new ArrayList<>();
+        final List<String> ids = new ArrayList<>();
+
+        int count() {
+            return positions.size();
+        }
+    }
+
+    /**
+     * 扫描行首的 '>'，并取其后到第一个空白为止的 ID
+     */
+    private static Headers scanHeaders(FileChannel source) throws IOException {
+        Headers headers = new Headers();
+        ByteBuffer buf = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        ByteArrayOutputStream id = new ByteArrayOutputStream(64);
+        boolean lineStart = true;
+        boolean inId = false;
+        long pos = 0;
+        while (true) {
+            buf.clear();
+            int n = source.read(buf, pos);
+            if (n <= 0) break;
+            byte[] bytes = buf.array();
+            for (int i = 0; i < n; i++) {
+                byte b = bytes[i];
+                if (inId) {
+                    if (b == ' ' || b == '\t' || b == '\r' || b == '\n') {
+                        headers.ids.add(id.toString(StandardCharsets.UTF_8));
+                        inId = false;
+                    } else {
+                        id.write(b);
+                    }
+                } else if (lineStart && b == '>') {
+                    headers.positions.add(pos + i);
+                    id.reset();
+                    inId = true;
+                }
+                lineStart = b == '\n';
+            }
+            pos += n;
+        }
+        if (inId) {
+            headers.ids.add(id.toString(StandardCharsets.UTF_8));
+        }
+        return headers;
+    }
+
+    private static void transfer(FileChannel source, long position, long count, FileChannel target) throws IOException {
+        while (count > 0) {
+            long n = source.transferTo(position, count, target);
+            if (n <= 0) {
+                throw new IOException("transferTo 未能写入数据");
+            }
+            position += n;
+            count -= n;
+        }
+    }
+
+    private static void write(FileChannel target, byte[] bytes) throws IOException {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        while (buf.hasRemaining()) {
+            target.write(buf);
+        }
+    }
+
+    private static byte lastByte(FileChannel source, long size) throws IOException {
+        ByteBuffer one = ByteBuffer.allocate(1);
+        source.read(one, size - 1);
+        return one.get(0);
+    }
+}
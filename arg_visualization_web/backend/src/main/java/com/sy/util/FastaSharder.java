@@ -0,0 +1,125 @@
+package com.sy.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按记录边界把 FASTA 切成若干连续分片，各分片残基数（序列行中除换行外的字节数）尽量均衡
+ * 分片是原文件的连续字节区间，按分片顺序拼接即为原文件，各分片的输出按顺序拼接即与原顺序一致。
+ * 只按字节扫描两遍（统计总残基数、确定切分点），内容由 FileChannel.transferTo 拷贝，内存占用与文件大小无关。
+ */
+public final class FastaSharder {
+
+    private static final int SCAN_BUFFER_SIZE = 1 << 20;
+
+    private FastaSharder() {
+    }
+
+    /**
+     * @param shards 期望的分片数
+     * @param outDir 分片输出目录，分片文件名为 {namePrefix}_001{扩展名}、{namePrefix}_002{扩展名} ...（扩展名与 input 相同）
+     * @return 分片文件列表；无法切分（分片数不大于 1、记录数不足等）时返回只含 input 本身的列表，不写任何文件
+     */
+    public static List<Path> split(Path input, int shards, Path outDir, String namePrefix) throws IOException {
+        if (shards <= 1) return List.of(input);
+        try (FileChannel source = FileChannel.open(input, StandardOpenOption.READ)) {
+            long total = scan(source, 0, -1, null);
+            if (total == 0) return List.of(input);
+            List<Long> cuts = new ArrayList<>();
+            scan(source, total, shards, cuts);
+            if (cuts.isEmpty()) return List.of(input);
+
+            Files.createDirectories(outDir);
+            List<Path> result = new ArrayList<>();
+            String fileName = input.getFileName().toString();
+            int dot = fileName.lastIndexOf('.');
+            String extension = dot > 0 ? fileName.substring(dot) : "";
+            long size = source.size();
+            long start = 0;
+            cuts.add(size);
+            for (long end : cuts) {
+                Path shard = outDir.resolve(String.format("%s_%03d%s", namePrefix, result.size() + 1, extension));
+                try (FileChannel target = FileChannel.open(shard, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING)) {
+                    long position = start;
+                    while (position < end) {
+                        long n = source.transferTo(position, end - position, target);
+                        if (n <= 0) {
+                            throw new IOException("transferTo 未能写入数据");
+                        }
+                        position += n;
+                    }
+                }
+                result.add(shard);
+                start = end;
+            }
+            return result;
+        }
+    }
+
+    /**
+     * 统计记录数（行首 '>' 的个数）
+     */
+    public static long countRecords(Path fasta) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long records = 0;
+        boolean lineStart = true;
+        try (FileChannel source = FileChannel.open(fasta, StandardOpenOption.READ)) {
+            long pos = 0;
+            while (true) {
+                buf.clear();
+                int n = source.read(buf, pos);
+                if (n <= 0) break;
+                byte[] bytes = buf.array();
+                for (int i = 0; i < n; i++) {
+                    if (lineStart && bytes[i] == '>') records++;
+                    lineStart = bytes[i] == '\n';
+                }
+                pos += n;
+            }
+        }
+        return records;
+    }
+
+    /**
+     * 扫描残基数；cuts 不为 null 时在累计残基数达到 total * k / shards 后的下一个序列头处记录切分点
+     * @return 总残基数
+     */
+    private static long scan(FileChannel source, long total, int shards, List<Long> cuts) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+        long residues = 0;
+        boolean lineStart = true;
+        boolean inHeader = false;
+        long pos = 0;
+        while (true) {
+            buf.clear();
+            int n = source.read(buf, pos);
+            if (n <= 0) break;
+            byte[] bytes = buf.array();
+            for (int i = 0; i < n; i++) {
+                byte b = bytes[i];
+                if (lineStart && b == '>') {
+                    inHeader = true;
+                    long at = pos + i;
+                    if (cuts != null && at > 0 && cuts.size() < shards - 1
+                            && residues * shards >= total * (cuts.size() + 1)) {
+                        cuts.add(at);
+                    }
+                } else if (b == '\n') {
+                    inHeader = false;
+                } else if (!inHeader && b != '\r') {
+                    residues++;
+                }
+                lineStart = b == '\n';
+            }
+            pos += n;
+        }
+        return residues;
+    }
+}
@@ -0,0 +1,142 @@
+package com.sy.util;
+
+import com.sy.pojo.AllPrediction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * all_predictions.tsv 逐行游标
+ * 基于 TsvReader，表头列位置只解析一次；每次 next() 前进一行并按表头取出规范化后的字段：
+ * id 缺省为空串，is_arg 按 "true" 忽略大小写判断，arg_class 去除首尾空白，概率无法解析（含 NaN）时为 null。
+ * 数值与布尔字段在 next() 时直接从字节解析；sequence_id / arg_class 只在调用对应方法时才创建 String，
+ * 只需统计或转发原始字节的路径（如 LOAD DATA）可通过 reader() 与列位置直接访问字段字节。
+ * 供各落库策略共用，保证不同写入路径得到的行内容一致。
+ */
+public class PredictionTsvCursor implements Closeable {
+
+    private final TsvReader reader;
+    private int idIdx = -1;
+    private int isArgIdx = -1;
+    private int binaryProbIdx = -1;
+    private int argClassIdx = -1;
+    private int classProbIdx = -1;
+    private boolean headerRead;
+
+    private int rowIndex;
+    private boolean isArg;
+    private double binaryProb;
+    private double classProb;
+
+    private PredictionTsvCursor(TsvReader reader) {
+        this.reader = reader;
+    }
+
+    public static PredictionTsvCursor open(Path file) throws IOException {
+        return new PredictionTsvCursor(TsvReader.open(file));
+    }
+
+    /**
+     * 前进到下一条数据行
+     * @return 没有更多数据时返回 false
+     */
+    public boolean next() throws IOException {
+        if (!headerRead) {
+            headerRead = true;
+            if (!reader.readHeader()) return false;
+            idIdx = reader.column("id");
+            isArgIdx = reader.column("is_arg");
+            binaryProbIdx = reader.column("binary_prob");
+            argClassIdx = reader.column("arg_class");
+            classProbIdx = reader.column("class_prob");
+        }
+        if (!reader.next()) return false;
+        rowIndex++;
+        isArg = reader.equalsIgnoreCase(isArgIdx, "true");
+        binaryProb = reader.getDouble(binaryProbIdx, Double.NaN);
+        classProb = reader.getDouble(classProbIdx, Double.NaN);
+        return true;
+    }
+
+    /** 当前行号（1-based，对应 all_predictions.row_index） */
+    public int rowIndex() {
+        return rowIndex;
+    }
+
+    public String sequenceId() {
+        return reader.getString(idIdx, "");
+    }
+
+    public boolean isArg() {
+        return isArg;
+    }
+
+    public Double binaryProb() {
+        return Double.isNaN(binaryProb) ? null : binaryProb;
+    }
+
+    /** 不装箱的 binary_prob，缺失时为 NaN */
+    public double binaryProbValue() {
+        return binaryProb;
+    }
+
+    public String argClass() {
+        String cls = reader.getTrimmedString(argClassIdx);
+        return cls != null ? cls : "";
+    }
+
+    public Double classProb() {
+        return Double.isNaN(classProb) ? null : classProb;
+    }
+
+    /** 不装箱的 class_prob，缺失时为 NaN */
+    public double classProbValue() {
+        return classProb;
+    }
+
+    /** 底层读取器，字段字节视图在下一次 next() 前有效 */
+    public TsvReader reader() {
+        return reader;
+    }
+
+    /** id 列位置，不存在时为 -1 */
+    public int idColumn() {
+        return idIdx;
+    }
+
+    /** arg_class 列位置，不存在时为 -1 */
+    public int argClassColumn() {
+        return argClassIdx;
+    }
+
+    /** binary_prob 列位置，不存在时为 -1 */
+    public int binaryProbColumn() {
+        return binaryProbIdx;
+    }
+
+    /** class_prob 列位置，不存在时为 -1 */
+    public int classProbColumn() {
+        return classProbIdx;
+    }
+
+    /**
+     * 将当前行转换为实体（仅 INSERT 路径需要）
+     */
+    public AllPrediction toPrediction(Long taskId) {
+        AllPrediction p = new AllPrediction();
+        p.setTaskId(taskId);
+        p.setRowIndex(rowIndex);
+        p.setSequenceId(sequenceId());
+        p.setIsArg(isArg);
+        p.setBinaryProb(binaryProb());
+        p.setArgClass(argClass());
+        p.setClassProb(classProb());
+        return p;
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
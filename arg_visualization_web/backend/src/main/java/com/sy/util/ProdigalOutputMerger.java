@@ -0,0 +1,84 @@
+package com.sy.util;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 合并按 contig 边界分片运行的 Prodigal 输出
+ * Prodigal 的基因 ID 为 ID={序列序号}_{序列内基因序号}，GFF 中每条序列有 "# Sequence Data: seqnum={序列序号}"，
+ * 序列序号在每个分片内都从 1 开始，合并时加上前面各分片的序列数；序列名后缀 {contig}_{n} 按 contig 编号，分片不影响。
+ * 分片为原文件的连续区间时，按分片顺序合并后与不分片运行（meta 模式逐条序列独立预测）的输出一致。
+ */
+public final class ProdigalOutputMerger {
+
+    private static final Pattern GENE_ID = Pattern.compile("\\bID=(\\d+)_");
+    private static final Pattern SEQNUM = Pattern.compile("^(# Sequence Data: seqnum=)(\\d+)");
+    private static final String GFF_VERSION = "##gff-version";
+
+    private ProdigalOutputMerger() {
+    }
+
+    /**
+     * @param sequenceCounts 各分片输入的序列数（按分片顺序）
+     * @param faaFiles 各分片的 .faa 输出，与 sequenceCounts 一一对应
+     * @param gffFiles 各分片的 .gff 输出，与 sequenceCounts 一一对应
+     */
+    public static void merge(List<Long> sequenceCounts, List<Path> faaFiles, List<Path> gffFiles,
+                             Path outFaa, Path outGff) throws IOException {
+        try (BufferedWriter faa = Files.newBufferedWriter(outFaa, StandardCharsets.UTF_8);
+             BufferedWriter gff = Files.newBufferedWriter(outGff, StandardCharsets.UTF_8)) {
+            long offset = 0;
+            for (int i = 0; i < sequenceCounts.size(); i++) {
+                copyFaa(faaFiles.get(i), faa, offset);
+                copyGff(gffFiles.get(i), gff, offset, i == 0);
+                offset += sequenceCounts.get(i);
+            }
+        }
+    }
+
+    private static void copyFaa(Path source, BufferedWriter out, long offset) throws IOException {
+        if (!Files.isRegularFile(source)) return;
+        try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                out.write(line.startsWith(">") ? renumberGeneId(line, offset) : line);
+                out.newLine();
+            }
+        }
+    }
+
+    private static void copyGff(Path source, BufferedWriter out, long offset, boolean first) throws IOException {
+        if (!Files.isRegularFile(source)) return;
+        try (BufferedReader reader = Files.newBufferedReader(source, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith(GFF_VERSION)) {
+                    if (!first) continue;
+                } else if (line.startsWith("#")) {
+                    Matcher m = SEQNUM.matcher(line);
+                    if (m.find()) {
+                        line = m.group(1) + (Long.parseLong(m.group(2)) + offset) + line.substring(m.end());
+                    }
+                } else if (!line.isEmpty()) {
+                    line = renumberGeneId(line, offset);
+                }
+                out.write(line);
+                out.newLine();
+            }
+        }
+    }
+
+    static String renumberGeneId(String line, long offset) {
+        if (offset == 0) return line;
+        Matcher m = GENE_ID.matcher(line);
+        if (!m.find()) return line;
+        return line.substring(0, m.start(1)) + (Long.parseLong(m.group(1)) + offset) + line.substring(m.end(1));
+    }
+}
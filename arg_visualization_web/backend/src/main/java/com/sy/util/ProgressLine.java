@@ -0,0 +1,45 @@
+package com.sy.util;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 推理容器输出的结构化进度行
+ * 格式：[PROGRESS] &lt;阶段&gt; &lt;已处理&gt;/&lt;总数&gt;，如 "[PROGRESS] predict 256/5000"（见 cli.py emit_progress）
+ */
+@Getter
+@AllArgsConstructor
+public final class ProgressLine {
+
+    public static final String PREFIX = "[PROGRESS]";
+
+    private static final Pattern PATTERN = Pattern.compile("\\[PROGRESS]\\s+(\\S+)\\s+(\\d{1,18})/(\\d{1,18})\\s*");
+
+    private final String stage;
+    private final long done;
+    private final long total;
+
+    /**
+     * 解析一行输出
+     * @return 不是进度行或格式不合法（总数为负、已处理超过总数）时返回 null
+     */
+    public static ProgressLine parse(String line) {
+        if (line == null || !line.startsWith(PREFIX)) return null;
+        Matcher m = PATTERN.matcher(line);
+        if (!m.matches()) return null;
+        long done = Long.parseLong(m.group(2));
+        long total = Long.parseLong(m.group(3));
+        if (done > total) return null;
+        return new ProgressLine(m.group(1), done, total);
+    }
+
+    /**
+     * 完成比例 [0, 1]；总数为 0 视为已完成
+     */
+    public double fraction() {
+        return total == 0 ? 1.0 : (double) done / total;
+    }
+}
@@ -0,0 +1,378 @@
+package com.sy.util;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * 基于字节缓冲区的 TSV 读取器
+ * 直接在 UTF-8 字节上切分行与字段（\t、\n 都是单字节，不会落在多字节字符中间），
+ * 每行只记录各字段的起止偏移，数值字段在字节上直接解析，不为每个字段创建 String。
+ * 行为与原先 line.split("\t", -1) 的写法保持一致：跳过空白行与 # 开头的注释行，首个有效行为表头，
+ * 表头列名按 trim + 小写匹配。
+ * 字段视图（buffer/fieldStart/fieldEnd）只在下一次 next() 之前有效。非线程安全。
+ */
+public final class TsvReader implements Closeable {
+
+    private static final int DEFAULT_BUFFER_SIZE = 1 << 16;
+    private static final long MAX_EXACT_MANTISSA = 1L << 53;
+    private static final double[] POW10 = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+            1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private final InputStream in;
+    private byte[] buf;
+    private int limit;
+    private int pos;
+    private boolean eof;
+
+    private int lineStart;
+    private int lineEnd;
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int fieldCount;
+
+    private String[] header;
+
+    public TsvReader(InputStream in) {
+        this(in, DEFAULT_BUFFER_SIZE);
+    }
+
+    public TsvReader(InputStream in, int bufferSize) {
+        this.in = in;
+        this.buf = new byte[Math.max(bufferSize, 1024)];
+    }
+
+    public static TsvReader open(Path file) throws IOException {
+        return new TsvReader(Files.newInputStream(file));
+    }
+
+    /**
+     * 读取表头（首个有效行），之后可用 column() 解析列位置
+     * @return 文件中没有任何有效行时返回 false
+     */
+    public boolean readHeader() throws IOException {
+        if (!next()) return false;
+        header = new String[fieldCount];
+        for (int i = 0; i < fieldCount; i++) {
+            header[i] = getTrimmedString(i).toLowerCase();
+        }
+        return true;
+    }
+
+    /**
+     * 按列名查找列位置（trim + 忽略大小写），应在读表头后调用一次并缓存结果
+     * @return 不存在时返回 -1
+     */
+    public int column(String name) {
+        if (header == null) return -1;
+        String key = name.toLowerCase();
+        for (int i = 0; i < header.length; i++) {
+            if (header[i].equals(key)) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * 前进到下一条有效行（跳过空白行与 # 注释行）
+     */
+    public boolean next() throws IOException {
+        while (readLine()) {
+            if (isBlankLine() || buf[lineStart] == '#') continue;
+            splitFields();
+            return true;
+        }
+        return false;
+    }
+
+    public int fieldCount() {
+        return fieldCount;
+    }
+
+    /** 列不存在或超出本行字段数 */
+    public boolean isMissing(int col) {
+        return col < 0 || col >= fieldCount;
+    }
+
+    /** 列不存在或内容为空白 */
+    public boolean isBlank(int col) {
+        if (isMissing(col)) return true;
+        return trimStart(col) >= trimEnd(col);
+    }
+
+    /** 当前行底层缓冲区，配合 fieldStart/fieldEnd 使用，下一次 next() 后失效 */
+    public byte[] buffer() {
+        return buf;
+    }
+
+    public int fieldStart(int col) {
+        return starts[col];
+    }
+
+    public int fieldEnd(int col) {
+        return ends[col];
+    }
+
+    /** 去掉首部空白（<= ' '，与 String.trim 一致）后的起始偏移 */
+    public int trimStart(int col) {
+        int s = starts[col];
+        int e = ends[col];
+        while (s < e && (buf[s] & 0xff) <= ' ') s++;
+        return s;
+    }
+
+    /** 去掉尾部空白后的结束偏移 */
+    public int trimEnd(int col) {
+        int s = starts[col];
+        int e = ends[col];
+        while (e > s && (buf[e - 1] & 0xff) <= ' ') e--;
+        return e;
+    }
+
+    /**
+     * 原样取出字段（会创建 String），列不存在时返回 def
+     */
+    public String getString(int col, String def) {
+        if (isMissing(col)) return def;
+        return new String(buf, starts[col], ends[col] - starts[col], StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 去除首尾空白后取出字段（会创建 String），列不存在时返回 null
+     */
+    public String getTrimmedString(int col) {
+        if (isMissing(col)) return null;
+        int s = trimStart(col);
+        return new String(buf, s, trimEnd(col) - s, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 字段（不去空白）是否等于给定 ASCII 字符串（忽略大小写），不创建 String
+     */
+    public boolean equalsIgnoreCase(int col, String ascii) {
+        if (isMissing(col)) return false;
+        return regionEqualsIgnoreCase(starts[col], ends[col], ascii);
+    }
+
+    /**
+     * 去除首尾空白后是否等于给定 ASCII 字符串（忽略大小写），不创建 String
+     */
+    public boolean trimmedEqualsIgnoreCase(int col, String ascii) {
+        if (isMissing(col)) return false;
+        return regionEqualsIgnoreCase(trimStart(col), trimEnd(col), ascii);
+    }
+
+    /**
+     * 解析 double；列不存在、空白或无法解析时返回 def
+     * 常见的十进制 / 科学计数法写法在字节上直接解析（Clinger 快速路径，结果与 Double.parseDouble 一致），
+     * 有效数字过多等少数情况回退到 Double.parseDouble。
+     */
+    public double getDouble(int col, double def) {
+        if (isMissing(col)) return def;
+        int s = trimStart(col);
+        int e = trimEnd(col);
+        if (s >= e) return def;
+        int i = s;
+        boolean negative = false;
+        if (buf[i] == '-' || buf[i] == '+') {
+            negative = buf[i] == '-';
+            i++;
+        }
+        long mantissa = 0;
+        int significant = 0;
+        int exp10 = 0;
+        boolean digits = false;
+        boolean dot = false;
+        boolean exact = true;
+        for (; i < e; i++) {
+            byte b = buf[i];
+            if (b >= '0' && b <= '9') {
+                digits = true;
+                if (mantissa == 0 && b == '0') {
+                    if (dot) exp10--;
+                    continue;
+                }
+                if (significant < 18) {
+                    mantissa = mantissa * 10 + (b - '0');
+                    significant++;
+                    if (dot) exp10--;
+                } else {
+                    exact = false;
+                    if (!dot) exp10++;
+                }
+            } else if (b == '.' && !dot) {
+                dot = true;
+            } else {
+                break;
+            }
+        }
+        if (!digits) return slowParseDouble(s, e, def);
+        if (i < e) {
+            if (buf[i] != 'e' && buf[i] != 'E') return slowParseDouble(s, e, def);
+            i++;
+            boolean expNegative = false;
+            if (i < e && (buf[i] == '-' || buf[i] == '+')) {
+                expNegative = buf[i] == '-';
+                i++;
+            }
+            if (i >= e) return slowParseDouble(s, e, def);
+            int exp = 0;
+            for (; i < e; i++) {
+                byte b = buf[i];
+                if (b < '0' || b > '9' || exp > 100_000) return slowParseDouble(s, e, def);
+                exp = exp * 10 + (b - '0');
+            }
+            exp10 += expNegative ? -exp : exp;
+        }
+        if (mantissa == 0) return negative ? -0.0 : 0.0;
+        if (!exact || mantissa > MAX_EXACT_MANTISSA || exp10 < -22 || exp10 > 22) {
+            return slowParseDouble(s, e, def);
+        }
+        double v = exp10 >= 0 ? mantissa * POW10[exp10] : mantissa / POW10[-exp10];
+        return negative ? -v : v;
+    }
+
+    /**
+     * 解析 int；列不存在、空白、非整数或溢出时返回 def
+     */
+    public int getInt(int col, int def) {
+        if (isMissing(col)) return def;
+        int s = trimStart(col);
+        int e = trimEnd(col);
+        if (s >= e) return def;
+        boolean negative = false;
+        if (buf[s] == '-' || buf[s] == '+') {
+            negative = buf[s] == '-';
+            s++;
+            if (s >= e) return def;
+        }
+        long v = 0;
+        for (int i = s; i < e; i++) {
+            byte b = buf[i];
+            if (b < '0' || b > '9') return def;
+            v = v * 10 + (b - '0');
+            if (v > (long) Integer.MAX_VALUE + 1) return def;
+        }
+        if (negative) v = -v;
+        if (v < Integer.MIN_VALUE || v > Integer.MAX_VALUE) return def;
+        return (int) v;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private double slowParseDouble(int s, int e, double def) {
+        try {
+            return Double.parseDouble(new String(buf, s, e - s, StandardCharsets.ISO_8859_1));
+        } catch (NumberFormatException ex) {
+            return def;
+        }
+    }
+
+    private boolean regionEqualsIgnoreCase(int s, int e, String ascii) {
+        if (e - s != ascii.length()) return false;
+        for (int i = 0; i < ascii.length(); i++) {
+            int a = buf[s + i] & 0xff;
+            int b = ascii.charAt(i);
+            if (a == b) continue;
+            if (a >= 'A' && a <= 'Z') a += 32;
+            if (b >= 'A' && b <= 'Z') b += 32;
+            if (a != b) return false;
+        }
+        return true;
+    }
+
+    private boolean isBlankLine() {
+        for (int i = lineStart; i < lineEnd; i++) {
+            if ((buf[i] & 0xff) > ' ') return false;
+        }
+        return true;
+    }
+
+    private void splitFields() {
+        fieldCount = 0;
+        int s = lineStart;
+        for (int i = lineStart; i < lineEnd; i++) {
+            if (buf[i] == '\t') {
+                addField(s, i);
+                s = i + 1;
+            }
+        }
+        addField(s, lineEnd);
+    }
+
+    private void addField(int s, int e) {
+        if (fieldCount == starts.length) {
+            int[] ns = new int[starts.length * 2];
+            int[] ne = new int[ends.length * 2];
+            System.arraycopy(starts, 0, ns, 0, fieldCount);
+            System.arraycopy(ends, 0, ne, 0, fieldCount);
+            starts = ns;
+            ends = ne;
+        }
+        starts[fieldCount] = s;
+        ends[fieldCount] = e;
+        fieldCount++;
+    }
+
+    /**
+     * 定位下一行的 [lineStart, lineEnd)，去掉行尾 \r；缓冲区内没有完整行时整理并继续读取
+     */
+    private boolean readLine() throws IOException {
+        int scan = pos;
+        while (true) {
+            for (int i = scan; i < limit; i++) {
+                if (buf[i] == '\n') {
+                    setLine(pos, i);
+                    pos = i + 1;
+                    return true;
+                }
+            }
+            if (eof) {
+                if (pos < limit) {
+                    setLine(pos, limit);
+                    pos = limit;
+                    return true;
+                }
+                return false;
+            }
+            // 已扫描过的部分不再重复扫描：整理后未消费数据从 0 开始，新数据接在其后
+            int scanned = limit - pos;
+            compactAndFill();
+            scan = scanned;
+        }
+    }
+
+    private void setLine(int s, int e) {
+        if (e > s && buf[e - 1] == '\r') e--;
+        lineStart = s;
+        lineEnd = e;
+    }
+
+    /** 把未消费数据移到缓冲区开头，必要时扩容，然后读入更多数据 */
+    private void compactAndFill() throws IOException {
+        int remaining = limit - pos;
+        if (pos > 0) {
+            System.arraycopy(buf, pos, buf, 0, remaining);
+            pos = 0;
+            limit = remaining;
+        }
+        if (limit == buf.length) {
+            byte[] nb = new byte[buf.length * 2];
+            System.arraycopy(buf, 0, nb, 0, limit);
+            buf = nb;
+        }
+        int n = in.read(buf, limit, buf.length - limit);
+        if (n < 0) {
+            eof = true;
+        } else {
+            limit += n;
+        }
+    }
+}
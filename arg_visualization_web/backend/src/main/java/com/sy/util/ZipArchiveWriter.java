@@ -0,0 +1,108 @@
+package com.sy.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import java.util.Set;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+/**
+ * 把一组文件按顺序写成 ZIP 到任意输出流（如 HTTP 响应），不落临时文件
+ * 已压缩的文件（按扩展名判断）使用 STORED 原样存入，其余按配置的压缩级别 DEFLATE。
+ * STORED 条目需要事先知道 CRC 与大小，会先读一遍文件计算 CRC，再写入数据。
+ */
+public class ZipArchiveWriter {
+
+    private static final int COPY_BUFFER_SIZE = 64 * 1024;
+
+    private final int compressionLevel;
+    private final Set<String> storedExtensions;
+
+    /**
+     * @param compressionLevel DEFLATE 压缩级别 0-9（-1 为默认级别）
+     * @param storedExtensions 不再压缩的扩展名（小写，不带点）
+     */
+    public ZipArchiveWriter(int compressionLevel, Set<String> storedExtensions) {
+        this.compressionLevel = Math.max(-1, Math.min(9, compressionLevel));
+        this.storedExtensions = storedExtensions;
+    }
+
+    /**
+     * 一个 ZIP 条目：包内路径 + 源文件
+     */
+    public static class Entry {
+        private final String name;
+        private final Path file;
+
+        public Entry(String name, Path file) {
+            this.name = name;
+            this.file = file;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Path getFile() {
+            return file;
+        }
+    }
+
+    /**
+     * 影响输出内容的参数，用于缓存 key
+     */
+    public String describe() {
+        return "level=" + compressionLevel + ";stored=" + new java.util.TreeSet<>(storedExtensions);
+    }
+
+    /**
+     * 依次写出所有条目并结束 ZIP；不关闭 out
+     */
+    public void write(Iterable<Entry> entries, OutputStream out) throws IOException {
+        ZipOutputStream zos = new ZipOutputStream(out);
+        zos.setLevel(compressionLevel);
+        byte[] buffer = new byte[COPY_BUFFER_SIZE];
+        for (Entry e : entries) {
+            ZipEntry entry = new ZipEntry(e.getName());
+            entry.setTime(Files.getLastModifiedTime(e.getFile()).toMillis());
+            if (isStored(e.getName())) {
+                long size = Files.size(e.getFile());
+                entry.setMethod(ZipEntry.STORED);
+                entry.setSize(size);
+                entry.setCompressedSize(size);
+                entry.setCrc(crc32(e.getFile(), buffer));
+            }
+            zos.putNextEntry(entry);
+            try (InputStream in = Files.newInputStream(e.getFile())) {
+                int n;
+                while ((n = in.read(buffer)) > 0) {
+                    zos.write(buffer, 0, n);
+                }
+            }
+            zos.closeEntry();
+        }
+        zos.finish();
+        zos.flush();
+    }
+
+    private boolean isStored(String name) {
+        int dot = name.lastIndexOf('.');
+        return dot >= 0 && storedExtensions.contains(name.substring(dot + 1).toLowerCase(Locale.ROOT));
+    }
+
+    private static long crc32(Path file, byte[] buffer) throws IOException {
+        CRC32 crc = new CRC32();
+        try (InputStream in = Files.newInputStream(file)) {
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                crc.update(buffer, 0, n);
+            }
+        }
+        return crc.getValue();
+    }
+}
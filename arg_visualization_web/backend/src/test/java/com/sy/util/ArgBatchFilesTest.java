@@ -0,0 +1,79 @@
+package com.sy.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ArgBatchFiles 单元测试：合并后的标签能被拆回，拆分结果与单独运行的输出格式一致
+ */
+class ArgBatchFilesTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void combinesAndDemultiplexesByTaskTag() throws IOException {
+        Path in1 = Files.writeString(tmp.resolve("a.faa"), ">p1 desc\nMKV\n>p2\nMAA\n");
+        Path in2 = Files.writeString(tmp.resolve("b.faa"), ">p1\nMTT\n");
+        Map<Long, Path> inputs = new LinkedHashMap<>();
+        inputs.put(11L, in1);
+        inputs.put(12L, in2);
+        Path combined = tmp.resolve("batch/input.faa");
+        ArgBatchFiles.writeCombinedFasta(inputs, combined);
+        assertEquals(">t11__p1 desc\nMKV\n>t11__p2\nMAA\n>t12__p1\nMTT\n",
+                Files.readString(combined).replace(System.lineSeparator(), "\n"));
+
+        // 模拟 cli.py 的输出
+        Path out = Files.createDirectories(tmp.resolve("batch/output"));
+        String header = "id\tis_arg\tbinary_prob\targ_class\tclass_prob\ttop_classes";
+        Files.writeString(out.resolve("all_predictions.tsv"), header + "\n"
+                + "t11__p1\tTrue\t0.9\tbeta-lactam\t0.8\t\"[]\"\n"
+                + "t11__p2\tFalse\t0.1\t\t\t\n"
+                + "t12__p1\tTrue\t0.7\ttetracycline\t0.6\t\"[]\"\n"
+                + "unknown\tFalse\t0.1\t\t\t\n");
+        Files.writeString(out.resolve("arg_predictions.tsv"), header + "\n"
+                + "t11__p1\tTrue\t0.9\tbeta-lactam\t0.8\t\"[]\"\n"
+                + "t12__p1\tTrue\t0.7\ttetracycline\t0.6\t\"[]\"\n");
+        Files.writeString(out.resolve("arg_sequences.fasta"),
+                ">t11__p1 | ARG_class=beta-lactam\nMKV\n>t12__p1 | ARG_class=tetracycline\nMTT\n");
+
+        Map<Long, Path> dirs = new LinkedHashMap<>();
+        dirs.put(11L, tmp.resolve("task_11"));
+        dirs.put(12L, tmp.resolve("task_12"));
+        dirs.put(13L, tmp.resolve("task_13"));
+        assertEquals(1, ArgBatchFiles.demultiplex(out, dirs));
+
+        assertEquals(header + "\np1\tTrue\t0.9\tbeta-lactam\t0.8\t\"[]\"\np2\tFalse\t0.1\t\t\t\n",
+                read(dirs.get(11L).resolve("all_predictions.tsv")));
+        assertEquals(header + "\np1\tTrue\t0.7\ttetracycline\t0.6\t\"[]\"\n",
+                read(dirs.get(12L).resolve("arg_predictions.tsv")));
+        assertEquals(">p1 | ARG_class=beta-lactam\nMKV\n", read(dirs.get(11L).resolve("arg_sequences.fasta")));
+        assertEquals("arg_class\tcount\nbeta-lactam\t1\n", read(dirs.get(11L).resolve("class_summary.tsv")));
+
+        // 没有任何序列的任务也生成完整的空结果
+        assertEquals(header + "\n", read(dirs.get(13L).resolve("all_predictions.tsv")));
+        assertEquals("# No ARG sequences found\n", read(dirs.get(13L).resolve("arg_sequences.fasta")));
+        assertEquals("arg_class\tcount\n", read(dirs.get(13L).resolve("class_summary.tsv")));
+    }
+
+    @Test
+    void parsesOnlyWellFormedTags() {
+        assertEquals(42L, ArgBatchFiles.parseTag("t42__seq__x"));
+        assertNull(ArgBatchFiles.parseTag("t__seq"));
+        assertNull(ArgBatchFiles.parseTag("tx1__seq"));
+        assertNull(ArgBatchFiles.parseTag("seq_1"));
+    }
+
+    private static String read(Path file) throws IOException {
+        return Files.readString(file, StandardCharsets.UTF_8).replace(System.lineSeparator(), "\n");
+    }
+}
@@ -0,0 +1,66 @@
+package com.sy.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ArgChunkResults 单元测试：分块输出只保留一次表头、去掉占位行、按累计 ARG 行生成 class_summary.tsv
+ */
+class ArgChunkResultsTest {
+
+    private static final String HEADER = "id\tis_arg\tbinary_prob\targ_class\tclass_prob\ttop_classes";
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void appendsChunksIntoResultSet() throws IOException {
+        Path result = tmp.resolve("arg");
+        Files.createDirectories(result);
+        Files.writeString(result.resolve("all_predictions.tsv"), "stale\n");
+
+        Path c1 = chunk("c1", HEADER + "\na__1\tTrue\t0.9\tbeta-lactam\t0.8\tx\nb__1\tFalse\t0.1\t\t\t\n",
+                HEADER + "\na__1\tTrue\t0.9\tbeta-lactam\t0.8\tx\n", ">a__1\nMKV\n");
+        Path c2 = chunk("c2", HEADER + "\nc__1\tTrue\t0.9\tbeta-lactam\t0.7\tx\n",
+                HEADER + "\nc__1\tTrue\t0.9\tbeta-lactam\t0.7\tx\n", "# No ARG sequences found\n>c__1\nMAA\n");
+        Files.writeString(c2.resolve(ContainerLog.FILE_NAME), "[stdout] done\n");
+
+        ArgChunkResults results = new ArgChunkResults(result);
+        results.append(c1);
+        results.append(c2);
+        results.finish();
+
+        assertEquals(HEADER + "\na__1\tTrue\t0.9\tbeta-lactam\t0.8\tx\nb__1\tFalse\t0.1\t\t\t\nc__1\tTrue\t0.9\tbeta-lactam\t0.7\tx\n",
+                Files.readString(result.resolve("all_predictions.tsv")));
+        assertEquals(3, Files.readString(result.resolve("arg_predictions.tsv")).lines().count());
+        assertEquals(">a__1\nMKV\n>c__1\nMAA\n", Files.readString(result.resolve("arg_sequences.fasta")));
+        assertEquals("arg_class\tcount\nbeta-lactam\t2\n", Files.readString(result.resolve("class_summary.tsv")));
+        assertEquals("[stdout] done\n", Files.readString(result.resolve(ContainerLog.FILE_NAME)));
+        assertEquals(2, results.getChunks());
+        assertEquals(3, results.getPredictions());
+    }
+
+    @Test
+    void writesEmptyResultSetWithoutChunks() throws IOException {
+        Path result = tmp.resolve("empty");
+        ArgChunkResults results = new ArgChunkResults(result);
+        results.finish();
+        assertEquals(HEADER + "\n", Files.readString(result.resolve("all_predictions.tsv")));
+        assertEquals("# No ARG sequences found\n", Files.readString(result.resolve("arg_sequences.fasta")));
+        assertEquals("arg_class\tcount\n", Files.readString(result.resolve("class_summary.tsv")));
+    }
+
+    private Path chunk(String name, String all, String args, String fasta) throws IOException {
+        Path dir = Files.createDirectories(tmp.resolve(name));
+        Files.writeString(dir.resolve("all_predictions.tsv"), all);
+        Files.writeString(dir.resolve("arg_predictions.tsv"), args);
+        Files.writeString(dir.resolve("arg_sequences.fasta"), fasta);
+        return dir;
+    }
+}
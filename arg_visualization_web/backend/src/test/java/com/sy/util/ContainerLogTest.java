@@ -0,0 +1,64 @@
+package com.sy.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ContainerLog 单元测试：内存中只保留尾部、完整输出写入文件、分页读取按整行截断
+ */
+class ContainerLogTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void keepsBoundedTailAndWritesFullLog() throws IOException {
+        Path file = tmp.resolve("out/container.log");
+        try (ContainerLog log = new ContainerLog(file, 3)) {
+            for (int i = 1; i <= 10; i++) {
+                log.append(true, "err " + i);
+            }
+            log.append(false, "done");
+            assertEquals("err 8\nerr 9\nerr 10\n", log.stderrTail());
+            assertEquals("done\n", log.stdoutTail());
+        }
+        String content = Files.readString(file);
+        assertTrue(content.startsWith("[stderr] err 1\n"));
+        assertTrue(content.endsWith("[stderr] err 10\n[stdout] done\n"));
+        assertEquals(11, content.lines().count());
+    }
+
+    @Test
+    void readsPagesAlignedToLines() throws IOException {
+        Path file = Files.writeString(tmp.resolve("container.log"), "aaaa\nbbbb\ncccc\n");
+
+        Map<String, Object> first = ContainerLog.readPage(file, 0, 8);
+        assertEquals("aaaa\n", first.get("content"));
+        assertEquals(5L, first.get("nextOffset"));
+        assertEquals(false, first.get("eof"));
+
+        Map<String, Object> rest = ContainerLog.readPage(file, 5L, 100);
+        assertEquals("bbbb\ncccc\n", rest.get("content"));
+        assertEquals(15L, rest.get("nextOffset"));
+        assertEquals(true, rest.get("eof"));
+
+        // 从末尾往前 7 字节：跳过被截断的 "bbbb" 行
+        Map<String, Object> tail = ContainerLog.readPage(file, -7, 100);
+        assertEquals("cccc\n", tail.get("content"));
+        assertEquals(10L, tail.get("offset"));
+    }
+
+    @Test
+    void missingFileReturnsEmptyPage() throws IOException {
+        Map<String, Object> page = ContainerLog.readPage(tmp.resolve("none.log"), 0, 100);
+        assertEquals("", page.get("content"));
+        assertEquals(true, page.get("eof"));
+    }
+}
@@ -0,0 +1,61 @@
+package com.sy.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FastaIndex 单元测试：扫描建索引、按 ID 定位读取、文件变化后索引失效
+ */
+class FastaIndexTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void buildsAndLooksUpRecords() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 500; i++) {
+            sb.append(">seq").append(i).append(" desc ").append(i).append("\n").append("MKV".repeat(i % 7 + 1)).append("\n");
+        }
+        // 重复 ID 取靠前的一条；最后一条没有结尾换行
+        sb.append(">seq3 dup\nAAA\n>last\nWWW");
+        Path fasta = Files.writeString(tmp.resolve("proteins.faa"), sb.toString());
+
+        assertFalse(FastaIndex.isValid(fasta));
+        FastaIndex.build(fasta);
+        assertTrue(FastaIndex.isValid(fasta));
+
+        assertEquals(">seq0 desc 0\nMKV\n", FastaIndex.readRecord(fasta, "seq0"));
+        assertEquals(">seq3 desc 3\nMKVMKVMKVMKV\n", FastaIndex.readRecord(fasta, "seq3"));
+        assertEquals(">seq499 desc 499\n" + "MKV".repeat(499 % 7 + 1) + "\n", FastaIndex.readRecord(fasta, "seq499"));
+        assertEquals(">last\nWWW", FastaIndex.readRecord(fasta, "last"));
+        assertNull(FastaIndex.readRecord(fasta, "seq"));
+        assertNull(FastaIndex.readRecord(fasta, "desc"));
+    }
+
+    @Test
+    void indexBecomesStaleWhenFastaChanges() throws IOException {
+        Path fasta = Files.writeString(tmp.resolve("a.fa"), ">x\nACGT\n");
+        FastaIndex.build(fasta);
+        assertTrue(FastaIndex.isValid(fasta));
+        Files.writeString(fasta, ">x\nACGTACGT\n");
+        assertFalse(FastaIndex.isValid(fasta));
+    }
+
+    @Test
+    void emptyFastaHasNoRecords() throws IOException {
+        Path fasta = Files.writeString(tmp.resolve("empty.faa"), "");
+        FastaIndex.build(fasta);
+        assertTrue(FastaIndex.isValid(fasta));
+        assertNull(FastaIndex.readRecord(fasta, "x"));
+        try (var files = Files.list(tmp)) {
+            assertEquals(2, files.count(), "不应留下临时文件");
+        }
+    }
+}
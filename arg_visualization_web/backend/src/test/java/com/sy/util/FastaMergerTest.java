@@ -0,0 +1,53 @@
+package com.sy.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FastaMerger 单元测试：序列头加前缀、补结尾换行、索引偏移指向合并文件中的记录
+ */
+class FastaMergerTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void mergesWithPrefixAndIndex() throws IOException {
+        Path a = Files.writeString(tmp.resolve("binA.faa"), ">c1_1 # 2 # 100\nMKV*\n>c1_2\nMAA\nMTT*\n");
+        // 缺少结尾换行
+        Path b = Files.writeString(tmp.resolve("binB.faa"), ">c9_1 # x\nMQQ*");
+        Path empty = Files.writeString(tmp.resolve("empty.faa"), "");
+        Path out = tmp.resolve("merged.faa");
+        Path idx = FastaIndex.indexPath(out);
+
+        FastaMerger.Result result = FastaMerger.merge(List.of(a, empty, tmp.resolve("missing.faa"), b),
+                f -> f.getFileName().toString().replace(".faa", "") + "__", out, idx);
+
+        String merged = Files.readString(out);
+        assertEquals(">binA__c1_1 # 2 # 100\nMKV*\n>binA__c1_2\nMAA\nMTT*\n>binB__c9_1 # x\nMQQ*\n", merged);
+        assertEquals(3, result.getSequences());
+        assertEquals(Files.size(out), result.getBytes());
+
+        assertTrue(FastaIndex.isValid(out));
+        assertEquals(">binA__c1_1 # 2 # 100\nMKV*\n", FastaIndex.readRecord(out, "binA__c1_1"));
+        assertEquals(">binA__c1_2\nMAA\nMTT*\n", FastaIndex.readRecord(out, "binA__c1_2"));
+        assertEquals(">binB__c9_1 # x\nMQQ*\n", FastaIndex.readRecord(out, "binB__c9_1"));
+        assertNull(FastaIndex.readRecord(out, "c1_1"));
+    }
+
+    @Test
+    void keepsHeadersWithoutPrefix() throws IOException {
+        Path a = Files.writeString(tmp.resolve("a.fa"), ">x\nACGT\n>y desc\nGG\n");
+        Path out = tmp.resolve("out.fa");
+        FastaMerger.merge(List.of(a), null, out, null);
+        assertEquals(">x\nACGT\n>y desc\nGG\n", Files.readString(out));
+        assertFalse(Files.exists(FastaIndex.indexPath(out)));
+    }
+}
@@ -0,0 +1,64 @@
+package com.sy.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * FastaSharder 单元测试：按记录边界切分、按残基数均衡、分片拼接还原原文件
+ */
+class FastaSharderTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void splitsOnRecordBoundariesByResidues() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 8; i++) {
+            sb.append(">seq").append(i).append(" desc\n").append("M".repeat(10)).append("\n").append("K".repeat(10)).append("\n");
+        }
+        Path input = Files.writeString(tmp.resolve("in.faa"), sb.toString());
+
+        List<Path> shards = FastaSharder.split(input, 4, tmp.resolve("shards"), "shard");
+
+        assertEquals(4, shards.size());
+        assertEquals(tmp.resolve("shards/shard_001.faa"), shards.get(0));
+        StringBuilder joined = new StringBuilder();
+        for (Path shard : shards) {
+            String content = Files.readString(shard);
+            assertTrue(content.startsWith(">"), content);
+            // 每个分片两条记录，40 个残基
+            assertEquals(2, content.lines().filter(l -> l.startsWith(">")).count());
+            joined.append(content);
+        }
+        assertEquals(sb.toString(), joined.toString());
+        assertEquals(8, FastaSharder.countRecords(input));
+    }
+
+    @Test
+    void unevenRecordsStayBalanced() throws IOException {
+        String input = ">big\n" + "A".repeat(90) + "\n>s1\nAAAAA\n>s2\nAAAAA\n";
+        Path file = Files.writeString(tmp.resolve("uneven.fna"), input);
+
+        List<Path> shards = FastaSharder.split(file, 2, tmp.resolve("out"), "part");
+
+        assertEquals(2, shards.size());
+        assertEquals("part_002.fna", shards.get(1).getFileName().toString());
+        assertEquals(">big\n" + "A".repeat(90) + "\n", Files.readString(shards.get(0)));
+        assertEquals(">s1\nAAAAA\n>s2\nAAAAA\n", Files.readString(shards.get(1)));
+    }
+
+    @Test
+    void singleRecordIsNotSplit() throws IOException {
+        Path file = Files.writeString(tmp.resolve("one.faa"), ">only\nMKV\n");
+        assertEquals(List.of(file), FastaSharder.split(file, 4, tmp.resolve("none"), "shard"));
+        assertFalse(Files.exists(tmp.resolve("none")));
+    }
+}
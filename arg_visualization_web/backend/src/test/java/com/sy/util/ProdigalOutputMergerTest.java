@@ -0,0 +1,49 @@
+package com.sy.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ProdigalOutputMerger 单元测试：后续分片的序列序号加上前面分片的序列数，GFF 只保留一个版本行
+ */
+class ProdigalOutputMergerTest {
+
+    @TempDir
+    Path tmp;
+
+    @Test
+    void renumbersSequencesAcrossShards() throws IOException {
+        Path faa1 = Files.writeString(tmp.resolve("a_001.faa"),
+                ">c1_1 # 2 # 100 # 1 # ID=1_1;partial=10\nMKV*\n>c2_1 # 5 # 90 # -1 # ID=2_1;partial=00\nMAA*\n");
+        Path faa2 = Files.writeString(tmp.resolve("a_002.faa"),
+                ">c4_1 # 1 # 60 # 1 # ID=2_1;partial=00\nMQQ*\n");
+        Path gff1 = Files.writeString(tmp.resolve("a_001.gff"), "##gff-version  3\n"
+                + "# Sequence Data: seqnum=1;seqlen=500;seqhdr=\"c1\"\n# Model Data: version=Prodigal.v2.6.3\n"
+                + "c1\tProdigal_v2.6.3\tCDS\t2\t100\t10.5\t+\t0\tID=1_1;partial=10;\n"
+                + "# Sequence Data: seqnum=2;seqlen=300;seqhdr=\"c2\"\n# Model Data: version=Prodigal.v2.6.3\n"
+                + "c2\tProdigal_v2.6.3\tCDS\t5\t90\t8.1\t-\t0\tID=2_1;partial=00;\n");
+        Path gff2 = Files.writeString(tmp.resolve("a_002.gff"), "##gff-version  3\n"
+                + "# Sequence Data: seqnum=1;seqlen=100;seqhdr=\"c3\"\n# Model Data: version=Prodigal.v2.6.3\n"
+                + "# Sequence Data: seqnum=2;seqlen=200;seqhdr=\"c4\"\n# Model Data: version=Prodigal.v2.6.3\n"
+                + "c4\tProdigal_v2.6.3\tCDS\t1\t60\t5.0\t+\t0\tID=2_1;partial=00;\n");
+        Path outFaa = tmp.resolve("a.faa");
+        Path outGff = tmp.resolve("a.gff");
+
+        ProdigalOutputMerger.merge(List.of(2L, 2L), List.of(faa1, faa2), List.of(gff1, gff2), outFaa, outGff);
+
+        assertEquals(">c1_1 # 2 # 100 # 1 # ID=1_1;partial=10\nMKV*\n>c2_1 # 5 # 90 # -1 # ID=2_1;partial=00\nMAA*\n"
+                + ">c4_1 # 1 # 60 # 1 # ID=4_1;partial=00\nMQQ*\n", Files.readString(outFaa));
+        String gff = Files.readString(outGff);
+        assertEquals(1, gff.lines().filter(l -> l.startsWith("##gff-version")).count());
+        assertTrue(gff.contains("# Sequence Data: seqnum=3;seqlen=100;seqhdr=\"c3\"\n"));
+        assertTrue(gff.contains("# Sequence Data: seqnum=4;seqlen=200;seqhdr=\"c4\"\n"));
+        assertTrue(gff.endsWith("c4\tProdigal_v2.6.3\tCDS\t1\t60\t5.0\t+\t0\tID=4_1;partial=00;\n"));
+    }
+}
@@ -0,0 +1,38 @@
+package com.sy.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * ProgressLine 单元测试：与 cli.py emit_progress 输出的格式一致
+ */
+class ProgressLineTest {
+
+    @Test
+    void parsesProgressLine() {
+        ProgressLine p = ProgressLine.parse("[PROGRESS] predict 256/5000");
+        assertNotNull(p);
+        assertEquals("predict", p.getStage());
+        assertEquals(256, p.getDone());
+        assertEquals(5000, p.getTotal());
+        assertEquals(256 / 5000.0, p.fraction(), 1e-9);
+    }
+
+    @Test
+    void emptyInputCountsAsFinished() {
+        ProgressLine p = ProgressLine.parse("[PROGRESS] predict 0/0");
+        assertNotNull(p);
+        assertEquals(1.0, p.fraction());
+    }
+
+    @Test
+    void ignoresOtherAndMalformedLines() {
+        assertNull(ProgressLine.parse(null));
+        assertNull(ProgressLine.parse("[3/4] 开始预测 (threshold=0.5)"));
+        assertNull(ProgressLine.parse("[PROGRESS] predict"));
+        assertNull(ProgressLine.parse("[PROGRESS] predict 10/x"));
+        assertNull(ProgressLine.parse("[PROGRESS] predict 11/10"));
+        assertNull(ProgressLine.parse("[PROGRESS] predict 1/10 trailing"));
+    }
+}
@@ -0,0 +1,154 @@
+package com.sy.util;
+
+import com.sy.pojo.AllPrediction;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * all_predictions.tsv 解析微基准
+ * 对比原先 readLine + split + Double.parseDouble 的写法与 TsvReader / PredictionTsvCursor，
+ * 每次操作完整读一遍合成文件（默认 500 万行），配合 GC profiler 观察每行分配量（gc.alloc.rate.norm）。
+ *
+ * 运行方法（不参与 mvn test）：
+ * 1. mvn test-compile dependency:build-classpath -Dmdep.outputFile=target/cp.txt
+ * 2. java -cp target/test-classes:target/classes:$(cat target/cp.txt) com.sy.util.TsvReaderBenchmark
+ *    指定行数：追加 JMH 参数 -p rows=1000000
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgs = {"-Xms2g", "-Xmx2g"})
+public class TsvReaderBenchmark {
+
+    private static final String[] CLASSES = {
+            "beta-lactam", "aminoglycoside", "tetracycline", "multidrug", "glycopeptide",
+            "macrolide-lincosamide-streptogramin", "sulfonamide", "quinolone", "trimethoprim", "phenicol"
+    };
+
+    @Param({"5000000"})
+    public int rows;
+
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void generate() throws IOException {
+        file = Files.createTempFile("all_predictions_bench", ".tsv");
+        Random random = new Random(42);
+        try (BufferedWriter w = Files.newBufferedWriter(file)) {
+            w.write("id\tis_arg\tbinary_prob\targ_class\tclass_prob\ttop_classes\n");
+            for (int i = 0; i < rows; i++) {
+                boolean isArg = random.nextInt(10) == 0;
+                w.write("contig_");
+                w.write(Integer.toString(i / 20));
+                w.write("__k141_");
+                w.write(Integer.toString(i));
+                w.write('\t');
+                w.write(isArg ? "True" : "False");
+                w.write('\t');
+                w.write(Double.toString(random.nextDouble()));
+                w.write('\t');
+                w.write(isArg ? CLASSES[random.nextInt(CLASSES.length)] : "");
+                w.write('\t');
+                w.write(isArg ? Double.toString(random.nextFloat()) : "");
+                w.write('\t');
+                w.write('\n');
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void cleanup() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    /** 原先的写法：每行 split 出 String[]，每个字段 trim 后再解析 */
+    @Benchmark
+    public void splitBaseline(Blackhole bh) throws IOException {
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            Map<String, Integer> headerIndex = null;
+            while ((line = reader.readLine()) != null) {
+                if (line.trim().isEmpty() || line.startsWith("#")) continue;
+                String[] values = line.split("\t", -1);
+                if (headerIndex == null) {
+                    headerIndex = new HashMap<>();
+                    for (int i = 0; i < values.length; i++)
+                        headerIndex.put(values[i].toLowerCase().trim(), i);
+                    continue;
+                }
+                bh.consume(field(values, headerIndex, "id", ""));
+                bh.consume("true".equalsIgnoreCase(field(values, headerIndex, "is_arg", "false")));
+                bh.consume(parseDouble(field(values, headerIndex, "binary_prob", null)));
+                String cls = field(values, headerIndex, "arg_class", null);
+                bh.consume(cls != null ? cls.trim() : "");
+                bh.consume(parseDouble(field(values, headerIndex, "class_prob", null)));
+            }
+        }
+    }
+
+    /** 只访问原始类型字段（统计 / LOAD DATA 路径），不创建 String */
+    @Benchmark
+    public void cursorPrimitives(Blackhole bh) throws IOException {
+        try (PredictionTsvCursor cursor = PredictionTsvCursor.open(file)) {
+            while (cursor.next()) {
+                bh.consume(cursor.isArg());
+                bh.consume(cursor.binaryProbValue());
+                bh.consume(cursor.classProbValue());
+            }
+        }
+    }
+
+    /** 构造实体（INSERT 路径），只保留实体本身需要的 String */
+    @Benchmark
+    public void cursorEntity(Blackhole bh) throws IOException {
+        try (PredictionTsvCursor cursor = PredictionTsvCursor.open(file)) {
+            while (cursor.next()) {
+                AllPrediction p = cursor.toPrediction(1L);
+                bh.consume(p);
+            }
+        }
+    }
+
+    private static String field(String[] values, Map<String, Integer> headerIndex, String key, String def) {
+        Integer i = headerIndex.get(key);
+        if (i != null && i < values.length && values[i] != null) return values[i];
+        return def;
+    }
+
+    private static Double parseDouble(String value) {
+        if (value == null || value.trim().isEmpty()) return null;
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        Options opt = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .include(TsvReaderBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(opt).run();
+    }
+}
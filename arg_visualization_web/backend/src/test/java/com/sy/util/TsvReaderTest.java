@@ -0,0 +1,95 @@
+package com.sy.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * TsvReader 单元测试：与原先 split + Double.parseDouble 写法的结果保持一致
+ */
+class TsvReaderTest {
+
+    private static TsvReader reader(String content, int bufferSize) {
+        return new TsvReader(new ByteArrayInputStream(content.getBytes(StandardCharsets.UTF_8)), bufferSize);
+    }
+
+    @Test
+    void skipsBlankAndCommentLinesAndResolvesHeader() throws IOException {
+        String tsv = "# comment\n\n  ID \tIs_Arg\tbinary_prob\targ_class\r\n"
+                + "seq_1\tTrue\t0.25\t beta-lactam \r\n"
+                + "   \n"
+                + "序列_2\tfalse\t\t\n"
+                + "seq_3\tTRUE\tbad";
+        try (TsvReader r = reader(tsv, 1024)) {
+            assertTrue(r.readHeader());
+            int id = r.column("id");
+            int isArg = r.column("is_arg");
+            int prob = r.column("binary_prob");
+            int cls = r.column("arg_class");
+            assertEquals(-1, r.column("class_prob"));
+
+            assertTrue(r.next());
+            assertEquals("seq_1", r.getString(id, ""));
+            assertTrue(r.equalsIgnoreCase(isArg, "true"));
+            assertEquals(0.25, r.getDouble(prob, Double.NaN));
+            assertEquals("beta-lactam", r.getTrimmedString(cls));
+
+            assertTrue(r.next());
+            assertEquals("序列_2", r.getString(id, ""));
+            assertFalse(r.equalsIgnoreCase(isArg, "true"));
+            assertTrue(Double.isNaN(r.getDouble(prob, Double.NaN)));
+            assertTrue(r.isBlank(cls));
+
+            assertTrue(r.next());
+            assertTrue(r.equalsIgnoreCase(isArg, "true"));
+            assertTrue(Double.isNaN(r.getDouble(prob, Double.NaN)));
+            assertTrue(r.isMissing(cls));
+
+            assertFalse(r.next());
+        }
+    }
+
+    @Test
+    void parsesDoublesLikeDoubleParseDouble() throws IOException {
+        Random random = new Random(7);
+        StringBuilder sb = new StringBuilder("v\n");
+        String[] fixed = {"0", "-0.0", "1", "1.", ".5", "1e-05", "2.5E+3", "0.000123", "123456789012345678901",
+                "0.98765432834625244140625", "1e308", "4.9e-324", "NaN", "Infinity", " 0.5 ", "+3.25"};
+        for (String f : fixed) sb.append(f).append('\n');
+        for (int i = 0; i < 10_000; i++) {
+            sb.append(random.nextDouble()).append('\n');
+            sb.append(random.nextFloat()).append('\n');
+        }
+        String[] lines = sb.toString().split("\n");
+        // 小缓冲区，覆盖行跨越缓冲区边界与扩容
+        try (TsvReader r = reader(sb.toString(), 16)) {
+            assertTrue(r.readHeader());
+            for (int i = 1; i < lines.length; i++) {
+                assertTrue(r.next());
+                double expected = Double.parseDouble(lines[i].trim());
+                assertEquals(Double.doubleToLongBits(expected), Double.doubleToLongBits(r.getDouble(0, -1)), lines[i]);
+            }
+            assertFalse(r.next());
+        }
+    }
+
+    @Test
+    void parsesInts() throws IOException {
+        try (TsvReader r = reader("count\n 42 \n-7\n12.0\n99999999999\n", 1024)) {
+            assertTrue(r.readHeader());
+            assertTrue(r.next());
+            assertEquals(42, r.getInt(0, 0));
+            assertTrue(r.next());
+            assertEquals(-7, r.getInt(0, 0));
+            assertTrue(r.next());
+            assertEquals(0, r.getInt(0, 0));
+            assertTrue(r.next());
+            assertEquals(0, r.getInt(0, 0));
+        }
+    }
+}
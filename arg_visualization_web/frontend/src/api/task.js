@@ -17,6 +17,15 @@ export function getTaskStatus(taskId) {
   });
 }
 
+// 分页读取任务容器日志：offset 为字节偏移（负数从末尾往前），下一页传返回的 nextOffset
+export function getTaskLog(taskId, offset = 0, limit = 65536) {
+  return request({
+    url: `/analysis/${taskId}/logs`,
+    method: 'get',
+    params: { offset, limit }
+  });
+}
+
 // 获取任务结果
 export function getTaskResult(taskId) {
   return request({
@@ -50,3 +59,68 @@ export function deleteTask(taskId) {
   });
 }
 
+
+// 订阅当前用户所有任务的状态事件（SSE），替代定时轮询
+// EventSource 不能带 Authorization 头，这里用 fetch 读取事件流；断线后带 Last-Event-ID 重连，服务端补发断线期间的事件
+// 返回取消订阅函数
+export function subscribeTaskEvents(onEvent, onError) {
+  const baseURL = import.meta.env?.VITE_API_BASE_URL || '/api';
+  const controller = new AbortController();
+  let lastEventId = null;
+  let stopped = false;
+
+  const handleBlock = (block) => {
+    let id = null;
+    let event = 'message';
+    const data = [];
+    for (const line of block.split(/\r?\n/)) {
+      const idx = line.indexOf(':');
+      if (idx <= 0) continue;
+      const field = line.slice(0, idx);
+      const value = line.slice(idx + 1).replace(/^ /, '');
+      if (field === 'id') id = value;
+      else if (field === 'event') event = value;
+      else if (field === 'data') data.push(value);
+    }
+    if (id) lastEventId = id;
+    if (event === 'status' && data.length) {
+      onEvent(JSON.parse(data.join('\n')));
+    }
+  };
+
+  const connect = async () => {
+    while (!stopped) {
+      try {
+        const headers = { Accept: 'text/event-stream' };
+        const token = localStorage.getItem('token');
+        if (token) headers.Authorization = `Bearer ${token}`;
+        if (lastEventId) headers['Last-Event-ID'] = lastEventId;
+        const res = await fetch(`${baseURL}/analysis/events`, { headers, signal: controller.signal });
+        if (!res.ok || !res.body) throw new Error(`HTTP ${res.status}`);
+        const reader = res.body.getReader();
+        const decoder = new TextDecoder();
+        let buffer = '';
+        for (;;) {
+          const { value, done } = await reader.read();
+          if (done) break;
+          buffer += decoder.decode(value, { stream: true });
+          let match;
+          while ((match = /\r?\n\r?\n/.exec(buffer))) {
+            handleBlock(buffer.slice(0, match.index));
+            buffer = buffer.slice(match.index + match[0].length);
+          }
+        }
+      } catch (error) {
+        if (stopped) return;
+        onError && onError(error);
+      }
+      if (!stopped) await new Promise(resolve => setTimeout(resolve, 3000));
+    }
+  };
+
+  connect();
+  return () => {
+    stopped = true;
+    controller.abort();
+  };
+}
@@ -195,6 +195,7 @@ export default {
     search: 'Search tasks...',
     searchPlaceholder: 'Enter task name or description to search',
     noTasks: 'No tasks',
+    progressDetail: '{processed}/{total} seqs · {rate}/s · ETA {eta}',
     table: {
       taskId: 'Task ID',
       taskName: 'Task Name',
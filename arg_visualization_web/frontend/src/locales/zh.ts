@@ -195,6 +195,7 @@ export default {
     search: '搜索任务...',
     searchPlaceholder: '输入任务名称或描述进行搜索',
     noTasks: '暂无任务',
+    progressDetail: '{processed}/{total} 条 · {rate} 条/秒 · 剩余约 {eta}',
     table: {
       taskId: '任务ID',
       taskName: '任务名称',
@@ -4,6 +4,7 @@ ARG-BiLSTM 命令行工具
 
 用法:
     python cli.py end-to-end <input.fasta> <output_dir> <model_dir> [--threshold 0.5]
+    python cli.py worker <jobs_dir> <model_dir>
     
 示例:
     # 使用Docker
@@ -17,12 +18,31 @@ import argparse
 import os
 import sys
 import json
+import threading
+import time
 import pandas as pd
 from Bio import SeqIO
 from reasoning import ARGPredictor
 
+# 结构化进度行，后端逐行解析：[PROGRESS] <阶段> <已处理>/<总数>
+PROGRESS_PREFIX = "[PROGRESS]"
 
-def run_end_to_end(input_file, output_dir, model_dir, threshold=0.5):
+
+def emit_progress(stage, done, total, progress_file=None):
+    """
+    输出一行结构化进度（立即 flush，避免被管道缓冲）；worker 模式下同时写入 progress_file，
+    因为常驻容器的 stdout 不经过后端进程
+    """
+    line = f"{PROGRESS_PREFIX} {stage} {done}/{total}"
+    print(line, flush=True)
+    if progress_file:
+        tmp = progress_file + ".tmp"
+        with open(tmp, 'w') as f:
+            f.write(line + "\n")
+        os.replace(tmp, progress_file)
+
+
+def run_end_to_end(input_file, output_dir, model_dir, threshold=0.5, predictor=None, progress_file=None):
     """
     端到端预测流程
     
@@ -31,6 +51,8 @@ def run_end_to_end(input_file, output_dir, model_dir, threshold=0.5):
         output_dir: 输出目录路径
         model_dir: 模型文件目录路径
         threshold: 二分类阈值
+        predictor: 已加载的预测器（worker 模式复用），为空时从 model_dir 加载
+        progress_file: 进度文件路径（worker 模式），为空时只输出到 stdout
     """
     # 1. 检查输入
     if not os.path.exists(input_file):
@@ -45,18 +67,22 @@ def run_end_to_end(input_file, output_dir, model_dir, threshold=0.5):
     os.makedirs(output_dir, exist_ok=True)
     
     # 3. 初始化预测器
-    print(f"[1/4] 加载模型: {model_dir}")
-    try:
-        predictor = ARGPredictor(model_dir=model_dir)
-    except Exception as e:
-        print(f"[ERROR] 模型加载失败: {e}")
-        sys.exit(1)
+    if predictor is None:
+        print(f"[1/4] 加载模型: {model_dir}")
+        try:
+            predictor = ARGPredictor(model_dir=model_dir)
+        except Exception as e:
+            print(f"[ERROR] 模型加载失败: {e}")
+            sys.exit(1)
+    else:
+        print(f"[1/4] 使用已加载模型: {model_dir}")
     
     # 4. 统计输入
     print(f"[2/4] 读取序列: {input_file}")
     records = list(SeqIO.parse(input_file, "fasta"))
     total_seqs = len(records)
     print(f"       共 {total_seqs} 条序列")
+    emit_progress("predict", 0, total_seqs, progress_file)
     
     if total_seqs == 0:
         print("[WARNING] 输入文件为空")
@@ -66,7 +92,9 @@ def run_end_to_end(input_file, output_dir, model_dir, threshold=0.5):
     
     # 5. 批量预测
     print(f"[3/4] 开始预测 (threshold={threshold})")
-    results = predictor.process_fasta_file(input_file, threshold=threshold, batch_size=256)
+    results = predictor.process_fasta_file(
+        input_file, threshold=threshold, batch_size=256,
+        progress=lambda done, total: emit_progress("predict", done, total, progress_file))
     
     # 6. 统计结果
     arg_count = sum(1 for r in results if r['is_arg'])
@@ -154,6 +182,73 @@ def create_empty_outputs(output_dir, records):
     print(f"[完成] 空结果已保存到: {output_dir}")
 
 
+def run_worker(jobs_dir, model_dir, poll_interval=0.5, heartbeat_interval=5):
+    """
+    常驻 worker：模型只加载一次，循环处理任务目录中的作业
+
+    协议（均在 jobs_dir 下）:
+        <job_id>.json    后端写入的作业 {"input": ..., "output": ..., "threshold": 0.5}（先写临时文件再改名）
+        <job_id>.running worker 领取后改名，处理期间存在
+        <job_id>.progress 处理期间的最新进度行（同 stdout 中的 [PROGRESS] 行），结束后删除
+        <job_id>.result  处理结束写入 {"exitCode": 0, "error": null, "elapsed": 秒}
+        heartbeat        每 heartbeat_interval 秒刷新，后端据此做健康检查
+    """
+    os.makedirs(jobs_dir, exist_ok=True)
+    print(f"[worker] 加载模型: {model_dir}")
+    predictor = ARGPredictor(model_dir=model_dir)
+
+    heartbeat_path = os.path.join(jobs_dir, "heartbeat")
+
+    def heartbeat():
+        while True:
+            with open(heartbeat_path, 'w') as f:
+                f.write(str(time.time()))
+            time.sleep(heartbeat_interval)
+
+    threading.Thread(target=heartbeat, daemon=True).start()
+    print(f"[worker] 就绪，监听作业目录: {jobs_dir}")
+
+    while True:
+        jobs = sorted(f for f in os.listdir(jobs_dir) if f.endswith('.json'))
+        if not jobs:
+            time.sleep(poll_interval)
+            continue
+        for name in jobs:
+            job_id = name[:-len('.json')]
+            job_path = os.path.join(jobs_dir, name)
+            running_path = os.path.join(jobs_dir, job_id + '.running')
+            try:
+                os.rename(job_path, running_path)
+            except FileNotFoundError:
+                continue
+
+            started = time.time()
+            progress_path = os.path.join(jobs_dir, job_id + '.progress')
+            exit_code, error = 0, None
+            try:
+                with open(running_path) as f:
+                    job = json.load(f)
+                print(f"[worker] 开始作业 {job_id}: {job['input']} -> {job['output']}")
+                run_end_to_end(job['input'], job['output'], model_dir,
+                               job.get('threshold', 0.5), predictor=predictor,
+                               progress_file=progress_path)
+            except SystemExit as e:
+                exit_code = e.code if isinstance(e.code, int) and e.code != 0 else 1
+                error = f"exit {e.code}"
+            except Exception as e:
+                exit_code, error = 1, str(e)
+
+            result_tmp = os.path.join(jobs_dir, job_id + '.result.tmp')
+            with open(result_tmp, 'w') as f:
+                json.dump({"exitCode": exit_code, "error": error,
+                           "elapsed": round(time.time() - started, 3)}, f)
+            os.replace(result_tmp, os.path.join(jobs_dir, job_id + '.result'))
+            os.remove(running_path)
+            if os.path.exists(progress_path):
+                os.remove(progress_path)
+            print(f"[worker] 作业结束 {job_id}: exitCode={exit_code}")
+
+
 def main():
     parser = argparse.ArgumentParser(
         description="ARG-BiLSTM: 抗性基因识别与分类工具",
@@ -185,10 +280,20 @@ def main():
         help="二分类阈值 (默认: 0.5)"
     )
     
+    # worker 命令
+    worker_parser = subparsers.add_parser(
+        "worker",
+        help="常驻模式: 加载一次模型，循环处理作业目录中的任务"
+    )
+    worker_parser.add_argument("jobs", help="作业目录路径")
+    worker_parser.add_argument("db", help="模型数据库目录路径")
+    
     args = parser.parse_args()
     
     if args.command == "end-to-end":
         run_end_to_end(args.input, args.output, args.db, args.threshold)
+    elif args.command == "worker":
+        run_worker(args.jobs, args.db)
     else:
         parser.print_help()
         sys.exit(1)
@@ -296,7 +296,7 @@ class ARGPredictor:
         
         return results
 
-    def process_fasta_file(self, file_path, threshold=0.5, batch_size=256, top_k=5):
+    def process_fasta_file(self, file_path, threshold=0.5, batch_size=256, top_k=5, progress=None):
         """
         处理FASTA文件 (支持批量处理)
         
@@ -305,6 +305,7 @@ class ARGPredictor:
             threshold: 二分类阈值
             batch_size: 批次大小
             top_k: 返回概率最高的前k个分类 (默认5)
+            progress: 进度回调 progress(已处理条数, 总条数)，每批结束后调用
         
         Returns:
             list[dict]: 预测结果列表
@@ -320,5 +321,7 @@ class ARGPredictor:
             
             batch_results = self.predict_batch(sequences, seq_ids, threshold, top_k)
             all_results.extend(batch_results)
+            if progress is not None:
+                progress(len(all_results), len(records))
         
         return all_results